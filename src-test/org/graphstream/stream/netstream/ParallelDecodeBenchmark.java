@@ -0,0 +1,172 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.SourceBase;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput of {@link NetStreamParallelDecoder} with the number of decoding
+ * threads. Many producers send batches of attribute changes; the events are
+ * decoded by the pool and given, in order, to a sink counting them.
+ * <p>
+ * Arguments: number of producers, number of frames by producer, number of
+ * rounds for each number of threads.
+ *
+ * @since 17/10/26.
+ */
+public class ParallelDecodeBenchmark {
+    static final int EVENTS_PER_FRAME = 100;
+
+    public static void main(String... args) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<List<ByteBuffer>> encoded = encode(producers, frames);
+
+        System.out.printf("%d producers, %d frames of %d events each, %d cores%n", producers, frames,
+                EVENTS_PER_FRAME, cores);
+        System.out.printf("%8s %14s %8s%n", "threads", "events/s", "speedup");
+
+        // warm up
+        run(encoded, cores);
+
+        double base = 0;
+
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            double best = 0;
+
+            for (int r = 0; r < rounds; r++) {
+                best = Math.max(best, run(encoded, threads));
+            }
+
+            if (threads == 1) {
+                base = best;
+            }
+
+            System.out.printf("%8d %14.0f %8.2f%n", threads, best, best / base);
+        }
+    }
+
+    static List<List<ByteBuffer>> encode(int producers, int frames) {
+        List<List<ByteBuffer>> encoded = new ArrayList<List<ByteBuffer>>();
+
+        for (int i = 0; i < producers; i++) {
+            final List<ByteBuffer> batches = new ArrayList<ByteBuffer>();
+            NetStreamBatchTransport batch = new NetStreamBatchTransport(new NetStreamTransport() {
+                @Override
+                public void send(ByteBuffer buffer) {
+                    ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+                    copy.put(buffer).flip();
+                    batches.add(copy);
+                }
+            }, 1 << 20, 0);
+
+            NetStreamEncoder enc = new NetStreamEncoder("producer-" + i, batch);
+            enc.setBufferReuse(true);
+            enc.setDictionaryEnabled(true);
+
+            long timeId = 0;
+
+            for (int f = 0; f < frames; f++) {
+                for (int e = 0; e < EVENTS_PER_FRAME; e++) {
+                    String node = "node-" + (e % 50);
+                    enc.nodeAttributeChanged("producer-" + i, timeId++, node, "xyz", null,
+                            new double[]{f, e, f * e});
+                }
+
+                batch.flush();
+            }
+
+            encoded.add(batches);
+        }
+
+        return encoded;
+    }
+
+    /**
+     * @return the number of events given to the sink by second
+     */
+    static double run(List<List<ByteBuffer>> encoded, int threads) throws InterruptedException {
+        final long[] count = {0};
+        SourceBase source = new SourceBase() {
+        };
+
+        source.addSink(new SinkAdapter() {
+            @Override
+            public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute,
+                                             Object oldValue, Object newValue) {
+                count[0]++;
+            }
+        });
+
+        NetStreamParallelDecoder decoder = new NetStreamParallelDecoder(source, null, threads);
+        NetStreamParallelDecoder.Producer[] producers = new NetStreamParallelDecoder.Producer[encoded.size()];
+
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = decoder.createProducer(null);
+        }
+
+        int frames = encoded.get(0).size();
+        long start = System.nanoTime();
+
+        for (int f = 0; f < frames; f++) {
+            for (int i = 0; i < producers.length; i++) {
+                producers[i].receive(encoded.get(i).get(f).duplicate());
+            }
+
+            decoder.pump();
+        }
+
+        while (decoder.getPendingFrameCount() > 0) {
+            decoder.pump();
+            Thread.yield();
+        }
+
+        decoder.pump();
+
+        long time = System.nanoTime() - start;
+        decoder.shutdown();
+
+        if (count[0] != (long) frames * producers.length * EVENTS_PER_FRAME) {
+            throw new IllegalStateException("missing events: " + count[0]);
+        }
+
+        return count[0] * 1e9 / time;
+    }
+}
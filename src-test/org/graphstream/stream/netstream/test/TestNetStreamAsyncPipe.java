@@ -0,0 +1,136 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream.test;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.implementations.DefaultGraph;
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.netstream.NetStreamAsyncPipe;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestNetStreamAsyncPipe {
+    /**
+     * Sink waiting for a latch on its first event.
+     */
+    static class SlowSink extends SinkAdapter {
+        CountDownLatch latch = new CountDownLatch(1);
+        Thread thread;
+        int nodes;
+        int changes;
+
+        void await() {
+            thread = Thread.currentThread();
+
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void nodeAdded(String sourceId, long timeId, String nodeId) {
+            await();
+            nodes++;
+        }
+
+        @Override
+        public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute, Object oldValue, Object newValue) {
+            await();
+            changes++;
+        }
+    }
+
+    @Test
+    public void testOrder() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        NetStreamAsyncPipe pipe = new NetStreamAsyncPipe(64);
+
+        pipe.addSink(actual);
+
+        for (int i = 0; i < 1000; i++) {
+            long t = 10 * i;
+
+            pipe.nodeAdded("source", t, "node-" + i);
+            pipe.nodeAttributeAdded("source", t + 1, "node-" + i, "x", i);
+            expected.addNode("node-" + i).addAttribute("x", i);
+
+            if (i > 0) {
+                pipe.edgeAdded("source", t + 2, "edge-" + i, "node-" + (i - 1), "node-" + i, false);
+                expected.addEdge("edge-" + i, "node-" + (i - 1), "node-" + i);
+            }
+        }
+
+        pipe.close();
+
+        Assert.assertEquals(0, pipe.getPendingEventCount());
+        Assert.assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        Assert.assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, (int) actual.getNode("node-" + i).getNumber("x"));
+        }
+    }
+
+    @Test
+    public void testDropPolicy() {
+        NetStreamAsyncPipe pipe = new NetStreamAsyncPipe(16);
+        SlowSink sink = new SlowSink();
+
+        pipe.setOverflowPolicy(NetStreamAsyncPipe.OverflowPolicy.DROP, 0, TimeUnit.MILLISECONDS);
+        pipe.addSink(sink);
+
+        // the first event blocks the thread of the pipe, the ring fills up
+        pipe.nodeAdded("source", 0, "node");
+
+        for (int i = 1; i <= 100; i++) {
+            pipe.nodeAttributeChanged("source", i, "node", "x", i - 1, i);
+        }
+
+        Assert.assertEquals(100 - 16, pipe.getDroppedEventCount(), 1);
+
+        sink.latch.countDown();
+        pipe.close();
+
+        Assert.assertEquals(1, sink.nodes);
+        Assert.assertEquals(100 - pipe.getDroppedEventCount(), sink.changes);
+        Assert.assertNotSame(Thread.currentThread(), sink.thread);
+    }
+}
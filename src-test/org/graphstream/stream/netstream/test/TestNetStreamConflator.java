@@ -0,0 +1,161 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream.test;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.implementations.DefaultGraph;
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.netstream.NetStreamConflator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedList;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestNetStreamConflator {
+    static class EventLog extends SinkAdapter {
+        LinkedList<String> events = new LinkedList<String>();
+
+        @Override
+        public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute, Object oldValue, Object newValue) {
+            events.add(String.format("%d:chg:%s.%s=%s", timeId, nodeId, attribute, newValue));
+        }
+
+        @Override
+        public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
+            events.add(String.format("%d:add:%s.%s=%s", timeId, nodeId, attribute, value));
+        }
+
+        @Override
+        public void nodeAdded(String sourceId, long timeId, String nodeId) {
+            events.add(String.format("%d:add:%s", timeId, nodeId));
+        }
+
+        @Override
+        public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+            events.add(String.format("%d:del:%s", timeId, nodeId));
+        }
+
+        @Override
+        public void stepBegins(String sourceId, long timeId, double step) {
+            events.add(String.format("%d:step", timeId));
+        }
+    }
+
+    @Test
+    public void testLastWriteWins() {
+        NetStreamConflator conflator = new NetStreamConflator();
+        EventLog log = new EventLog();
+
+        conflator.addSink(log);
+
+        conflator.nodeAttributeChanged("s", 1, "A", "x", 0, 1);
+        conflator.nodeAttributeChanged("s", 2, "B", "x", 0, 1);
+        conflator.nodeAttributeChanged("s", 3, "A", "x", 1, 2);
+        conflator.nodeAttributeChanged("s", 4, "A", "x", 2, 3);
+
+        Assert.assertTrue(log.events.isEmpty());
+
+        conflator.stepBegins("s", 5, 1);
+
+        Assert.assertEquals("[1:chg:A.x=3, 2:chg:B.x=1, 5:step]", log.events.toString());
+        Assert.assertEquals(2, conflator.getDroppedEventCount());
+        Assert.assertEquals(0, conflator.getPendingEventCount());
+    }
+
+    @Test
+    public void testStructuralBarrier() {
+        NetStreamConflator conflator = new NetStreamConflator();
+        EventLog log = new EventLog();
+
+        conflator.addSink(log);
+
+        conflator.nodeAttributeChanged("s", 1, "A", "x", 0, 1);
+        conflator.nodeRemoved("s", 2, "A");
+        conflator.nodeAdded("s", 3, "A");
+        conflator.nodeAttributeAdded("s", 4, "A", "x", 0);
+        conflator.nodeAttributeChanged("s", 5, "A", "x", 0, 2);
+        conflator.nodeAttributeChanged("s", 6, "A", "x", 2, 3);
+        conflator.flush();
+
+        Assert.assertEquals("[1:chg:A.x=1, 2:del:A, 3:add:A, 4:add:A.x=0, 5:chg:A.x=3]", log.events.toString());
+        Assert.assertEquals(1, conflator.getDroppedEventCount());
+    }
+
+    @Test
+    public void testSameFinalState() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        NetStreamConflator conflator = new NetStreamConflator(100);
+        long t = 0;
+
+        conflator.addSink(actual);
+
+        for (int step = 0; step < 10; step++) {
+            for (int i = 0; i < 50; i++) {
+                String id = "n" + (i % 20);
+
+                if (expected.getNode(id) == null) {
+                    expected.nodeAdded("s", t, id);
+                    conflator.nodeAdded("s", t++, id);
+                }
+
+                expected.nodeAttributeChanged("s", t, id, "xyz", null, i * step);
+                conflator.nodeAttributeChanged("s", t++, id, "xyz", null, i * step);
+
+                if (i % 17 == 16) {
+                    expected.nodeRemoved("s", t, id);
+                    conflator.nodeRemoved("s", t++, id);
+                }
+            }
+
+            expected.stepBegins("s", t, step);
+            conflator.stepBegins("s", t++, step);
+        }
+
+        Assert.assertEquals(expected.getNodeCount(), actual.getNodeCount());
+
+        for (int i = 0; i < 20; i++) {
+            String id = "n" + i;
+
+            if (expected.getNode(id) == null) {
+                Assert.assertNull(actual.getNode(id));
+            } else {
+                Assert.assertEquals((Object) expected.getNode(id).getAttribute("xyz"), actual.getNode(id).getAttribute("xyz"));
+            }
+        }
+
+        Assert.assertTrue(conflator.getDroppedEventCount() > 0);
+    }
+}
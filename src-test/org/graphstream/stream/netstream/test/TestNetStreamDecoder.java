@@ -0,0 +1,853 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream.test;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.implementations.DefaultGraph;
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.SourceBase.ElementType;
+import org.graphstream.stream.netstream.NetStreamBatchTransport;
+import org.graphstream.stream.netstream.NetStreamBulkSink;
+import org.graphstream.stream.netstream.NetStreamCompressor;
+import org.graphstream.stream.netstream.NetStreamConstants;
+import org.graphstream.stream.netstream.NetStreamDecoder2;
+import org.graphstream.stream.netstream.NetStreamEncoder;
+import org.graphstream.stream.netstream.NetStreamExtendedConstants;
+import org.graphstream.stream.netstream.NetStreamLazyValue;
+import org.graphstream.stream.netstream.NetStreamReassembler;
+import org.graphstream.stream.netstream.NetStreamStringPool;
+import org.graphstream.stream.netstream.NetStreamStringView;
+import org.graphstream.stream.netstream.NetStreamTransport;
+import org.graphstream.stream.netstream.NetStreamUtils;
+
+import static org.graphstream.stream.netstream.NetStreamUtils.*;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.Deflater;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestNetStreamDecoder {
+    /**
+     * Transport skipping the size and the stream of each message and giving the
+     * rest to the decoders.
+     */
+    static class DecoderTransport implements NetStreamTransport {
+        LinkedList<NetStreamDecoder2> decoders = new LinkedList<NetStreamDecoder2>();
+        int lastSize;
+        long totalSize;
+
+        @Override
+        public void send(ByteBuffer buffer) {
+            lastSize = buffer.getInt();
+            totalSize += lastSize;
+            decodeString(buffer);
+
+            int start = buffer.position();
+
+            for (NetStreamDecoder2 decoder : decoders) {
+                buffer.position(start);
+                decoder.decode(buffer);
+            }
+        }
+
+        void feed(NetStreamDecoder2 decoder, ByteBuffer buffer) {
+            buffer.getInt();
+            decodeString(buffer);
+            decoder.decode(buffer);
+        }
+    }
+
+    protected static NetStreamDecoder2 decoderTo(Graph g) {
+        NetStreamDecoder2 decoder = new NetStreamDecoder2();
+        decoder.addSink(g);
+
+        return decoder;
+    }
+
+    protected static void sendSomeEvents(Sink sink, int from, int to) {
+        for (int i = from; i < to; i++) {
+            long t = 10 * i;
+
+            sink.nodeAdded("source", t, "node-" + i);
+            sink.nodeAttributeAdded("source", t + 1, "node-" + i, "xyz", new Double[]{(double) i, 0.0, 1.0});
+
+            if (i > from) {
+                sink.edgeAdded("source", t + 2, "edge-" + i, "node-" + (i - 1), "node-" + i, i % 2 == 0);
+                sink.edgeAttributeAdded("source", t + 3, "edge-" + i, "ui.label", "label-" + i);
+            }
+        }
+    }
+
+    protected static void assertSameGraph(Graph expected, Graph actual) {
+        Assert.assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        Assert.assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+
+        for (Node n : expected) {
+            Node m = actual.getNode(n.getId());
+
+            Assert.assertNotNull(m);
+            Assert.assertArrayEquals((Object[]) n.getAttribute("xyz"), (Object[]) m.getAttribute("xyz"));
+        }
+
+        for (Edge e : expected.getEachEdge()) {
+            Edge f = actual.getEdge(e.getId());
+
+            Assert.assertNotNull(f);
+            Assert.assertEquals(e.isDirected(), f.isDirected());
+            Assert.assertEquals(e.getNode0().getId(), f.getNode0().getId());
+            Assert.assertEquals(e.getNode1().getId(), f.getNode1().getId());
+            Assert.assertEquals((Object) e.getAttribute("ui.label"), f.getAttribute("ui.label"));
+        }
+    }
+
+    @Test
+    public void testDecodeEvents() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+
+        transport.decoders.add(decoderTo(actual));
+
+        sendSomeEvents(enc, 0, 50);
+        sendSomeEvents(expected, 0, 50);
+        assertSameGraph(expected, actual);
+
+        enc.nodeRemoved("source", 1000, "node-10");
+        enc.graphAttributeAdded("source", 1001, "ui.stylesheet", "node { fill-color: red; }");
+        enc.stepBegins("source", 1002, 3.5);
+
+        Assert.assertEquals(49, actual.getNodeCount());
+        Assert.assertNull(actual.getNode("node-10"));
+        Assert.assertEquals("node { fill-color: red; }", actual.getAttribute("ui.stylesheet"));
+        Assert.assertEquals(3.5, actual.getStep(), 0);
+    }
+
+    @Test
+    public void testDictionary() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+
+        enc.setDictionaryEnabled(true);
+        transport.decoders.add(decoderTo(actual));
+
+        sendSomeEvents(enc, 0, 50);
+        sendSomeEvents(expected, 0, 50);
+        assertSameGraph(expected, actual);
+
+        enc.nodeRemoved("source", 1000, "node-1");
+        expected.removeNode("node-1");
+        int codedSize = transport.lastSize;
+
+        DecoderTransport literal = new DecoderTransport();
+        new NetStreamEncoder("stream-test", literal).nodeRemoved("source", 1000, "node-1");
+        int literalSize = literal.lastSize;
+
+        Assert.assertTrue(codedSize < literalSize);
+        assertSameGraph(expected, actual);
+    }
+
+    @Test
+    public void testDictionaryLateJoiner() {
+        Graph expected = new DefaultGraph("expected");
+        Graph early = new DefaultGraph("early");
+        Graph late = new DefaultGraph("late");
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+
+        enc.setDictionaryEnabled(true);
+        transport.decoders.add(decoderTo(early));
+
+        sendSomeEvents(enc, 0, 20);
+        sendSomeEvents(expected, 0, 20);
+
+        // the late joiner gets the current state, then the dictionary
+        NetStreamDecoder2 lateDecoder = decoderTo(late);
+        sendSomeEvents(late, 0, 20);
+        transport.feed(lateDecoder, enc.encodeDictionary());
+        transport.decoders.add(lateDecoder);
+
+        for (int i = 0; i < 20; i++) {
+            Double[] xyz = {1.0, 2.0, (double) i};
+
+            enc.nodeAttributeChanged("source", 1000 + i, "node-" + i, "xyz", null, xyz);
+            expected.getNode("node-" + i).setAttribute("xyz", (Object) xyz);
+        }
+
+        sendSomeEvents(enc, 200, 210);
+        sendSomeEvents(expected, 200, 210);
+
+        assertSameGraph(expected, early);
+        assertSameGraph(expected, late);
+    }
+
+    @Test
+    public void testBatch() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        final NetStreamDecoder2 decoder = decoderTo(actual);
+        final int[] frames = {0};
+
+        NetStreamBatchTransport batch = new NetStreamBatchTransport(new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                Assert.assertTrue(buffer.remaining() <= 1024);
+
+                frames[0]++;
+                decoder.decodeFrame(buffer);
+            }
+        }, 1024, 0);
+
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", batch);
+        enc.setBufferReuse(true);
+
+        sendSomeEvents(enc, 0, 100);
+        sendSomeEvents(expected, 0, 100);
+
+        Assert.assertTrue(frames[0] > 0);
+        Assert.assertTrue(actual.getNodeCount() < 100);
+
+        batch.flush();
+
+        Assert.assertTrue(frames[0] < 100);
+        assertSameGraph(expected, actual);
+    }
+
+    @Test
+    public void testBulkAttributeChange() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+        final int[] bulks = {0};
+
+        NetStreamDecoder2 decoder = decoderTo(actual);
+        decoder.addBulkSink(new NetStreamBulkSink() {
+            @Override
+            public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count, double[] values, int width) {
+                Assert.assertEquals(3, width);
+                Assert.assertEquals(50, count);
+                bulks[0]++;
+            }
+
+            @Override
+            public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count, float[] values, int width) {
+                Assert.fail();
+            }
+
+            @Override
+            public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count, double[] values, int width) {
+                Assert.assertEquals(1, width);
+                bulks[0]++;
+            }
+
+            @Override
+            public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count, float[] values, int width) {
+                Assert.fail();
+            }
+        });
+
+        enc.setDictionaryEnabled(true);
+        transport.decoders.add(decoder);
+
+        sendSomeEvents(enc, 0, 50);
+        sendSomeEvents(expected, 0, 50);
+
+        String[] nodeIds = new String[50];
+        double[] xyz = new double[150];
+        String[] edgeIds = new String[49];
+        double[] weights = new double[49];
+
+        for (int i = 0; i < 50; i++) {
+            nodeIds[i] = "node-" + i;
+            xyz[3 * i] = i;
+            xyz[3 * i + 1] = -i;
+            xyz[3 * i + 2] = 0.5;
+
+            expected.getNode(nodeIds[i]).setAttribute("xyz", (Object) new Double[]{(double) i, (double) -i, 0.5});
+
+            if (i > 0) {
+                edgeIds[i - 1] = "edge-" + i;
+                weights[i - 1] = i / 2.0;
+            }
+        }
+
+        enc.nodeAttributesChanged("source", 1000, "xyz", nodeIds, 50, xyz, 3);
+        enc.edgeAttributesChanged("source", 2000, "weight", edgeIds, 49, weights, 1);
+
+        Assert.assertEquals(2, bulks[0]);
+        assertSameGraph(expected, actual);
+
+        for (int i = 1; i < 50; i++) {
+            Assert.assertEquals(i / 2.0, actual.getEdge("edge-" + i).getNumber("weight"), 0);
+        }
+    }
+
+    protected static void moveNodes(Sink sink, long timeId, int count, int step) {
+        for (int i = 0; i < count; i++) {
+            Double[] old = {i + (step - 1) * 0.013, -(step - 1) * 0.0071, 1.0};
+            Double[] xyz = {i + step * 0.013, -step * 0.0071, 1.0};
+            sink.nodeAttributeChanged("source", timeId + i, "node-" + i, "xyz", old, xyz);
+        }
+    }
+
+    protected static void assertSamePositions(Graph expected, Graph actual, double precision) {
+        for (Node n : expected) {
+            Object[] xyz = n.getAttribute("xyz");
+            Object[] decoded = actual.getNode(n.getId()).getAttribute("xyz");
+
+            Assert.assertEquals(xyz.length, decoded.length);
+
+            for (int i = 0; i < xyz.length; i++) {
+                Assert.assertEquals(((Number) xyz[i]).doubleValue(), ((Number) decoded[i]).doubleValue(), precision);
+            }
+        }
+    }
+
+    @Test
+    public void testNumericEncoding() {
+        Graph expected = new DefaultGraph("expected");
+        Graph plain = new DefaultGraph("plain");
+        Graph quantized = new DefaultGraph("quantized");
+        DecoderTransport plainTransport = new DecoderTransport();
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder plainEnc = new NetStreamEncoder("stream-test", plainTransport);
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+
+        plainEnc.setDictionaryEnabled(true);
+        enc.setDictionaryEnabled(true);
+        enc.setNumericEncoding("xyz", 3, true);
+
+        plainTransport.decoders.add(decoderTo(plain));
+        transport.decoders.add(decoderTo(quantized));
+
+        sendSomeEvents(expected, 0, 50);
+        sendSomeEvents(plainEnc, 0, 50);
+        sendSomeEvents(enc, 0, 50);
+
+        plainTransport.totalSize = 0;
+        transport.totalSize = 0;
+
+        for (int step = 1; step <= 20; step++) {
+            moveNodes(expected, 1000 * step, 50, step);
+            moveNodes(plainEnc, 1000 * step, 50, step);
+            moveNodes(enc, 1000 * step, 50, step);
+        }
+
+        assertSamePositions(expected, plain, 0);
+        assertSamePositions(expected, quantized, 0.0005);
+        Assert.assertTrue(2 * transport.totalSize < plainTransport.totalSize);
+
+        // a new receiver only knows the current state, without the last values
+        Graph late = new DefaultGraph("late");
+        NetStreamDecoder2 lateDecoder = decoderTo(late);
+        sendSomeEvents(late, 0, 50);
+        transport.feed(lateDecoder, enc.encodeDictionary());
+        transport.decoders.add(lateDecoder);
+        enc.resetNumericEncoding();
+
+        for (int step = 21; step <= 25; step++) {
+            moveNodes(expected, 1000 * step, 50, step);
+            moveNodes(enc, 1000 * step, 50, step);
+        }
+
+        assertSamePositions(expected, quantized, 0.0005);
+        assertSamePositions(expected, late, 0.0005);
+
+        // values of removed elements are forgotten on both sides
+        enc.nodeRemoved("source", 30000, "node-0");
+        enc.nodeAdded("source", 30001, "node-0");
+        enc.nodeAttributeAdded("source", 30002, "node-0", "xyz", new Double[]{5.0, 5.0, 5.0});
+
+        Assert.assertArrayEquals(new Object[]{5.0, 5.0, 5.0}, (Object[]) late.getNode("node-0").getAttribute("xyz"));
+    }
+
+    @Test
+    public void testCompression() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        final NetStreamDecoder2 decoder = decoderTo(actual);
+        final NetStreamCompressor compressor = new NetStreamCompressor(256, Deflater.BEST_SPEED);
+
+        NetStreamBatchTransport batch = new NetStreamBatchTransport(new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                decoder.decodeFrame(compressor.compress(buffer));
+            }
+        }, 4096, 0);
+
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", batch);
+
+        sendSomeEvents(enc, 0, 200);
+        sendSomeEvents(expected, 0, 200);
+        batch.flush();
+
+        Assert.assertTrue(compressor.getCompressedFrameCount() > 0);
+        Assert.assertTrue(compressor.getCompressionRatio() < 0.5);
+        assertSameGraph(expected, actual);
+
+        // small frames are left as they are
+        long plain = compressor.getPlainFrameCount();
+
+        enc.nodeRemoved("source", 10000, "node-0");
+        batch.flush();
+
+        Assert.assertEquals(plain + 1, compressor.getPlainFrameCount());
+        Assert.assertNull(actual.getNode("node-0"));
+    }
+
+    @Test
+    public void testCompactHeader() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        final LinkedList<NetStreamDecoder2> decoders = new LinkedList<NetStreamDecoder2>();
+        final long[] bytes = {0};
+
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                bytes[0] += buffer.remaining();
+
+                for (NetStreamDecoder2 decoder : decoders) {
+                    decoder.decodeMessage(buffer.duplicate());
+                }
+            }
+        });
+
+        enc.setCompactHeader(true);
+        decoders.add(decoderTo(actual));
+
+        sendSomeEvents(enc, 0, 50);
+        sendSomeEvents(expected, 0, 50);
+        assertSameGraph(expected, actual);
+
+        // a new receiver gets the current header, events then come from another source
+        Graph late = new DefaultGraph("late");
+        NetStreamDecoder2 lateDecoder = decoderTo(late);
+        sendSomeEvents(late, 0, 50);
+        lateDecoder.decodeMessage(enc.encodeStreamHeader());
+        decoders.add(lateDecoder);
+
+        sendSomeEvents(enc, 50, 60);
+        sendSomeEvents(expected, 50, 60);
+
+        enc.nodeAdded("other-source", 5, "other-node");
+        enc.nodeRemoved("source", 1000, "node-0");
+        expected.addNode("other-node");
+        expected.removeNode("node-0");
+
+        // the header is most of a small event
+        DecoderTransport literal = new DecoderTransport();
+        NetStreamEncoder literalEnc = new NetStreamEncoder("stream-test", literal);
+        bytes[0] = 0;
+
+        for (int i = 0; i < 50; i++) {
+            enc.nodeAdded("source", 2000 + i, "added-" + i);
+            literalEnc.nodeAdded("source", 2000 + i, "added-" + i);
+            expected.addNode("added-" + i);
+        }
+
+        Assert.assertTrue(2 * bytes[0] < literal.totalSize);
+        assertSameGraph(expected, actual);
+        assertSameGraph(expected, late);
+    }
+
+    @Test
+    public void testMalformedInput() {
+        final LinkedList<ByteBuffer> messages = new LinkedList<ByteBuffer>();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+                copy.put(buffer).flip();
+                messages.add(copy);
+            }
+        });
+
+        sendSomeEvents(enc, 0, 20);
+        enc.stepBegins("source", 1000, 1.5);
+        enc.nodeAttributeAdded("source", 1001, "node-0", "ints", new int[]{1, 200, 30000});
+        enc.graphAttributeAdded("source", 1002, "nested", new String[]{"a", "b"});
+
+        final int[] reported = new int[1];
+        final int[] received = new int[1];
+
+        Graph g = new DefaultGraph("g");
+        NetStreamDecoder2 decoder = new NetStreamDecoder2();
+        decoder.setDecodeErrorListener(new NetStreamDecoder2.DecodeErrorListener() {
+            @Override
+            public void decodeError(NetStreamDecoder2.DecodeError error, int eventType) {
+                reported[0]++;
+            }
+        });
+        decoder.addSink(new org.graphstream.stream.SinkAdapter() {
+            @Override
+            public void nodeAdded(String sourceId, long timeId, String nodeId) {
+                received[0]++;
+            }
+        });
+
+        // every truncated message is dropped
+        int truncated = 0;
+
+        for (ByteBuffer message : messages) {
+            for (int length = 0; length < message.limit(); length++) {
+                ByteBuffer part = message.duplicate();
+                part.limit(length);
+                decoder.decodeMessage(part);
+                truncated++;
+            }
+        }
+
+        Assert.assertEquals(0, received[0]);
+        Assert.assertEquals(truncated, decoder.getErrorCount());
+        Assert.assertEquals(truncated, reported[0]);
+        Assert.assertEquals(truncated, decoder.getErrorCount(NetStreamDecoder2.DecodeError.TRUNCATED));
+
+        // garbage does not throw
+        java.util.Random random = new java.util.Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            byte[] garbage = new byte[random.nextInt(64)];
+            random.nextBytes(garbage);
+
+            if (garbage.length > 4 && random.nextBoolean()) {
+                // valid size, random content
+                ByteBuffer.wrap(garbage).putInt(garbage.length - 4);
+            }
+
+            decoder.decodeFrame(ByteBuffer.wrap(garbage));
+            decoder.decodeMessage(ByteBuffer.wrap(garbage));
+        }
+
+        Assert.assertEquals(decoder.getErrorCount(), reported[0]);
+
+        // a definition can not skip handles
+        long unknown = decoder.getErrorCount(NetStreamDecoder2.DecodeError.UNKNOWN_HANDLE);
+        ByteBuffer skip = ByteBuffer.allocate(64);
+        skip.putInt(0);
+        putString(skip, "stream-test");
+        skip.put((byte) (NetStreamConstants.EVENT_ADD_NODE | NetStreamExtendedConstants.EVENT_FLAG_DICTIONARY));
+        putUnsignedVarint(skip, ((long) Integer.MAX_VALUE - 1) << 1);
+        putString(skip, "source");
+        skip.putInt(0, skip.position()).flip();
+
+        decoder.decodeFrame(skip);
+
+        Assert.assertEquals(unknown + 1, decoder.getErrorCount(NetStreamDecoder2.DecodeError.UNKNOWN_HANDLE));
+        Assert.assertTrue(decoder.getDictionary().size() < 1000);
+
+        // and the decoder still works
+        Graph expected = new DefaultGraph("expected");
+        sendSomeEvents(expected, 0, 20);
+        decoder.clearSinks();
+        decoder.addSink(g);
+
+        for (ByteBuffer message : messages) {
+            decoder.decodeMessage(message.duplicate());
+        }
+
+        assertSameGraph(expected, g);
+        Assert.assertArrayEquals(new Object[]{"a", "b"}, (Object[]) g.getAttribute("nested"));
+    }
+
+    @Test
+    public void testReassembler() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                stream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+        });
+        enc.setBufferReuse(true);
+
+        Graph expected = new DefaultGraph("expected");
+
+        String big = new String(new char[1000]).replace('\0', 'x');
+
+        sendSomeEvents(enc, 0, 50);
+        sendSomeEvents(expected, 0, 50);
+        enc.graphAttributeAdded("stream-test", 10000, "big", big);
+
+        byte[] bytes = stream.toByteArray();
+
+        // all in one chunk, nothing is copied
+        Graph actual = new DefaultGraph("actual");
+        NetStreamReassembler reassembler = new NetStreamReassembler(decoderTo(actual));
+
+        reassembler.feed(ByteBuffer.wrap(bytes));
+
+        long messages = reassembler.getMessageCount();
+
+        Assert.assertTrue(messages > 100);
+        Assert.assertEquals(0, reassembler.getCopiedBytes());
+        Assert.assertEquals(0, reassembler.getPendingBytes());
+        assertSameGraph(expected, actual);
+
+        // chunks of any size
+        java.util.Random random = new java.util.Random(42);
+        actual = new DefaultGraph("actual");
+        reassembler = new NetStreamReassembler(decoderTo(actual));
+        ByteBuffer chunk = ByteBuffer.allocate(64);
+
+        for (int offset = 0; offset < bytes.length; ) {
+            int length = Math.min(bytes.length - offset, 1 + random.nextInt(chunk.capacity()));
+
+            // the chunk is reused, as a socket read buffer would be
+            chunk.clear();
+            chunk.put(bytes, offset, length).flip();
+            reassembler.feed(chunk);
+            offset += length;
+
+            Assert.assertFalse(chunk.hasRemaining());
+        }
+
+        Assert.assertTrue(reassembler.getCopiedBytes() > 0);
+        Assert.assertTrue(reassembler.getCopiedBytes() < bytes.length);
+        Assert.assertEquals(0, reassembler.getPendingBytes());
+        Assert.assertEquals(messages, reassembler.getMessageCount());
+        Assert.assertEquals(0, reassembler.getDecoder().getErrorCount());
+        Assert.assertEquals(big, actual.getAttribute("big"));
+        assertSameGraph(expected, actual);
+
+        // from a channel
+        actual = new DefaultGraph("actual");
+        reassembler = new NetStreamReassembler(decoderTo(actual));
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(bytes));
+
+        while (reassembler.read(channel) >= 0) {
+        }
+
+        Assert.assertEquals(messages, reassembler.getMessageCount());
+        assertSameGraph(expected, actual);
+
+        // a wrong size breaks the stream
+        reassembler = new NetStreamReassembler(decoderTo(new DefaultGraph("lost")), 1024);
+        ByteBuffer wrong = ByteBuffer.allocate(8);
+        wrong.putInt(2048).putInt(0).flip();
+
+        reassembler.feed(wrong);
+        reassembler.feed(ByteBuffer.wrap(bytes));
+
+        Assert.assertTrue(reassembler.isBroken());
+        Assert.assertEquals(0, reassembler.getMessageCount());
+        Assert.assertEquals(1, reassembler.getDecoder().getErrorCount(NetStreamDecoder2.DecodeError.BAD_SIZE));
+
+        reassembler.reset();
+        reassembler.feed(ByteBuffer.wrap(bytes, 0, 4));
+
+        Assert.assertFalse(reassembler.isBroken());
+        Assert.assertEquals(4, reassembler.getPendingBytes());
+    }
+
+    @Test
+    public void testAttributeFilter() {
+        Graph expected = new DefaultGraph("expected");
+        Graph actual = new DefaultGraph("actual");
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+        NetStreamDecoder2 decoder = decoderTo(actual);
+
+        enc.setDictionaryEnabled(true);
+        enc.setNumericEncoding("xyz", 3, true);
+        transport.decoders.add(decoder);
+
+        // only positions
+        decoder.setAttributeInterest(Arrays.asList("xyz"));
+
+        sendSomeEvents(expected, 0, 50);
+        sendSomeEvents(enc, 0, 50);
+
+        Assert.assertEquals(49, decoder.getSkippedValueCount());
+        Assert.assertNull(actual.getEdge("edge-1").getAttribute("ui.label"));
+        assertSamePositions(expected, actual, 0);
+
+        // only labels, positions are still followed
+        decoder.setAttributeFilter(new NetStreamDecoder2.AttributeFilter() {
+            @Override
+            public boolean accept(ElementType kind, String attribute) {
+                return kind == ElementType.EDGE;
+            }
+        });
+
+        for (int step = 1; step <= 5; step++) {
+            moveNodes(expected, 1000 * step, 50, step);
+            moveNodes(enc, 1000 * step, 50, step);
+        }
+
+        enc.edgeAttributeChanged("source", 5500, "edge-1", "ui.label", "label-1", "changed");
+
+        Assert.assertEquals(49 + 5 * 50, decoder.getSkippedValueCount());
+        Assert.assertEquals("changed", actual.getEdge("edge-1").getAttribute("ui.label"));
+
+        // all attributes again, the differences apply to the skipped values
+        decoder.setAttributeFilter(null);
+
+        for (int step = 6; step <= 8; step++) {
+            moveNodes(expected, 1000 * step, 50, step);
+            moveNodes(enc, 1000 * step, 50, step);
+        }
+
+        assertSamePositions(expected, actual, 0.0005);
+        Assert.assertEquals(0, decoder.getErrorCount());
+    }
+
+    @Test
+    public void testLazyValues() {
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+        NetStreamDecoder2 decoder = new NetStreamDecoder2();
+        final LinkedList<Object> values = new LinkedList<Object>();
+
+        decoder.setLazyValues(true);
+        decoder.addSink(new org.graphstream.stream.SinkAdapter() {
+            @Override
+            public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
+                values.add(value);
+            }
+
+            @Override
+            public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute,
+                                             Object oldValue, Object newValue) {
+                values.add(oldValue);
+                values.add(newValue);
+            }
+        });
+        transport.decoders.add(decoder);
+
+        enc.nodeAttributeAdded("source", 1, "A", "label", "hello");
+        enc.nodeAttributeChanged("source", 2, "A", "xyz", new Double[]{1.0, 2.0}, new Double[]{3.0, 4.0});
+
+        Assert.assertEquals(3, values.size());
+
+        NetStreamLazyValue label = (NetStreamLazyValue) values.get(0);
+
+        Assert.assertFalse(label.isDecoded());
+        Assert.assertTrue(label.getEncodedSize() > 0);
+        Assert.assertEquals("hello", label.get());
+        Assert.assertTrue(label.isDecoded());
+        Assert.assertArrayEquals(new Object[]{1.0, 2.0}, (Object[]) NetStreamLazyValue.get(values.get(1)));
+        Assert.assertArrayEquals(new Object[]{3.0, 4.0}, (Object[]) NetStreamLazyValue.get(values.get(2)));
+    }
+
+    @Test
+    public void testStringPool() {
+        DecoderTransport transport = new DecoderTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", transport);
+        NetStreamDecoder2 decoder = new NetStreamDecoder2();
+        NetStreamStringPool pool = new NetStreamStringPool(16, 8);
+        final LinkedList<String> ids = new LinkedList<String>();
+
+        decoder.setStringPool(pool);
+        decoder.addSink(new org.graphstream.stream.SinkAdapter() {
+            @Override
+            public void nodeAdded(String sourceId, long timeId, String nodeId) {
+                ids.add(nodeId);
+            }
+        });
+        transport.decoders.add(decoder);
+
+        enc.nodeAdded("source", 1, "A");
+        enc.nodeAdded("source", 2, "A");
+        enc.nodeAdded("source", 3, "\u00e9t\u00e9");
+        enc.nodeAdded("source", 4, "\u00e9t\u00e9");
+        enc.nodeAdded("source", 5, "a-long-identifier");
+
+        Assert.assertEquals(Arrays.asList("A", "A", "\u00e9t\u00e9", "\u00e9t\u00e9", "a-long-identifier"), ids);
+        Assert.assertSame(ids.get(0), ids.get(1));
+        Assert.assertSame(ids.get(2), ids.get(3));
+        Assert.assertTrue(pool.getHits() >= 2);
+
+        for (int i = 0; i < 1000; i++) {
+            String id = "n" + i;
+            ByteBuffer bb = ByteBuffer.wrap(id.getBytes());
+            Assert.assertEquals(id, pool.get(bb, 0, bb.remaining()));
+        }
+
+        Assert.assertTrue(pool.getEvictions() > 0);
+    }
+
+    @Test
+    public void testStringView() {
+        NetStreamStringView view = new NetStreamStringView();
+
+        for (String s : new String[]{"", "node-1", "\u00e9t\u00e9 \u6f22\u5b57"}) {
+            ByteBuffer bb = NetStreamUtils.encodeString(s);
+            ByteBuffer direct = ByteBuffer.allocateDirect(bb.remaining() + 3);
+
+            direct.put(new byte[]{1, 2, 3}).put(bb.duplicate()).position(3);
+
+            for (ByteBuffer buffer : new ByteBuffer[]{bb, direct}) {
+                int end = buffer.limit();
+
+                Assert.assertSame(view, NetStreamUtils.decodeStringView(buffer, view));
+                Assert.assertEquals(end, buffer.position());
+                Assert.assertEquals(s.length(), view.length());
+                Assert.assertEquals(s, view.toString());
+                Assert.assertEquals(s.hashCode(), view.hashCode());
+                Assert.assertTrue(view.contentEquals(s));
+                Assert.assertFalse(view.contentEquals(s + "x"));
+
+                for (int i = 0; i < s.length(); i++) {
+                    Assert.assertEquals(s.charAt(i), view.charAt(i));
+                }
+            }
+        }
+
+        Assert.assertNull(NetStreamUtils.decodeStringView(ByteBuffer.wrap(new byte[]{5, 'a'}), view));
+
+        // the length does not fit in a long, or is not complete
+        byte[] overlong = new byte[12];
+        Arrays.fill(overlong, 0, 9, (byte) 0xFF);
+        overlong[9] = 0x01;
+
+        Assert.assertNull(NetStreamUtils.decodeStringView(ByteBuffer.wrap(overlong), view));
+        Assert.assertNull(NetStreamUtils.decodeStringView(ByteBuffer.wrap(new byte[]{(byte) 0x80}), view));
+    }
+}
@@ -33,6 +33,7 @@ package org.graphstream.stream.netstream.test;
 
 import org.graphstream.stream.netstream.NetStreamConstants;
 import org.graphstream.stream.netstream.NetStreamEncoder;
+import org.graphstream.stream.netstream.NetStreamIdentifierCache;
 import org.graphstream.stream.netstream.NetStreamTransport;
 
 import static org.graphstream.stream.netstream.NetStreamUtils.*;
@@ -40,6 +41,7 @@ import static org.graphstream.stream.netstream.NetStreamUtils.*;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
@@ -237,4 +239,103 @@ public class TestNetStreamEncoder {
 
         enc.graphCleared(sourceId, timeId);
     }
+
+    @Test
+    public void testEventNodeAttributeChanged() {
+        final String streamId = "stream-test";
+        final String sourceId = "test";
+        final String nodeId = "n\u00f6de-\u20ac-\ud83d\ude00";
+        final String attribute = "xyz";
+        final Double[] oldValue = {1.0, 2.0, 3.0};
+        final Integer[] newValue = {0, -1, 300};
+        final long timeId = 123;
+
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                byte[] streamBytes = streamId.getBytes(Charset.forName("UTF-8"));
+                byte[] sourceBytes = sourceId.getBytes(Charset.forName("UTF-8"));
+                byte[] nodeBytes = nodeId.getBytes(Charset.forName("UTF-8"));
+                byte[] attrBytes = attribute.getBytes(Charset.forName("UTF-8"));
+
+                int expectedSize = 4
+                        + getVarintSize(streamBytes.length) + streamBytes.length
+                        + getVarintSize(sourceBytes.length) + sourceBytes.length
+                        + 1
+                        + getVarintSize(123)
+                        + getVarintSize(nodeBytes.length) + nodeBytes.length
+                        + getVarintSize(attrBytes.length) + attrBytes.length
+                        + 1 + encodeDoubleArray(oldValue).capacity()
+                        + 1 + encodeIntArray(newValue).capacity();
+
+                Assert.assertEquals(expectedSize, buffer.limit());
+                Assert.assertEquals(expectedSize, buffer.getInt());
+
+                Assert.assertEquals(streamId, decodeString(buffer));
+                Assert.assertEquals(NetStreamConstants.EVENT_CHG_NODE_ATTR, buffer.get());
+                Assert.assertEquals(sourceId, decodeString(buffer));
+                Assert.assertEquals(timeId, decodeUnsignedVarint(buffer));
+                Assert.assertEquals(nodeId, decodeString(buffer));
+                Assert.assertEquals(attribute, decodeString(buffer));
+                Assert.assertEquals(NetStreamConstants.TYPE_DOUBLE_ARRAY, buffer.get());
+                Assert.assertArrayEquals(oldValue, decodeDoubleArray(buffer));
+                Assert.assertEquals(NetStreamConstants.TYPE_INT_ARRAY, buffer.get());
+                Assert.assertArrayEquals(newValue, decodeIntArray(buffer));
+
+                Assert.assertEquals(0, buffer.remaining());
+            }
+        });
+
+        enc.setBufferReuse(true);
+
+        for (int i = 0; i < 3; i++) {
+            enc.nodeAttributeChanged(sourceId, timeId, nodeId, attribute, oldValue, newValue);
+        }
+    }
+
+    @Test
+    public void testIdentifierCache() {
+        final ByteArrayOutputStream cached = new ByteArrayOutputStream();
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                cached.write(buffer.array(), buffer.position(), buffer.remaining());
+            }
+        });
+
+        NetStreamEncoder ref = new NetStreamEncoder("stream-test", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                plain.write(buffer.array(), buffer.position(), buffer.remaining());
+            }
+        });
+
+        // the cache is disabled by default
+        Assert.assertNull(ref.getIdentifierCache());
+        enc.setIdentifierCacheSize(4);
+
+        long timeId = 1;
+
+        for (int i = 0; i < 10; i++) {
+            String nodeId = i % 2 == 0 ? "n\u00e9" + i : "n" + i;
+
+            enc.nodeAdded("test", timeId, nodeId);
+            ref.nodeAdded("test", timeId++, nodeId);
+            enc.nodeAttributeAdded("test", timeId, nodeId, "x", 1.0);
+            ref.nodeAttributeAdded("test", timeId++, nodeId, "x", 1.0);
+        }
+
+        Assert.assertArrayEquals(plain.toByteArray(), cached.toByteArray());
+
+        NetStreamIdentifierCache cache = enc.getIdentifierCache();
+
+        // each node id is a miss then a hit, "x" is a miss only once
+        Assert.assertEquals(4, cache.size());
+        Assert.assertEquals(11, cache.getMissCount());
+        Assert.assertEquals(19, cache.getHitCount());
+        Assert.assertEquals(7, cache.getEvictionCount());
+        Assert.assertArrayEquals(encodeString("n\u00e9").array(), NetStreamIdentifierCache.encode("n\u00e9"));
+    }
 }
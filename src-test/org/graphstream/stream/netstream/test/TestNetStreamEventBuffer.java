@@ -0,0 +1,95 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream.test;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.implementations.DefaultGraph;
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.SourceBase;
+import org.graphstream.stream.netstream.NetStreamEventBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestNetStreamEventBuffer {
+    @Test
+    public void testReplay() {
+        NetStreamEventBuffer buffer = new NetStreamEventBuffer("client-1");
+
+        buffer.nodeAdded("remote", 1, "A");
+        buffer.nodeAdded("remote", 2, "B");
+        buffer.edgeAdded("remote", 3, "AB", "A", "B", true);
+        buffer.nodeAttributeAdded("remote", 4, "A", "xyz", new double[]{1, 2});
+        buffer.edgeAttributeChanged("remote", 5, "AB", "weight", 1, 2);
+        buffer.graphAttributeAdded("remote", 6, "title", "t");
+        buffer.stepBegins("remote", 7, 3.5);
+
+        NetStreamEventBuffer taken = buffer.take();
+
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertEquals(7, taken.size());
+
+        Graph g = new DefaultGraph("g");
+        final StringBuilder sources = new StringBuilder();
+        SourceBase source = new SourceBase() {
+        };
+
+        source.addSink(g);
+        source.addSink(new SinkAdapter() {
+            @Override
+            public void nodeAdded(String sourceId, long timeId, String nodeId) {
+                sources.append(sourceId).append(':').append(timeId).append(' ');
+            }
+        });
+
+        taken.replay(source);
+
+        Assert.assertEquals("client-1:1 client-1:2 ", sources.toString());
+        Assert.assertTrue(g.getEdge("AB").isDirected());
+        Assert.assertArrayEquals(new double[]{1, 2}, (double[]) g.getNode("A").getAttribute("xyz"), 0);
+        Assert.assertEquals(2, g.getEdge("AB").getAttribute("weight"));
+        Assert.assertEquals("t", g.getAttribute("title"));
+        Assert.assertEquals(3.5, g.getStep(), 0);
+
+        // the source id of the events is kept without override
+        buffer.setSourceId(null);
+        buffer.nodeRemoved("remote", 8, "B");
+        buffer.replay(source);
+
+        Assert.assertNull(g.getNode("B"));
+
+        buffer.clear();
+        Assert.assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream.test;
+
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.netstream.NetStreamBulkSink;
+import org.graphstream.stream.netstream.NetStreamFilterSink;
+import org.graphstream.stream.netstream.NetStreamGraphMirror;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestNetStreamFilterSink {
+    @Test
+    public void testHooks() {
+        final NetStreamGraphMirror first = new NetStreamGraphMirror();
+        final NetStreamGraphMirror second = new NetStreamGraphMirror();
+        final List<String> ends = new ArrayList<String>();
+
+        NetStreamFilterSink filter = new NetStreamFilterSink(new Sink[]{first, second},
+                new NetStreamBulkSink[]{first, second}) {
+            @Override
+            protected boolean begin(String sourceId) {
+                return !sourceId.equals("dropped");
+            }
+
+            @Override
+            protected void end(String sourceId) {
+                ends.add(sourceId);
+            }
+
+            @Override
+            protected boolean accept(int index) {
+                return index == 0 || first.getNodeCount() < 2;
+            }
+        };
+
+        filter.nodeAdded("src", 1, "A");
+        filter.nodeAdded("dropped", 2, "B");
+        filter.nodeAdded("src", 3, "C");
+        filter.nodeAdded("src", 4, "D");
+        filter.nodeAttributesChanged("src", 5, "x", new String[]{"A", "C"}, 2, new double[]{1, 2}, 1);
+
+        Assert.assertEquals(3, first.getNodeCount());
+        Assert.assertEquals(2.0, first.getNodeAttribute("C", "x"));
+        Assert.assertEquals(1, second.getNodeCount());
+        Assert.assertEquals(4, ends.size());
+    }
+
+    @Test
+    public void testEndAfterFailure() {
+        final List<String> ends = new ArrayList<String>();
+        NetStreamGraphMirror mirror = new NetStreamGraphMirror();
+
+        NetStreamFilterSink filter = new NetStreamFilterSink(new SinkAdapter() {
+            @Override
+            public void nodeAdded(String sourceId, long timeId, String nodeId) {
+                throw new IllegalStateException(nodeId);
+            }
+        }, mirror) {
+            @Override
+            protected void end(String sourceId) {
+                ends.add(sourceId);
+            }
+        };
+
+        try {
+            filter.nodeAdded("src", 1, "A");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, ends.size());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream.test;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.implementations.DefaultGraph;
+import org.graphstream.stream.netstream.NetStreamGraphMirror;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestNetStreamGraphMirror {
+    @Test
+    public void testSnapshot() {
+        Graph expected = new DefaultGraph("expected");
+        NetStreamGraphMirror mirror = new NetStreamGraphMirror();
+        Random random = new Random(17);
+
+        expected.addSink(mirror);
+        expected.addAttribute("title", "mirror");
+
+        for (int i = 0; i < 2000; i++) {
+            String a = "n" + random.nextInt(300);
+            String b = "n" + random.nextInt(300);
+
+            switch (random.nextInt(6)) {
+                case 0:
+                    if (expected.getNode(a) == null) {
+                        expected.addNode(a);
+                    }
+                    break;
+                case 1:
+                    if (expected.getNode(a) != null) {
+                        expected.removeNode(a);
+                    }
+                    break;
+                case 2:
+                    if (expected.getNode(a) != null && expected.getNode(b) != null
+                            && expected.getEdge(a + "-" + b) == null && expected.getEdge(b + "-" + a) == null
+                            && !expected.getNode(a).hasEdgeBetween(b)) {
+                        expected.addEdge(a + "-" + b, a, b, random.nextBoolean());
+                    }
+                    break;
+                case 3:
+                    if (expected.getNode(a) != null) {
+                        expected.getNode(a).setAttribute("x", random.nextDouble());
+                        expected.getNode(a).setAttribute("label", a.toUpperCase());
+                    }
+                    break;
+                case 4:
+                    if (expected.getNode(a) != null) {
+                        expected.getNode(a).removeAttribute("label");
+                    }
+                    break;
+                default:
+                    if (expected.getEdgeCount() > 0) {
+                        Edge e = expected.getEdge(random.nextInt(expected.getEdgeCount()));
+
+                        if (random.nextBoolean()) {
+                            e.setAttribute("weight", random.nextInt(10));
+                        } else {
+                            expected.removeEdge(e);
+                        }
+                    }
+            }
+        }
+
+        expected.stepBegins(3);
+
+        Assert.assertEquals(expected.getNodeCount(), mirror.getNodeCount());
+        Assert.assertEquals(expected.getEdgeCount(), mirror.getEdgeCount());
+
+        Graph actual = new DefaultGraph("actual");
+        long next = mirror.replay(actual, "snapshot", 1);
+
+        Assert.assertEquals(1 + 1 + actual.getNodeCount() + actual.getEdgeCount() + countAttributes(actual) + 1, next);
+        Assert.assertEquals("mirror", actual.getAttribute("title"));
+        Assert.assertEquals(3, actual.getStep(), 0);
+        Assert.assertEquals(expected.getNodeCount(), actual.getNodeCount());
+        Assert.assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+
+        for (Node n : expected) {
+            Node copy = actual.getNode(n.getId());
+
+            Assert.assertNotNull(copy);
+            Assert.assertEquals(n.getDegree(), copy.getDegree());
+            Assert.assertEquals(n.getDegree(), mirror.getDegree(n.getId()));
+            Assert.assertEquals((Object) n.getAttribute("x"), copy.getAttribute("x"));
+            Assert.assertEquals((Object) n.getAttribute("label"), copy.getAttribute("label"));
+        }
+
+        for (Edge e : expected.getEachEdge()) {
+            Edge copy = actual.getEdge(e.getId());
+
+            Assert.assertNotNull(copy);
+            Assert.assertEquals(e.getSourceNode().getId(), copy.getSourceNode().getId());
+            Assert.assertEquals(e.getTargetNode().getId(), copy.getTargetNode().getId());
+            Assert.assertEquals(e.isDirected(), copy.isDirected());
+            Assert.assertEquals((Object) e.getAttribute("weight"), copy.getAttribute("weight"));
+        }
+
+        expected.clear();
+
+        Assert.assertEquals(0, mirror.getNodeCount());
+        Assert.assertEquals(0, mirror.getEdgeCount());
+        Assert.assertNull(mirror.getGraphAttribute("title"));
+    }
+
+    @Test
+    public void testBulkChanges() {
+        NetStreamGraphMirror mirror = new NetStreamGraphMirror();
+
+        mirror.nodeAdded("s", 1, "A");
+        mirror.nodeAdded("s", 2, "B");
+        mirror.nodeAttributesChanged("s", 3, "x", new String[]{"A", "B", "C"}, 3, new double[]{1, 2, 3}, 1);
+        mirror.nodeAttributesChanged("s", 4, "xy", new String[]{"A", "B"}, 2, new float[]{1, 2, 3, 4}, 2);
+
+        Assert.assertEquals(1.0, mirror.getNodeAttribute("A", "x"));
+        Assert.assertEquals(2.0, mirror.getNodeAttribute("B", "x"));
+        Assert.assertArrayEquals(new float[]{3, 4}, (float[]) mirror.getNodeAttribute("B", "xy"), 0);
+        Assert.assertEquals(-1, mirror.getDegree("C"));
+
+        mirror.nodeRemoved("s", 5, "A");
+        mirror.nodeAdded("s", 6, "D");
+
+        Assert.assertNull(mirror.getNodeAttribute("D", "x"));
+        Assert.assertNull(mirror.getNodeAttribute("A", "x"));
+
+        mirror.edgeAdded("s", 7, "BE", "B", "E", true);
+
+        Assert.assertEquals(3, mirror.getNodeCount());
+        Assert.assertEquals(1, mirror.getDegree("E"));
+
+        mirror.nodeRemoved("s", 8, "B");
+
+        Assert.assertEquals(0, mirror.getEdgeCount());
+        Assert.assertEquals(0, mirror.getDegree("E"));
+    }
+
+    @Test
+    public void testCopy() {
+        NetStreamGraphMirror mirror = new NetStreamGraphMirror();
+
+        mirror.graphAttributeAdded("s", 1, "title", "copy");
+        mirror.nodeAdded("s", 2, "A");
+        mirror.nodeAttributeAdded("s", 3, "A", "x", 1.0);
+        mirror.edgeAdded("s", 4, "AB", "A", "B", true);
+        mirror.edgeAttributeAdded("s", 5, "AB", "label", "ab");
+
+        NetStreamGraphMirror copy = mirror.copy();
+
+        // the copy does not see the next events
+        mirror.nodeAttributeChanged("s", 6, "A", "x", 1.0, 2.0);
+        mirror.nodeRemoved("s", 7, "B");
+        mirror.nodeAdded("s", 8, "C");
+        mirror.graphAttributeRemoved("s", 9, "title");
+
+        Assert.assertEquals(2, copy.getNodeCount());
+        Assert.assertEquals(1, copy.getEdgeCount());
+        Assert.assertEquals(1.0, copy.getNodeAttribute("A", "x"));
+        Assert.assertEquals(1, copy.getDegree("B"));
+        Assert.assertEquals(-1, copy.getDegree("C"));
+
+        Graph actual = new DefaultGraph("actual");
+        copy.replay(actual, "snapshot", 1);
+
+        Assert.assertEquals("copy", actual.getAttribute("title"));
+        Assert.assertEquals(1.0, (Object) actual.getNode("A").getAttribute("x"));
+        Assert.assertEquals("ab", actual.getEdge("AB").getAttribute("label"));
+        Assert.assertTrue(actual.getEdge("AB").isDirected());
+
+        // and the mirror does not see the events of the copy
+        copy.nodeRemoved("s", 10, "A");
+
+        Assert.assertEquals(2.0, mirror.getNodeAttribute("A", "x"));
+        Assert.assertEquals(2, mirror.getNodeCount());
+        Assert.assertEquals(0, mirror.getEdgeCount());
+    }
+
+    protected static int countAttributes(Graph g) {
+        int count = 0;
+
+        for (Node n : g) {
+            count += n.getAttributeCount();
+        }
+
+        for (Edge e : g.getEachEdge()) {
+            count += e.getAttributeCount();
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream.test;
+
+import org.graphstream.stream.SinkAdapter;
+import org.graphstream.stream.SourceBase;
+import org.graphstream.stream.netstream.NetStreamEncoder;
+import org.graphstream.stream.netstream.NetStreamParallelDecoder;
+import org.graphstream.stream.netstream.NetStreamTransport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestNetStreamParallelDecoder {
+    /**
+     * Transport keeping a copy of each message.
+     */
+    static class CopyTransport implements NetStreamTransport {
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+
+        @Override
+        public void send(ByteBuffer buffer) {
+            ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+            copy.put(buffer).flip();
+            frames.add(copy);
+        }
+    }
+
+    @Test
+    public void testOrder() throws InterruptedException {
+        final int producers = 8;
+        final int frames = 2000;
+
+        final List<String> received = new ArrayList<String>();
+        SourceBase source = new SourceBase() {
+        };
+
+        source.addSink(new SinkAdapter() {
+            @Override
+            public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute,
+                                             Object oldValue, Object newValue) {
+                received.add(sourceId + "/" + nodeId + "=" + newValue);
+            }
+        });
+
+        NetStreamParallelDecoder decoder = new NetStreamParallelDecoder(source, null, 4);
+        NetStreamParallelDecoder.Producer[] p = new NetStreamParallelDecoder.Producer[producers];
+        CopyTransport[] transports = new CopyTransport[producers];
+
+        for (int i = 0; i < producers; i++) {
+            p[i] = decoder.createProducer("producer-" + i);
+            transports[i] = new CopyTransport();
+
+            NetStreamEncoder enc = new NetStreamEncoder("stream-" + i, transports[i]);
+            enc.setDictionaryEnabled(i % 2 == 0);
+
+            for (int k = 0; k < frames; k++) {
+                enc.nodeAttributeChanged("remote", k + 1, "n" + (k % 10), "v", null, k);
+            }
+        }
+
+        // frames of all the producers touch the same nodes
+        List<String> expected = new ArrayList<String>();
+
+        for (int k = 0; k < frames; k++) {
+            for (int i = 0; i < producers; i++) {
+                int n = (k * 7 + i) % producers;
+
+                p[n].receive(transports[n].frames.get(k));
+                expected.add("producer-" + n + "/n" + (k % 10) + "=" + k);
+            }
+
+            if (k % 100 == 0) {
+                decoder.pump();
+            }
+        }
+
+        long end = System.currentTimeMillis() + 10000;
+
+        while (decoder.getPendingFrameCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        decoder.pump();
+        decoder.shutdown();
+
+        Assert.assertEquals(producers * frames, decoder.getFrameCount());
+        Assert.assertEquals(0, decoder.getErrorCount());
+        Assert.assertEquals(expected, received);
+    }
+
+    @Test
+    public void testFailureAndBacklog() throws InterruptedException {
+        final List<String> received = new ArrayList<String>();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        SourceBase source = new SourceBase() {
+        };
+
+        source.addSink(new SinkAdapter() {
+            @Override
+            public void nodeAdded(String sourceId, long timeId, String nodeId) {
+                received.add(nodeId);
+            }
+        });
+
+        // the producer is not decoded until the latch is released
+        NetStreamParallelDecoder decoder = new NetStreamParallelDecoder(source, null, 1) {
+            @Override
+            public Producer createProducer(String sourceId) {
+                return new Producer(sourceId) {
+                    @Override
+                    public void run() {
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+
+                        super.run();
+                    }
+                };
+            }
+        };
+
+        decoder.setMaxPendingFrames(4);
+
+        CopyTransport transport = new CopyTransport();
+        NetStreamEncoder enc = new NetStreamEncoder("stream", transport);
+        enc.setDictionaryEnabled(false);
+
+        for (int k = 0; k < 10; k++) {
+            enc.nodeAdded("remote", k + 1, "n" + k);
+        }
+
+        NetStreamParallelDecoder.Producer p = decoder.createProducer("producer");
+
+        for (int k = 0; k < 3; k++) {
+            Assert.assertTrue(p.receive(transport.frames.get(k)));
+        }
+
+        // a frame making the decoder throw does not hold the next ones
+        Assert.assertTrue(p.receive(null));
+
+        for (int k = 3; k < 10; k++) {
+            Assert.assertFalse(p.receive(transport.frames.get(k)));
+        }
+
+        Assert.assertEquals(4, p.getPendingFrameCount());
+
+        blocked.countDown();
+
+        long end = System.currentTimeMillis() + 10000;
+
+        while (decoder.getPendingFrameCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertTrue(p.receive(transport.frames.get(9)));
+
+        while (decoder.getPendingFrameCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        decoder.pump();
+        decoder.shutdown();
+
+        Assert.assertEquals(12, decoder.getFrameCount());
+        Assert.assertEquals(8, decoder.getErrorCount());
+        Assert.assertEquals(Arrays.asList("n0", "n1", "n2", "n9"), received);
+    }
+}
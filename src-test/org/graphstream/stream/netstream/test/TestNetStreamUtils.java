@@ -31,11 +31,17 @@
  */
 package org.graphstream.stream.netstream.test;
 
+import org.graphstream.stream.netstream.NetStreamCodec;
+import org.graphstream.stream.netstream.NetStreamCodecRegistry;
+import org.graphstream.stream.netstream.NetStreamConstants;
+import org.graphstream.stream.netstream.NetStreamEncoder;
+import org.graphstream.stream.netstream.NetStreamTransport;
 import org.graphstream.stream.netstream.NetStreamUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 /**
  * @since 23/01/16.
@@ -68,6 +74,55 @@ public class TestNetStreamUtils {
         }
     }
 
+    @Test
+    public void testVarints() {
+        long[] values = new long[1000];
+        Random random = new Random(1234);
+
+        for (int i = 0; i < values.length; i++) {
+            // mostly one and two bytes values, with some larger ones
+            int bits = i % 10 == 0 ? 1 + random.nextInt(62) : 1 + random.nextInt(14);
+            values[i] = random.nextLong() >>> (64 - bits);
+
+            if (random.nextBoolean()) {
+                values[i] = -values[i];
+            }
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            long u = NetStreamUtils.zigzag(values[i]);
+            ByteBuffer encoded = NetStreamUtils.encodeVarint(values[i]);
+
+            Assert.assertEquals(encoded.remaining(), NetStreamUtils.getVarintSize(u));
+            Assert.assertEquals(values[i], NetStreamUtils.decodeVarint(encoded));
+            Assert.assertEquals(0, encoded.remaining());
+        }
+
+        int size = NetStreamUtils.getSignedVarintsSize(values, 0, values.length);
+        ByteBuffer bb = ByteBuffer.allocate(size + 1);
+
+        NetStreamUtils.putSignedVarints(bb, values, 0, values.length);
+        Assert.assertEquals(size, bb.position());
+        bb.put((byte) 42);
+        bb.flip();
+
+        ByteBuffer single = bb.duplicate();
+
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(values[i], NetStreamUtils.decodeVarint(single));
+        }
+
+        long[] decoded = new long[values.length + 2];
+        NetStreamUtils.decodeSignedVarints(bb, decoded, 1, values.length);
+
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(values[i], decoded[i + 1]);
+        }
+
+        Assert.assertEquals(size, bb.position());
+        Assert.assertEquals(42, bb.get());
+    }
+
     @Test
     public void testEncodeDecodeString() {
         for (int i = 0; i < 100; i++) {
@@ -78,4 +133,149 @@ public class TestNetStreamUtils {
             Assert.assertEquals(s, r);
         }
     }
+
+    @Test
+    public void testPrimitiveArrays() {
+        double[] d = {1.5, -2.25, Math.PI};
+        float[] f = {1.5f, -2.25f, 0.1f};
+        int[] i = {0, -1, 1, 300, Integer.MIN_VALUE + 1};
+        long[] l = {0, -1, 1L << 42};
+        byte[] b = {0, 1, -1, 127};
+        boolean[] z = {true, false, true};
+
+        Object[][] boxed = {
+                new Double[]{1.5, -2.25, Math.PI},
+                new Float[]{1.5f, -2.25f, 0.1f},
+                new Integer[]{0, -1, 1, 300, Integer.MIN_VALUE + 1},
+                new Long[]{0L, -1L, 1L << 42},
+                new Byte[]{0, 1, -1, 127},
+                new Boolean[]{true, false, true}
+        };
+
+        Object[] primitives = {d, f, i, l, b, z};
+
+        for (int k = 0; k < primitives.length; k++) {
+            Object[] typed = boxed[k];
+            int type = NetStreamUtils.getType(primitives[k]);
+
+            Assert.assertEquals(NetStreamUtils.getType(typed), type);
+
+            ByteBuffer p = NetStreamUtils.encodeValue(primitives[k], type);
+            ByteBuffer o = NetStreamUtils.encodeValue(typed, type);
+
+            Assert.assertEquals(o, p);
+
+            Object back = NetStreamUtils.decodeValue(p, type, true);
+
+            Assert.assertEquals(primitives[k].getClass(), back.getClass());
+            Assert.assertEquals(0, p.remaining());
+            Assert.assertArrayEquals(typed, (Object[]) NetStreamUtils.decodeValue(o, type));
+        }
+
+        Assert.assertArrayEquals(d, (double[]) NetStreamUtils.decodeValue(NetStreamUtils.encodeValue(d, NetStreamConstants.TYPE_DOUBLE_ARRAY), NetStreamConstants.TYPE_DOUBLE_ARRAY, true), 0);
+        Assert.assertArrayEquals(i, (int[]) NetStreamUtils.decodeValue(NetStreamUtils.encodeValue(i, NetStreamConstants.TYPE_INT_ARRAY), NetStreamConstants.TYPE_INT_ARRAY, true));
+    }
+
+    @Test
+    public void testMixedArray() {
+        Object[] mixed = {1.0, "a"};
+
+        // typed by its first item, the array can not be encoded
+        Assert.assertEquals(NetStreamConstants.TYPE_DOUBLE_ARRAY, NetStreamUtils.getType(mixed));
+        Assert.assertNull(NetStreamUtils.encodeValue(mixed, NetStreamConstants.TYPE_DOUBLE_ARRAY));
+        Assert.assertNull(NetStreamUtils.encodeValue(new Object[]{1, 2.0}, NetStreamConstants.TYPE_INT_ARRAY));
+        Assert.assertNotNull(NetStreamUtils.encodeValue(new Object[]{1, 2L}, NetStreamConstants.TYPE_LONG_ARRAY));
+        Assert.assertNull(NetStreamUtils.encodeValue(new Object[]{true, null}, NetStreamConstants.TYPE_BOOLEAN_ARRAY));
+
+        // the encoder drops the event instead of throwing
+        final int[] sent = new int[1];
+        NetStreamEncoder enc = new NetStreamEncoder("stream", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                sent[0]++;
+            }
+        });
+
+        enc.nodeAttributeAdded("source", 1, "n", "mixed", mixed);
+        Assert.assertEquals(0, sent[0]);
+
+        enc.nodeAttributeAdded("source", 2, "n", "values", new Object[]{1.0, 2.0});
+        Assert.assertEquals(1, sent[0]);
+    }
+
+    static class Point {
+        final int x, y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    static class PointCodec implements NetStreamCodec {
+        public int getType() {
+            return 0xC0;
+        }
+
+        public int getSize(Object value) {
+            return 8;
+        }
+
+        public void put(ByteBuffer buffer, Object value) {
+            buffer.putInt(((Point) value).x).putInt(((Point) value).y);
+        }
+
+        public Object get(ByteBuffer buffer) {
+            return new Point(buffer.getInt(), buffer.getInt());
+        }
+    }
+
+    @Test
+    public void testCustomCodec() {
+        Point p = new Point(3, -4);
+
+        Assert.assertEquals(NetStreamConstants.TYPE_UNKNOWN, NetStreamUtils.getType(p));
+        Assert.assertEquals(NetStreamConstants.TYPE_DOUBLE, NetStreamUtils.getType(1.0));
+
+        NetStreamCodecRegistry.register(Point.class, new PointCodec());
+
+        try {
+            Assert.assertEquals(0xC0, NetStreamUtils.getType(p));
+            Assert.assertEquals(NetStreamConstants.TYPE_ARRAY, NetStreamUtils.getType(new Object[]{p, 1}));
+
+            ByteBuffer bb = NetStreamUtils.encodeValue(p, 0xC0);
+            Assert.assertEquals(p, NetStreamUtils.decodeValue(bb, (byte) 0xC0));
+
+            Object[] array = {p, 1, "a"};
+            bb = NetStreamUtils.encodeArray(array);
+            Assert.assertArrayEquals(array, NetStreamUtils.decodeArray(bb));
+        } finally {
+            NetStreamCodecRegistry.unregister(Point.class);
+        }
+
+        Assert.assertEquals(NetStreamConstants.TYPE_UNKNOWN, NetStreamUtils.getType(p));
+
+        try {
+            NetStreamCodecRegistry.register(Point.class, new PointCodec() {
+                @Override
+                public int getType() {
+                    return NetStreamConstants.TYPE_DOUBLE;
+                }
+            });
+
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // builtin types can not be replaced
+        }
+    }
 }
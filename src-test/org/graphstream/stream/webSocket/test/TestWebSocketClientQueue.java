@@ -0,0 +1,322 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket.test;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.implementations.DefaultGraph;
+import org.graphstream.stream.netstream.NetStreamDecoder2;
+import org.graphstream.stream.netstream.NetStreamEncoder;
+import org.graphstream.stream.netstream.NetStreamTransport;
+import org.graphstream.stream.webSocket.WebSocketClientQueue;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.framing.Framedata;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestWebSocketClientQueue {
+    /**
+     * WebSocket keeping the frames it is given, and holding unwritten data
+     * while it is stalled.
+     */
+    static class FakeWebSocket implements WebSocket {
+        List<ByteBuffer> frames = Collections.synchronizedList(new ArrayList<ByteBuffer>());
+        volatile boolean stalled;
+        volatile int closeCode = -1;
+
+        @Override
+        public void close(int code, String message) {
+            closeCode = code;
+        }
+
+        @Override
+        public void close(int code) {
+            closeCode = code;
+        }
+
+        @Override
+        public void close() {
+            closeCode = 1000;
+        }
+
+        @Override
+        public void closeConnection(int code, String message) {
+            closeCode = code;
+        }
+
+        @Override
+        public void send(String text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void send(ByteBuffer bytes) {
+            ByteBuffer copy = ByteBuffer.allocate(bytes.remaining());
+            copy.put(bytes).flip();
+            frames.add(copy);
+        }
+
+        @Override
+        public void send(byte[] bytes) {
+            send(ByteBuffer.wrap(bytes));
+        }
+
+        @Override
+        public void sendFrame(Framedata framedata) {
+            send(framedata.getPayloadData());
+        }
+
+        @Override
+        public boolean hasBufferedData() {
+            return stalled;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteSocketAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalSocketAddress() {
+            return null;
+        }
+
+        @Override
+        public boolean isConnecting() {
+            return false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return closeCode < 0;
+        }
+
+        @Override
+        public boolean isClosing() {
+            return false;
+        }
+
+        @Override
+        public boolean isFlushAndClose() {
+            return false;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closeCode >= 0;
+        }
+
+        @Override
+        public Draft getDraft() {
+            return null;
+        }
+
+        @Override
+        public READYSTATE getReadyState() {
+            return isOpen() ? READYSTATE.OPEN : READYSTATE.CLOSED;
+        }
+    }
+
+    static ByteBuffer frame(int size, int value) {
+        ByteBuffer bb = ByteBuffer.allocate(size);
+
+        while (bb.hasRemaining()) {
+            bb.put((byte) value);
+        }
+
+        bb.flip();
+        return bb;
+    }
+
+    @Test
+    public void testDropOldest() {
+        FakeWebSocket ws = new FakeWebSocket();
+        WebSocketClientQueue queue = new WebSocketClientQueue(ws);
+        final List<String> marks = new ArrayList<String>();
+
+        queue.setCapacity(100, 1);
+        queue.setWatermarks(30, 60);
+        queue.setOverflowPolicy(WebSocketClientQueue.OverflowPolicy.DROP_OLDEST);
+        queue.setListener(new WebSocketClientQueue.Listener() {
+            @Override
+            public void queueHigh(WebSocketClientQueue queue) {
+                marks.add("high");
+            }
+
+            @Override
+            public void queueLow(WebSocketClientQueue queue) {
+                marks.add("low");
+            }
+        });
+
+        queue.send(frame(30, 0), false, true, false);
+        Assert.assertEquals(1, ws.frames.size());
+
+        ws.stalled = true;
+
+        for (int i = 1; i <= 10; i++) {
+            queue.send(frame(30, i), false, true, false);
+        }
+
+        Assert.assertEquals(90, queue.getQueuedBytes());
+        Assert.assertEquals(3, queue.getQueuedFrames());
+        Assert.assertEquals(7, queue.getDroppedFrames());
+        Assert.assertTrue(queue.isAboveHighWater());
+
+        queue.send(frame(200, 11), false, true, false);
+        Assert.assertEquals(8, queue.getDroppedFrames());
+
+        ws.stalled = false;
+        queue.drain();
+
+        Assert.assertEquals(0, queue.getQueuedBytes());
+        Assert.assertFalse(queue.isAboveHighWater());
+        Assert.assertEquals(4, ws.frames.size());
+        Assert.assertEquals(8, ws.frames.get(1).get(0));
+        Assert.assertEquals(10, ws.frames.get(3).get(0));
+        Assert.assertEquals(4, queue.getSentFrames());
+        Assert.assertEquals(90, queue.getPeakBytes());
+        Assert.assertEquals(Arrays.asList("high", "low"), marks);
+
+        // replay frames are queued whatever the size
+        ws.stalled = true;
+        queue.send(frame(300, 12), false, false, false);
+        Assert.assertEquals(300, queue.getQueuedBytes());
+    }
+
+    @Test
+    public void testDisconnect() {
+        FakeWebSocket ws = new FakeWebSocket();
+        WebSocketClientQueue queue = new WebSocketClientQueue(ws);
+
+        queue.setCapacity(100, 1);
+        ws.stalled = true;
+
+        for (int i = 0; i < 4; i++) {
+            queue.send(frame(30, i), false, true, false);
+        }
+
+        Assert.assertFalse(ws.isOpen());
+        Assert.assertEquals(0, queue.getQueuedBytes());
+
+        queue.send(frame(30, 5), false, true, false);
+        Assert.assertEquals(0, queue.getQueuedFrames());
+    }
+
+    @Test
+    public void testResync() {
+        final FakeWebSocket ws = new FakeWebSocket();
+        WebSocketClientQueue queue = new WebSocketClientQueue(ws) {
+            @Override
+            protected boolean resync() {
+                send(frame(10, 42), false, false, false);
+                return true;
+            }
+        };
+
+        queue.setCapacity(100, 1);
+        queue.setOverflowPolicy(WebSocketClientQueue.OverflowPolicy.RESYNC);
+        ws.stalled = true;
+
+        for (int i = 0; i < 4; i++) {
+            queue.send(frame(30, i), false, true, false);
+        }
+
+        Assert.assertTrue(ws.isOpen());
+        Assert.assertEquals(1, queue.getResyncCount());
+        Assert.assertEquals(10, queue.getQueuedBytes());
+
+        ws.stalled = false;
+        queue.drain();
+
+        Assert.assertEquals(1, ws.frames.size());
+        Assert.assertEquals(42, ws.frames.get(0).get(0));
+    }
+
+    @Test
+    public void testConflate() {
+        final FakeWebSocket ws = new FakeWebSocket();
+        final WebSocketClientQueue queue = new WebSocketClientQueue(ws);
+        NetStreamEncoder enc = new NetStreamEncoder("stream-test", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                queue.send(buffer, false, true, true);
+            }
+        });
+
+        queue.setCapacity(2000, 1);
+        queue.setOverflowPolicy(WebSocketClientQueue.OverflowPolicy.CONFLATE);
+        ws.stalled = true;
+
+        long timeId = 0;
+
+        enc.nodeAdded("source", ++timeId, "A");
+        enc.nodeAdded("source", ++timeId, "B");
+
+        for (int i = 0; i < 100; i++) {
+            enc.nodeAttributeChanged("source", ++timeId, "A", "x", i - 1, i);
+            enc.nodeAttributeChanged("source", ++timeId, "B", "y", "v" + (i - 1), "v" + i);
+            enc.graphAttributeChanged("source", ++timeId, "step", i - 1, i);
+        }
+
+        enc.nodeAttributeRemoved("source", ++timeId, "B", "y");
+
+        Assert.assertTrue(ws.isOpen());
+        Assert.assertTrue(queue.getConflatedMessages() > 0);
+        Assert.assertEquals(0, queue.getResyncCount());
+
+        ws.stalled = false;
+        queue.drain();
+
+        Graph g = new DefaultGraph("g");
+        NetStreamDecoder2 decoder = new NetStreamDecoder2();
+        decoder.addSink(g);
+
+        for (ByteBuffer frame : ws.frames) {
+            decoder.decodeFrame(frame);
+        }
+
+        Assert.assertEquals(99, ((Number) g.getNode("A").getAttribute("x")).intValue());
+        Assert.assertFalse(g.getNode("B").hasAttribute("y"));
+        Assert.assertEquals(99, ((Number) g.getAttribute("step")).intValue());
+    }
+}
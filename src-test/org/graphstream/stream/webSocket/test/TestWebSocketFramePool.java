@@ -0,0 +1,225 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket.test;
+
+import org.graphstream.stream.webSocket.WebSocketClientQueue;
+import org.graphstream.stream.webSocket.WebSocketFramePool;
+import org.graphstream.stream.webSocket.WebSocketSharedFrame;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.WebSocketListener;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.framing.Framedata;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestWebSocketFramePool {
+    /**
+     * Open connection without channel, whose frames stay in the output queue.
+     */
+    static class OpenWebSocket extends WebSocketImpl {
+        boolean open = true;
+        boolean closing;
+
+        OpenWebSocket() {
+            super(listener(), new Draft_17());
+        }
+
+        static WebSocketListener listener() {
+            return (WebSocketListener) Proxy.newProxyInstance(WebSocketListener.class.getClassLoader(),
+                    new Class<?>[]{WebSocketListener.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            return null;
+                        }
+                    });
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public boolean isClosing() {
+            return closing;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !open;
+        }
+    }
+
+    @Test
+    public void testFraming() throws Exception {
+        WebSocketFramePool pool = new WebSocketFramePool();
+        Draft_17 draft = new Draft_17();
+
+        draft.setParseMode(WebSocket.Role.CLIENT);
+
+        for (int size : new int[]{0, 125, 126, 65535, 65536, 300000}) {
+            ByteBuffer payload = TestWebSocketClientQueue.frame(size, size % 251);
+            WebSocketSharedFrame frame = pool.frame(payload, size == 126);
+
+            Assert.assertEquals(0, payload.position());
+            Assert.assertEquals(size, frame.getPayloadSize());
+            Assert.assertEquals(WebSocketSharedFrame.getFrameSize(size), frame.getFrame().remaining());
+            Assert.assertTrue(frame.getFrame().isReadOnly());
+
+            // the draft reads heap buffers only
+            ByteBuffer copy = ByteBuffer.allocate(frame.getFrame().remaining());
+            copy.put(frame.getFrame()).flip();
+
+            List<Framedata> frames = draft.translateFrame(copy);
+
+            Assert.assertEquals(1, frames.size());
+            Assert.assertTrue(frames.get(0).isFin());
+            Assert.assertEquals(size == 126 ? Framedata.Opcode.TEXT : Framedata.Opcode.BINARY,
+                    frames.get(0).getOpcode());
+            Assert.assertEquals(payload, frames.get(0).getPayloadData());
+
+            frame.release();
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        WebSocketFramePool pool = new WebSocketFramePool(1 << 12, 1 << 16);
+        TestWebSocketClientQueue.FakeWebSocket ws = new TestWebSocketClientQueue.FakeWebSocket();
+        WebSocketSharedFrame frame = pool.frame(TestWebSocketClientQueue.frame(100, 1), false);
+
+        frame.retain();
+        frame.writeTo(ws, null);
+        frame.release();
+
+        Assert.assertEquals(1, frame.getReferenceCount());
+        Assert.assertEquals(1, ws.frames.size());
+        Assert.assertEquals(TestWebSocketClientQueue.frame(100, 1), ws.frames.get(0));
+        Assert.assertEquals(0, pool.getPooledBytes());
+
+        frame.release();
+
+        Assert.assertEquals(256, pool.getPooledBytes());
+
+        for (int i = 0; i < 10; i++) {
+            pool.frame(TestWebSocketClientQueue.frame(200, 2), false).release();
+        }
+
+        Assert.assertEquals(1, pool.getAllocatedBuffers());
+        Assert.assertEquals(10, pool.getReusedBuffers());
+
+        // larger than the largest class, not pooled
+        pool.frame(TestWebSocketClientQueue.frame(5000, 3), false).release();
+        Assert.assertEquals(256, pool.getPooledBytes());
+
+        try {
+            frame.release();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // released twice
+        }
+    }
+
+    @Test
+    public void testReclaimInterval() {
+        WebSocketFramePool pool = new WebSocketFramePool();
+        OpenWebSocket ws = new OpenWebSocket();
+        WebSocketListener listener = OpenWebSocket.listener();
+
+        pool.setReclaimInterval(1, TimeUnit.HOURS);
+
+        // the first frame reclaims, the next ones wait for the interval
+        WebSocketSharedFrame frame = pool.frame(TestWebSocketClientQueue.frame(100, 1), false);
+        frame.writeTo(ws, listener);
+        frame.release();
+
+        Assert.assertEquals(1, ws.outQueue.size());
+        Assert.assertEquals(1, pool.getInFlightFrames());
+
+        ws.outQueue.poll().position(frame.getFrame().limit());
+        pool.frame(TestWebSocketClientQueue.frame(100, 2), false).release();
+
+        Assert.assertEquals(1, pool.getInFlightFrames());
+        Assert.assertEquals(1, frame.getReferenceCount());
+
+        Assert.assertEquals(0, pool.reclaim());
+        Assert.assertEquals(0, pool.getInFlightFrames());
+        Assert.assertEquals(0, frame.getReferenceCount());
+
+        // reclaimed each time a frame is created
+        pool.setReclaimInterval(0, TimeUnit.MILLISECONDS);
+
+        frame = pool.frame(TestWebSocketClientQueue.frame(100, 3), false);
+        frame.writeTo(ws, listener);
+        frame.release();
+        ws.open = false;
+        pool.frame(TestWebSocketClientQueue.frame(100, 4), false).release();
+
+        Assert.assertEquals(0, pool.getInFlightFrames());
+        Assert.assertEquals(0, frame.getReferenceCount());
+    }
+
+    @Test
+    public void testClosingConnection() {
+        WebSocketFramePool pool = new WebSocketFramePool();
+        OpenWebSocket ws = new OpenWebSocket();
+        WebSocketListener listener = OpenWebSocket.listener();
+
+        ws.closing = true;
+
+        // nothing may follow the close frame
+        WebSocketSharedFrame frame = pool.frame(TestWebSocketClientQueue.frame(100, 1), false);
+        frame.writeTo(ws, listener);
+
+        Assert.assertEquals(0, ws.outQueue.size());
+        Assert.assertEquals(0, pool.getInFlightFrames());
+        Assert.assertEquals(1, frame.getReferenceCount());
+
+        ws.closing = false;
+        frame.writeTo(ws, listener);
+
+        Assert.assertEquals(1, ws.outQueue.size());
+        Assert.assertEquals(2, frame.getReferenceCount());
+        Assert.assertEquals(WebSocketClientQueue.getSocketBytes(ws, 0), frame.getFrame().remaining());
+    }
+}
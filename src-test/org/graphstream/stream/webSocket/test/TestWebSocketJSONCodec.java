@@ -0,0 +1,111 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket.test;
+
+import org.graphstream.stream.netstream.NetStreamTransport;
+import org.graphstream.stream.webSocket.WebSocketCodec;
+import org.graphstream.stream.webSocket.WebSocketJSONCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestWebSocketJSONCodec {
+    static class TextTransport implements NetStreamTransport {
+        List<String> messages = new ArrayList<String>();
+
+        @Override
+        public void send(ByteBuffer buffer) {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            messages.add(new String(data, Charset.forName("UTF-8")));
+        }
+    }
+
+    @Test
+    public void testEvents() {
+        TextTransport transport = new TextTransport();
+        WebSocketCodec.Encoder enc = new WebSocketJSONCodec().createEncoder(transport, 0, 0);
+
+        enc.nodeAdded("src", 1, "A");
+        enc.edgeAdded("src", 2, "AB", "A", "B", true);
+        enc.nodeAttributeAdded("src", 3, "A", "xyz", new double[]{1, 2.5, Double.NaN});
+        enc.edgeAttributeChanged("src", 4, "AB", "label", "old", "line\n\"é€😀\"");
+        enc.graphAttributeRemoved("src", 5, "title");
+        enc.nodeAttributesChanged("src", 6, "w", new String[]{"A", "B"}, 2, new float[]{0.1f, 3}, 1);
+        enc.stepBegins("src", 8, 1);
+
+        Assert.assertEquals(8, transport.messages.size());
+        Assert.assertEquals("[{\"e\":\"an\",\"s\":\"src\",\"t\":1,\"id\":\"A\"}]", transport.messages.get(0));
+        Assert.assertEquals("[{\"e\":\"ae\",\"s\":\"src\",\"t\":2,\"id\":\"AB\",\"from\":\"A\",\"to\":\"B\",\"directed\":true}]",
+                transport.messages.get(1));
+        Assert.assertEquals("[{\"e\":\"cn\",\"s\":\"src\",\"t\":3,\"id\":\"A\",\"attr\":\"xyz\",\"op\":\"add\",\"value\":[1.0,2.5,null]}]",
+                transport.messages.get(2));
+        Assert.assertEquals("[{\"e\":\"ce\",\"s\":\"src\",\"t\":4,\"id\":\"AB\",\"attr\":\"label\",\"op\":\"change\",\"value\":\"line\\n\\\"é€😀\\\"\"}]",
+                transport.messages.get(3));
+        Assert.assertEquals("[{\"e\":\"cg\",\"s\":\"src\",\"t\":5,\"attr\":\"title\",\"op\":\"remove\"}]", transport.messages.get(4));
+        Assert.assertEquals("[{\"e\":\"cn\",\"s\":\"src\",\"t\":6,\"id\":\"A\",\"attr\":\"w\",\"op\":\"change\",\"value\":0.1}]",
+                transport.messages.get(5));
+        Assert.assertEquals("[{\"e\":\"cn\",\"s\":\"src\",\"t\":7,\"id\":\"B\",\"attr\":\"w\",\"op\":\"change\",\"value\":3.0}]",
+                transport.messages.get(6));
+        Assert.assertEquals("[{\"e\":\"st\",\"s\":\"src\",\"t\":8,\"step\":1.0}]", transport.messages.get(7));
+    }
+
+    @Test
+    public void testBatching() {
+        TextTransport transport = new TextTransport();
+        WebSocketCodec.Encoder enc = new WebSocketJSONCodec().createEncoder(transport, 100, 0);
+
+        enc.nodeAdded("src", 1, "A");
+        enc.nodeAdded("src", 2, "B");
+        Assert.assertEquals(0, transport.messages.size());
+
+        enc.nodeAdded("src", 3, "C");
+        Assert.assertEquals(1, transport.messages.size());
+        Assert.assertEquals("[{\"e\":\"an\",\"s\":\"src\",\"t\":1,\"id\":\"A\"},"
+                + "{\"e\":\"an\",\"s\":\"src\",\"t\":2,\"id\":\"B\"},"
+                + "{\"e\":\"an\",\"s\":\"src\",\"t\":3,\"id\":\"C\"}]", transport.messages.get(0));
+
+        enc.nodeRemoved("src", 4, "C");
+        enc.flush();
+        enc.flush();
+
+        Assert.assertEquals(2, transport.messages.size());
+        Assert.assertEquals("[{\"e\":\"dn\",\"s\":\"src\",\"t\":4,\"id\":\"C\"}]", transport.messages.get(1));
+    }
+}
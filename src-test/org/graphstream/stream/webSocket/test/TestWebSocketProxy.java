@@ -0,0 +1,535 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket.test;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.graph.implementations.DefaultGraph;
+import org.graphstream.stream.Replayable;
+import org.graphstream.stream.netstream.NetStreamConstants;
+import org.graphstream.stream.netstream.NetStreamEncoder;
+import org.graphstream.stream.netstream.NetStreamExtendedConstants;
+import org.graphstream.stream.netstream.NetStreamTransport;
+import org.graphstream.stream.webSocket.WebSocketClientQueue;
+import org.graphstream.stream.webSocket.WebSocketJSONCodec;
+import org.graphstream.stream.webSocket.WebSocketProxy;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_17;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.java_websocket.server.WebSocketServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestWebSocketProxy {
+    /**
+     * Proxy whose server is given fake connections, without being started.
+     */
+    static class TestProxy extends WebSocketProxy {
+        TestProxy() throws UnknownHostException {
+            super(DEFAULT_PORT);
+        }
+
+        TestProxy(Replayable replayable) throws UnknownHostException {
+            super(replayable, DEFAULT_PORT);
+        }
+
+        TestWebSocketClientQueue.FakeWebSocket connect(String subprotocol) throws Exception {
+            return connect(subprotocol, new TestWebSocketClientQueue.FakeWebSocket());
+        }
+
+        /**
+         * Open a connection as the server does once the handshake is done.
+         *
+         * @param subprotocol the subprotocol asked by the client, or null
+         * @param ws          the connection
+         */
+        TestWebSocketClientQueue.FakeWebSocket connect(String subprotocol, TestWebSocketClientQueue.FakeWebSocket ws)
+                throws Exception {
+            HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+            WebSocketServer s = server;
+
+            handshake.setResourceDescriptor("/");
+
+            if (subprotocol != null) {
+                handshake.put(SUBPROTOCOL_HEADER, subprotocol);
+            }
+
+            s.onWebsocketHandshakeReceivedAsServer(ws, new Draft_17(), handshake);
+            s.onWebsocketOpen(ws, handshake);
+
+            return ws;
+        }
+
+        /**
+         * Give a frame to the server as if the connection had sent it.
+         */
+        void receive(TestWebSocketClientQueue.FakeWebSocket ws, ByteBuffer frame) {
+            WebSocketServer s = server;
+            s.onWebsocketMessage(ws, frame);
+        }
+
+        /**
+         * Wait until the queue of a connection is empty.
+         */
+        void awaitQueue(WebSocket ws) throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+
+            while (!getOutboundQueue(ws).isEmpty() && System.currentTimeMillis() < end) {
+                Thread.sleep(1);
+            }
+
+            Assert.assertTrue(getOutboundQueue(ws).isEmpty());
+        }
+
+        /**
+         * Wait until the new connections have got the state of the graph.
+         */
+        void awaitJoins() throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+
+            while (getJoiningConnectionCount() > 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(1);
+            }
+
+            Assert.assertEquals(0, getJoiningConnectionCount());
+        }
+    }
+
+    /**
+     * @return the type of the value of the last graph attribute added in
+     * uncompressed NetStream frames, or -1 if there is none
+     */
+    static int getGraphAttributeType(List<ByteBuffer> frames) {
+        int type = -1;
+
+        for (ByteBuffer frame : frames) {
+            ByteBuffer bb = frame.duplicate();
+
+            while (bb.remaining() >= 4) {
+                int start = bb.position();
+                int size = bb.getInt();
+
+                skipString(bb);
+
+                if ((bb.get() & 0xFF) == NetStreamConstants.EVENT_ADD_GRAPH_ATTR) {
+                    skipString(bb);
+                    readVarint(bb);
+                    skipString(bb);
+                    type = bb.get() & 0xFF;
+                }
+
+                bb.position(start + size);
+            }
+        }
+
+        return type;
+    }
+
+    /**
+     * @return the nodes added by uncompressed NetStream frames, in order
+     */
+    static List<String> getAddedNodes(List<ByteBuffer> frames) {
+        return getAddedNodes(frames, false);
+    }
+
+    /**
+     * @param sinceClear true to get only the nodes added since the last
+     *                   graph clear
+     * @return the nodes added by uncompressed NetStream frames, in order
+     */
+    static List<String> getAddedNodes(List<ByteBuffer> frames, boolean sinceClear) {
+        List<String> nodes = new ArrayList<String>();
+
+        synchronized (frames) {
+            for (ByteBuffer frame : frames) {
+                ByteBuffer bb = frame.duplicate();
+
+                while (bb.remaining() >= 4) {
+                    int start = bb.position();
+                    int size = bb.getInt();
+
+                    skipString(bb);
+
+                    int event = bb.get() & 0xFF;
+
+                    if (event == NetStreamConstants.EVENT_ADD_NODE) {
+                        skipString(bb);
+                        readVarint(bb);
+
+                        byte[] id = new byte[(int) readVarint(bb)];
+                        bb.get(id);
+                        nodes.add(new String(id, Charset.forName("UTF-8")));
+                    } else if (event == NetStreamConstants.EVENT_CLEARED && sinceClear) {
+                        nodes.clear();
+                    }
+
+                    bb.position(start + size);
+                }
+            }
+        }
+
+        return nodes;
+    }
+
+    static void skipString(ByteBuffer bb) {
+        int length = (int) readVarint(bb);
+        bb.position(bb.position() + length);
+    }
+
+    static long readVarint(ByteBuffer bb) {
+        long number = 0;
+
+        for (int shift = 0; ; shift += 7) {
+            byte b = bb.get();
+            number |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return number;
+            }
+        }
+    }
+
+    /**
+     * @return the text frames, decoded
+     */
+    static List<String> getTexts(List<ByteBuffer> frames) {
+        List<String> texts = new ArrayList<String>();
+
+        for (ByteBuffer frame : frames) {
+            ByteBuffer bb = frame.duplicate();
+            byte[] data = new byte[bb.remaining()];
+            bb.get(data);
+            texts.add(new String(data, Charset.forName("UTF-8")));
+        }
+
+        return texts;
+    }
+
+    static boolean contains(List<String> texts, String s) {
+        for (String text : texts) {
+            if (text.contains(s)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Test
+    public void testCodecEchoSuppression() throws Exception {
+        TestProxy proxy = new TestProxy();
+        proxy.addCodec(new WebSocketJSONCodec());
+        proxy.enableBatching(4096, 0);
+        proxy.enableInbound(null, 1);
+
+        Graph g = new DefaultGraph("g");
+        proxy.addSink(g);
+        g.addSink(proxy);
+
+        String subprotocol = new WebSocketJSONCodec().getSubprotocol();
+        TestWebSocketClientQueue.FakeWebSocket sender = proxy.connect(subprotocol);
+        TestWebSocketClientQueue.FakeWebSocket other = proxy.connect(subprotocol);
+        proxy.awaitJoins();
+
+        final List<ByteBuffer> sent = new ArrayList<ByteBuffer>();
+        NetStreamEncoder client = new NetStreamEncoder("client", new NetStreamTransport() {
+            @Override
+            public void send(ByteBuffer buffer) {
+                ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+                copy.put(buffer).flip();
+                sent.add(copy);
+            }
+        });
+
+        client.nodeAdded("client", 1, "remote");
+        proxy.receive(sender, sent.get(0));
+
+        long end = System.currentTimeMillis() + 5000;
+
+        while (g.getNode("remote") == null && System.currentTimeMillis() < end) {
+            proxy.pump();
+            Thread.sleep(1);
+        }
+
+        Assert.assertNotNull(g.getNode("remote"));
+
+        // a local event ends the batch of the client
+        g.addNode("local");
+        proxy.flush();
+        proxy.disableInbound();
+
+        List<String> senderTexts = getTexts(sender.frames);
+        List<String> otherTexts = getTexts(other.frames);
+
+        Assert.assertFalse(contains(senderTexts, "remote"));
+        Assert.assertTrue(contains(senderTexts, "local"));
+        Assert.assertTrue(contains(otherTexts, "remote"));
+        Assert.assertTrue(contains(otherTexts, "local"));
+    }
+
+    @Test
+    public void testNumericEncodingWithBatching() throws Exception {
+        TestProxy proxy = new TestProxy();
+        proxy.setNumericEncoding("x", 2, false);
+        proxy.enableBatching(1024, 0);
+
+        TestWebSocketClientQueue.FakeWebSocket ws = proxy.connect(null);
+        proxy.awaitJoins();
+
+        proxy.graphAttributeAdded("g", 1, "x", 1.25);
+        proxy.flush();
+
+        Assert.assertEquals(1, ws.frames.size());
+        Assert.assertEquals(NetStreamExtendedConstants.TYPE_QUANTIZED, getGraphAttributeType(ws.frames));
+
+        // the encoder is created again without batching
+        proxy.disableBatching();
+        proxy.graphAttributeAdded("g", 2, "x", 2.5);
+
+        Assert.assertEquals(2, ws.frames.size());
+        Assert.assertEquals(NetStreamExtendedConstants.TYPE_QUANTIZED, getGraphAttributeType(ws.frames));
+    }
+
+    @Test
+    public void testJoinExactlyOnce() throws Exception {
+        TestProxy proxy = new TestProxy();
+        proxy.enableMirror();
+
+        for (int i = 0; i < 100; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+        }
+
+        // the connection can not get the state yet
+        TestWebSocketClientQueue.FakeWebSocket ws = new TestWebSocketClientQueue.FakeWebSocket();
+        ws.stalled = true;
+        proxy.connect(null, ws);
+
+        // events before and after the state is taken
+        for (int i = 100; i < 200; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+
+            if (i == 150) {
+                Thread.sleep(50);
+            }
+        }
+
+        Assert.assertEquals(1, proxy.getJoiningConnectionCount());
+        Assert.assertTrue(ws.frames.isEmpty());
+
+        ws.stalled = false;
+        proxy.awaitJoins();
+
+        for (int i = 200; i < 210; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+        }
+
+        List<String> nodes = getAddedNodes(ws.frames);
+
+        Assert.assertEquals(210, nodes.size());
+
+        for (int i = 0; i < 210; i++) {
+            Assert.assertEquals("n" + i, nodes.get(i));
+        }
+    }
+
+    @Test
+    public void testJoinBufferOverflow() throws Exception {
+        TestProxy proxy = new TestProxy();
+        proxy.enableMirror();
+        proxy.setJoinFlowControl(1024, 4096);
+
+        // the state can not be given while the connection is stalled
+        for (int i = 0; i < 10; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+        }
+
+        TestWebSocketClientQueue.FakeWebSocket ws = new TestWebSocketClientQueue.FakeWebSocket();
+        ws.stalled = true;
+        proxy.connect(null, ws);
+
+        long end = System.currentTimeMillis() + 5000;
+
+        for (int i = 10; ws.closeCode < 0 && System.currentTimeMillis() < end; i++) {
+            proxy.nodeAdded("g", i + 1, "node-" + i);
+
+            if (i % 100 == 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        Assert.assertEquals(CloseFrame.POLICY_VALIDATION, ws.closeCode);
+        proxy.awaitJoins();
+        Assert.assertTrue(ws.frames.isEmpty());
+    }
+
+    @Test
+    public void testJoinFromReplayable() throws Exception {
+        DefaultGraph g = new DefaultGraph("g");
+        g.addNode("A");
+        g.addNode("B");
+
+        TestProxy proxy = new TestProxy(g);
+        g.addSink(proxy);
+
+        // done when the server starts
+        proxy.enableMirror();
+        g.addNode("C");
+
+        TestWebSocketClientQueue.FakeWebSocket ws = proxy.connect(null);
+        proxy.awaitJoins();
+
+        Assert.assertEquals(Arrays.asList("A", "B", "C"), getAddedNodes(ws.frames));
+    }
+
+    @Test
+    public void testSharedSnapshot() throws Exception {
+        TestProxy proxy = new TestProxy();
+        proxy.enableSnapshotCache();
+
+        for (int i = 0; i < 50; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+        }
+
+        TestWebSocketClientQueue.FakeWebSocket first = proxy.connect(null);
+        proxy.awaitJoins();
+
+        for (int i = 50; i < 60; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+        }
+
+        TestWebSocketClientQueue.FakeWebSocket second = proxy.connect(null);
+        proxy.awaitJoins();
+
+        proxy.nodeAdded("g", 61, "n60");
+
+        Assert.assertEquals(1, proxy.getSnapshotCache().getSnapshotCount());
+        Assert.assertEquals(1, proxy.getSnapshotCache().getHitCount());
+
+        for (TestWebSocketClientQueue.FakeWebSocket ws : Arrays.asList(first, second)) {
+            List<String> nodes = getAddedNodes(ws.frames);
+
+            Assert.assertEquals(61, nodes.size());
+
+            for (int i = 0; i < 61; i++) {
+                Assert.assertEquals("n" + i, nodes.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testResync() throws Exception {
+        TestProxy proxy = new TestProxy();
+        proxy.enableMirror();
+        proxy.enableBatching(128, 0);
+        proxy.enableOutboundQueues(2048, WebSocketClientQueue.OverflowPolicy.RESYNC, 1, TimeUnit.MILLISECONDS);
+
+        TestWebSocketClientQueue.FakeWebSocket ws = proxy.connect(null);
+        proxy.awaitJoins();
+
+        // the queue overflows while the client does not read
+        ws.stalled = true;
+
+        for (int i = 0; i < 300; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+        }
+
+        Assert.assertEquals(1, proxy.getOutboundQueue(ws).getResyncCount());
+        Assert.assertEquals(1, proxy.getJoiningConnectionCount());
+
+        ws.stalled = false;
+        proxy.awaitJoins();
+        proxy.awaitQueue(ws);
+
+        for (int i = 300; i < 310; i++) {
+            proxy.nodeAdded("g", i + 1, "n" + i);
+        }
+
+        proxy.flush();
+        proxy.awaitQueue(ws);
+
+        List<String> nodes = getAddedNodes(ws.frames, true);
+
+        Assert.assertEquals(310, nodes.size());
+
+        for (int i = 0; i < 310; i++) {
+            Assert.assertEquals("n" + i, nodes.get(i));
+        }
+
+        Assert.assertTrue(ws.isOpen());
+    }
+
+    @Test
+    public void testOutboundWatermarks() throws Exception {
+        TestProxy proxy = new TestProxy();
+        proxy.enableOutboundQueues(64 << 20, WebSocketClientQueue.OverflowPolicy.DISCONNECT, 1, TimeUnit.MILLISECONDS);
+
+        try {
+            TestWebSocketClientQueue.FakeWebSocket ws = proxy.connect(null);
+            proxy.awaitJoins();
+
+            // the queue is created by the first frame
+            proxy.nodeAdded("g", 1, "n0");
+            WebSocketClientQueue queue = proxy.getOutboundQueue(ws);
+
+            // the watermarks follow the capacity
+            Assert.assertEquals(16 << 20, queue.getLowWater());
+            Assert.assertEquals(48 << 20, queue.getHighWater());
+
+            proxy.enableOutboundQueues(1024, WebSocketClientQueue.OverflowPolicy.DISCONNECT, 1, TimeUnit.MILLISECONDS);
+            Assert.assertEquals(256, queue.getLowWater());
+            Assert.assertEquals(768, queue.getHighWater());
+
+            // until they are set
+            proxy.setOutboundWatermarks(100, 200);
+            proxy.enableOutboundQueues(64 << 20, WebSocketClientQueue.OverflowPolicy.DISCONNECT, 1, TimeUnit.MILLISECONDS);
+            Assert.assertEquals(100, queue.getLowWater());
+            Assert.assertEquals(200, queue.getHighWater());
+
+            proxy.enableOutboundQueues(150, WebSocketClientQueue.OverflowPolicy.DISCONNECT, 1, TimeUnit.MILLISECONDS);
+            Assert.assertEquals(100, queue.getLowWater());
+            Assert.assertEquals(150, queue.getHighWater());
+        } finally {
+            proxy.disableOutboundQueues();
+        }
+    }
+}
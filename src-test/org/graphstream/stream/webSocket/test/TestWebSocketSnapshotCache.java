@@ -0,0 +1,171 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket.test;
+
+import org.graphstream.stream.netstream.NetStreamCompressor;
+import org.graphstream.stream.webSocket.WebSocketFramePool;
+import org.graphstream.stream.webSocket.WebSocketSharedFrame;
+import org.graphstream.stream.webSocket.WebSocketSnapshotCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * @since 17/10/26.
+ */
+public class TestWebSocketSnapshotCache {
+    @Test
+    public void testSnapshotAndDelta() {
+        WebSocketFramePool pool = new WebSocketFramePool();
+        WebSocketSnapshotCache cache = new WebSocketSnapshotCache(1000);
+
+        WebSocketSharedFrame early = pool.frame(TestWebSocketClientQueue.frame(100, 0), false);
+        cache.record(early, null);
+
+        Assert.assertFalse(cache.isValid());
+        Assert.assertNull(cache.getFrames(null, pool));
+        Assert.assertEquals(1, early.getReferenceCount());
+
+        WebSocketSharedFrame s1 = pool.frame(TestWebSocketClientQueue.frame(600, 1), false);
+        WebSocketSharedFrame s2 = pool.frame(TestWebSocketClientQueue.frame(600, 2), false);
+        cache.setSnapshot(Arrays.asList(s1, s2));
+
+        Assert.assertTrue(cache.isValid());
+        Assert.assertEquals(1, cache.getSnapshotVersion());
+
+        WebSocketSharedFrame d1 = pool.frame(TestWebSocketClientQueue.frame(400, 3), false);
+        cache.record(d1, null);
+        d1.release();
+
+        WebSocketSharedFrame[] frames = cache.getFrames(null, pool);
+
+        Assert.assertArrayEquals(new WebSocketSharedFrame[]{s1, s2, d1}, frames);
+        Assert.assertEquals(2, d1.getReferenceCount());
+        Assert.assertEquals(1, cache.getDeltaFrameCount());
+        Assert.assertEquals(2, cache.getVersion());
+
+        for (WebSocketSharedFrame frame : frames) {
+            frame.release();
+        }
+
+        // the delta would be larger than the maximum
+        WebSocketSharedFrame d2 = pool.frame(TestWebSocketClientQueue.frame(700, 4), false);
+        cache.record(d2, null);
+        d2.release();
+
+        Assert.assertFalse(cache.isValid());
+        Assert.assertEquals(1, cache.getDroppedCount());
+        Assert.assertEquals(0, s1.getReferenceCount());
+        Assert.assertEquals(0, d1.getReferenceCount());
+        Assert.assertEquals(3, cache.getVersion());
+    }
+
+    @Test
+    public void testCompressedFrames() {
+        WebSocketFramePool pool = new WebSocketFramePool();
+        WebSocketSnapshotCache cache = new WebSocketSnapshotCache();
+        NetStreamCompressor compressor = new NetStreamCompressor(64, 6);
+
+        cache.setSnapshot(Arrays.asList(pool.frame(TestWebSocketClientQueue.frame(4000, 7), false)));
+
+        WebSocketSharedFrame[] first = cache.getFrames(compressor, pool);
+        WebSocketSharedFrame[] second = cache.getFrames(compressor, pool);
+
+        Assert.assertSame(first[0], second[0]);
+        Assert.assertTrue(first[0].getPayloadSize() < 4000);
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getSnapshotCount());
+
+        first[0].release();
+        second[0].release();
+        cache.invalidate();
+
+        Assert.assertEquals(0, first[0].getReferenceCount());
+    }
+
+    @Test
+    public void testPendingSnapshot() {
+        WebSocketFramePool pool = new WebSocketFramePool();
+        WebSocketSnapshotCache cache = new WebSocketSnapshotCache(1000);
+
+        long version = cache.startSnapshot();
+
+        Assert.assertTrue(cache.isPending());
+        Assert.assertFalse(cache.isValid());
+
+        // sent while the snapshot is encoded
+        WebSocketSharedFrame d1 = pool.frame(TestWebSocketClientQueue.frame(100, 1), false);
+        cache.record(d1, null);
+        d1.release();
+
+        WebSocketSharedFrame s1 = pool.frame(TestWebSocketClientQueue.frame(600, 2), false);
+
+        Assert.assertTrue(cache.completeSnapshot(version, Arrays.asList(s1)));
+        Assert.assertFalse(cache.isPending());
+        Assert.assertEquals(0, cache.getSnapshotVersion());
+        Assert.assertEquals(1, cache.getDeltaFrameCount());
+
+        WebSocketSharedFrame[] frames = cache.getFrames(null, pool);
+
+        Assert.assertArrayEquals(new WebSocketSharedFrame[]{s1, d1}, frames);
+
+        for (WebSocketSharedFrame frame : frames) {
+            frame.release();
+        }
+
+        // dropped while encoded
+        version = cache.startSnapshot();
+
+        Assert.assertEquals(0, s1.getReferenceCount());
+
+        cache.invalidate();
+
+        WebSocketSharedFrame s2 = pool.frame(TestWebSocketClientQueue.frame(600, 3), false);
+
+        Assert.assertFalse(cache.completeSnapshot(version, Arrays.asList(s2)));
+        Assert.assertEquals(0, s2.getReferenceCount());
+        Assert.assertFalse(cache.isValid());
+
+        // started again meanwhile
+        version = cache.startSnapshot();
+        cache.record(pool.frame(TestWebSocketClientQueue.frame(100, 4), false), null);
+        long next = cache.startSnapshot();
+
+        WebSocketSharedFrame s3 = pool.frame(TestWebSocketClientQueue.frame(600, 5), false);
+
+        Assert.assertFalse(cache.completeSnapshot(version, Arrays.asList(s3)));
+        Assert.assertTrue(cache.isPending());
+        Assert.assertTrue(cache.completeSnapshot(next, Arrays.asList(pool.frame(TestWebSocketClientQueue.frame(600, 6), false))));
+        Assert.assertEquals(2, cache.getSnapshotCount());
+    }
+}
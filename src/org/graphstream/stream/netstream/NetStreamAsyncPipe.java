@@ -0,0 +1,747 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import org.graphstream.stream.Pipe;
+import org.graphstream.stream.SourceBase;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pipe handing events over to a dedicated thread, which gives them to the sinks
+ * of the pipe, usually an encoder.
+ * <p>
+ * Events are written in the preallocated records of a bounded ring buffer
+ * shared with the thread, without lock nor allocation. The pipe must be fed by
+ * a single thread, like any sink. Values are given to the sinks as they are, so
+ * they must not be modified once sent. When the ring is full, the producer
+ * follows the {@link OverflowPolicy} of the pipe.
+ * <p>
+ * A single thread drains the ring, so that the sinks get the events in order.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamAsyncPipe extends SourceBase implements Pipe, NetStreamBulkSink {
+    private static final Logger LOGGER = Logger.getLogger(NetStreamAsyncPipe.class.getName());
+
+    /**
+     * Default number of records of the ring.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    /**
+     * What the producer does when the ring is full.
+     */
+    public static enum OverflowPolicy {
+        /**
+         * Wait until there is room.
+         */
+        BLOCK,
+        /**
+         * Drop attribute changes, wait for other events.
+         */
+        DROP,
+        /**
+         * Wait up to the maximum wait time, then behave as {@link #DROP}.
+         */
+        WAIT
+    }
+
+    protected static final int NODE_ADDED = 0;
+    protected static final int NODE_REMOVED = 1;
+    protected static final int EDGE_ADDED = 2;
+    protected static final int EDGE_REMOVED = 3;
+    protected static final int GRAPH_CLEARED = 4;
+    protected static final int STEP_BEGINS = 5;
+    protected static final int GRAPH_ATTR_ADDED = 6;
+    protected static final int GRAPH_ATTR_CHANGED = 7;
+    protected static final int GRAPH_ATTR_REMOVED = 8;
+    protected static final int NODE_ATTR_ADDED = 9;
+    protected static final int NODE_ATTR_CHANGED = 10;
+    protected static final int NODE_ATTR_REMOVED = 11;
+    protected static final int EDGE_ATTR_ADDED = 12;
+    protected static final int EDGE_ATTR_CHANGED = 13;
+    protected static final int EDGE_ATTR_REMOVED = 14;
+    protected static final int BULK_NODE_DOUBLE = 15;
+    protected static final int BULK_NODE_FLOAT = 16;
+    protected static final int BULK_EDGE_DOUBLE = 17;
+    protected static final int BULK_EDGE_FLOAT = 18;
+    protected static final int TASK = 19;
+    protected static final int STOP = 20;
+
+    /**
+     * A record of the ring.
+     */
+    protected static class Event {
+        int type;
+        String sourceId;
+        long timeId;
+        String elementId;
+        String attribute;
+        String fromNodeId;
+        String toNodeId;
+        boolean directed;
+        double step;
+        Object oldValue;
+        Object newValue;
+        Runnable task;
+
+        String[] ids = new String[0];
+        double[] doubles = new double[0];
+        float[] floats = new float[0];
+        int count;
+        int width;
+    }
+
+    protected final Event[] ring;
+    protected final int mask;
+
+    /**
+     * Sequence of the next record to write, written by the producer only.
+     */
+    protected final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Sequence of the next record to read, written by the consumer only.
+     */
+    protected final AtomicLong head = new AtomicLong();
+
+    /**
+     * Last value of {@link #head} seen by the producer.
+     */
+    protected long cachedHead;
+
+    protected volatile boolean consumerWaiting;
+    protected final Thread consumer;
+
+    protected OverflowPolicy policy = OverflowPolicy.BLOCK;
+    protected long maxWait;
+
+    protected final ArrayList<NetStreamBulkSink> bulkSinks = new ArrayList<NetStreamBulkSink>();
+
+    protected volatile long droppedEvents;
+    protected volatile long blockedTime;
+
+    public NetStreamAsyncPipe() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of records of the ring, rounded up to a power of two
+     */
+    public NetStreamAsyncPipe(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+        ring = new Event[size];
+        mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Event();
+        }
+
+        consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "netstream-async");
+
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * @param policy  what to do when the ring is full
+     * @param maxWait for {@link OverflowPolicy#WAIT}, the maximum time to wait
+     * @param unit    unit of `maxWait`
+     */
+    public void setOverflowPolicy(OverflowPolicy policy, long maxWait, TimeUnit unit) {
+        this.policy = policy;
+        this.maxWait = unit.toNanos(maxWait);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return the number of events waiting in the ring
+     */
+    public int getPendingEventCount() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return the number of attribute changes dropped because the ring was full
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents;
+    }
+
+    /**
+     * @return the time the producer has waited for room in the ring, in
+     * nanoseconds
+     */
+    public long getBlockedTime() {
+        return blockedTime;
+    }
+
+    public void addBulkSink(NetStreamBulkSink sink) {
+        bulkSinks.add(sink);
+    }
+
+    public void removeBulkSink(NetStreamBulkSink sink) {
+        bulkSinks.remove(sink);
+    }
+
+    public void clearBulkSinks() {
+        bulkSinks.clear();
+    }
+
+    /**
+     * Run a task on the thread of the pipe, once the events sent before have
+     * been given to the sinks.
+     *
+     * @param task the task
+     */
+    public void execute(Runnable task) {
+        Event e = claim(false);
+        e.type = TASK;
+        e.task = task;
+        publish();
+    }
+
+    /**
+     * Wait until the events sent before have been given to the sinks.
+     */
+    public void drain() {
+        long target = tail.get();
+
+        while (head.get() < target && consumer.isAlive()) {
+            LockSupport.parkNanos(10000);
+        }
+    }
+
+    /**
+     * Give the pending events to the sinks, then stop the thread of the pipe.
+     */
+    public void close() {
+        Event e = claim(false);
+        e.type = STOP;
+        publish();
+
+        try {
+            consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get the next record to write, waiting for room if needed.
+     *
+     * @param droppable true if the event can be dropped when the ring is full
+     * @return the record, or null if the event is dropped
+     */
+    protected Event claim(boolean droppable) {
+        long t = tail.get();
+
+        if (t - cachedHead >= ring.length) {
+            cachedHead = head.get();
+
+            if (t - cachedHead >= ring.length && !waitForRoom(t, droppable)) {
+                droppedEvents++;
+                return null;
+            }
+        }
+
+        return ring[(int) t & mask];
+    }
+
+    private boolean waitForRoom(long t, boolean droppable) {
+        if (droppable && policy == OverflowPolicy.DROP) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        boolean canDrop = droppable && policy == OverflowPolicy.WAIT;
+
+        try {
+            while (t - cachedHead >= ring.length) {
+                if (!consumer.isAlive()) {
+                    throw new IllegalStateException("pipe closed");
+                }
+
+                if (canDrop && System.nanoTime() - start > maxWait) {
+                    return false;
+                }
+
+                LockSupport.parkNanos(10000);
+                cachedHead = head.get();
+            }
+        } finally {
+            blockedTime += System.nanoTime() - start;
+        }
+
+        return true;
+    }
+
+    protected void publish() {
+        tail.lazySet(tail.get() + 1);
+
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    protected void consume() {
+        while (true) {
+            long h = head.get();
+
+            if (h == tail.get()) {
+                consumerWaiting = true;
+
+                if (h == tail.get()) {
+                    LockSupport.parkNanos(1000000);
+                }
+
+                consumerWaiting = false;
+                continue;
+            }
+
+            Event e = ring[(int) h & mask];
+            boolean stop = e.type == STOP;
+
+            try {
+                if (!stop) {
+                    dispatch(e);
+                }
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "error while sending an event", ex);
+            }
+
+            e.sourceId = e.elementId = e.attribute = e.fromNodeId = e.toNodeId = null;
+            e.oldValue = e.newValue = null;
+            e.task = null;
+
+            head.lazySet(h + 1);
+
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    protected void dispatch(Event e) {
+        switch (e.type) {
+            case NODE_ADDED:
+                sendNodeAdded(e.sourceId, e.timeId, e.elementId);
+                break;
+            case NODE_REMOVED:
+                sendNodeRemoved(e.sourceId, e.timeId, e.elementId);
+                break;
+            case EDGE_ADDED:
+                sendEdgeAdded(e.sourceId, e.timeId, e.elementId, e.fromNodeId, e.toNodeId, e.directed);
+                break;
+            case EDGE_REMOVED:
+                sendEdgeRemoved(e.sourceId, e.timeId, e.elementId);
+                break;
+            case GRAPH_CLEARED:
+                sendGraphCleared(e.sourceId, e.timeId);
+                break;
+            case STEP_BEGINS:
+                sendStepBegins(e.sourceId, e.timeId, e.step);
+                break;
+            case GRAPH_ATTR_ADDED:
+                sendGraphAttributeAdded(e.sourceId, e.timeId, e.attribute, e.newValue);
+                break;
+            case GRAPH_ATTR_CHANGED:
+                sendGraphAttributeChanged(e.sourceId, e.timeId, e.attribute, e.oldValue, e.newValue);
+                break;
+            case GRAPH_ATTR_REMOVED:
+                sendGraphAttributeRemoved(e.sourceId, e.timeId, e.attribute);
+                break;
+            case NODE_ATTR_ADDED:
+                sendNodeAttributeAdded(e.sourceId, e.timeId, e.elementId, e.attribute, e.newValue);
+                break;
+            case NODE_ATTR_CHANGED:
+                sendNodeAttributeChanged(e.sourceId, e.timeId, e.elementId, e.attribute, e.oldValue, e.newValue);
+                break;
+            case NODE_ATTR_REMOVED:
+                sendNodeAttributeRemoved(e.sourceId, e.timeId, e.elementId, e.attribute);
+                break;
+            case EDGE_ATTR_ADDED:
+                sendEdgeAttributeAdded(e.sourceId, e.timeId, e.elementId, e.attribute, e.newValue);
+                break;
+            case EDGE_ATTR_CHANGED:
+                sendEdgeAttributeChanged(e.sourceId, e.timeId, e.elementId, e.attribute, e.oldValue, e.newValue);
+                break;
+            case EDGE_ATTR_REMOVED:
+                sendEdgeAttributeRemoved(e.sourceId, e.timeId, e.elementId, e.attribute);
+                break;
+            case BULK_NODE_DOUBLE:
+                for (int i = 0; i < bulkSinks.size(); i++) {
+                    bulkSinks.get(i).nodeAttributesChanged(e.sourceId, e.timeId, e.attribute, e.ids, e.count, e.doubles, e.width);
+                }
+                break;
+            case BULK_NODE_FLOAT:
+                for (int i = 0; i < bulkSinks.size(); i++) {
+                    bulkSinks.get(i).nodeAttributesChanged(e.sourceId, e.timeId, e.attribute, e.ids, e.count, e.floats, e.width);
+                }
+                break;
+            case BULK_EDGE_DOUBLE:
+                for (int i = 0; i < bulkSinks.size(); i++) {
+                    bulkSinks.get(i).edgeAttributesChanged(e.sourceId, e.timeId, e.attribute, e.ids, e.count, e.doubles, e.width);
+                }
+                break;
+            case BULK_EDGE_FLOAT:
+                for (int i = 0; i < bulkSinks.size(); i++) {
+                    bulkSinks.get(i).edgeAttributesChanged(e.sourceId, e.timeId, e.attribute, e.ids, e.count, e.floats, e.width);
+                }
+                break;
+            case TASK:
+                e.task.run();
+                break;
+        }
+    }
+
+    protected void putElementEvent(int type, String sourceId, long timeId, String elementId) {
+        Event e = claim(false);
+        e.type = type;
+        e.sourceId = sourceId;
+        e.timeId = timeId;
+        e.elementId = elementId;
+        publish();
+    }
+
+    protected void putAttributeEvent(int type, boolean droppable, String sourceId, long timeId, String elementId,
+                                     String attribute, Object oldValue, Object newValue) {
+        Event e = claim(droppable);
+
+        if (e == null) {
+            return;
+        }
+
+        e.type = type;
+        e.sourceId = sourceId;
+        e.timeId = timeId;
+        e.elementId = elementId;
+        e.attribute = attribute;
+        e.oldValue = oldValue;
+        e.newValue = newValue;
+        publish();
+    }
+
+    protected Event putBulkEvent(int type, String sourceId, long timeId, String attribute, String[] ids, int count,
+                                 int width) {
+        Event e = claim(true);
+
+        if (e == null) {
+            return null;
+        }
+
+        if (e.ids.length < count) {
+            e.ids = new String[count];
+        }
+
+        System.arraycopy(ids, 0, e.ids, 0, count);
+
+        e.type = type;
+        e.sourceId = sourceId;
+        e.timeId = timeId;
+        e.attribute = attribute;
+        e.count = count;
+        e.width = width;
+
+        return e;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang.String
+     * , long, java.lang.String, java.lang.Object)
+     */
+    public void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
+        putAttributeEvent(GRAPH_ATTR_ADDED, false, sourceId, timeId, null, attribute, null, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang.
+     * String, long, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    public void graphAttributeChanged(String sourceId, long timeId, String attribute, Object oldValue,
+                                      Object newValue) {
+        putAttributeEvent(GRAPH_ATTR_CHANGED, true, sourceId, timeId, null, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang.
+     * String, long, java.lang.String)
+     */
+    public void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
+        putAttributeEvent(GRAPH_ATTR_REMOVED, false, sourceId, timeId, null, attribute, null, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
+        putAttributeEvent(NODE_ATTR_ADDED, false, sourceId, timeId, nodeId, attribute, null, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang.String
+     * , long, java.lang.String, java.lang.String, java.lang.Object,
+     * java.lang.Object)
+     */
+    public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute,
+                                     Object oldValue, Object newValue) {
+        putAttributeEvent(NODE_ATTR_CHANGED, true, sourceId, timeId, nodeId, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang.String
+     * , long, java.lang.String, java.lang.String)
+     */
+    public void nodeAttributeRemoved(String sourceId, long timeId, String nodeId, String attribute) {
+        putAttributeEvent(NODE_ATTR_REMOVED, false, sourceId, timeId, nodeId, attribute, null, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    public void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute, Object value) {
+        putAttributeEvent(EDGE_ATTR_ADDED, false, sourceId, timeId, edgeId, attribute, null, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang.String
+     * , long, java.lang.String, java.lang.String, java.lang.Object,
+     * java.lang.Object)
+     */
+    public void edgeAttributeChanged(String sourceId, long timeId, String edgeId, String attribute,
+                                     Object oldValue, Object newValue) {
+        putAttributeEvent(EDGE_ATTR_CHANGED, true, sourceId, timeId, edgeId, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang.String
+     * , long, java.lang.String, java.lang.String)
+     */
+    public void edgeAttributeRemoved(String sourceId, long timeId, String edgeId, String attribute) {
+        putAttributeEvent(EDGE_ATTR_REMOVED, false, sourceId, timeId, edgeId, attribute, null, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long,
+     * java.lang.String)
+     */
+    public void nodeAdded(String sourceId, long timeId, String nodeId) {
+        putElementEvent(NODE_ADDED, sourceId, timeId, nodeId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+     * long, java.lang.String)
+     */
+    public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+        putElementEvent(NODE_REMOVED, sourceId, timeId, nodeId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String, long,
+     * java.lang.String, java.lang.String, java.lang.String, boolean)
+     */
+    public void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId, String toNodeId,
+                          boolean directed) {
+        Event e = claim(false);
+        e.type = EDGE_ADDED;
+        e.sourceId = sourceId;
+        e.timeId = timeId;
+        e.elementId = edgeId;
+        e.fromNodeId = fromNodeId;
+        e.toNodeId = toNodeId;
+        e.directed = directed;
+        publish();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String,
+     * long, java.lang.String)
+     */
+    public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+        putElementEvent(EDGE_REMOVED, sourceId, timeId, edgeId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+     * long)
+     */
+    public void graphCleared(String sourceId, long timeId) {
+        putElementEvent(GRAPH_CLEARED, sourceId, timeId, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
+     * long, double)
+     */
+    public void stepBegins(String sourceId, long timeId, double step) {
+        Event e = claim(false);
+        e.type = STEP_BEGINS;
+        e.sourceId = sourceId;
+        e.timeId = timeId;
+        e.step = step;
+        publish();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, double[], int)
+     */
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count,
+                                      double[] values, int width) {
+        putBulkDoubles(BULK_NODE_DOUBLE, sourceId, timeId, attribute, nodeIds, count, values, width);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, float[], int)
+     */
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count,
+                                      float[] values, int width) {
+        putBulkFloats(BULK_NODE_FLOAT, sourceId, timeId, attribute, nodeIds, count, values, width);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, double[], int)
+     */
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count,
+                                      double[] values, int width) {
+        putBulkDoubles(BULK_EDGE_DOUBLE, sourceId, timeId, attribute, edgeIds, count, values, width);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, float[], int)
+     */
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count,
+                                      float[] values, int width) {
+        putBulkFloats(BULK_EDGE_FLOAT, sourceId, timeId, attribute, edgeIds, count, values, width);
+    }
+
+    private void putBulkDoubles(int type, String sourceId, long timeId, String attribute, String[] ids, int count,
+                                double[] values, int width) {
+        Event e = putBulkEvent(type, sourceId, timeId, attribute, ids, count, width);
+
+        if (e != null) {
+            if (e.doubles.length < count * width) {
+                e.doubles = new double[count * width];
+            }
+
+            // values are copied since bulk arrays are usually reused by the caller
+            System.arraycopy(values, 0, e.doubles, 0, count * width);
+            publish();
+        }
+    }
+
+    private void putBulkFloats(int type, String sourceId, long timeId, String attribute, String[] ids, int count,
+                               float[] values, int width) {
+        Event e = putBulkEvent(type, sourceId, timeId, attribute, ids, count, width);
+
+        if (e != null) {
+            if (e.floats.length < count * width) {
+                e.floats = new float[count * width];
+            }
+
+            System.arraycopy(values, 0, e.floats, 0, count * width);
+            publish();
+        }
+    }
+}
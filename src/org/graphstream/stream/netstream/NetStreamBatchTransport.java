@@ -0,0 +1,159 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport packing many NetStream messages in one buffer before giving it to
+ * another transport.
+ * <p>
+ * Messages already start with their size, so a batch is just the concatenation
+ * of complete messages and can be split back with
+ * {@link NetStreamDecoder2#decodeFrame(ByteBuffer)}. A batch is sent when the
+ * next message does not fit in, when the oldest message of the batch has waited
+ * for the maximum delay, or when {@link #flush()} is called.
+ * <p>
+ * The buffer given to the underlying transport is reused for the next batch,
+ * so this transport must consume it before returning.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamBatchTransport implements NetStreamTransport {
+    /**
+     * Default maximum size of a batch, in bytes.
+     */
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    /**
+     * Default maximum delay before a message is sent, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_DELAY = 20;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "netstream-batch-flusher");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    protected final NetStreamTransport transport;
+    protected final ByteBuffer batch;
+    protected final long maxDelay;
+
+    protected int messageCount;
+    protected ScheduledFuture<?> pendingFlush;
+
+    protected final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public NetStreamBatchTransport(NetStreamTransport transport) {
+        this(transport, DEFAULT_MAX_BYTES, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param transport the transport receiving the batches
+     * @param maxBytes  maximum size of a batch
+     * @param maxDelay  maximum time in milliseconds a message waits before being
+     *                  sent, or 0 to send batches only when full or flushed
+     */
+    public NetStreamBatchTransport(NetStreamTransport transport, int maxBytes, long maxDelay) {
+        this.transport = transport;
+        this.batch = ByteBuffer.allocate(maxBytes);
+        this.maxDelay = maxDelay;
+        this.messageCount = 0;
+    }
+
+    public int getMaxBytes() {
+        return batch.capacity();
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamTransport#send(java.nio.ByteBuffer)
+     */
+    @Override
+    public synchronized void send(ByteBuffer buffer) {
+        if (buffer.remaining() > batch.remaining()) {
+            flush();
+        }
+
+        if (buffer.remaining() > batch.remaining()) {
+            // bigger than a batch, it goes alone
+            transport.send(buffer);
+            return;
+        }
+
+        batch.put(buffer);
+        messageCount++;
+
+        if (messageCount == 1 && maxDelay > 0) {
+            pendingFlush = SCHEDULER.schedule(flushTask, maxDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send the pending messages, if any.
+     */
+    public synchronized void flush() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+
+        if (messageCount == 0) {
+            return;
+        }
+
+        batch.flip();
+        transport.send(batch);
+
+        batch.clear();
+        messageCount = 0;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+/**
+ * Sink receiving the change of one attribute on many elements at once, with
+ * values packed in one array.
+ * <p>
+ * The value of the i-th element is made of the `width` components starting at
+ * `values[i * width]`. Its change has the time id `timeId + i`. Arrays may be
+ * reused by the caller once the method returns.
+ *
+ * @see NetStreamExtendedConstants#EVENT_BULK_NODE_ATTR
+ * @since 17/10/26.
+ */
+public interface NetStreamBulkSink {
+    void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count,
+                               double[] values, int width);
+
+    void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count,
+                               float[] values, int width);
+
+    void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count,
+                               double[] values, int width);
+
+    void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count,
+                               float[] values, int width);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoding and decoding of the values of one type.
+ *
+ * @see NetStreamCodecRegistry
+ * @since 17/10/26.
+ */
+public interface NetStreamCodec {
+    /**
+     * @return the type byte written before the values
+     */
+    int getType();
+
+    /**
+     * @param value the value
+     * @return the size of the encoded value without its type byte, or -1 if the
+     * value can not be encoded
+     */
+    int getSize(Object value);
+
+    /**
+     * Write a value without its type byte. The buffer has at least
+     * {@link #getSize(Object)} bytes remaining.
+     *
+     * @param buffer the destination buffer
+     * @param value  the value
+     */
+    void put(ByteBuffer buffer, Object value);
+
+    /**
+     * Read a value, its type byte being already read.
+     *
+     * @param buffer the source buffer
+     * @return the value
+     */
+    Object get(ByteBuffer buffer);
+}
@@ -0,0 +1,793 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import static org.graphstream.stream.netstream.NetStreamUtils.*;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Codecs of the attribute values, by class for encoding and by type byte for
+ * decoding.
+ * <p>
+ * The type of a class is computed once and cached, and codecs are found in a
+ * table indexed by the type byte. Applications can register codecs for their
+ * own attribute classes, with type bytes from
+ * {@link NetStreamExtendedConstants#TYPE_CUSTOM_FIRST} to 0xFF. Codecs should
+ * be registered before values of their class are encoded.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamCodecRegistry {
+    /**
+     * Type of arrays whose type is given by their first item.
+     */
+    private static final int TYPE_BY_FIRST_ITEM = -1;
+
+    /**
+     * Results of {@link #checkValue(ByteBuffer, int)}.
+     */
+    public static final int VALUE_COMPLETE = 0;
+    public static final int VALUE_UNCHECKED = 1;
+    public static final int VALUE_TRUNCATED = 2;
+    public static final int VALUE_UNKNOWN_TYPE = 3;
+
+    /**
+     * Layouts of the builtin types on the wire, by type byte.
+     */
+    private static final int LAYOUT_NONE = 0;
+    private static final int LAYOUT_EMPTY = 1;
+    private static final int LAYOUT_FIXED_1 = 2;
+    private static final int LAYOUT_FIXED_4 = 3;
+    private static final int LAYOUT_FIXED_8 = 4;
+    private static final int LAYOUT_VARINT = 5;
+    private static final int LAYOUT_BYTES = 6;
+    private static final int LAYOUT_VARINTS = 7;
+    private static final int LAYOUT_FIXED_4_ARRAY = 8;
+    private static final int LAYOUT_FIXED_8_ARRAY = 9;
+    private static final int LAYOUT_TYPED_ARRAY = 10;
+
+    private static final byte[] layouts = new byte[256];
+
+    /**
+     * Maximum nesting of arrays of typed values.
+     */
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * Codecs by type byte, replaced as a whole when a codec is registered.
+     */
+    private static volatile NetStreamCodec[] codecs;
+
+    private static final HashMap<Class<?>, NetStreamCodec> customCodecs = new HashMap<Class<?>, NetStreamCodec>();
+
+    private static final ClassValue<Integer> types = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return computeType(type);
+        }
+    };
+
+    static {
+        NetStreamCodec[] builtins = new NetStreamCodec[256];
+
+        for (NetStreamCodec codec : createBuiltinCodecs()) {
+            builtins[codec.getType()] = codec;
+        }
+
+        codecs = builtins;
+
+        layouts[NetStreamConstants.TYPE_NULL] = LAYOUT_EMPTY;
+        layouts[NetStreamConstants.TYPE_BOOLEAN] = LAYOUT_FIXED_1;
+        layouts[NetStreamConstants.TYPE_BYTE] = LAYOUT_FIXED_1;
+        layouts[NetStreamConstants.TYPE_SHORT] = LAYOUT_VARINT;
+        layouts[NetStreamConstants.TYPE_INT] = LAYOUT_VARINT;
+        layouts[NetStreamConstants.TYPE_LONG] = LAYOUT_VARINT;
+        layouts[NetStreamConstants.TYPE_FLOAT] = LAYOUT_FIXED_4;
+        layouts[NetStreamConstants.TYPE_DOUBLE] = LAYOUT_FIXED_8;
+        layouts[NetStreamConstants.TYPE_STRING] = LAYOUT_BYTES;
+        layouts[NetStreamConstants.TYPE_BOOLEAN_ARRAY] = LAYOUT_BYTES;
+        layouts[NetStreamConstants.TYPE_BYTE_ARRAY] = LAYOUT_BYTES;
+        layouts[NetStreamConstants.TYPE_SHORT_ARRAY] = LAYOUT_VARINTS;
+        layouts[NetStreamConstants.TYPE_INT_ARRAY] = LAYOUT_VARINTS;
+        layouts[NetStreamConstants.TYPE_LONG_ARRAY] = LAYOUT_VARINTS;
+        layouts[NetStreamConstants.TYPE_FLOAT_ARRAY] = LAYOUT_FIXED_4_ARRAY;
+        layouts[NetStreamConstants.TYPE_DOUBLE_ARRAY] = LAYOUT_FIXED_8_ARRAY;
+        layouts[NetStreamConstants.TYPE_ARRAY] = LAYOUT_TYPED_ARRAY;
+    }
+
+    /**
+     * Register the codec of an application class.
+     *
+     * @param valueClass the class of the values, subclasses included
+     * @param codec      the codec
+     * @throws IllegalArgumentException if the type of the codec is out of the
+     *                                  custom range or already used by another class
+     */
+    public static synchronized void register(Class<?> valueClass, NetStreamCodec codec) {
+        int type = codec.getType();
+
+        if (type < NetStreamExtendedConstants.TYPE_CUSTOM_FIRST || type > 0xFF) {
+            throw new IllegalArgumentException(String.format("type 0x%X out of the custom range", type));
+        }
+
+        NetStreamCodec previous = codecs[type];
+
+        if (previous != null && previous != customCodecs.get(valueClass)) {
+            throw new IllegalArgumentException(String.format("type 0x%X already used", type));
+        }
+
+        NetStreamCodec[] copy = codecs.clone();
+        copy[type] = codec;
+
+        customCodecs.put(valueClass, codec);
+        codecs = copy;
+        types.remove(valueClass);
+    }
+
+    public static synchronized void unregister(Class<?> valueClass) {
+        NetStreamCodec codec = customCodecs.remove(valueClass);
+
+        if (codec != null) {
+            NetStreamCodec[] copy = codecs.clone();
+            copy[codec.getType()] = null;
+
+            codecs = copy;
+            types.remove(valueClass);
+        }
+    }
+
+    /**
+     * @param valueType a type byte
+     * @return the codec of the type, or null if there is none
+     */
+    public static NetStreamCodec getCodec(int valueType) {
+        return codecs[valueType & 0xFF];
+    }
+
+    /**
+     * @param value a value
+     * @return the type of the value, {@link NetStreamConstants#TYPE_UNKNOWN} if
+     * it can not be encoded
+     */
+    public static int getType(Object value) {
+        if (value == null) {
+            return NetStreamConstants.TYPE_NULL;
+        }
+
+        int type = types.get(value.getClass());
+
+        if (type == TYPE_BY_FIRST_ITEM) {
+            Object[] array = (Object[]) value;
+
+            if (array.length == 0 || array[0] == null) {
+                return NetStreamConstants.TYPE_UNKNOWN;
+            }
+
+            int itemType = types.get(array[0].getClass());
+            return itemType < 0 ? NetStreamConstants.TYPE_UNKNOWN : getArrayType(itemType);
+        }
+
+        return type;
+    }
+
+    /**
+     * Decode a value, its type byte being already read.
+     *
+     * @param bb              the buffer
+     * @param valueType       the type of the value
+     * @param primitiveArrays true to decode arrays of numbers and booleans as
+     *                        arrays of primitive values
+     * @return the value, or null if the type is unknown
+     */
+    public static Object decode(ByteBuffer bb, int valueType, boolean primitiveArrays) {
+        NetStreamCodec codec = codecs[valueType & 0xFF];
+
+        if (codec == null) {
+            return null;
+        }
+
+        if (primitiveArrays && codec instanceof ArrayCodec) {
+            return ((ArrayCodec) codec).getPrimitive(bb);
+        }
+
+        return codec.get(bb);
+    }
+
+    /**
+     * Check, without moving the position of the buffer, that a value of the
+     * given type starts there and ends before the limit, so that decoding it
+     * can not fail. Values of custom codecs, or arrays holding some, can not be
+     * checked.
+     *
+     * @param bb        the buffer
+     * @param valueType the type of the value
+     * @return {@link #VALUE_COMPLETE}, {@link #VALUE_UNCHECKED},
+     * {@link #VALUE_TRUNCATED} or {@link #VALUE_UNKNOWN_TYPE}
+     */
+    public static int checkValue(ByteBuffer bb, int valueType) {
+        int end = getValueEnd(bb, bb.position(), valueType & 0xFF, 0);
+        return end >= 0 ? VALUE_COMPLETE : -end;
+    }
+
+    /**
+     * Move the position of the buffer after a value of the given type, without
+     * decoding it. Values which can not be checked are not skipped.
+     *
+     * @param bb        the buffer
+     * @param valueType the type of the value
+     * @return {@link #VALUE_COMPLETE} if the value has been skipped, or the
+     * result of {@link #checkValue(ByteBuffer, int)}, the position being then
+     * unchanged
+     */
+    public static int skipValue(ByteBuffer bb, int valueType) {
+        int end = getValueEnd(bb, bb.position(), valueType & 0xFF, 0);
+
+        if (end < 0) {
+            return -end;
+        }
+
+        bb.position(end);
+        return VALUE_COMPLETE;
+    }
+
+    /**
+     * @return the position following the value, or the opposite of the result
+     * of {@link #checkValue(ByteBuffer, int)}
+     */
+    private static int getValueEnd(ByteBuffer bb, int pos, int type, int depth) {
+        int limit = bb.limit();
+        int layout = layouts[type];
+
+        switch (layout) {
+            case LAYOUT_NONE:
+                return codecs[type] == null ? -VALUE_UNKNOWN_TYPE : -VALUE_UNCHECKED;
+            case LAYOUT_EMPTY:
+                return pos;
+            case LAYOUT_FIXED_1:
+                return limit - pos >= 1 ? pos + 1 : -VALUE_TRUNCATED;
+            case LAYOUT_FIXED_4:
+                return limit - pos >= 4 ? pos + 4 : -VALUE_TRUNCATED;
+            case LAYOUT_FIXED_8:
+                return limit - pos >= 8 ? pos + 8 : -VALUE_TRUNCATED;
+            case LAYOUT_VARINT:
+                return getVarintEnd(bb, pos, limit);
+        }
+
+        // the other layouts start with a length, and each item takes at least one byte
+        int start = getVarintEnd(bb, pos, limit);
+
+        if (start < 0) {
+            return start;
+        }
+
+        long length = getVarint(bb, pos);
+
+        if (length < 0 || length > limit - start) {
+            return -VALUE_TRUNCATED;
+        }
+
+        int n = (int) length;
+
+        switch (layout) {
+            case LAYOUT_BYTES:
+                return start + n;
+            case LAYOUT_FIXED_4_ARRAY:
+                return 4L * n <= limit - start ? start + 4 * n : -VALUE_TRUNCATED;
+            case LAYOUT_FIXED_8_ARRAY:
+                return 8L * n <= limit - start ? start + 8 * n : -VALUE_TRUNCATED;
+            case LAYOUT_VARINTS:
+                for (int i = 0; i < n && start >= 0; i++) {
+                    start = getVarintEnd(bb, start, limit);
+                }
+
+                return start;
+            default:
+                if (depth >= MAX_DEPTH) {
+                    return -VALUE_TRUNCATED;
+                }
+
+                for (int i = 0; i < n && start >= 0; i++) {
+                    if (start >= limit) {
+                        return -VALUE_TRUNCATED;
+                    }
+
+                    start = getValueEnd(bb, start + 1, bb.get(start) & 0xFF, depth + 1);
+                }
+
+                return start;
+        }
+    }
+
+    private static int getVarintEnd(ByteBuffer bb, int pos, int limit) {
+        int end = Math.min(limit, pos + 10);
+
+        for (int i = pos; i < end; i++) {
+            if (bb.get(i) >= 0) {
+                return i + 1;
+            }
+        }
+
+        return -VALUE_TRUNCATED;
+    }
+
+    private static long getVarint(ByteBuffer bb, int pos) {
+        long number = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = bb.get(pos++);
+            number |= (b & 0x7FL) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        return number;
+    }
+
+    private static synchronized int computeType(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            NetStreamCodec codec = customCodecs.get(c);
+
+            if (codec != null) {
+                return codec.getType();
+            }
+        }
+
+        if (type.isArray()) {
+            Class<?> item = type.getComponentType();
+
+            if (item.isPrimitive()) {
+                return getArrayType(getScalarType(getWrapperClass(item)));
+            }
+
+            int itemType = getScalarType(item);
+            return itemType == NetStreamConstants.TYPE_UNKNOWN ? TYPE_BY_FIRST_ITEM : getArrayType(itemType);
+        }
+
+        return getScalarType(type);
+    }
+
+    private static int getScalarType(Class<?> type) {
+        if (type == Boolean.class) {
+            return NetStreamConstants.TYPE_BOOLEAN;
+        } else if (type == Byte.class) {
+            return NetStreamConstants.TYPE_BYTE;
+        } else if (type == Short.class) {
+            return NetStreamConstants.TYPE_SHORT;
+        } else if (type == Integer.class) {
+            return NetStreamConstants.TYPE_INT;
+        } else if (type == Long.class) {
+            return NetStreamConstants.TYPE_LONG;
+        } else if (type == Float.class) {
+            return NetStreamConstants.TYPE_FLOAT;
+        } else if (type == Double.class) {
+            return NetStreamConstants.TYPE_DOUBLE;
+        } else if (type == String.class) {
+            return NetStreamConstants.TYPE_STRING;
+        }
+
+        return NetStreamConstants.TYPE_UNKNOWN;
+    }
+
+    /**
+     * Type of an array from the type of its items. Arrays of strings and of
+     * application values are heterogeneous arrays.
+     */
+    private static int getArrayType(int itemType) {
+        if (itemType == NetStreamConstants.TYPE_UNKNOWN) {
+            return NetStreamConstants.TYPE_UNKNOWN;
+        } else if (itemType == NetStreamConstants.TYPE_BOOLEAN) {
+            return NetStreamConstants.TYPE_BOOLEAN_ARRAY;
+        } else if (itemType == NetStreamConstants.TYPE_BYTE) {
+            return NetStreamConstants.TYPE_BYTE_ARRAY;
+        } else if (itemType == NetStreamConstants.TYPE_SHORT) {
+            return NetStreamConstants.TYPE_SHORT_ARRAY;
+        } else if (itemType == NetStreamConstants.TYPE_INT) {
+            return NetStreamConstants.TYPE_INT_ARRAY;
+        } else if (itemType == NetStreamConstants.TYPE_LONG) {
+            return NetStreamConstants.TYPE_LONG_ARRAY;
+        } else if (itemType == NetStreamConstants.TYPE_FLOAT) {
+            return NetStreamConstants.TYPE_FLOAT_ARRAY;
+        } else if (itemType == NetStreamConstants.TYPE_DOUBLE) {
+            return NetStreamConstants.TYPE_DOUBLE_ARRAY;
+        }
+
+        return NetStreamConstants.TYPE_ARRAY;
+    }
+
+    private static Class<?> getWrapperClass(Class<?> primitive) {
+        if (primitive == double.class) {
+            return Double.class;
+        } else if (primitive == float.class) {
+            return Float.class;
+        } else if (primitive == int.class) {
+            return Integer.class;
+        } else if (primitive == long.class) {
+            return Long.class;
+        } else if (primitive == short.class) {
+            return Short.class;
+        } else if (primitive == byte.class) {
+            return Byte.class;
+        } else if (primitive == boolean.class) {
+            return Boolean.class;
+        }
+
+        return primitive;
+    }
+
+    //
+    // BUILTIN CODECS
+    //
+
+    protected static abstract class BuiltinCodec implements NetStreamCodec {
+        protected final int type;
+
+        protected BuiltinCodec(int type) {
+            this.type = type;
+        }
+
+        public int getType() {
+            return type;
+        }
+    }
+
+    protected static abstract class VarintCodec extends BuiltinCodec {
+        protected VarintCodec(int type) {
+            super(type);
+        }
+
+        public int getSize(Object value) {
+            return getVarintSize(zigzag(((Number) value).longValue()));
+        }
+
+        public void put(ByteBuffer buffer, Object value) {
+            putSignedVarint(buffer, ((Number) value).longValue());
+        }
+    }
+
+    /**
+     * Codec of arrays of numbers or booleans, given as arrays of boxed or of
+     * primitive values. An array of boxed values can not be encoded if one of
+     * its items is not of the type of the array.
+     */
+    protected static abstract class ArrayCodec extends BuiltinCodec {
+        protected ArrayCodec(int type) {
+            super(type);
+        }
+
+        public int getSize(Object value) {
+            if (!(value instanceof Object[])) {
+                return getPrimitiveArraySize(value, type);
+            }
+
+            Object[] data = (Object[]) value;
+            int size = getVarintSize(data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == null || !acceptsItem(types.get(data[i].getClass()))) {
+                    return -1;
+                }
+
+                size += getItemSize(data[i]);
+            }
+
+            return size;
+        }
+
+        public void put(ByteBuffer buffer, Object value) {
+            if (!(value instanceof Object[])) {
+                putPrimitiveArray(buffer, value, type);
+                return;
+            }
+
+            Object[] data = (Object[]) value;
+            putUnsignedVarint(buffer, data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                putItem(buffer, data[i]);
+            }
+        }
+
+        /**
+         * @param itemType the type of an item
+         * @return true if the item can be put in the array
+         */
+        protected boolean acceptsItem(int itemType) {
+            return getArrayType(itemType) == type;
+        }
+
+        protected abstract int getItemSize(Object item);
+
+        protected abstract void putItem(ByteBuffer buffer, Object item);
+
+        /**
+         * Decode the array as an array of primitive values.
+         */
+        protected abstract Object getPrimitive(ByteBuffer buffer);
+    }
+
+    protected static abstract class VarintArrayCodec extends ArrayCodec {
+        protected VarintArrayCodec(int type) {
+            super(type);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see ArrayCodec#acceptsItem(int)
+         */
+        @Override
+        protected boolean acceptsItem(int itemType) {
+            // arrays of shorts, ints and longs have the same items on the wire
+            return itemType == NetStreamConstants.TYPE_SHORT || itemType == NetStreamConstants.TYPE_INT
+                    || itemType == NetStreamConstants.TYPE_LONG;
+        }
+
+        protected int getItemSize(Object item) {
+            return getVarintSize(zigzagArrayItem(((Number) item).longValue()));
+        }
+
+        protected void putItem(ByteBuffer buffer, Object item) {
+            putUnsignedVarint(buffer, zigzagArrayItem(((Number) item).longValue()));
+        }
+    }
+
+    private static NetStreamCodec[] createBuiltinCodecs() {
+        return new NetStreamCodec[]{
+                new BuiltinCodec(NetStreamConstants.TYPE_NULL) {
+                    public int getSize(Object value) {
+                        return 0;
+                    }
+
+                    public void put(ByteBuffer buffer, Object value) {
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return null;
+                    }
+                },
+                new BuiltinCodec(NetStreamConstants.TYPE_BOOLEAN) {
+                    public int getSize(Object value) {
+                        return 1;
+                    }
+
+                    public void put(ByteBuffer buffer, Object value) {
+                        buffer.put((byte) (((Boolean) value) ? 1 : 0));
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeBoolean(buffer);
+                    }
+                },
+                new BuiltinCodec(NetStreamConstants.TYPE_BYTE) {
+                    public int getSize(Object value) {
+                        return 1;
+                    }
+
+                    public void put(ByteBuffer buffer, Object value) {
+                        buffer.put(((Number) value).byteValue());
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeByte(buffer);
+                    }
+                },
+                new VarintCodec(NetStreamConstants.TYPE_SHORT) {
+                    public Object get(ByteBuffer buffer) {
+                        return decodeShort(buffer);
+                    }
+                },
+                new VarintCodec(NetStreamConstants.TYPE_INT) {
+                    public Object get(ByteBuffer buffer) {
+                        return decodeInt(buffer);
+                    }
+                },
+                new VarintCodec(NetStreamConstants.TYPE_LONG) {
+                    public Object get(ByteBuffer buffer) {
+                        return decodeLong(buffer);
+                    }
+                },
+                new BuiltinCodec(NetStreamConstants.TYPE_FLOAT) {
+                    public int getSize(Object value) {
+                        return 4;
+                    }
+
+                    public void put(ByteBuffer buffer, Object value) {
+                        buffer.putFloat(((Number) value).floatValue());
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeFloat(buffer);
+                    }
+                },
+                new BuiltinCodec(NetStreamConstants.TYPE_DOUBLE) {
+                    public int getSize(Object value) {
+                        return 8;
+                    }
+
+                    public void put(ByteBuffer buffer, Object value) {
+                        buffer.putDouble(((Number) value).doubleValue());
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeDouble(buffer);
+                    }
+                },
+                new BuiltinCodec(NetStreamConstants.TYPE_STRING) {
+                    public int getSize(Object value) {
+                        return getStringSize((String) value);
+                    }
+
+                    public void put(ByteBuffer buffer, Object value) {
+                        putString(buffer, (String) value);
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeString(buffer);
+                    }
+                },
+                new ArrayCodec(NetStreamConstants.TYPE_BOOLEAN_ARRAY) {
+                    protected int getItemSize(Object item) {
+                        return 1;
+                    }
+
+                    protected void putItem(ByteBuffer buffer, Object item) {
+                        buffer.put((byte) (((Boolean) item) ? 1 : 0));
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeBooleanArray(buffer);
+                    }
+
+                    protected Object getPrimitive(ByteBuffer buffer) {
+                        return decodePrimitiveBooleanArray(buffer);
+                    }
+                },
+                new ArrayCodec(NetStreamConstants.TYPE_BYTE_ARRAY) {
+                    protected int getItemSize(Object item) {
+                        return 1;
+                    }
+
+                    protected void putItem(ByteBuffer buffer, Object item) {
+                        buffer.put(((Number) item).byteValue());
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeByteArray(buffer);
+                    }
+
+                    protected Object getPrimitive(ByteBuffer buffer) {
+                        return decodePrimitiveByteArray(buffer);
+                    }
+                },
+                new VarintArrayCodec(NetStreamConstants.TYPE_SHORT_ARRAY) {
+                    public Object get(ByteBuffer buffer) {
+                        return decodeShortArray(buffer);
+                    }
+
+                    protected Object getPrimitive(ByteBuffer buffer) {
+                        return decodePrimitiveShortArray(buffer);
+                    }
+                },
+                new VarintArrayCodec(NetStreamConstants.TYPE_INT_ARRAY) {
+                    public Object get(ByteBuffer buffer) {
+                        return decodeIntArray(buffer);
+                    }
+
+                    protected Object getPrimitive(ByteBuffer buffer) {
+                        return decodePrimitiveIntArray(buffer);
+                    }
+                },
+                new VarintArrayCodec(NetStreamConstants.TYPE_LONG_ARRAY) {
+                    public Object get(ByteBuffer buffer) {
+                        return decodeLongArray(buffer);
+                    }
+
+                    protected Object getPrimitive(ByteBuffer buffer) {
+                        return decodePrimitiveLongArray(buffer);
+                    }
+                },
+                new ArrayCodec(NetStreamConstants.TYPE_FLOAT_ARRAY) {
+                    protected int getItemSize(Object item) {
+                        return 4;
+                    }
+
+                    protected void putItem(ByteBuffer buffer, Object item) {
+                        buffer.putFloat(((Number) item).floatValue());
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeFloatArray(buffer);
+                    }
+
+                    protected Object getPrimitive(ByteBuffer buffer) {
+                        return decodePrimitiveFloatArray(buffer);
+                    }
+                },
+                new ArrayCodec(NetStreamConstants.TYPE_DOUBLE_ARRAY) {
+                    protected int getItemSize(Object item) {
+                        return 8;
+                    }
+
+                    protected void putItem(ByteBuffer buffer, Object item) {
+                        buffer.putDouble(((Number) item).doubleValue());
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeDoubleArray(buffer);
+                    }
+
+                    protected Object getPrimitive(ByteBuffer buffer) {
+                        return decodePrimitiveDoubleArray(buffer);
+                    }
+                },
+                new BuiltinCodec(NetStreamConstants.TYPE_ARRAY) {
+                    public int getSize(Object value) {
+                        if (!(value instanceof Object[])) {
+                            return -1;
+                        }
+
+                        Object[] data = (Object[]) value;
+                        int size = getVarintSize(data.length);
+
+                        for (int i = 0; i < data.length; i++) {
+                            int itemSize = getValueSize(data[i], NetStreamCodecRegistry.getType(data[i]));
+
+                            if (itemSize < 0) {
+                                return -1;
+                            }
+
+                            size += 1 + itemSize;
+                        }
+
+                        return size;
+                    }
+
+                    public void put(ByteBuffer buffer, Object value) {
+                        Object[] data = (Object[]) value;
+                        putUnsignedVarint(buffer, data.length);
+
+                        for (int i = 0; i < data.length; i++) {
+                            int itemType = NetStreamCodecRegistry.getType(data[i]);
+                            buffer.put((byte) itemType);
+                            putValue(buffer, data[i], itemType);
+                        }
+                    }
+
+                    public Object get(ByteBuffer buffer) {
+                        return decodeArray(buffer);
+                    }
+                }
+        };
+    }
+}
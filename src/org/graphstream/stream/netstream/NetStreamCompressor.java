@@ -0,0 +1,238 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compress frames of NetStream messages with deflate.
+ * <p>
+ * A compressed frame starts with the opposite of the size of the uncompressed
+ * frame (int), followed by the raw deflate data. A message size being always
+ * positive, receivers can tell compressed frames from plain ones. Frames
+ * smaller than the threshold, or which do not get smaller, are left as they are.
+ * <p>
+ * The compressor keeps the number of bytes in and out and the time spent
+ * compressing, which can be read from any thread.
+ *
+ * @see NetStreamDecoder2#decodeFrame(ByteBuffer)
+ * @since 17/10/26.
+ */
+public class NetStreamCompressor {
+    /**
+     * Frames smaller than this are not compressed.
+     */
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    protected final Deflater deflater;
+    protected final int threshold;
+    protected byte[] input = new byte[4096];
+    protected byte[] output = new byte[4096];
+
+    protected volatile long bytesIn;
+    protected volatile long bytesOut;
+    protected volatile long compressedFrames;
+    protected volatile long plainFrames;
+    protected volatile long compressionTime;
+
+    public NetStreamCompressor() {
+        this(DEFAULT_THRESHOLD, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param threshold size under which frames are not compressed
+     * @param level     deflate level, from {@link Deflater#BEST_SPEED} to
+     *                  {@link Deflater#BEST_COMPRESSION}
+     */
+    public NetStreamCompressor(int threshold, int level) {
+        this.threshold = threshold;
+        this.deflater = new Deflater(level, true);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Compress a frame if it is worth it. The position of the frame is not
+     * changed.
+     *
+     * @param frame the frame, from its position to its limit
+     * @return a compressed frame, or the frame itself
+     */
+    public synchronized ByteBuffer compress(ByteBuffer frame) {
+        int size = frame.remaining();
+
+        if (size < threshold) {
+            plainFrames++;
+            bytesIn += size;
+            bytesOut += size;
+
+            return frame;
+        }
+
+        long start = System.nanoTime();
+
+        if (input.length < size) {
+            input = new byte[Math.max(size, input.length << 1)];
+        }
+
+        frame.duplicate().get(input, 0, size);
+
+        deflater.reset();
+        deflater.setInput(input, 0, size);
+        deflater.finish();
+
+        int length = 0;
+
+        while (!deflater.finished() && length < size) {
+            if (length == output.length) {
+                byte[] bigger = new byte[output.length << 1];
+                System.arraycopy(output, 0, bigger, 0, length);
+                output = bigger;
+            }
+
+            length += deflater.deflate(output, length, output.length - length);
+        }
+
+        ByteBuffer result;
+
+        if (deflater.finished() && 4 + length < size) {
+            result = ByteBuffer.allocate(4 + length);
+            result.putInt(-size).put(output, 0, length);
+            result.rewind();
+
+            compressedFrames++;
+        } else {
+            result = frame;
+            plainFrames++;
+        }
+
+        bytesIn += size;
+        bytesOut += result.remaining();
+        compressionTime += System.nanoTime() - start;
+
+        return result;
+    }
+
+    /**
+     * Decompress a compressed frame.
+     *
+     * @param inflater the inflater to use
+     * @param frame    the compressed frame, positioned on its first byte
+     * @return the uncompressed frame
+     * @throws IllegalStateException if the frame is not valid
+     */
+    public static ByteBuffer decompress(Inflater inflater, ByteBuffer frame) {
+        int size = -frame.getInt();
+
+        if (size <= 0) {
+            throw new IllegalStateException("not a compressed frame");
+        }
+
+        // deflate cannot expand more than 1032:1, reject before allocating
+        if (size > 1032L * frame.remaining() + 8) {
+            throw new IllegalStateException("bad compressed frame size");
+        }
+
+        byte[] data = new byte[frame.remaining()];
+        byte[] uncompressed = new byte[size];
+
+        frame.get(data);
+
+        inflater.reset();
+        inflater.setInput(data);
+
+        try {
+            int length = 0;
+
+            while (length < size && !inflater.finished()) {
+                int n = inflater.inflate(uncompressed, length, size - length);
+
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                length += n;
+            }
+
+            if (length != size) {
+                throw new IllegalStateException("truncated compressed frame");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("bad compressed frame: " + e.getMessage());
+        }
+
+        return ByteBuffer.wrap(uncompressed);
+    }
+
+    /**
+     * @return the number of bytes given to the compressor
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return the number of bytes returned by the compressor
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getCompressedFrameCount() {
+        return compressedFrames;
+    }
+
+    public long getPlainFrameCount() {
+        return plainFrames;
+    }
+
+    /**
+     * @return the bytes out divided by the bytes in, 1 if nothing has been
+     * compressed yet
+     */
+    public double getCompressionRatio() {
+        long in = bytesIn;
+        return in == 0 ? 1 : bytesOut / (double) in;
+    }
+
+    /**
+     * @return the time spent compressing, in nanoseconds
+     */
+    public long getCompressionTime() {
+        return compressionTime;
+    }
+}
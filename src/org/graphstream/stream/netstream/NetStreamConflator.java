@@ -0,0 +1,429 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import org.graphstream.stream.Pipe;
+import org.graphstream.stream.SourceBase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Pipe keeping only the newest change of each attribute until it is flushed.
+ * <p>
+ * Events are held in their arrival order. When an attribute of an element
+ * changes again before the next flush, the pending change is updated with the
+ * new value instead of queuing a new event, keeping the time id and the old
+ * value of the first change. A change is never merged across an event that
+ * could make the result differ: adding or removing the attribute, adding or
+ * removing the element, or clearing the graph.
+ * <p>
+ * Pending events are sent on {@link #flush()}, at each step, and when there are
+ * too many of them. Like any sink, a conflator must be fed by a single thread.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamConflator extends SourceBase implements Pipe {
+    /**
+     * Default maximum number of pending events.
+     */
+    public static final int DEFAULT_MAX_PENDING = 1 << 16;
+
+    protected static final int NODE_ADDED = 0;
+    protected static final int NODE_REMOVED = 1;
+    protected static final int EDGE_ADDED = 2;
+    protected static final int EDGE_REMOVED = 3;
+    protected static final int GRAPH_CLEARED = 4;
+    protected static final int STEP_BEGINS = 5;
+    protected static final int GRAPH_ATTR_ADDED = 6;
+    protected static final int GRAPH_ATTR_CHANGED = 7;
+    protected static final int GRAPH_ATTR_REMOVED = 8;
+    protected static final int NODE_ATTR_ADDED = 9;
+    protected static final int NODE_ATTR_CHANGED = 10;
+    protected static final int NODE_ATTR_REMOVED = 11;
+    protected static final int EDGE_ATTR_ADDED = 12;
+    protected static final int EDGE_ATTR_CHANGED = 13;
+    protected static final int EDGE_ATTR_REMOVED = 14;
+
+    /**
+     * A pending event. Instances are recycled once sent.
+     */
+    protected static class Event {
+        int type;
+        String sourceId;
+        long timeId;
+        String elementId;
+        String attribute;
+        String fromNodeId;
+        String toNodeId;
+        boolean directed;
+        double step;
+        Object oldValue;
+        Object newValue;
+    }
+
+    protected final ArrayList<Event> pending;
+    protected final ArrayList<Event> free;
+
+    /**
+     * Pending changes which can still be updated, by element and attribute.
+     */
+    protected final HashMap<String, HashMap<String, Event>> nodeChanges;
+    protected final HashMap<String, HashMap<String, Event>> edgeChanges;
+    protected final HashMap<String, Event> graphChanges;
+
+    protected int maxPending;
+    protected volatile long droppedEvents;
+
+    public NetStreamConflator() {
+        this(DEFAULT_MAX_PENDING);
+    }
+
+    public NetStreamConflator(int maxPending) {
+        this.pending = new ArrayList<Event>();
+        this.free = new ArrayList<Event>();
+        this.nodeChanges = new HashMap<String, HashMap<String, Event>>();
+        this.edgeChanges = new HashMap<String, HashMap<String, Event>>();
+        this.graphChanges = new HashMap<String, Event>();
+        this.maxPending = maxPending;
+        this.droppedEvents = 0;
+    }
+
+    /**
+     * @return the number of changes merged into a pending one since the
+     * creation of the conflator
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents;
+    }
+
+    public int getPendingEventCount() {
+        return pending.size();
+    }
+
+    /**
+     * Send all the pending events.
+     */
+    public void flush() {
+        nodeChanges.clear();
+        edgeChanges.clear();
+        graphChanges.clear();
+
+        for (int i = 0; i < pending.size(); i++) {
+            Event e = pending.get(i);
+
+            dispatch(e);
+
+            e.sourceId = e.elementId = e.attribute = e.fromNodeId = e.toNodeId = null;
+            e.oldValue = e.newValue = null;
+            free.add(e);
+        }
+
+        pending.clear();
+    }
+
+    protected void dispatch(Event e) {
+        switch (e.type) {
+            case NODE_ADDED:
+                sendNodeAdded(e.sourceId, e.timeId, e.elementId);
+                break;
+            case NODE_REMOVED:
+                sendNodeRemoved(e.sourceId, e.timeId, e.elementId);
+                break;
+            case EDGE_ADDED:
+                sendEdgeAdded(e.sourceId, e.timeId, e.elementId, e.fromNodeId, e.toNodeId, e.directed);
+                break;
+            case EDGE_REMOVED:
+                sendEdgeRemoved(e.sourceId, e.timeId, e.elementId);
+                break;
+            case GRAPH_CLEARED:
+                sendGraphCleared(e.sourceId, e.timeId);
+                break;
+            case STEP_BEGINS:
+                sendStepBegins(e.sourceId, e.timeId, e.step);
+                break;
+            case GRAPH_ATTR_ADDED:
+                sendGraphAttributeAdded(e.sourceId, e.timeId, e.attribute, e.newValue);
+                break;
+            case GRAPH_ATTR_CHANGED:
+                sendGraphAttributeChanged(e.sourceId, e.timeId, e.attribute, e.oldValue, e.newValue);
+                break;
+            case GRAPH_ATTR_REMOVED:
+                sendGraphAttributeRemoved(e.sourceId, e.timeId, e.attribute);
+                break;
+            case NODE_ATTR_ADDED:
+                sendNodeAttributeAdded(e.sourceId, e.timeId, e.elementId, e.attribute, e.newValue);
+                break;
+            case NODE_ATTR_CHANGED:
+                sendNodeAttributeChanged(e.sourceId, e.timeId, e.elementId, e.attribute, e.oldValue, e.newValue);
+                break;
+            case NODE_ATTR_REMOVED:
+                sendNodeAttributeRemoved(e.sourceId, e.timeId, e.elementId, e.attribute);
+                break;
+            case EDGE_ATTR_ADDED:
+                sendEdgeAttributeAdded(e.sourceId, e.timeId, e.elementId, e.attribute, e.newValue);
+                break;
+            case EDGE_ATTR_CHANGED:
+                sendEdgeAttributeChanged(e.sourceId, e.timeId, e.elementId, e.attribute, e.oldValue, e.newValue);
+                break;
+            case EDGE_ATTR_REMOVED:
+                sendEdgeAttributeRemoved(e.sourceId, e.timeId, e.elementId, e.attribute);
+                break;
+        }
+    }
+
+    protected Event append(int type, String sourceId, long timeId) {
+        Event e = free.isEmpty() ? new Event() : free.remove(free.size() - 1);
+
+        e.type = type;
+        e.sourceId = sourceId;
+        e.timeId = timeId;
+
+        pending.add(e);
+
+        return e;
+    }
+
+    protected void checkPending() {
+        if (pending.size() >= maxPending) {
+            flush();
+        }
+    }
+
+    /**
+     * Merge a change into the pending change of the same attribute, or queue it.
+     */
+    protected void change(HashMap<String, Event> changes, int type, String sourceId, long timeId,
+                          String elementId, String attribute, Object oldValue, Object newValue) {
+        Event e = changes.get(attribute);
+
+        if (e != null && e.sourceId.equals(sourceId)) {
+            e.newValue = newValue;
+            droppedEvents++;
+
+            return;
+        }
+
+        e = append(type, sourceId, timeId);
+        e.elementId = elementId;
+        e.attribute = attribute;
+        e.oldValue = oldValue;
+        e.newValue = newValue;
+
+        changes.put(attribute, e);
+        checkPending();
+    }
+
+    protected HashMap<String, Event> changesOf(HashMap<String, HashMap<String, Event>> changes, String elementId) {
+        HashMap<String, Event> c = changes.get(elementId);
+
+        if (c == null) {
+            c = new HashMap<String, Event>();
+            changes.put(elementId, c);
+        }
+
+        return c;
+    }
+
+    /**
+     * Queue an attribute event which is not a change, and prevent the pending
+     * change of this attribute from being updated.
+     */
+    protected void attribute(HashMap<String, Event> changes, int type, String sourceId, long timeId,
+                             String elementId, String attribute, Object value) {
+        if (changes != null) {
+            changes.remove(attribute);
+        }
+
+        Event e = append(type, sourceId, timeId);
+        e.elementId = elementId;
+        e.attribute = attribute;
+        e.newValue = value;
+
+        checkPending();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang.String, long, java.lang.String, java.lang.Object)
+     */
+    public void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
+        attribute(graphChanges, GRAPH_ATTR_ADDED, sourceId, timeId, null, attribute, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang.String, long, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    public void graphAttributeChanged(String sourceId, long timeId, String attribute, Object oldValue, Object newValue) {
+        change(graphChanges, GRAPH_ATTR_CHANGED, sourceId, timeId, null, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang.String, long, java.lang.String)
+     */
+    public void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
+        attribute(graphChanges, GRAPH_ATTR_REMOVED, sourceId, timeId, null, attribute, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
+        attribute(nodeChanges.get(nodeId), NODE_ATTR_ADDED, sourceId, timeId, nodeId, attribute, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute, Object oldValue, Object newValue) {
+        change(changesOf(nodeChanges, nodeId), NODE_ATTR_CHANGED, sourceId, timeId, nodeId, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang.String, long, java.lang.String, java.lang.String)
+     */
+    public void nodeAttributeRemoved(String sourceId, long timeId, String nodeId, String attribute) {
+        attribute(nodeChanges.get(nodeId), NODE_ATTR_REMOVED, sourceId, timeId, nodeId, attribute, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    public void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute, Object value) {
+        attribute(edgeChanges.get(edgeId), EDGE_ATTR_ADDED, sourceId, timeId, edgeId, attribute, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    public void edgeAttributeChanged(String sourceId, long timeId, String edgeId, String attribute, Object oldValue, Object newValue) {
+        change(changesOf(edgeChanges, edgeId), EDGE_ATTR_CHANGED, sourceId, timeId, edgeId, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang.String, long, java.lang.String, java.lang.String)
+     */
+    public void edgeAttributeRemoved(String sourceId, long timeId, String edgeId, String attribute) {
+        attribute(edgeChanges.get(edgeId), EDGE_ATTR_REMOVED, sourceId, timeId, edgeId, attribute, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long, java.lang.String)
+     */
+    public void nodeAdded(String sourceId, long timeId, String nodeId) {
+        nodeChanges.remove(nodeId);
+        append(NODE_ADDED, sourceId, timeId).elementId = nodeId;
+        checkPending();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String, long, java.lang.String)
+     */
+    public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+        nodeChanges.remove(nodeId);
+        append(NODE_REMOVED, sourceId, timeId).elementId = nodeId;
+        checkPending();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String, long, java.lang.String, java.lang.String, java.lang.String, boolean)
+     */
+    public void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId, String toNodeId, boolean directed) {
+        edgeChanges.remove(edgeId);
+
+        Event e = append(EDGE_ADDED, sourceId, timeId);
+        e.elementId = edgeId;
+        e.fromNodeId = fromNodeId;
+        e.toNodeId = toNodeId;
+        e.directed = directed;
+
+        checkPending();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String, long, java.lang.String)
+     */
+    public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+        edgeChanges.remove(edgeId);
+        append(EDGE_REMOVED, sourceId, timeId).elementId = edgeId;
+        checkPending();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String, long)
+     */
+    public void graphCleared(String sourceId, long timeId) {
+        nodeChanges.clear();
+        edgeChanges.clear();
+        graphChanges.clear();
+
+        append(GRAPH_CLEARED, sourceId, timeId);
+        checkPending();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String, long, double)
+     */
+    public void stepBegins(String sourceId, long timeId, double step) {
+        append(STEP_BEGINS, sourceId, timeId).step = step;
+        flush();
+    }
+}
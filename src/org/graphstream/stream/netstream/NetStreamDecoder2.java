@@ -36,10 +36,14 @@ import org.graphstream.stream.SourceBase;
 import static org.graphstream.stream.netstream.NetStreamUtils.*;
 
 import java.io.IOException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.logging.Logger;
+import java.util.zip.Inflater;
 
 /**
  * @since 22/01/16.
@@ -47,49 +51,1139 @@ import java.util.logging.Logger;
 public class NetStreamDecoder2 extends SourceBase {
     private static final Logger LOGGER = Logger.getLogger(NetStreamDecoder2.class.getName());
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Errors found in the received data.
+     */
+    public enum DecodeError {
+        /**
+         * Data ends in the middle of a message or of a value.
+         */
+        TRUNCATED,
+        /**
+         * Size of a message out of its frame.
+         */
+        BAD_SIZE,
+        /**
+         * Compressed frame which can not be inflated.
+         */
+        BAD_COMPRESSION,
+        /**
+         * Compact message received before any stream header.
+         */
+        NO_STREAM_HEADER,
+        UNKNOWN_EVENT,
+        UNKNOWN_TYPE,
+        /**
+         * Reference to a dictionary entry which has not been defined.
+         */
+        UNKNOWN_HANDLE,
+        /**
+         * Malformed value, or difference with no previous value.
+         */
+        BAD_VALUE
+    }
+
+    /**
+     * Listener of the errors found in the received data. Messages with an
+     * error are dropped without any exception or logging.
+     */
+    public interface DecodeErrorListener {
+        /**
+         * @param error     the error
+         * @param eventType the type of the event being decoded, or -1 if the
+         *                  error is not in an event
+         */
+        void decodeError(DecodeError error, int eventType);
+    }
+
+    /**
+     * Choice of the attributes given to the sinks. Values of the other
+     * attributes are skipped without being decoded.
+     */
+    public interface AttributeFilter {
+        /**
+         * @param kind      the kind of element holding the attribute
+         * @param attribute the attribute name
+         * @return true if the events of the attribute are given to the sinks
+         */
+        boolean accept(ElementType kind, String attribute);
+    }
+
+    /**
+     * Dispatch of the event types, which are not constants in gs-core.
+     */
+    private static final int SERVE_UNKNOWN = 0;
+    private static final int SERVE_ADD_NODE = 1;
+    private static final int SERVE_DEL_NODE = 2;
+    private static final int SERVE_ADD_EDGE = 3;
+    private static final int SERVE_DEL_EDGE = 4;
+    private static final int SERVE_STEP = 5;
+    private static final int SERVE_CLEARED = 6;
+    private static final int SERVE_ADD_GRAPH_ATTR = 7;
+    private static final int SERVE_CHG_GRAPH_ATTR = 8;
+    private static final int SERVE_DEL_GRAPH_ATTR = 9;
+    private static final int SERVE_ADD_NODE_ATTR = 10;
+    private static final int SERVE_CHG_NODE_ATTR = 11;
+    private static final int SERVE_DEL_NODE_ATTR = 12;
+    private static final int SERVE_ADD_EDGE_ATTR = 13;
+    private static final int SERVE_CHG_EDGE_ATTR = 14;
+    private static final int SERVE_DEL_EDGE_ATTR = 15;
+    private static final int SERVE_BULK_NODE_ATTR = 16;
+    private static final int SERVE_BULK_EDGE_ATTR = 17;
+    private static final int SERVE_DICTIONARY = 18;
+    private static final int SERVE_STREAM_HEADER = 19;
+    private static final int SERVE_END = 20;
+
+    private static final byte[] EVENTS = new byte[NetStreamExtendedConstants.EVENT_FLAG_DICTIONARY];
+
+    static {
+        EVENTS[NetStreamConstants.EVENT_ADD_NODE] = SERVE_ADD_NODE;
+        EVENTS[NetStreamConstants.EVENT_DEL_NODE] = SERVE_DEL_NODE;
+        EVENTS[NetStreamConstants.EVENT_ADD_EDGE] = SERVE_ADD_EDGE;
+        EVENTS[NetStreamConstants.EVENT_DEL_EDGE] = SERVE_DEL_EDGE;
+        EVENTS[NetStreamConstants.EVENT_STEP] = SERVE_STEP;
+        EVENTS[NetStreamConstants.EVENT_CLEARED] = SERVE_CLEARED;
+        EVENTS[NetStreamConstants.EVENT_ADD_GRAPH_ATTR] = SERVE_ADD_GRAPH_ATTR;
+        EVENTS[NetStreamConstants.EVENT_CHG_GRAPH_ATTR] = SERVE_CHG_GRAPH_ATTR;
+        EVENTS[NetStreamConstants.EVENT_DEL_GRAPH_ATTR] = SERVE_DEL_GRAPH_ATTR;
+        EVENTS[NetStreamConstants.EVENT_ADD_NODE_ATTR] = SERVE_ADD_NODE_ATTR;
+        EVENTS[NetStreamConstants.EVENT_CHG_NODE_ATTR] = SERVE_CHG_NODE_ATTR;
+        EVENTS[NetStreamConstants.EVENT_DEL_NODE_ATTR] = SERVE_DEL_NODE_ATTR;
+        EVENTS[NetStreamConstants.EVENT_ADD_EDGE_ATTR] = SERVE_ADD_EDGE_ATTR;
+        EVENTS[NetStreamConstants.EVENT_CHG_EDGE_ATTR] = SERVE_CHG_EDGE_ATTR;
+        EVENTS[NetStreamConstants.EVENT_DEL_EDGE_ATTR] = SERVE_DEL_EDGE_ATTR;
+        EVENTS[NetStreamExtendedConstants.EVENT_BULK_NODE_ATTR] = SERVE_BULK_NODE_ATTR;
+        EVENTS[NetStreamExtendedConstants.EVENT_BULK_EDGE_ATTR] = SERVE_BULK_EDGE_ATTR;
+        EVENTS[NetStreamExtendedConstants.EVENT_DICTIONARY] = SERVE_DICTIONARY;
+        EVENTS[NetStreamExtendedConstants.EVENT_STREAM_HEADER] = SERVE_STREAM_HEADER;
+        EVENTS[NetStreamConstants.EVENT_END] = SERVE_END;
+    }
+
     protected boolean debug = false;
 
+    /**
+     * Identifiers received from the sender when dictionary-coding is used.
+     */
+    protected NetStreamDictionary dictionary = new NetStreamDictionary(Integer.MAX_VALUE);
+
+    /**
+     * True if the identifiers of the message being decoded are dictionary-coded.
+     */
+    protected boolean dictionaryCoded;
+
+    /**
+     * True if arrays of numbers and booleans are given to the sinks as arrays
+     * of primitive values instead of boxed values.
+     */
+    protected boolean primitiveArrays = false;
+
+    /**
+     * Sinks receiving bulk attribute changes as they are.
+     */
+    protected final ArrayList<NetStreamBulkSink> bulkSinks = new ArrayList<NetStreamBulkSink>();
+
+    /**
+     * Buffers reused to decode bulk attribute changes.
+     */
+    protected String[] bulkIds = new String[0];
+    protected double[] bulkDoubles = new double[0];
+    protected float[] bulkFloats = new float[0];
+
+    /**
+     * Last quantized values received, by attribute name.
+     */
+    protected final HashMap<String, NetStreamQuantizedState> quantizedStates = new HashMap<String, NetStreamQuantizedState>();
+
+    /**
+     * Scratch array of quantized differences.
+     */
+    protected long[] varints = new long[16];
+
+    /**
+     * Created on the first compressed frame.
+     */
+    protected Inflater inflater;
+
+    /**
+     * True if the message being decoded is a compact message.
+     */
+    protected boolean compact;
+
+    /**
+     * Source id and time id of the compact messages, given by the last
+     * {@link NetStreamExtendedConstants#EVENT_STREAM_HEADER}.
+     */
+    protected String streamSourceId;
+    protected long streamTimeId;
+
+    /**
+     * Error of the message being decoded, null if there is none yet.
+     */
+    protected DecodeError error;
+
+    /**
+     * Type of the event being decoded, -1 before the event type is read.
+     */
+    protected int eventType = -1;
+
+    /**
+     * Attributes given to the sinks, null for all.
+     */
+    protected AttributeFilter attributeFilter;
+
+    /**
+     * True if attribute values are given as {@link NetStreamLazyValue}.
+     */
+    protected boolean lazyValues = false;
+
+    protected long skippedValueCount;
+
+    /**
+     * Pool giving the strings read, if any.
+     */
+    protected NetStreamStringPool stringPool;
+
+    protected DecodeErrorListener errorListener;
+    protected long errorCount;
+    protected final long[] errorCounts = new long[DecodeError.values().length];
+
+    public NetStreamDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public void setDecodeErrorListener(DecodeErrorListener listener) {
+        errorListener = listener;
+    }
+
+    /**
+     * @return the number of messages and frames dropped because of an error
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getErrorCount(DecodeError error) {
+        return errorCounts[error.ordinal()];
+    }
+
+    /**
+     * Add a sink receiving bulk attribute changes without expansion. The other
+     * sinks receive one attribute change for each element.
+     *
+     * @param sink the sink
+     */
+    public void addBulkSink(NetStreamBulkSink sink) {
+        bulkSinks.add(sink);
+    }
+
+    public void removeBulkSink(NetStreamBulkSink sink) {
+        bulkSinks.remove(sink);
+    }
+
+    /**
+     * Decode arrays of numbers and booleans as arrays of primitive values, for
+     * example double[] instead of Double[].
+     *
+     * @param on true to decode primitive arrays
+     */
+    public void setPrimitiveArrays(boolean on) {
+        primitiveArrays = on;
+    }
+
+    public boolean isPrimitiveArrays() {
+        return primitiveArrays;
+    }
+
+    /**
+     * Give to the sinks only the events of some attributes. The values of the
+     * other attributes are skipped using their length, without creating any
+     * object; quantized values are still decoded, since the next values may be
+     * differences with them.
+     *
+     * @param filter the filter, or null to give all the attributes
+     */
+    public void setAttributeFilter(AttributeFilter filter) {
+        attributeFilter = filter;
+    }
+
+    public AttributeFilter getAttributeFilter() {
+        return attributeFilter;
+    }
+
+    /**
+     * Give to the sinks only the events of the given attributes, whatever the
+     * element holding them.
+     *
+     * @param attributes the attribute names, or null to give all the attributes
+     * @see #setAttributeFilter(AttributeFilter)
+     */
+    public void setAttributeInterest(Collection<String> attributes) {
+        if (attributes == null) {
+            attributeFilter = null;
+            return;
+        }
+
+        final HashSet<String> interest = new HashSet<String>(attributes);
+
+        attributeFilter = new AttributeFilter() {
+            @Override
+            public boolean accept(ElementType kind, String attribute) {
+                return interest.contains(attribute);
+            }
+        };
+    }
+
+    /**
+     * Give attribute values to the sinks as {@link NetStreamLazyValue}, which
+     * keep the encoded value and decode it when it is first read. The sinks
+     * must know these values. Quantized values and values of custom codecs
+     * are still decoded at once.
+     *
+     * @param on true to give lazy values
+     */
+    public void setLazyValues(boolean on) {
+        lazyValues = on;
+    }
+
+    public boolean isLazyValues() {
+        return lazyValues;
+    }
+
+    /**
+     * Read the identifiers through a pool, which gives the same String each
+     * time the same identifier is read instead of creating a new one. The pool
+     * must not be shared with a decoder fed by another thread.
+     *
+     * @param pool the pool, or null to create a String for each identifier
+     */
+    public void setStringPool(NetStreamStringPool pool) {
+        stringPool = pool;
+    }
+
+    public NetStreamStringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * @return the number of attribute events not given to the sinks because of
+     * the attribute filter
+     */
+    public long getSkippedValueCount() {
+        return skippedValueCount;
+    }
+
+    /**
+     * Decode a frame holding one or more complete messages, each one starting
+     * with its size and its stream as written by {@link NetStreamEncoder}. The
+     * frame may be compressed.
+     *
+     * @param bb the frame
+     * @see NetStreamBatchTransport
+     * @see NetStreamCompressor
+     */
+    public void decodeFrame(ByteBuffer bb) {
+        if (bb.remaining() >= 4 && bb.getInt(bb.position()) < 0) {
+            if (inflater == null) {
+                inflater = new Inflater(true);
+            }
+
+            try {
+                bb = NetStreamCompressor.decompress(inflater, bb);
+            } catch (IllegalStateException e) {
+                frameError(bb, DecodeError.BAD_COMPRESSION);
+                return;
+            }
+        }
+
+        while (bb.remaining() >= 4) {
+            int start = bb.position();
+            int size = bb.getInt(start) & ~NetStreamExtendedConstants.MESSAGE_FLAG_COMPACT;
+
+            if (size < 4 || size > bb.remaining()) {
+                frameError(bb, DecodeError.BAD_SIZE);
+                return;
+            }
+
+            int limit = bb.limit();
+
+            bb.limit(start + size);
+            decodeMessage(bb);
+
+            bb.limit(limit);
+            bb.position(start + size);
+        }
+    }
+
+    /**
+     * Decode one complete message, starting with its size and its stream, or
+     * with its size only for a compact message.
+     *
+     * @param bb the message
+     */
+    public void decodeMessage(ByteBuffer bb) {
+        error = null;
+        eventType = -1;
+
+        if (bb.remaining() < 4) {
+            fail(bb, DecodeError.TRUNCATED);
+            return;
+        }
+
+        compact = (bb.getInt() & NetStreamExtendedConstants.MESSAGE_FLAG_COMPACT) != 0;
+
+        if (compact) {
+            if (streamSourceId == null) {
+                compact = false;
+                fail(bb, DecodeError.NO_STREAM_HEADER);
+                return;
+            }
+        } else {
+            readString(bb);
+
+            if (error != null) {
+                return;
+            }
+        }
+
+        decode(bb);
+        compact = false;
+    }
+
+    /**
+     * Decode the event of a message, the size and the stream of the message
+     * being already read. Malformed events are dropped and reported to the
+     * {@link DecodeErrorListener}.
+     *
+     * @param bb the message, positioned on the event type
+     */
     public void decode(ByteBuffer bb) {
-        try {
-            int cmd = bb.get();
+        error = null;
+        eventType = -1;
+
+        if (!bb.hasRemaining()) {
+            fail(bb, DecodeError.TRUNCATED);
+            return;
+        }
+
+        int cmd = bb.get() & 0xFF;
+
+        dictionaryCoded = (cmd & NetStreamExtendedConstants.EVENT_FLAG_DICTIONARY) != 0;
+
+        if (dictionaryCoded) {
+            cmd &= ~NetStreamExtendedConstants.EVENT_FLAG_DICTIONARY;
+        }
+
+        eventType = cmd;
 
-            if (cmd == NetStreamConstants.EVENT_ADD_NODE) {
+        switch (EVENTS[cmd]) {
+            case SERVE_ADD_NODE:
                 serve_EVENT_ADD_NODE(bb);
-            } else if ((cmd & 0xFF) == (NetStreamConstants.EVENT_DEL_NODE & 0xFF)) {
+                break;
+            case SERVE_DEL_NODE:
                 serve_DEL_NODE(bb);
-            } else if (cmd == NetStreamConstants.EVENT_ADD_EDGE) {
+                break;
+            case SERVE_ADD_EDGE:
                 serve_EVENT_ADD_EDGE(bb);
-            } else if (cmd == NetStreamConstants.EVENT_DEL_EDGE) {
+                break;
+            case SERVE_DEL_EDGE:
                 serve_EVENT_DEL_EDGE(bb);
-            } else if (cmd == NetStreamConstants.EVENT_STEP) {
+                break;
+            case SERVE_STEP:
                 serve_EVENT_STEP(bb);
-            } else if (cmd == NetStreamConstants.EVENT_CLEARED) {
+                break;
+            case SERVE_CLEARED:
                 serve_EVENT_CLEARED(bb);
-            } else if (cmd == NetStreamConstants.EVENT_ADD_GRAPH_ATTR) {
+                break;
+            case SERVE_ADD_GRAPH_ATTR:
                 serve_EVENT_ADD_GRAPH_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_CHG_GRAPH_ATTR) {
+                break;
+            case SERVE_CHG_GRAPH_ATTR:
                 serve_EVENT_CHG_GRAPH_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_DEL_GRAPH_ATTR) {
+                break;
+            case SERVE_DEL_GRAPH_ATTR:
                 serve_EVENT_DEL_GRAPH_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_ADD_NODE_ATTR) {
+                break;
+            case SERVE_ADD_NODE_ATTR:
                 serve_EVENT_ADD_NODE_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_CHG_NODE_ATTR) {
+                break;
+            case SERVE_CHG_NODE_ATTR:
                 serve_EVENT_CHG_NODE_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_DEL_NODE_ATTR) {
+                break;
+            case SERVE_DEL_NODE_ATTR:
                 serve_EVENT_DEL_NODE_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_ADD_EDGE_ATTR) {
+                break;
+            case SERVE_ADD_EDGE_ATTR:
                 serve_EVENT_ADD_EDGE_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_CHG_EDGE_ATTR) {
+                break;
+            case SERVE_CHG_EDGE_ATTR:
                 serve_EVENT_CHG_EDGE_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_DEL_EDGE_ATTR) {
+                break;
+            case SERVE_DEL_EDGE_ATTR:
                 serve_EVENT_DEL_EDGE_ATTR(bb);
-            } else if (cmd == NetStreamConstants.EVENT_END) {
-                LOGGER.info("NetStreamReceiver : Client properly ended the connection.");
-            } else {
-                LOGGER.warning("NetStreamReceiver: Don't know this command: " + cmd);
+                break;
+            case SERVE_BULK_NODE_ATTR:
+                serve_EVENT_BULK_ATTR(bb, false);
+                break;
+            case SERVE_BULK_EDGE_ATTR:
+                serve_EVENT_BULK_ATTR(bb, true);
+                break;
+            case SERVE_DICTIONARY:
+                serve_EVENT_DICTIONARY(bb);
+                break;
+            case SERVE_STREAM_HEADER:
+                serve_EVENT_STREAM_HEADER(bb);
+                break;
+            case SERVE_END:
+                if (debug) {
+                    LOGGER.info("NetStreamReceiver : Client properly ended the connection.");
+                }
+
+                break;
+            default:
+                fail(bb, DecodeError.UNKNOWN_EVENT);
+        }
+    }
+
+    /**
+     * Record an error of the message being decoded, and move to the end of the
+     * message so that the next reads fail at once. Only the first error of a
+     * message is reported.
+     *
+     * @param bb    the message
+     * @param cause the error
+     */
+    protected void fail(ByteBuffer bb, DecodeError cause) {
+        bb.position(bb.limit());
+
+        if (error != null) {
+            return;
+        }
+
+        error = cause;
+        errorCount++;
+        errorCounts[cause.ordinal()]++;
+
+        if (debug) {
+            LOGGER.warning(String.format("NetStreamReceiver: %s in event %d", cause, eventType));
+        }
+
+        if (errorListener != null) {
+            errorListener.decodeError(cause, eventType);
+        }
+    }
+
+    /**
+     * Record an error of a frame or a stream, outside of any message.
+     *
+     * @param bb    the frame
+     * @param cause the error
+     * @see NetStreamReassembler
+     */
+    protected void frameError(ByteBuffer bb, DecodeError cause) {
+        error = null;
+        eventType = -1;
+        fail(bb, cause);
+    }
+
+    //
+    // CHECKED READING METHODS
+    //
+    // These methods check the bytes left before reading. On truncated data,
+    // they record the error and return a dummy value; the serve methods then
+    // drop the event before giving anything to the sinks.
+    //
+
+    protected int readByte(ByteBuffer bb) {
+        if (!bb.hasRemaining()) {
+            fail(bb, DecodeError.TRUNCATED);
+            return 0;
+        }
+
+        return bb.get();
+    }
+
+    protected double readDouble(ByteBuffer bb) {
+        if (bb.remaining() < 8) {
+            fail(bb, DecodeError.TRUNCATED);
+            return 0;
+        }
+
+        return bb.getDouble();
+    }
+
+    protected long readVarint(ByteBuffer bb) {
+        int pos = bb.position();
+        int limit = bb.limit();
+        long number = 0;
+
+        for (int shift = 0; shift < 64 && pos < limit; shift += 7) {
+            byte b = bb.get(pos++);
+            number |= (b & 0x7FL) << shift;
+
+            if (b >= 0) {
+                bb.position(pos);
+                return number;
+            }
+        }
+
+        fail(bb, DecodeError.TRUNCATED);
+        return 0;
+    }
+
+    protected String readString(ByteBuffer bb) {
+        long length = readVarint(bb);
+
+        if (length > bb.remaining() || length < 0) {
+            fail(bb, DecodeError.TRUNCATED);
+            return null;
+        }
+
+        int len = (int) length;
+        int pos = bb.position();
+        String s;
+
+        if (stringPool != null) {
+            s = stringPool.get(bb, pos, len);
+        } else if (bb.hasArray()) {
+            s = new String(bb.array(), bb.arrayOffset() + pos, len, UTF_8);
+        } else {
+            byte[] data = new byte[len];
+            bb.get(data);
+            s = new String(data, UTF_8);
+        }
+
+        bb.position(pos + len);
+        return s;
+    }
+
+    /**
+     * @return true if `count` varints end before the limit of the buffer
+     */
+    protected boolean checkVarints(ByteBuffer bb, long count) {
+        int pos = bb.position();
+        int limit = bb.limit();
+
+        if (count > limit - pos) {
+            return false;
+        }
+
+        while (count > 0 && pos < limit) {
+            if (bb.get(pos++) >= 0) {
+                count--;
+            }
+        }
+
+        return count == 0;
+    }
+
+    /**
+     * Decode a value whose type has been read, once checked that it is
+     * complete.
+     */
+    protected Object readValue(ByteBuffer bb, int valueType) {
+        switch (NetStreamCodecRegistry.checkValue(bb, valueType)) {
+            case NetStreamCodecRegistry.VALUE_COMPLETE:
+                return lazyValues ? readLazyValue(bb, valueType) : decodeValue(bb, valueType, primitiveArrays);
+            case NetStreamCodecRegistry.VALUE_TRUNCATED:
+                fail(bb, DecodeError.TRUNCATED);
+                return null;
+            case NetStreamCodecRegistry.VALUE_UNKNOWN_TYPE:
+                fail(bb, DecodeError.UNKNOWN_TYPE);
+                return null;
+            default:
+                // custom codecs are not checked and may throw
+                try {
+                    return decodeValue(bb, valueType, primitiveArrays);
+                } catch (RuntimeException e) {
+                    fail(bb, DecodeError.BAD_VALUE);
+                    return null;
+                }
+        }
+    }
+
+    /**
+     * Copy a value whose type has been read, once checked that it is complete,
+     * to decode it later.
+     */
+    protected NetStreamLazyValue readLazyValue(ByteBuffer bb, int valueType) {
+        int start = bb.position();
+        NetStreamCodecRegistry.skipValue(bb, valueType);
+
+        ByteBuffer value = bb.duplicate();
+        value.limit(bb.position()).position(start);
+
+        byte[] data = new byte[value.remaining()];
+        value.get(data);
+
+        return new NetStreamLazyValue(valueType, data, primitiveArrays);
+    }
+
+    /**
+     * Skip a value with its type, decoding it only if it can not be checked.
+     *
+     * @return true if the value has been skipped
+     */
+    protected boolean skipTypedValue(ByteBuffer bb) {
+        int valueType = readByte(bb);
+
+        if (error != null) {
+            return false;
+        }
+
+        switch (NetStreamCodecRegistry.skipValue(bb, valueType)) {
+            case NetStreamCodecRegistry.VALUE_COMPLETE:
+                return true;
+            case NetStreamCodecRegistry.VALUE_UNCHECKED:
+                readValue(bb, valueType);
+                return error == null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the events of the attribute are given to the sinks
+     */
+    protected boolean isAccepted(ElementType kind, String attribute) {
+        if (attributeFilter == null || attributeFilter.accept(kind, attribute)) {
+            return true;
+        }
+
+        skippedValueCount++;
+        return false;
+    }
+
+    /**
+     * Skip the rest of an attribute event which is not given to the sinks. A
+     * message holds a single event, so only quantized values have to be read,
+     * to update the last values of the attribute.
+     *
+     * @param change true for an attribute change, starting with the old value
+     */
+    protected void skipAttributeValue(ByteBuffer bb, int kind, String element, String attribute, boolean change) {
+        if (change && !skipTypedValue(bb)) {
+            return;
+        }
+
+        if (!bb.hasRemaining()) {
+            return;
+        }
+
+        int valueType = bb.get(bb.position()) & 0xFF;
+
+        if (valueType >= NetStreamExtendedConstants.TYPE_QUANTIZED
+                && valueType <= NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA_ARRAY) {
+            decodeAttributeValue(bb, kind, element, attribute, false);
+        }
+    }
+
+    /**
+     * Decode an identifier, which is a plain string or, if the current message
+     * is dictionary-coded, a reference to or a definition of a dictionary entry.
+     *
+     * @param bb the buffer
+     * @return the identifier
+     */
+    protected String decodeIdentifier(ByteBuffer bb) {
+        if (!dictionaryCoded) {
+            return readString(bb);
+        }
+
+        long v = readVarint(bb);
+        int handle = (int) (v >>> 1);
+
+        if ((v & 1) == 1) {
+            String id = dictionary.get(handle);
+
+            if (id == null) {
+                fail(bb, DecodeError.UNKNOWN_HANDLE);
+            }
+
+            return id;
+        }
+
+        String id = readString(bb);
+
+        // the sender defines the next handle or redefines a known one
+        if (id == null || (v >>> 1) > dictionary.size()) {
+            fail(bb, DecodeError.UNKNOWN_HANDLE);
+            return null;
+        }
+
+        dictionary.set(handle, id);
+
+        return id;
+    }
+
+    /**
+     * Decode the source id of the event, which a compact message does not have.
+     */
+    protected String decodeSourceId(ByteBuffer bb) {
+        return compact ? streamSourceId : decodeIdentifier(bb);
+    }
+
+    /**
+     * Decode the time id of the event, which is relative to the previous one in
+     * a compact message.
+     */
+    protected long decodeTimeId(ByteBuffer bb) {
+        if (compact) {
+            long delta = unzigzag(readVarint(bb));
+
+            if (error == null) {
+                streamTimeId += delta;
+            }
+
+            return streamTimeId;
+        }
+
+        return readVarint(bb);
+    }
+
+    /**
+     * Decode the type of a value, then the value.
+     *
+     * @param bb the buffer
+     * @return the value
+     */
+    protected Object decodeTypedValue(ByteBuffer bb) {
+        int valueType = readByte(bb);
+        return error == null ? readValue(bb, valueType) : null;
+    }
+
+    /**
+     * Decode the value of an attribute, which may be quantized or given as a
+     * difference with the last value received for the same element.
+     *
+     * @param bb        the buffer
+     * @param kind      the kind of element, as in {@link NetStreamQuantizedState}
+     * @param element   the element id
+     * @param attribute the attribute name
+     * @return the value
+     * @see NetStreamExtendedConstants#TYPE_QUANTIZED
+     */
+    protected Object decodeAttributeValue(ByteBuffer bb, int kind, String element, String attribute) {
+        return decodeAttributeValue(bb, kind, element, attribute, true);
+    }
+
+    /**
+     * @param create false to only update the last quantized values, without
+     *               creating the value
+     * @see #decodeAttributeValue(ByteBuffer, int, String, String)
+     */
+    protected Object decodeAttributeValue(ByteBuffer bb, int kind, String element, String attribute, boolean create) {
+        int valueType = readByte(bb);
+
+        if (error != null) {
+            return null;
+        }
+
+        if (valueType < NetStreamExtendedConstants.TYPE_QUANTIZED
+                || valueType > NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA_ARRAY) {
+            return readValue(bb, valueType);
+        }
+
+        boolean array = valueType == NetStreamExtendedConstants.TYPE_QUANTIZED_ARRAY
+                || valueType == NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA_ARRAY;
+        boolean delta = valueType == NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA
+                || valueType == NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA_ARRAY;
+
+        int decimals = readByte(bb);
+
+        if (decimals < 0 || decimals > NetStreamQuantizedState.MAX_DECIMALS) {
+            fail(bb, DecodeError.BAD_VALUE);
+            return null;
+        }
+
+        double scale = NetStreamQuantizedState.getScale(decimals);
+        long length = array ? readVarint(bb) : 1;
+
+        if (error != null || !checkVarints(bb, length)) {
+            fail(bb, DecodeError.TRUNCATED);
+            return null;
+        }
+
+        NetStreamQuantizedState state = quantizedStates.get(attribute);
+
+        if (state == null) {
+            state = new NetStreamQuantizedState();
+            quantizedStates.put(attribute, state);
+        }
+
+        long[] last = state.get(kind, element);
+
+        if (delta) {
+            if (last == null || last.length != length) {
+                fail(bb, DecodeError.BAD_VALUE);
+                return null;
+            }
+        } else if (last == null || last.length != length) {
+            last = new long[(int) length];
+            state.put(kind, element, last);
+        }
+
+        if (delta) {
+            if (varints.length < length) {
+                varints = new long[(int) length];
+            }
+
+            decodeSignedVarints(bb, varints, 0, (int) length);
+
+            for (int i = 0; i < length; i++) {
+                last[i] += varints[i];
+            }
+        } else {
+            decodeSignedVarints(bb, last, 0, (int) length);
+        }
+
+        if (!create) {
+            return null;
+        }
+
+        if (!array) {
+            return last[0] / scale;
+        }
+
+        if (primitiveArrays) {
+            double[] values = new double[(int) length];
+
+            for (int i = 0; i < length; i++) {
+                values[i] = last[i] / scale;
+            }
+
+            return values;
+        }
+
+        Double[] values = new Double[(int) length];
+
+        for (int i = 0; i < length; i++) {
+            values[i] = last[i] / scale;
+        }
+
+        return values;
+    }
+
+    /**
+     * Forget the last quantized values received for an element.
+     */
+    protected void removeQuantizedState(int kind, String element, String attribute) {
+        if (quantizedStates.isEmpty()) {
+            return;
+        }
+
+        if (attribute != null) {
+            NetStreamQuantizedState state = quantizedStates.get(attribute);
+
+            if (state != null) {
+                state.remove(kind, element);
+            }
+        } else {
+            for (NetStreamQuantizedState state : quantizedStates.values()) {
+                state.remove(kind, element);
+            }
+        }
+    }
+
+    /**
+     * @see NetStreamExtendedConstants#EVENT_BULK_NODE_ATTR
+     * @see NetStreamExtendedConstants#EVENT_BULK_EDGE_ATTR
+     */
+    protected void serve_EVENT_BULK_ATTR(ByteBuffer bb, boolean edges) {
+        if (debug) {
+            LOGGER.info("NetStreamServer: Received EVENT_BULK_ATTR command.");
+        }
+
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String attrId = decodeIdentifier(bb);
+        int valueType = readByte(bb);
+        long elements = readVarint(bb);
+        long components = 1;
+        int componentSize;
+
+        if (valueType == NetStreamConstants.TYPE_DOUBLE_ARRAY || valueType == NetStreamConstants.TYPE_FLOAT_ARRAY) {
+            components = readVarint(bb);
+        }
+
+        if (error != null || !isAccepted(edges ? ElementType.EDGE : ElementType.NODE, attrId)) {
+            return;
+        }
+
+        if (valueType == NetStreamConstants.TYPE_DOUBLE || valueType == NetStreamConstants.TYPE_DOUBLE_ARRAY) {
+            componentSize = 8;
+        } else if (valueType == NetStreamConstants.TYPE_FLOAT || valueType == NetStreamConstants.TYPE_FLOAT_ARRAY) {
+            componentSize = 4;
+        } else {
+            fail(bb, DecodeError.UNKNOWN_TYPE);
+            return;
+        }
+
+        // each element needs at least one byte for its id
+        if (elements < 0 || components < 1 || components > bb.remaining() || elements > bb.remaining()
+                || elements * components * componentSize > bb.remaining()) {
+            fail(bb, DecodeError.TRUNCATED);
+            return;
+        }
+
+        int count = (int) elements;
+        int width = (int) components;
+
+        if (bulkIds.length < count) {
+            bulkIds = new String[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            bulkIds[i] = decodeIdentifier(bb);
+        }
+
+        int length = count * width;
+
+        if (error != null || (long) length * componentSize > bb.remaining()) {
+            fail(bb, DecodeError.TRUNCATED);
+            return;
+        }
+
+        if (componentSize == 8) {
+            if (bulkDoubles.length < length) {
+                bulkDoubles = new double[length];
+            }
+
+            bb.asDoubleBuffer().get(bulkDoubles, 0, length);
+            bb.position(bb.position() + 8 * length);
+
+            for (NetStreamBulkSink sink : bulkSinks) {
+                if (edges) {
+                    sink.edgeAttributesChanged(sourceId, timeId, attrId, bulkIds, count, bulkDoubles, width);
+                } else {
+                    sink.nodeAttributesChanged(sourceId, timeId, attrId, bulkIds, count, bulkDoubles, width);
+                }
+            }
+        } else {
+            if (bulkFloats.length < length) {
+                bulkFloats = new float[length];
+            }
+
+            bb.asFloatBuffer().get(bulkFloats, 0, length);
+            bb.position(bb.position() + 4 * length);
+
+            for (NetStreamBulkSink sink : bulkSinks) {
+                if (edges) {
+                    sink.edgeAttributesChanged(sourceId, timeId, attrId, bulkIds, count, bulkFloats, width);
+                } else {
+                    sink.nodeAttributesChanged(sourceId, timeId, attrId, bulkIds, count, bulkFloats, width);
+                }
+            }
+        }
+
+        if (attrSinks.size() > 0) {
+            for (int i = 0; i < count; i++) {
+                Object value = getBulkValue(valueType, i, width);
+
+                if (edges) {
+                    sendEdgeAttributeChanged(sourceId, timeId + i, bulkIds[i], attrId, null, value);
+                } else {
+                    sendNodeAttributeChanged(sourceId, timeId + i, bulkIds[i], attrId, null, value);
+                }
             }
-        } catch (BufferUnderflowException e) {
-            LOGGER.warning("bad buffer");
+        }
+
+        for (int i = 0; i < count; i++) {
+            bulkIds[i] = null;
+        }
+    }
+
+    /**
+     * Build the value of one element of the bulk attribute change being decoded.
+     */
+    protected Object getBulkValue(int valueType, int index, int width) {
+        int offset = index * width;
+
+        if (valueType == NetStreamConstants.TYPE_DOUBLE) {
+            return bulkDoubles[index];
+        } else if (valueType == NetStreamConstants.TYPE_FLOAT) {
+            return bulkFloats[index];
+        } else if (valueType == NetStreamConstants.TYPE_DOUBLE_ARRAY) {
+            if (primitiveArrays) {
+                double[] value = new double[width];
+                System.arraycopy(bulkDoubles, offset, value, 0, width);
+                return value;
+            }
+
+            Double[] value = new Double[width];
+
+            for (int j = 0; j < width; j++) {
+                value[j] = bulkDoubles[offset + j];
+            }
+
+            return value;
+        } else {
+            if (primitiveArrays) {
+                float[] value = new float[width];
+                System.arraycopy(bulkFloats, offset, value, 0, width);
+                return value;
+            }
+
+            Float[] value = new Float[width];
+
+            for (int j = 0; j < width; j++) {
+                value[j] = bulkFloats[offset + j];
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * @see NetStreamExtendedConstants#EVENT_STREAM_HEADER
+     */
+    protected void serve_EVENT_STREAM_HEADER(ByteBuffer bb) {
+        if (debug) {
+            LOGGER.info("NetStreamServer: Received EVENT_STREAM_HEADER command.");
+        }
+
+        String sourceId = readString(bb);
+        long timeId = readVarint(bb);
+
+        if (error != null) {
+            return;
+        }
+
+        streamSourceId = sourceId;
+        streamTimeId = timeId;
+    }
+
+    /**
+     * @see NetStreamExtendedConstants#EVENT_DICTIONARY
+     */
+    protected void serve_EVENT_DICTIONARY(ByteBuffer bb) {
+        if (debug) {
+            LOGGER.info("NetStreamServer: Received EVENT_DICTIONARY command.");
+        }
+
+        long count = readVarint(bb);
+
+        // each entry takes at least one byte
+        if (count > bb.remaining()) {
+            fail(bb, DecodeError.TRUNCATED);
+            return;
+        }
+
+        String[] entries = new String[(int) count];
+
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = readString(bb);
+        }
+
+        if (error != null) {
+            return;
+        }
+
+        dictionary.clear();
+
+        for (String entry : entries) {
+            dictionary.define(entry);
         }
     }
 
@@ -101,12 +1195,20 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received DEL_EDGE_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String edgeId = decodeString(bb);
-        String attrId = decodeString(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String edgeId = decodeIdentifier(bb);
+        String attrId = decodeIdentifier(bb);
+
+        if (error != null) {
+            return;
+        }
+
+        removeQuantizedState(NetStreamQuantizedState.EDGE, edgeId, attrId);
 
-        sendEdgeAttributeRemoved(sourceId, timeId, edgeId, attrId);
+        if (isAccepted(ElementType.EDGE, attrId)) {
+            sendEdgeAttributeRemoved(sourceId, timeId, edgeId, attrId);
+        }
     }
 
     /**
@@ -116,14 +1218,22 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received CHG_EDGE_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String edgeId = decodeString(bb);
-        String attrId = decodeString(bb);
-        int oldValueType = decodeType(bb);
-        Object oldValue = decodeValue(bb, oldValueType);
-        int newValueType = decodeType(bb);
-        Object newValue = decodeValue(bb, newValueType);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String edgeId = decodeIdentifier(bb);
+        String attrId = decodeIdentifier(bb);
+
+        if (error == null && !isAccepted(ElementType.EDGE, attrId)) {
+            skipAttributeValue(bb, NetStreamQuantizedState.EDGE, edgeId, attrId, true);
+            return;
+        }
+
+        Object oldValue = decodeTypedValue(bb);
+        Object newValue = decodeAttributeValue(bb, NetStreamQuantizedState.EDGE, edgeId, attrId);
+
+        if (error != null) {
+            return;
+        }
 
         sendEdgeAttributeChanged(sourceId, timeId, edgeId, attrId,
                 oldValue, newValue);
@@ -137,11 +1247,21 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received ADD_EDGE_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String edgeId = decodeString(bb);
-        String attrId = decodeString(bb);
-        Object value = decodeValue(bb, decodeType(bb));
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String edgeId = decodeIdentifier(bb);
+        String attrId = decodeIdentifier(bb);
+
+        if (error == null && !isAccepted(ElementType.EDGE, attrId)) {
+            skipAttributeValue(bb, NetStreamQuantizedState.EDGE, edgeId, attrId, false);
+            return;
+        }
+
+        Object value = decodeAttributeValue(bb, NetStreamQuantizedState.EDGE, edgeId, attrId);
+
+        if (error != null) {
+            return;
+        }
 
         sendEdgeAttributeAdded(sourceId, timeId, edgeId, attrId,
                 value);
@@ -155,12 +1275,20 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received DEL_NODE_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String nodeId = decodeString(bb);
-        String attrId = decodeString(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String nodeId = decodeIdentifier(bb);
+        String attrId = decodeIdentifier(bb);
 
-        sendNodeAttributeRemoved(sourceId, timeId, nodeId, attrId);
+        if (error != null) {
+            return;
+        }
+
+        removeQuantizedState(NetStreamQuantizedState.NODE, nodeId, attrId);
+
+        if (isAccepted(ElementType.NODE, attrId)) {
+            sendNodeAttributeRemoved(sourceId, timeId, nodeId, attrId);
+        }
 
     }
 
@@ -171,14 +1299,22 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received EVENT_CHG_NODE_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String nodeId = decodeString(bb);
-        String attrId = decodeString(bb);
-        int oldValueType = decodeType(bb);
-        Object oldValue = decodeValue(bb, oldValueType);
-        int newValueType = decodeType(bb);
-        Object newValue = decodeValue(bb, newValueType);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String nodeId = decodeIdentifier(bb);
+        String attrId = decodeIdentifier(bb);
+
+        if (error == null && !isAccepted(ElementType.NODE, attrId)) {
+            skipAttributeValue(bb, NetStreamQuantizedState.NODE, nodeId, attrId, true);
+            return;
+        }
+
+        Object oldValue = decodeTypedValue(bb);
+        Object newValue = decodeAttributeValue(bb, NetStreamQuantizedState.NODE, nodeId, attrId);
+
+        if (error != null) {
+            return;
+        }
 
         sendNodeAttributeChanged(sourceId, timeId, nodeId, attrId,
                 oldValue, newValue);
@@ -191,11 +1327,21 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received EVENT_ADD_NODE_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String nodeId = decodeString(bb);
-        String attrId = decodeString(bb);
-        Object value = decodeValue(bb, decodeType(bb));
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String nodeId = decodeIdentifier(bb);
+        String attrId = decodeIdentifier(bb);
+
+        if (error == null && !isAccepted(ElementType.NODE, attrId)) {
+            skipAttributeValue(bb, NetStreamQuantizedState.NODE, nodeId, attrId, false);
+            return;
+        }
+
+        Object value = decodeAttributeValue(bb, NetStreamQuantizedState.NODE, nodeId, attrId);
+
+        if (error != null) {
+            return;
+        }
 
         sendNodeAttributeAdded(sourceId, timeId, nodeId, attrId,
                 value);
@@ -208,11 +1354,19 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received EVENT_DEL_GRAPH_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String attrId = decodeString(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String attrId = decodeIdentifier(bb);
 
-        sendGraphAttributeRemoved(sourceId, timeId, attrId);
+        if (error != null) {
+            return;
+        }
+
+        removeQuantizedState(NetStreamQuantizedState.GRAPH, null, attrId);
+
+        if (isAccepted(ElementType.GRAPH, attrId)) {
+            sendGraphAttributeRemoved(sourceId, timeId, attrId);
+        }
     }
 
     /**
@@ -222,13 +1376,21 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received EVENT_CHG_GRAPH_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String attrId = decodeString(bb);
-        int oldValueType = decodeType(bb);
-        Object oldValue = decodeValue(bb, oldValueType);
-        int newValueType = decodeType(bb);
-        Object newValue = decodeValue(bb, newValueType);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String attrId = decodeIdentifier(bb);
+
+        if (error == null && !isAccepted(ElementType.GRAPH, attrId)) {
+            skipAttributeValue(bb, NetStreamQuantizedState.GRAPH, null, attrId, true);
+            return;
+        }
+
+        Object oldValue = decodeTypedValue(bb);
+        Object newValue = decodeAttributeValue(bb, NetStreamQuantizedState.GRAPH, null, attrId);
+
+        if (error != null) {
+            return;
+        }
 
         sendGraphAttributeChanged(sourceId, timeId, attrId, oldValue,
                 newValue);
@@ -241,13 +1403,23 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received EVENT_ADD_GRAPH_ATTR command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String attrId = decodeString(bb);
-        Object value = decodeValue(bb, decodeType(bb));
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String attrId = decodeIdentifier(bb);
+
+        if (error == null && !isAccepted(ElementType.GRAPH, attrId)) {
+            skipAttributeValue(bb, NetStreamQuantizedState.GRAPH, null, attrId, false);
+            return;
+        }
+
+        Object value = decodeAttributeValue(bb, NetStreamQuantizedState.GRAPH, null, attrId);
+
+        if (error != null) {
+            return;
+        }
+
         if (debug) {
-            LOGGER.info(String.format("NetStreamServer | EVENT_ADD_GRAPH_ATTR | %s=%s", attrId,
-                    value.toString()));
+            LOGGER.info(String.format("NetStreamServer | EVENT_ADD_GRAPH_ATTR | %s=%s", attrId, value));
         }
 
         sendGraphAttributeAdded(sourceId, timeId, attrId, value);
@@ -260,8 +1432,16 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received EVENT_CLEARED command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+
+        if (error != null) {
+            return;
+        }
+
+        for (NetStreamQuantizedState state : quantizedStates.values()) {
+            state.clear();
+        }
 
         sendGraphCleared(sourceId, timeId);
     }
@@ -273,9 +1453,13 @@ public class NetStreamDecoder2 extends SourceBase {
         if (debug) {
             LOGGER.info("NetStreamServer: Received EVENT_STEP command.");
         }
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        double time = decodeDouble(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        double time = readDouble(bb);
+
+        if (error != null) {
+            return;
+        }
 
         sendStepBegins(sourceId, timeId, time);
     }
@@ -288,10 +1472,15 @@ public class NetStreamDecoder2 extends SourceBase {
             LOGGER.info("NetStreamServer: Received EVENT_DEL_EDGE command.");
         }
 
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String edgeId = decodeString(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String edgeId = decodeIdentifier(bb);
+
+        if (error != null) {
+            return;
+        }
 
+        removeQuantizedState(NetStreamQuantizedState.EDGE, edgeId, null);
         sendEdgeRemoved(sourceId, timeId, edgeId);
     }
 
@@ -303,12 +1492,16 @@ public class NetStreamDecoder2 extends SourceBase {
             LOGGER.info("NetStreamServer: Received ADD_EDGE command.");
         }
 
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String edgeId = decodeString(bb);
-        String from = decodeString(bb);
-        String to = decodeString(bb);
-        boolean directed = decodeBoolean(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String edgeId = decodeIdentifier(bb);
+        String from = decodeIdentifier(bb);
+        String to = decodeIdentifier(bb);
+        boolean directed = readByte(bb) != 0;
+
+        if (error != null) {
+            return;
+        }
 
         sendEdgeAdded(sourceId, timeId, edgeId, from, to, directed);
     }
@@ -321,10 +1514,15 @@ public class NetStreamDecoder2 extends SourceBase {
             LOGGER.info("NetStreamServer: Received DEL_NODE command.");
         }
 
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String nodeId = decodeString(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String nodeId = decodeIdentifier(bb);
 
+        if (error != null) {
+            return;
+        }
+
+        removeQuantizedState(NetStreamQuantizedState.NODE, nodeId, null);
         sendNodeRemoved(sourceId, timeId, nodeId);
     }
 
@@ -336,9 +1534,13 @@ public class NetStreamDecoder2 extends SourceBase {
             LOGGER.info("NetStreamServer: Received EVENT_ADD_NODE command");
         }
 
-        String sourceId = decodeString(bb);
-        long timeId = decodeUnsignedVarint(bb);
-        String nodeId = decodeString(bb);
+        String sourceId = decodeSourceId(bb);
+        long timeId = decodeTimeId(bb);
+        String nodeId = decodeIdentifier(bb);
+
+        if (error != null) {
+            return;
+        }
 
         sendNodeAdded(sourceId, timeId, nodeId);
     }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static org.graphstream.stream.netstream.NetStreamUtils.*;
+
+/**
+ * Mapping between identifiers and the handles used to refer to them on the wire
+ * when dictionary-coding is enabled.
+ * <p>
+ * The encoder side is written by the thread feeding the encoder but may be
+ * read by the server to bring new connections up to date, so access is
+ * synchronized.
+ *
+ * @see NetStreamExtendedConstants#EVENT_FLAG_DICTIONARY
+ * @since 17/10/26.
+ */
+public class NetStreamDictionary {
+    /**
+     * Default maximum number of entries.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    protected final HashMap<String, Integer> handles;
+    protected final ArrayList<String> entries;
+    protected int maxSize;
+
+    public NetStreamDictionary() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public NetStreamDictionary(int maxSize) {
+        this.handles = new HashMap<String, Integer>();
+        this.entries = new ArrayList<String>();
+        this.maxSize = maxSize;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param identifier the identifier
+     * @return the handle of the identifier, or -1 if it has no entry
+     */
+    public synchronized int getHandle(String identifier) {
+        Integer h = handles.get(identifier);
+        return h == null ? -1 : h;
+    }
+
+    /**
+     * Create a new entry.
+     *
+     * @param identifier the identifier, which must not have an entry
+     * @return the handle of the new entry
+     */
+    public synchronized int define(String identifier) {
+        int h = entries.size();
+
+        entries.add(identifier);
+        handles.put(identifier, h);
+
+        return h;
+    }
+
+    /**
+     * Set an entry, as told by the sender.
+     *
+     * @param handle     the handle of the entry
+     * @param identifier its value
+     */
+    public synchronized void set(int handle, String identifier) {
+        while (entries.size() <= handle) {
+            entries.add(null);
+        }
+
+        String old = entries.set(handle, identifier);
+
+        if (old != null) {
+            handles.remove(old);
+        }
+
+        handles.put(identifier, handle);
+    }
+
+    /**
+     * @param handle the handle
+     * @return the identifier, or null if the handle is unknown
+     */
+    public synchronized String get(int handle) {
+        return handle >= 0 && handle < entries.size() ? entries.get(handle) : null;
+    }
+
+    /**
+     * @return true if there is not enough room left for all the identifiers of
+     * one event
+     */
+    public synchronized boolean isFull() {
+        return entries.size() > maxSize - 4;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        handles.clear();
+    }
+
+    /**
+     * Encode the content of the dictionary as the payload of a
+     * {@link NetStreamExtendedConstants#EVENT_DICTIONARY} event.
+     *
+     * @return a buffer holding the entry count followed by the entries
+     */
+    public synchronized ByteBuffer encode() {
+        int size = getVarintSize(entries.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            size += getStringSize(entries.get(i));
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        putUnsignedVarint(bb, entries.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            putString(bb, entries.get(i));
+        }
+
+        bb.rewind();
+        return bb;
+    }
+
+    /**
+     * Replace the content of the dictionary by an encoded one.
+     *
+     * @param bb a buffer as produced by {@link #encode()}
+     */
+    public synchronized void decode(ByteBuffer bb) {
+        int count = (int) decodeUnsignedVarint(bb);
+
+        clear();
+
+        for (int i = 0; i < count; i++) {
+            define(decodeString(bb));
+        }
+    }
+}
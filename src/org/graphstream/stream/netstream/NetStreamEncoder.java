@@ -35,42 +35,336 @@ import org.graphstream.stream.Sink;
 
 import static org.graphstream.stream.netstream.NetStreamUtils.*;
 
+import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
+ * Encode graph events in the NetStream format and give them to a transport.
+ * <p>
+ * Each message is written in a single pass into a buffer owned by the encoder,
+ * so, like any sink, an encoder must be fed by a single thread. By default, the
+ * transport receives a copy of this buffer. When buffer reuse is enabled, the
+ * transport receives the internal buffer itself, which avoids any allocation
+ * but is only valid until {@link NetStreamTransport#send(ByteBuffer)} returns.
+ * <p>
+ * When dictionary-coding is enabled, identifiers are sent in full the first time
+ * only and then referred to by a handle. Receivers joining the stream later must
+ * be given the current dictionary first, see {@link #encodeDictionary()}.
+ * <p>
+ * Numeric attributes can be quantized to a fixed number of decimals and sent as
+ * differences with the last value sent for the same element, see
+ * {@link #setNumericEncoding(String, int, boolean)}.
+ * <p>
+ * In compact mode, the stream and the source id are declared once by a stream
+ * header and events only carry the difference with the previous time id. New
+ * receivers must be given the current header first, see
+ * {@link #encodeStreamHeader()}.
+ *
  * @since 22/01/16.
  */
-public class NetStreamEncoder implements Sink {
+public class NetStreamEncoder implements Sink, NetStreamBulkSink {
     private static final Logger LOGGER = Logger.getLogger(NetStreamEncoder.class.getName());
 
+    /**
+     * Initial capacity of the buffer in which messages are built.
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 256;
+
     protected NetStreamTransport transport;
     protected String sourceId;
     protected ByteBuffer sourceIdBuff;
     protected ByteBuffer streamBuffer;
 
+    /**
+     * Buffer in which the current message is built. It grows when a message
+     * does not fit in.
+     */
+    protected ByteBuffer buffer;
+
+    /**
+     * If true, the internal buffer is given to the transport instead of a copy.
+     */
+    protected boolean reuseBuffer;
+
+    /**
+     * Dictionary used to code identifiers, null if dictionary-coding is disabled.
+     */
+    protected NetStreamDictionary dictionary;
+
+    /**
+     * Cache of encoded identifiers, null if disabled, which is the default.
+     */
+    protected NetStreamIdentifierCache identifierCache;
+
+    /**
+     * Encoding of the numeric attributes, by attribute name.
+     */
+    protected HashMap<String, NumericEncoding> numericEncodings = new HashMap<String, NumericEncoding>();
+
+    /**
+     * Set by {@link #resetNumericEncoding()}, possibly from another thread.
+     */
+    protected volatile boolean numericResetRequested;
+
+    /**
+     * Quantized items of the value being encoded.
+     */
+    protected long[] quantized = new long[16];
+
+    /**
+     * True if events are sent as compact messages.
+     */
+    protected boolean compactHeader;
+
+    /**
+     * True if the current message is a compact message.
+     */
+    protected boolean compactMessage;
+
+    /**
+     * Source id and time id of the last compact message, read by
+     * {@link #encodeStreamHeader()} from other threads. The version is odd
+     * while both are changed, so that they are read as a pair.
+     */
+    protected volatile String headerSourceId;
+    protected volatile long headerTimeId;
+    protected volatile int headerVersion;
+
     public NetStreamEncoder(String stream, NetStreamTransport transport) {
         this.transport = transport;
         streamBuffer = encodeString(stream);
+        buffer = ByteBuffer.allocate(DEFAULT_BUFFER_CAPACITY);
+        reuseBuffer = false;
+    }
+
+    /**
+     * Enable or disable the reuse of the internal buffer. When enabled, the
+     * transport must have consumed the buffer before returning from
+     * {@link NetStreamTransport#send(ByteBuffer)}.
+     *
+     * @param on true to give the internal buffer to the transport
+     */
+    public void setBufferReuse(boolean on) {
+        reuseBuffer = on;
+    }
+
+    public boolean isBufferReuse() {
+        return reuseBuffer;
+    }
+
+    /**
+     * Enable or disable dictionary-coding of identifiers. This should be done
+     * before the first event is sent.
+     *
+     * @param on true to code identifiers with a dictionary
+     */
+    public void setDictionaryEnabled(boolean on) {
+        dictionary = on ? new NetStreamDictionary() : null;
+    }
+
+    public boolean isDictionaryEnabled() {
+        return dictionary != null;
+    }
+
+    public NetStreamDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Set the number of encoded identifiers kept by the encoder. Identifiers
+     * are not cached when dictionary-coding is enabled, since each of them is
+     * then sent in full only once. The cache is disabled by default: it only
+     * pays off when the same identifiers are sent again and again, each miss
+     * allocating an entry.
+     *
+     * @param capacity the maximum number of cached identifiers, 0 to disable
+     *                 the cache
+     */
+    public void setIdentifierCacheSize(int capacity) {
+        identifierCache = capacity > 0 ? new NetStreamIdentifierCache(capacity) : null;
+    }
+
+    public int getIdentifierCacheSize() {
+        return identifierCache == null ? 0 : identifierCache.getCapacity();
+    }
+
+    /**
+     * @return the cache of encoded identifiers, to read its counters, or null
+     * if it is disabled
+     */
+    public NetStreamIdentifierCache getIdentifierCache() {
+        return identifierCache;
+    }
+
+    /**
+     * Enable or disable compact messages, see
+     * {@link NetStreamExtendedConstants#MESSAGE_FLAG_COMPACT}. This should be
+     * done before the first event is sent.
+     *
+     * @param on true to send compact messages
+     */
+    public void setCompactHeader(boolean on) {
+        compactHeader = on;
+        headerSourceId = null;
+    }
+
+    public boolean isCompactHeader() {
+        return compactHeader;
+    }
+
+    /**
+     * Build a complete {@link NetStreamExtendedConstants#EVENT_STREAM_HEADER}
+     * message giving the current source id and time id. This can be called from
+     * any thread, for example to bring a new receiver up to date; the source id
+     * and the time id always match, but the header matches the next compact
+     * message only if no event is being encoded meanwhile.
+     *
+     * @return the message, or null if no compact message has been sent
+     */
+    public ByteBuffer encodeStreamHeader() {
+        String source;
+        long timeId;
+        int version;
+
+        do {
+            version = headerVersion;
+            source = headerSourceId;
+            timeId = headerTimeId;
+        } while ((version & 1) != 0 || version != headerVersion);
+
+        if (!compactHeader || source == null) {
+            return null;
+        }
+
+        ByteBuffer stream = streamBuffer.duplicate();
+        int sourceLength = getUTF8Length(source);
+        int size = 4 + stream.capacity() + 1 + getVarintSize(sourceLength) + sourceLength + getVarintSize(timeId);
+
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        stream.rewind();
+
+        bb
+                .putInt(size)
+                .put(stream)
+                .put((byte) NetStreamExtendedConstants.EVENT_STREAM_HEADER);
+
+        putString(bb, source, sourceLength);
+        putUnsignedVarint(bb, timeId);
+
+        bb.rewind();
+        return bb;
     }
 
-    protected ByteBuffer getEncodedValue(Object in, int valueType) {
-        ByteBuffer value = encodeValue(in, valueType);
+    /**
+     * Quantize the numeric values of an attribute to a fixed number of
+     * decimals. When `delta` is true, values are sent as differences with the
+     * last value sent for the same element, which needs less bytes for values
+     * changing by small steps such as positions. Old values of changed
+     * attributes are not sent for such an attribute.
+     * <p>
+     * Values which are not numbers or arrays of numbers are sent as usual.
+     *
+     * @param attribute the attribute name
+     * @param decimals  the number of decimals kept, up to
+     *                  {@link NetStreamQuantizedState#MAX_DECIMALS}
+     * @param delta     true to send differences
+     */
+    public void setNumericEncoding(String attribute, int decimals, boolean delta) {
+        numericEncodings.put(attribute, new NumericEncoding(decimals, delta));
+    }
+
+    public void removeNumericEncoding(String attribute) {
+        numericEncodings.remove(attribute);
+    }
+
+    /**
+     * Use the numeric encodings of another encoder, for example when it is
+     * replaced. The last values it has sent are not copied, so the next value
+     * of each element is sent in full.
+     *
+     * @param other the encoder whose numeric encodings are copied
+     */
+    public void copyNumericEncodings(NetStreamEncoder other) {
+        numericEncodings.clear();
 
-        if (value == null) {
-            LOGGER.warning(String.format("unknown value type %d\n", valueType));
+        for (Map.Entry<String, NumericEncoding> e : other.numericEncodings.entrySet()) {
+            setNumericEncoding(e.getKey(), e.getValue().decimals, e.getValue().delta);
         }
+    }
 
-        return value;
+    /**
+     * Send the next value of each element in full, for example because a new
+     * receiver has joined the stream. This can be called from any thread.
+     */
+    public void resetNumericEncoding() {
+        numericResetRequested = true;
     }
 
+    /**
+     * Build a complete {@link NetStreamExtendedConstants#EVENT_DICTIONARY}
+     * message with the current content of the dictionary. This can be called
+     * from any thread, for example to bring a new receiver up to date.
+     *
+     * @return the message, or null if dictionary-coding is disabled
+     */
+    public ByteBuffer encodeDictionary() {
+        NetStreamDictionary dict = dictionary;
+
+        if (dict == null) {
+            return null;
+        }
+
+        ByteBuffer stream = streamBuffer.duplicate();
+        ByteBuffer entries = dict.encode();
+        int size = 4 + stream.capacity() + 1 + entries.capacity();
+
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        stream.rewind();
+
+        bb
+                .putInt(size)
+                .put(stream)
+                .put((byte) NetStreamExtendedConstants.EVENT_DICTIONARY)
+                .put(entries);
 
-    protected void doSend(ByteBuffer event) {
-        event.rewind();
-        transport.send(event);
+        bb.rewind();
+        return bb;
     }
 
-    protected ByteBuffer getAndPrepareBuffer(String sourceId, long timeId, int eventType, int messageSize) {
+    /**
+     * Ensure that at least `size` bytes can be put in the current message.
+     *
+     * @param size the number of bytes needed
+     */
+    protected void ensureCapacity(int size) {
+        if (buffer.remaining() < size) {
+            int capacity = Math.max(buffer.capacity() << 1, buffer.position() + size);
+            ByteBuffer bigger = ByteBuffer.allocate(capacity);
+
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+    }
+
+    /**
+     * Start a new message, writing its header. The size of the message is
+     * written by {@link #endEvent()}.
+     */
+    protected void beginEvent(String sourceId, long timeId, int eventType) {
+        if (compactHeader) {
+            beginCompactEvent(sourceId, timeId, eventType);
+            return;
+        }
+
+        if (dictionary != null) {
+            beginDictionaryEvent(sourceId, timeId, eventType);
+            return;
+        }
+
         if (!sourceId.equals(this.sourceId)) {
             this.sourceId = sourceId;
             sourceIdBuff = encodeString(sourceId);
@@ -79,22 +373,381 @@ public class NetStreamEncoder implements Sink {
         streamBuffer.rewind();
         sourceIdBuff.rewind();
 
-        int size = 4 +
+        buffer.clear();
+        ensureCapacity(4
                 + streamBuffer.capacity() // stream
                 + 1 // CMD
                 + sourceIdBuff.capacity() // source id
-                + getVarintSize(timeId) // timeId
-                + messageSize;
+                + getVarintSize(timeId)); // timeId
 
-        ByteBuffer bb = ByteBuffer.allocate(size);
-        bb
-                .putInt(size)
+        buffer
+                .putInt(0)
                 .put(streamBuffer)
                 .put((byte) eventType)
-                .put(sourceIdBuff)
-                .put(encodeUnsignedVarint(timeId));
+                .put(sourceIdBuff);
 
-        return bb;
+        putUnsignedVarint(buffer, timeId);
+    }
+
+    /**
+     * Same as {@link #beginEvent(String, long, int)}, with dictionary-coding.
+     * If the dictionary is full, it is cleared and receivers are told so before
+     * the new message is started.
+     */
+    protected void beginDictionaryEvent(String sourceId, long timeId, int eventType) {
+        if (dictionary.isFull()) {
+            resetDictionary();
+        }
+
+        streamBuffer.rewind();
+
+        buffer.clear();
+        ensureCapacity(4
+                + streamBuffer.capacity() // stream
+                + 1); // CMD
+
+        buffer
+                .putInt(0)
+                .put(streamBuffer)
+                .put((byte) (eventType | NetStreamExtendedConstants.EVENT_FLAG_DICTIONARY));
+
+        putIdentifier(sourceId);
+
+        ensureCapacity(getVarintSize(timeId));
+        putUnsignedVarint(buffer, timeId);
+    }
+
+    /**
+     * Same as {@link #beginEvent(String, long, int)}, with a compact message.
+     * A stream header is sent first if the source id has changed.
+     */
+    protected void beginCompactEvent(String sourceId, long timeId, int eventType) {
+        if (dictionary != null && dictionary.isFull()) {
+            resetDictionary();
+        }
+
+        if (!sourceId.equals(headerSourceId)) {
+            sendStreamHeader(sourceId, timeId);
+        }
+
+        long delta = timeId - headerTimeId;
+        headerTimeId = timeId;
+
+        buffer.clear();
+        ensureCapacity(4 + 1 + getVarintSize(zigzag(delta)));
+
+        buffer
+                .putInt(0)
+                .put((byte) (dictionary == null ? eventType : eventType | NetStreamExtendedConstants.EVENT_FLAG_DICTIONARY));
+
+        putSignedVarint(buffer, delta);
+        compactMessage = true;
+    }
+
+    /**
+     * Declare the source id and the time id of the next compact messages.
+     */
+    protected void sendStreamHeader(String sourceId, long timeId) {
+        // only the thread encoding the events changes the header
+        headerVersion++;
+        headerSourceId = sourceId;
+        headerTimeId = timeId;
+        headerVersion++;
+
+        streamBuffer.rewind();
+
+        buffer.clear();
+        ensureCapacity(4 + streamBuffer.capacity() + 1);
+
+        buffer
+                .putInt(0)
+                .put(streamBuffer)
+                .put((byte) NetStreamExtendedConstants.EVENT_STREAM_HEADER);
+
+        int len = getUTF8Length(sourceId);
+
+        ensureCapacity(getVarintSize(len) + len + getVarintSize(timeId));
+        putString(buffer, sourceId, len);
+        putUnsignedVarint(buffer, timeId);
+
+        endEvent();
+    }
+
+    /**
+     * Clear the dictionary and tell the receivers to do the same.
+     */
+    protected void resetDictionary() {
+        dictionary.clear();
+        streamBuffer.rewind();
+
+        buffer.clear();
+        ensureCapacity(4 + streamBuffer.capacity() + 1 + 1);
+
+        buffer
+                .putInt(0)
+                .put(streamBuffer)
+                .put((byte) NetStreamExtendedConstants.EVENT_DICTIONARY);
+
+        putUnsignedVarint(buffer, 0);
+        endEvent();
+    }
+
+    protected void putIdentifier(String id) {
+        if (dictionary != null) {
+            int h = dictionary.getHandle(id);
+
+            if (h >= 0) {
+                long ref = ((long) h << 1) | 1;
+
+                ensureCapacity(getVarintSize(ref));
+                putUnsignedVarint(buffer, ref);
+
+                return;
+            }
+
+            long def = (long) dictionary.define(id) << 1;
+
+            ensureCapacity(getVarintSize(def));
+            putUnsignedVarint(buffer, def);
+        } else if (identifierCache != null) {
+            byte[] encoded = identifierCache.get(id);
+
+            ensureCapacity(encoded.length);
+            buffer.put(encoded);
+
+            return;
+        }
+
+        int len = getUTF8Length(id);
+
+        ensureCapacity(getVarintSize(len) + len);
+        putString(buffer, id, len);
+    }
+
+    /**
+     * Put the type of a value followed by the value.
+     *
+     * @param value the value
+     * @return false if the value can not be encoded
+     */
+    protected boolean putTypedValue(Object value) {
+        int valueType = getType(value);
+        int size = getValueSize(value, valueType);
+
+        if (size < 0) {
+            LOGGER.warning(String.format("no codec for values of %s", value.getClass().getName()));
+            return false;
+        }
+
+        ensureCapacity(1 + size);
+        buffer.put((byte) valueType);
+        putValue(buffer, value, valueType);
+
+        return true;
+    }
+
+    /**
+     * Put the value of an attribute, quantized if the attribute has a numeric
+     * encoding.
+     *
+     * @param kind    the kind of element, as in {@link NetStreamQuantizedState}
+     * @param element the element id
+     * @param attribute the attribute name
+     * @param value   the value
+     * @return false if the value can not be encoded
+     */
+    protected boolean putAttributeValue(int kind, String element, String attribute, Object value) {
+        NumericEncoding encoding = numericEncodings.isEmpty() ? null : numericEncodings.get(attribute);
+
+        if (encoding == null) {
+            return putTypedValue(value);
+        }
+
+        if (numericResetRequested) {
+            numericResetRequested = false;
+
+            for (NumericEncoding e : numericEncodings.values()) {
+                e.state.clear();
+            }
+        }
+
+        boolean array = value != null && value.getClass().isArray();
+        int length = array ? quantizeArray(value, encoding.scale) : quantizeNumber(value, encoding.scale);
+
+        if (length < 0) {
+            encoding.state.remove(kind, element);
+            return putTypedValue(value);
+        }
+
+        long[] last = encoding.state.get(kind, element);
+        boolean delta = encoding.delta && last != null && last.length == length;
+        int valueType;
+
+        if (array) {
+            valueType = delta ? NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA_ARRAY
+                    : NetStreamExtendedConstants.TYPE_QUANTIZED_ARRAY;
+        } else {
+            valueType = delta ? NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA
+                    : NetStreamExtendedConstants.TYPE_QUANTIZED;
+        }
+
+        ensureCapacity(2 + getVarintSize(length) + 10 * length);
+
+        buffer.put((byte) valueType);
+        buffer.put((byte) encoding.decimals);
+
+        if (array) {
+            putUnsignedVarint(buffer, length);
+        }
+
+        if (delta) {
+            for (int i = 0; i < length; i++) {
+                putSignedVarint(buffer, quantized[i] - last[i]);
+            }
+        } else {
+            putSignedVarints(buffer, quantized, 0, length);
+        }
+
+        if (encoding.delta) {
+            if (last == null || last.length != length) {
+                last = new long[length];
+                encoding.state.put(kind, element, last);
+            }
+
+            System.arraycopy(quantized, 0, last, 0, length);
+        }
+
+        return true;
+    }
+
+    /**
+     * Put the old value of a changed attribute, or null if the attribute has a
+     * numeric encoding.
+     */
+    protected boolean putOldAttributeValue(String attribute, Object value) {
+        if (!numericEncodings.isEmpty() && numericEncodings.containsKey(attribute)) {
+            ensureCapacity(1);
+            buffer.put((byte) NetStreamConstants.TYPE_NULL);
+
+            return true;
+        }
+
+        return putTypedValue(value);
+    }
+
+    /**
+     * Quantize a number in {@link #quantized}.
+     *
+     * @return 1, or -1 if the value can not be quantized
+     */
+    protected int quantizeNumber(Object value, double scale) {
+        if (!(value instanceof Number)) {
+            return -1;
+        }
+
+        return quantize(0, ((Number) value).doubleValue(), scale) ? 1 : -1;
+    }
+
+    /**
+     * Quantize an array of numbers in {@link #quantized}.
+     *
+     * @return the length of the array, or -1 if the value can not be quantized
+     */
+    protected int quantizeArray(Object value, double scale) {
+        int length = Array.getLength(value);
+
+        if (quantized.length < length) {
+            quantized = new long[Math.max(length, quantized.length << 1)];
+        }
+
+        if (value instanceof double[]) {
+            double[] a = (double[]) value;
+
+            for (int i = 0; i < length; i++) {
+                if (!quantize(i, a[i], scale)) {
+                    return -1;
+                }
+            }
+        } else if (value instanceof float[]) {
+            float[] a = (float[]) value;
+
+            for (int i = 0; i < length; i++) {
+                if (!quantize(i, a[i], scale)) {
+                    return -1;
+                }
+            }
+        } else if (value instanceof Object[]) {
+            Object[] a = (Object[]) value;
+
+            for (int i = 0; i < length; i++) {
+                if (!(a[i] instanceof Number) || !quantize(i, ((Number) a[i]).doubleValue(), scale)) {
+                    return -1;
+                }
+            }
+        } else {
+            return -1;
+        }
+
+        return length;
+    }
+
+    private boolean quantize(int index, double value, double scale) {
+        double q = value * scale;
+
+        if (Double.isNaN(q) || Math.abs(q) >= NetStreamQuantizedState.MAX_QUANTIZED) {
+            return false;
+        }
+
+        quantized[index] = Math.round(q);
+        return true;
+    }
+
+    /**
+     * Forget the last values sent for an element.
+     */
+    protected void removeNumericState(int kind, String element) {
+        if (!numericEncodings.isEmpty()) {
+            for (NumericEncoding encoding : numericEncodings.values()) {
+                encoding.state.remove(kind, element);
+            }
+        }
+    }
+
+    /**
+     * Drop the current message. Identifiers it has defined are unknown to the
+     * receivers, so the dictionary has to be reset. Likewise, the time id of a
+     * compact message is lost, so a new stream header has to be sent.
+     */
+    protected void abortEvent() {
+        if (compactMessage) {
+            compactMessage = false;
+            headerSourceId = null;
+        }
+
+        if (dictionary != null) {
+            resetDictionary();
+        }
+    }
+
+    /**
+     * Complete the current message and send it.
+     */
+    protected void endEvent() {
+        int size = buffer.position();
+
+        buffer.putInt(0, compactMessage ? size | NetStreamExtendedConstants.MESSAGE_FLAG_COMPACT : size);
+        buffer.flip();
+        compactMessage = false;
+
+        if (reuseBuffer) {
+            transport.send(buffer);
+        } else {
+            ByteBuffer event = ByteBuffer.allocate(buffer.limit());
+            event.put(buffer);
+            event.rewind();
+
+            transport.send(event);
+        }
     }
 
     /*
@@ -106,22 +759,14 @@ public class NetStreamEncoder implements Sink {
      */
     public void graphAttributeAdded(String sourceId, long timeId,
                                     String attribute, Object value) {
-        ByteBuffer attrBuff = encodeString(attribute);
-        int valueType = getType(value);
-        ByteBuffer valueBuff = getEncodedValue(value, valueType);
-
-        int innerSize = attrBuff.capacity() // attribute id
-                + 1 // attr type
-                + valueBuff.capacity();
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_ADD_GRAPH_ATTR, innerSize);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_ADD_GRAPH_ATTR);
+        putIdentifier(attribute);
 
-        buff
-                .put(attrBuff)
-                .put((byte) valueType)
-                .put(valueBuff);
-
-        doSend(buff);
+        if (putAttributeValue(NetStreamQuantizedState.GRAPH, null, attribute, value)) {
+            endEvent();
+        } else {
+            abortEvent();
+        }
     }
 
     /*
@@ -133,30 +778,15 @@ public class NetStreamEncoder implements Sink {
 	 */
     public void graphAttributeChanged(String sourceId, long timeId,
                                       String attribute, Object oldValue, Object newValue) {
-        ByteBuffer attrBuff = encodeString(attribute);
-        int oldValueType = getType(oldValue);
-        int newValueType = getType(newValue);
-
-        ByteBuffer oldValueBuff = getEncodedValue(oldValue, oldValueType);
-        ByteBuffer newValueBuff = getEncodedValue(newValue, newValueType);
-
-        int innerSize = attrBuff.capacity() + // attribute id
-                1 + // attr type
-                oldValueBuff.capacity() + // attr value
-                1 + // attr type
-                newValueBuff.capacity(); // attr value
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_CHG_GRAPH_ATTR, innerSize);
-
-        buff
-                .put(attrBuff)
-                .put((byte) oldValueType)
-                .put(oldValueBuff)
-                .put((byte) newValueType)
-                .put(newValueBuff);
-
-        doSend(buff);
-
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_CHG_GRAPH_ATTR);
+        putIdentifier(attribute);
+
+        if (putOldAttributeValue(attribute, oldValue)
+                && putAttributeValue(NetStreamQuantizedState.GRAPH, null, attribute, newValue)) {
+            endEvent();
+        } else {
+            abortEvent();
+        }
     }
 
     /*
@@ -168,15 +798,15 @@ public class NetStreamEncoder implements Sink {
      */
     public void graphAttributeRemoved(String sourceId, long timeId,
                                       String attribute) {
-        ByteBuffer attrBuff = encodeString(attribute);
-
-        int innerSize = attrBuff.capacity();
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_DEL_GRAPH_ATTR, innerSize);
-        buff.put(attrBuff);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_DEL_GRAPH_ATTR);
+        putIdentifier(attribute);
+        endEvent();
 
-        doSend(buff);
+        NumericEncoding encoding = numericEncodings.isEmpty() ? null : numericEncodings.get(attribute);
 
+        if (encoding != null) {
+            encoding.state.remove(NetStreamQuantizedState.GRAPH, null);
+        }
     }
 
     /*
@@ -188,36 +818,15 @@ public class NetStreamEncoder implements Sink {
      */
     public void nodeAttributeAdded(String sourceId, long timeId, String nodeId,
                                    String attribute, Object value) {
-        ByteBuffer nodeBuff = encodeString(nodeId);
-        ByteBuffer attrBuff = encodeString(attribute);
-        int valueType = getType(value);
-        ByteBuffer valueBuff = getEncodedValue(value, valueType);
-
-        if (nodeBuff == null) {
-            LOGGER.warning("nodeBuff is null");
-        }
-        if (attrBuff == null) {
-            LOGGER.warning("attrBuff is null");
-        }
-        if (valueBuff == null) {
-            LOGGER.warning("valueBuff is null");
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_ADD_NODE_ATTR);
+        putIdentifier(nodeId);
+        putIdentifier(attribute);
+
+        if (putAttributeValue(NetStreamQuantizedState.NODE, nodeId, attribute, value)) {
+            endEvent();
+        } else {
+            abortEvent();
         }
-
-        int innerSize = nodeBuff.capacity() + // nodeId
-                attrBuff.capacity() + // attribute
-                1 + // value type
-                valueBuff.capacity();
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_ADD_NODE_ATTR, innerSize);
-
-        buff
-                .put(nodeBuff)
-                .put(attrBuff)
-                .put((byte) valueType)
-                .put(valueBuff);
-
-
-        doSend(buff);
     }
 
     /*
@@ -230,33 +839,16 @@ public class NetStreamEncoder implements Sink {
      */
     public void nodeAttributeChanged(String sourceId, long timeId,
                                      String nodeId, String attribute, Object oldValue, Object newValue) {
-        ByteBuffer nodeBuff = encodeString(nodeId);
-        ByteBuffer attrBuff = encodeString(attribute);
-
-        int oldValueType = getType(oldValue);
-        int newValueType = getType(newValue);
-
-        ByteBuffer oldValueBuff = getEncodedValue(oldValue, oldValueType);
-        ByteBuffer newValueBuff = getEncodedValue(newValue, newValueType);
-
-        int innerSize = nodeBuff.capacity() + // nodeId
-                attrBuff.capacity() + // attribute
-                1 + // value type
-                oldValueBuff.capacity() + // value
-                1 + // value type
-                newValueBuff.capacity();
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_CHG_NODE_ATTR, innerSize);
-
-        buff
-                .put(nodeBuff)
-                .put(attrBuff)
-                .put((byte) oldValueType)
-                .put(oldValueBuff)
-                .put((byte) newValueType)
-                .put(newValueBuff);
-
-        doSend(buff);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_CHG_NODE_ATTR);
+        putIdentifier(nodeId);
+        putIdentifier(attribute);
+
+        if (putOldAttributeValue(attribute, oldValue)
+                && putAttributeValue(NetStreamQuantizedState.NODE, nodeId, attribute, newValue)) {
+            endEvent();
+        } else {
+            abortEvent();
+        }
     }
 
     /*
@@ -268,20 +860,16 @@ public class NetStreamEncoder implements Sink {
      */
     public void nodeAttributeRemoved(String sourceId, long timeId,
                                      String nodeId, String attribute) {
-        ByteBuffer nodeBuff = encodeString(nodeId);
-        ByteBuffer attrBuff = encodeString(attribute);
-
-        int innerSize = nodeBuff.capacity() + // nodeId
-                attrBuff.capacity(); // attribute
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_DEL_NODE_ATTR);
+        putIdentifier(nodeId);
+        putIdentifier(attribute);
+        endEvent();
 
+        NumericEncoding encoding = numericEncodings.isEmpty() ? null : numericEncodings.get(attribute);
 
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_DEL_NODE_ATTR, innerSize);
-
-        buff
-                .put(nodeBuff)
-                .put(attrBuff);
-
-        doSend(buff);
+        if (encoding != null) {
+            encoding.state.remove(NetStreamQuantizedState.NODE, nodeId);
+        }
     }
 
     /*
@@ -293,27 +881,15 @@ public class NetStreamEncoder implements Sink {
      */
     public void edgeAttributeAdded(String sourceId, long timeId, String edgeId,
                                    String attribute, Object value) {
-        ByteBuffer edgeBuff = encodeString(edgeId);
-        ByteBuffer attrBuff = encodeString(attribute);
-
-        int valueType = getType(value);
-
-        ByteBuffer valueBuff = getEncodedValue(value, valueType);
-
-        int innerSize = edgeBuff.capacity() + // nodeId
-                attrBuff.capacity() + // attribute
-                1 + // value type
-                valueBuff.capacity(); // value
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_ADD_EDGE_ATTR, innerSize);
-
-        buff
-                .put(edgeBuff)
-                .put(attrBuff)
-                .put((byte) valueType) // value type
-                .put(valueBuff);
-
-        doSend(buff);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_ADD_EDGE_ATTR);
+        putIdentifier(edgeId);
+        putIdentifier(attribute);
+
+        if (putAttributeValue(NetStreamQuantizedState.EDGE, edgeId, attribute, value)) {
+            endEvent();
+        } else {
+            abortEvent();
+        }
     }
 
     /*
@@ -326,32 +902,16 @@ public class NetStreamEncoder implements Sink {
      */
     public void edgeAttributeChanged(String sourceId, long timeId,
                                      String edgeId, String attribute, Object oldValue, Object newValue) {
-        ByteBuffer edgeBuff = encodeString(edgeId);
-        ByteBuffer attrBuff = encodeString(attribute);
-        int oldValueType = getType(oldValue);
-        int newValueType = getType(newValue);
-
-        ByteBuffer oldValueBuff = getEncodedValue(oldValue, oldValueType);
-        ByteBuffer newValueBuff = getEncodedValue(newValue, newValueType);
-
-        int innerSize = edgeBuff.capacity() + // nodeId
-                attrBuff.capacity() + // attribute
-                1 + // value type
-                oldValueBuff.capacity() + // value
-                1 + // value type
-                newValueBuff.capacity();  // value
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_CHG_EDGE_ATTR, innerSize);
-
-        buff
-                .put(edgeBuff)
-                .put(attrBuff)
-                .put((byte) oldValueType)
-                .put(oldValueBuff)
-                .put((byte) newValueType)
-                .put(newValueBuff);
-
-        doSend(buff);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_CHG_EDGE_ATTR);
+        putIdentifier(edgeId);
+        putIdentifier(attribute);
+
+        if (putOldAttributeValue(attribute, oldValue)
+                && putAttributeValue(NetStreamQuantizedState.EDGE, edgeId, attribute, newValue)) {
+            endEvent();
+        } else {
+            abortEvent();
+        }
     }
 
     /*
@@ -363,20 +923,16 @@ public class NetStreamEncoder implements Sink {
      */
     public void edgeAttributeRemoved(String sourceId, long timeId,
                                      String edgeId, String attribute) {
-        ByteBuffer edgeBuff = encodeString(edgeId);
-        ByteBuffer attrBuff = encodeString(attribute);
-
-        int innerSize = edgeBuff.capacity() + // nodeId
-                attrBuff.capacity(); // attribute
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_DEL_EDGE_ATTR, innerSize);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_DEL_EDGE_ATTR);
+        putIdentifier(edgeId);
+        putIdentifier(attribute);
+        endEvent();
 
-        buff
-                .put(edgeBuff)
-                .put(attrBuff);
+        NumericEncoding encoding = numericEncodings.isEmpty() ? null : numericEncodings.get(attribute);
 
-
-        doSend(buff);
+        if (encoding != null) {
+            encoding.state.remove(NetStreamQuantizedState.EDGE, edgeId);
+        }
     }
 
     /*
@@ -386,14 +942,9 @@ public class NetStreamEncoder implements Sink {
      * java.lang.String)
      */
     public void nodeAdded(String sourceId, long timeId, String nodeId) {
-        ByteBuffer nodeBuff = encodeString(nodeId);
-
-        int innerSize = nodeBuff.capacity();
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_ADD_NODE, innerSize);
-        buff.put(nodeBuff);
-
-        doSend(buff);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_ADD_NODE);
+        putIdentifier(nodeId);
+        endEvent();
     }
 
     /*
@@ -403,14 +954,11 @@ public class NetStreamEncoder implements Sink {
      * long, java.lang.String)
      */
     public void nodeRemoved(String sourceId, long timeId, String nodeId) {
-        ByteBuffer nodeBuff = encodeString(nodeId);
-
-        int innerSize = nodeBuff.capacity();
-
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_DEL_NODE, innerSize);
-        buff.put(nodeBuff);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_DEL_NODE);
+        putIdentifier(nodeId);
+        endEvent();
 
-        doSend(buff);
+        removeNumericState(NetStreamQuantizedState.NODE, nodeId);
     }
 
     /*
@@ -421,24 +969,15 @@ public class NetStreamEncoder implements Sink {
      */
     public void edgeAdded(String sourceId, long timeId, String edgeId,
                           String fromNodeId, String toNodeId, boolean directed) {
-        ByteBuffer edgeBuff = encodeString(edgeId);
-        ByteBuffer fromNodeBuff = encodeString(fromNodeId);
-        ByteBuffer toNodeBuff = encodeString(toNodeId);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_ADD_EDGE);
+        putIdentifier(edgeId);
+        putIdentifier(fromNodeId);
+        putIdentifier(toNodeId);
 
-        int innerSize = edgeBuff.capacity() + // edge
-                fromNodeBuff.capacity() + // from nodeId
-                toNodeBuff.capacity() + // to nodeId
-                1; // direction
+        ensureCapacity(1);
+        buffer.put((byte) (!directed ? 0 : 1));
 
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_ADD_EDGE, innerSize);
-
-        buff
-                .put(edgeBuff)
-                .put(fromNodeBuff)
-                .put(toNodeBuff)
-                .put((byte) (!directed ? 0 : 1));
-
-        doSend(buff);
+        endEvent();
     }
 
     /*
@@ -448,14 +987,11 @@ public class NetStreamEncoder implements Sink {
      * long, java.lang.String)
      */
     public void edgeRemoved(String sourceId, long timeId, String edgeId) {
-        ByteBuffer edgeBuff = encodeString(edgeId);
-
-        int innerSize = edgeBuff.capacity();
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_DEL_EDGE);
+        putIdentifier(edgeId);
+        endEvent();
 
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_DEL_EDGE, innerSize);
-        buff.put(edgeBuff);
-
-        doSend(buff);
+        removeNumericState(NetStreamQuantizedState.EDGE, edgeId);
     }
 
     /*
@@ -465,8 +1001,12 @@ public class NetStreamEncoder implements Sink {
      * long)
      */
     public void graphCleared(String sourceId, long timeId) {
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_CLEARED, 0);
-        doSend(buff);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_CLEARED);
+        endEvent();
+
+        for (NumericEncoding encoding : numericEncodings.values()) {
+            encoding.state.clear();
+        }
     }
 
     /*
@@ -476,9 +1016,120 @@ public class NetStreamEncoder implements Sink {
      * long, double)
      */
     public void stepBegins(String sourceId, long timeId, double step) {
-        ByteBuffer buff = getAndPrepareBuffer(sourceId, timeId, NetStreamConstants.EVENT_STEP, 8);
-        buff.putDouble(step);
+        beginEvent(sourceId, timeId, NetStreamConstants.EVENT_STEP);
+
+        ensureCapacity(8);
+        buffer.putDouble(step);
+
+        endEvent();
+    }
+
+    /**
+     * Put the attribute, the value type, the sizes and the ids of a bulk
+     * attribute change.
+     */
+    protected void putBulkHeader(String attribute, String[] ids, int count, int width, int scalarType, int arrayType) {
+        putIdentifier(attribute);
+
+        ensureCapacity(1 + getVarintSize(count) + getVarintSize(width));
+
+        if (width == 1) {
+            buffer.put((byte) scalarType);
+            putUnsignedVarint(buffer, count);
+        } else {
+            buffer.put((byte) arrayType);
+            putUnsignedVarint(buffer, count);
+            putUnsignedVarint(buffer, width);
+        }
+
+        for (int i = 0; i < count; i++) {
+            putIdentifier(ids[i]);
+        }
+    }
+
+    protected void putBulkValues(double[] values, int length) {
+        ensureCapacity(8 * length);
+
+        buffer.asDoubleBuffer().put(values, 0, length);
+        buffer.position(buffer.position() + 8 * length);
+    }
+
+    protected void putBulkValues(float[] values, int length) {
+        ensureCapacity(4 * length);
+
+        buffer.asFloatBuffer().put(values, 0, length);
+        buffer.position(buffer.position() + 4 * length);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, double[], int)
+     */
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count,
+                                      double[] values, int width) {
+        beginEvent(sourceId, timeId, NetStreamExtendedConstants.EVENT_BULK_NODE_ATTR);
+        putBulkHeader(attribute, nodeIds, count, width, NetStreamConstants.TYPE_DOUBLE, NetStreamConstants.TYPE_DOUBLE_ARRAY);
+        putBulkValues(values, count * width);
+        endEvent();
+    }
 
-        doSend(buff);
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, float[], int)
+     */
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count,
+                                      float[] values, int width) {
+        beginEvent(sourceId, timeId, NetStreamExtendedConstants.EVENT_BULK_NODE_ATTR);
+        putBulkHeader(attribute, nodeIds, count, width, NetStreamConstants.TYPE_FLOAT, NetStreamConstants.TYPE_FLOAT_ARRAY);
+        putBulkValues(values, count * width);
+        endEvent();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, double[], int)
+     */
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count,
+                                      double[] values, int width) {
+        beginEvent(sourceId, timeId, NetStreamExtendedConstants.EVENT_BULK_EDGE_ATTR);
+        putBulkHeader(attribute, edgeIds, count, width, NetStreamConstants.TYPE_DOUBLE, NetStreamConstants.TYPE_DOUBLE_ARRAY);
+        putBulkValues(values, count * width);
+        endEvent();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, float[], int)
+     */
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count,
+                                      float[] values, int width) {
+        beginEvent(sourceId, timeId, NetStreamExtendedConstants.EVENT_BULK_EDGE_ATTR);
+        putBulkHeader(attribute, edgeIds, count, width, NetStreamConstants.TYPE_FLOAT, NetStreamConstants.TYPE_FLOAT_ARRAY);
+        putBulkValues(values, count * width);
+        endEvent();
+    }
+
+    /**
+     * Numeric encoding of an attribute and the last values sent.
+     */
+    protected static class NumericEncoding {
+        protected final int decimals;
+        protected final double scale;
+        protected final boolean delta;
+        protected final NetStreamQuantizedState state = new NetStreamQuantizedState();
+
+        protected NumericEncoding(int decimals, boolean delta) {
+            this.decimals = decimals;
+            this.scale = NetStreamQuantizedState.getScale(decimals);
+            this.delta = delta;
+        }
     }
 }
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.SourceBase;
+
+import java.util.Arrays;
+
+/**
+ * Sink recording events, to send them later from a source, usually in another
+ * thread.
+ * <p>
+ * Values are recorded as they are, so they must not be modified once given to
+ * the buffer. Events of a source can be recorded under another source id, see
+ * {@link #setSourceId(String)}.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamEventBuffer implements Sink {
+    protected static final int NODE_ADDED = 0;
+    protected static final int NODE_REMOVED = 1;
+    protected static final int EDGE_ADDED = 2;
+    protected static final int EDGE_REMOVED = 3;
+    protected static final int GRAPH_CLEARED = 4;
+    protected static final int STEP_BEGINS = 5;
+    protected static final int GRAPH_ATTR_ADDED = 6;
+    protected static final int GRAPH_ATTR_CHANGED = 7;
+    protected static final int GRAPH_ATTR_REMOVED = 8;
+    protected static final int NODE_ATTR_ADDED = 9;
+    protected static final int NODE_ATTR_CHANGED = 10;
+    protected static final int NODE_ATTR_REMOVED = 11;
+    protected static final int EDGE_ATTR_ADDED = 12;
+    protected static final int EDGE_ATTR_CHANGED = 13;
+    protected static final int EDGE_ATTR_REMOVED = 14;
+
+    /**
+     * A recorded event.
+     */
+    protected static class Event {
+        int type;
+        String sourceId;
+        long timeId;
+        String elementId;
+        String attribute;
+        String fromNodeId;
+        String toNodeId;
+        boolean directed;
+        double step;
+        Object oldValue;
+        Object newValue;
+    }
+
+    protected Event[] events = new Event[16];
+    protected int size;
+
+    /**
+     * Source id of the recorded events, null to keep the one of each event.
+     */
+    protected String sourceId;
+
+    public NetStreamEventBuffer() {
+        this(null);
+    }
+
+    /**
+     * @param sourceId source id of the recorded events, null to keep the one
+     *                 of each event
+     */
+    public NetStreamEventBuffer(String sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    public void setSourceId(String sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    /**
+     * @return the number of recorded events
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Forget the recorded events.
+     */
+    public void clear() {
+        Arrays.fill(events, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Move the recorded events to a new buffer, leaving this one empty.
+     *
+     * @return the new buffer
+     */
+    public NetStreamEventBuffer take() {
+        NetStreamEventBuffer taken = new NetStreamEventBuffer(sourceId);
+        taken.events = events;
+        taken.size = size;
+
+        events = new Event[16];
+        size = 0;
+
+        return taken;
+    }
+
+    /**
+     * Send the recorded events, in order, to the sinks of a source. The events
+     * stay in the buffer.
+     *
+     * @param source the source
+     */
+    public void replay(SourceBase source) {
+        for (int i = 0; i < size; i++) {
+            Event e = events[i];
+
+            switch (e.type) {
+                case NODE_ADDED:
+                    source.sendNodeAdded(e.sourceId, e.timeId, e.elementId);
+                    break;
+                case NODE_REMOVED:
+                    source.sendNodeRemoved(e.sourceId, e.timeId, e.elementId);
+                    break;
+                case EDGE_ADDED:
+                    source.sendEdgeAdded(e.sourceId, e.timeId, e.elementId, e.fromNodeId, e.toNodeId, e.directed);
+                    break;
+                case EDGE_REMOVED:
+                    source.sendEdgeRemoved(e.sourceId, e.timeId, e.elementId);
+                    break;
+                case GRAPH_CLEARED:
+                    source.sendGraphCleared(e.sourceId, e.timeId);
+                    break;
+                case STEP_BEGINS:
+                    source.sendStepBegins(e.sourceId, e.timeId, e.step);
+                    break;
+                case GRAPH_ATTR_ADDED:
+                    source.sendGraphAttributeAdded(e.sourceId, e.timeId, e.attribute, e.newValue);
+                    break;
+                case GRAPH_ATTR_CHANGED:
+                    source.sendGraphAttributeChanged(e.sourceId, e.timeId, e.attribute, e.oldValue, e.newValue);
+                    break;
+                case GRAPH_ATTR_REMOVED:
+                    source.sendGraphAttributeRemoved(e.sourceId, e.timeId, e.attribute);
+                    break;
+                case NODE_ATTR_ADDED:
+                    source.sendNodeAttributeAdded(e.sourceId, e.timeId, e.elementId, e.attribute, e.newValue);
+                    break;
+                case NODE_ATTR_CHANGED:
+                    source.sendNodeAttributeChanged(e.sourceId, e.timeId, e.elementId, e.attribute, e.oldValue, e.newValue);
+                    break;
+                case NODE_ATTR_REMOVED:
+                    source.sendNodeAttributeRemoved(e.sourceId, e.timeId, e.elementId, e.attribute);
+                    break;
+                case EDGE_ATTR_ADDED:
+                    source.sendEdgeAttributeAdded(e.sourceId, e.timeId, e.elementId, e.attribute, e.newValue);
+                    break;
+                case EDGE_ATTR_CHANGED:
+                    source.sendEdgeAttributeChanged(e.sourceId, e.timeId, e.elementId, e.attribute, e.oldValue, e.newValue);
+                    break;
+                case EDGE_ATTR_REMOVED:
+                    source.sendEdgeAttributeRemoved(e.sourceId, e.timeId, e.elementId, e.attribute);
+                    break;
+            }
+        }
+    }
+
+    protected Event add(int type, String sourceId, long timeId, String elementId) {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, size * 2);
+        }
+
+        Event e = new Event();
+        e.type = type;
+        e.sourceId = this.sourceId == null ? sourceId : this.sourceId;
+        e.timeId = timeId;
+        e.elementId = elementId;
+
+        events[size++] = e;
+        return e;
+    }
+
+    protected void addAttribute(int type, String sourceId, long timeId, String elementId, String attribute,
+                                Object oldValue, Object newValue) {
+        Event e = add(type, sourceId, timeId, elementId);
+        e.attribute = attribute;
+        e.oldValue = oldValue;
+        e.newValue = newValue;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang.String
+     * , long, java.lang.String, java.lang.Object)
+     */
+    public void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
+        addAttribute(GRAPH_ATTR_ADDED, sourceId, timeId, null, attribute, null, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang.
+     * String, long, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    public void graphAttributeChanged(String sourceId, long timeId, String attribute, Object oldValue,
+                                      Object newValue) {
+        addAttribute(GRAPH_ATTR_CHANGED, sourceId, timeId, null, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang.
+     * String, long, java.lang.String)
+     */
+    public void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
+        addAttribute(GRAPH_ATTR_REMOVED, sourceId, timeId, null, attribute, null, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
+        addAttribute(NODE_ATTR_ADDED, sourceId, timeId, nodeId, attribute, null, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang.String
+     * , long, java.lang.String, java.lang.String, java.lang.Object,
+     * java.lang.Object)
+     */
+    public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute,
+                                     Object oldValue, Object newValue) {
+        addAttribute(NODE_ATTR_CHANGED, sourceId, timeId, nodeId, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang.String
+     * , long, java.lang.String, java.lang.String)
+     */
+    public void nodeAttributeRemoved(String sourceId, long timeId, String nodeId, String attribute) {
+        addAttribute(NODE_ATTR_REMOVED, sourceId, timeId, nodeId, attribute, null, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    public void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute, Object value) {
+        addAttribute(EDGE_ATTR_ADDED, sourceId, timeId, edgeId, attribute, null, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang.String
+     * , long, java.lang.String, java.lang.String, java.lang.Object,
+     * java.lang.Object)
+     */
+    public void edgeAttributeChanged(String sourceId, long timeId, String edgeId, String attribute,
+                                     Object oldValue, Object newValue) {
+        addAttribute(EDGE_ATTR_CHANGED, sourceId, timeId, edgeId, attribute, oldValue, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see
+     * org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang.String
+     * , long, java.lang.String, java.lang.String)
+     */
+    public void edgeAttributeRemoved(String sourceId, long timeId, String edgeId, String attribute) {
+        addAttribute(EDGE_ATTR_REMOVED, sourceId, timeId, edgeId, attribute, null, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long,
+     * java.lang.String)
+     */
+    public void nodeAdded(String sourceId, long timeId, String nodeId) {
+        add(NODE_ADDED, sourceId, timeId, nodeId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+     * long, java.lang.String)
+     */
+    public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+        add(NODE_REMOVED, sourceId, timeId, nodeId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String, long,
+     * java.lang.String, java.lang.String, java.lang.String, boolean)
+     */
+    public void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId, String toNodeId,
+                          boolean directed) {
+        Event e = add(EDGE_ADDED, sourceId, timeId, edgeId);
+        e.fromNodeId = fromNodeId;
+        e.toNodeId = toNodeId;
+        e.directed = directed;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String,
+     * long, java.lang.String)
+     */
+    public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+        add(EDGE_REMOVED, sourceId, timeId, edgeId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+     * long)
+     */
+    public void graphCleared(String sourceId, long timeId) {
+        add(GRAPH_CLEARED, sourceId, timeId, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String,
+     * long, double)
+     */
+    public void stepBegins(String sourceId, long timeId, double step) {
+        add(STEP_BEGINS, sourceId, timeId, null).step = step;
+    }
+}
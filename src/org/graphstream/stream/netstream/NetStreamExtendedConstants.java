@@ -0,0 +1,124 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+/**
+ * Event types and flags extending the ones of {@link NetStreamConstants}.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamExtendedConstants {
+    /**
+     * Flag set on the event type when the identifiers of the event (source id,
+     * element ids and attribute names) are dictionary-coded.
+     * <p>
+     * A dictionary-coded identifier is an unsigned varint `v`. If `(v & 1) == 1`,
+     * the identifier is the entry `v >> 1` of the dictionary. Else, the
+     * identifier is defined as the entry `v >> 1` and its value follows as a
+     * string.
+     */
+    public static final int EVENT_FLAG_DICTIONARY = 0x80;
+
+    /**
+     * Replace the dictionary of the receiver. Followed by the number of entries
+     * (varint) and the entries (strings), in handle order. Sent without entry,
+     * it clears the dictionary.
+     */
+    public static final int EVENT_DICTIONARY = 0x03;
+
+    /**
+     * Change of one attribute on many nodes. Followed by the attribute name,
+     * the value type ({@link NetStreamConstants#TYPE_DOUBLE},
+     * {@link NetStreamConstants#TYPE_FLOAT}, or the matching array types), the
+     * number of nodes (varint), for array types the number of components of
+     * each value (varint), the node ids, then all the values packed in node
+     * order. The change of the i-th node has the time id of the event plus i.
+     */
+    public static final int EVENT_BULK_NODE_ATTR = 0x04;
+
+    /**
+     * Change of one attribute on many edges, same as {@link #EVENT_BULK_NODE_ATTR}.
+     */
+    public static final int EVENT_BULK_EDGE_ATTR = 0x05;
+
+    /**
+     * Declare the source id and the time id of the next compact messages.
+     * Followed by the source id (string) and the time id (varint).
+     *
+     * @see #MESSAGE_FLAG_COMPACT
+     */
+    public static final int EVENT_STREAM_HEADER = 0x06;
+
+    /**
+     * Flag set on the size of a compact message. A compact message has no
+     * stream and its event has no source id: the event type is directly
+     * followed by the difference between its time id and the one of the
+     * previous message (zigzag varint), then by the rest of the event. The
+     * source id and the first time id are given by the last
+     * {@link #EVENT_STREAM_HEADER}.
+     */
+    public static final int MESSAGE_FLAG_COMPACT = 0x40000000;
+
+    /**
+     * Number quantized to a fixed number of decimals. Followed by the number of
+     * decimals `d` (byte) and the zigzag varint `q`, the value being `q / 10^d`.
+     */
+    public static final int TYPE_QUANTIZED = 0x62;
+
+    /**
+     * Array of numbers quantized to a fixed number of decimals. Followed by the
+     * number of decimals (byte), the length of the array (varint) and the
+     * quantized items, as for {@link #TYPE_QUANTIZED}.
+     */
+    public static final int TYPE_QUANTIZED_ARRAY = 0x63;
+
+    /**
+     * Same as {@link #TYPE_QUANTIZED}, the zigzag varint being the difference
+     * with the last quantized value received for the same attribute of the same
+     * element.
+     */
+    public static final int TYPE_QUANTIZED_DELTA = 0x64;
+
+    /**
+     * Same as {@link #TYPE_QUANTIZED_ARRAY}, each item being the difference with
+     * the matching item of the last quantized array received for the same
+     * attribute of the same element. Both arrays have the same length.
+     */
+    public static final int TYPE_QUANTIZED_DELTA_ARRAY = 0x65;
+
+    /**
+     * First type byte available to the codecs of applications, up to 0xFF.
+     *
+     * @see NetStreamCodecRegistry#register(Class, NetStreamCodec)
+     */
+    public static final int TYPE_CUSTOM_FIRST = 0xC0;
+}
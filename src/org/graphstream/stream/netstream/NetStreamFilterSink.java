@@ -0,0 +1,511 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import org.graphstream.stream.Sink;
+
+/**
+ * Stage of a chain of sinks, giving each event it receives to the next sinks
+ * in order.
+ * <p>
+ * Subclasses can act before and after each event, see {@link #begin(String)}
+ * and {@link #end(String)}, for example to hold a lock while the next sinks
+ * receive it, and choose which sinks receive it, see {@link #accept(int)}.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamFilterSink implements Sink, NetStreamBulkSink {
+    protected final Sink[] sinks;
+    protected final NetStreamBulkSink[] bulkSinks;
+
+    public NetStreamFilterSink(Sink sink, NetStreamBulkSink bulkSink) {
+        this(new Sink[]{sink}, new NetStreamBulkSink[]{bulkSink});
+    }
+
+    /**
+     * @param sinks     the next sinks
+     * @param bulkSinks the same sinks, receiving the bulk attribute changes
+     */
+    public NetStreamFilterSink(Sink[] sinks, NetStreamBulkSink[] bulkSinks) {
+        if (sinks.length != bulkSinks.length) {
+            throw new IllegalArgumentException("sinks and bulk sinks must be the same");
+        }
+
+        this.sinks = sinks;
+        this.bulkSinks = bulkSinks;
+    }
+
+    /**
+     * Called before an event is given to the next sinks.
+     *
+     * @param sourceId source id of the event
+     * @return false to drop the event
+     */
+    protected boolean begin(String sourceId) {
+        return true;
+    }
+
+    /**
+     * Called once an event has been given to the next sinks, even if one of
+     * them has failed.
+     *
+     * @param sourceId source id of the event
+     */
+    protected void end(String sourceId) {
+    }
+
+    /**
+     * @param index index of one of the next sinks
+     * @return true if the sink receives the current event
+     */
+    protected boolean accept(int index) {
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang.String, long, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].graphAttributeAdded(sourceId, timeId, attribute, value);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang.String, long, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void graphAttributeChanged(String sourceId, long timeId, String attribute, Object oldValue, Object newValue) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].graphAttributeChanged(sourceId, timeId, attribute, oldValue, newValue);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang.String, long, java.lang.String)
+     */
+    @Override
+    public void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].graphAttributeRemoved(sourceId, timeId, attribute);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].nodeAttributeAdded(sourceId, timeId, nodeId, attribute, value);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute, Object oldValue, Object newValue) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].nodeAttributeChanged(sourceId, timeId, nodeId, attribute, oldValue, newValue);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang.String, long, java.lang.String, java.lang.String)
+     */
+    @Override
+    public void nodeAttributeRemoved(String sourceId, long timeId, String nodeId, String attribute) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].nodeAttributeRemoved(sourceId, timeId, nodeId, attribute);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute, Object value) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].edgeAttributeAdded(sourceId, timeId, edgeId, attribute, value);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang.String, long, java.lang.String, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public void edgeAttributeChanged(String sourceId, long timeId, String edgeId, String attribute, Object oldValue, Object newValue) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].edgeAttributeChanged(sourceId, timeId, edgeId, attribute, oldValue, newValue);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang.String, long, java.lang.String, java.lang.String)
+     */
+    @Override
+    public void edgeAttributeRemoved(String sourceId, long timeId, String edgeId, String attribute) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].edgeAttributeRemoved(sourceId, timeId, edgeId, attribute);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long, java.lang.String)
+     */
+    @Override
+    public void nodeAdded(String sourceId, long timeId, String nodeId) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].nodeAdded(sourceId, timeId, nodeId);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String, long, java.lang.String)
+     */
+    @Override
+    public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].nodeRemoved(sourceId, timeId, nodeId);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String, long, java.lang.String, java.lang.String, java.lang.String, boolean)
+     */
+    @Override
+    public void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId, String toNodeId, boolean directed) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].edgeAdded(sourceId, timeId, edgeId, fromNodeId, toNodeId, directed);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String, long, java.lang.String)
+     */
+    @Override
+    public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].edgeRemoved(sourceId, timeId, edgeId);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String, long)
+     */
+    @Override
+    public void graphCleared(String sourceId, long timeId) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].graphCleared(sourceId, timeId);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String, long, double)
+     */
+    @Override
+    public void stepBegins(String sourceId, long timeId, double step) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < sinks.length; i++) {
+                if (accept(i)) {
+                    sinks[i].stepBegins(sourceId, timeId, step);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long, java.lang.String, java.lang.String[], int, double[], int)
+     */
+    @Override
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count, double[] values, int width) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < bulkSinks.length; i++) {
+                if (accept(i)) {
+                    bulkSinks[i].nodeAttributesChanged(sourceId, timeId, attribute, nodeIds, count, values, width);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long, java.lang.String, java.lang.String[], int, float[], int)
+     */
+    @Override
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count, float[] values, int width) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < bulkSinks.length; i++) {
+                if (accept(i)) {
+                    bulkSinks[i].nodeAttributesChanged(sourceId, timeId, attribute, nodeIds, count, values, width);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long, java.lang.String, java.lang.String[], int, double[], int)
+     */
+    @Override
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count, double[] values, int width) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < bulkSinks.length; i++) {
+                if (accept(i)) {
+                    bulkSinks[i].edgeAttributesChanged(sourceId, timeId, attribute, edgeIds, count, values, width);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long, java.lang.String, java.lang.String[], int, float[], int)
+     */
+    @Override
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count, float[] values, int width) {
+        if (!begin(sourceId)) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < bulkSinks.length; i++) {
+                if (accept(i)) {
+                    bulkSinks[i].edgeAttributesChanged(sourceId, timeId, attribute, edgeIds, count, values, width);
+                }
+            }
+        } finally {
+            end(sourceId);
+        }
+    }
+}
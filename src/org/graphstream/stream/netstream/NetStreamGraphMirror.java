@@ -0,0 +1,875 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import org.graphstream.stream.Sink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact copy of the current state of a graph, built from the events it
+ * receives, which can be sent again as a snapshot to a new receiver.
+ * <p>
+ * Nodes and edges get int indices, reused once they are removed; edges and
+ * adjacency are arrays of node indices. Attributes are stored by columns, one
+ * per attribute name and kind of element, indexed by the element: numbers are
+ * kept in primitive arrays, and the other values as they are, so they must not
+ * be modified once given to the mirror. A node removed with its edges still
+ * there removes them too; an edge whose nodes are unknown adds them.
+ * <p>
+ * Methods are synchronized, so that a snapshot can be sent by another thread
+ * than the one feeding the mirror.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamGraphMirror implements Sink, NetStreamBulkSink {
+    protected static final byte ABSENT = 0;
+    protected static final byte DOUBLE = 1;
+    protected static final byte FLOAT = 2;
+    protected static final byte INTEGER = 3;
+    protected static final byte OBJECT = 4;
+
+    /**
+     * Map of identifiers to indices, with open addressing and linear probing.
+     */
+    protected static class Index {
+        String[] keys = new String[16];
+        int[] values = new int[16];
+        int size;
+
+        int get(String key) {
+            int mask = keys.length - 1;
+
+            for (int i = key.hashCode() & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key)) {
+                    return values[i];
+                }
+            }
+
+            return -1;
+        }
+
+        void put(String key, int value) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+
+            int mask = keys.length - 1;
+            int i = key.hashCode() & mask;
+
+            while (keys[i] != null) {
+                if (keys[i].equals(key)) {
+                    values[i] = value;
+                    return;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        /**
+         * @return the index of the removed key, or -1
+         */
+        int remove(String key) {
+            int mask = keys.length - 1;
+            int i = key.hashCode() & mask;
+
+            while (keys[i] != null && !keys[i].equals(key)) {
+                i = (i + 1) & mask;
+            }
+
+            if (keys[i] == null) {
+                return -1;
+            }
+
+            int value = values[i];
+
+            // move back the following keys of the cluster
+            for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+                int home = keys[j].hashCode() & mask;
+
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+
+            keys[i] = null;
+            size--;
+
+            return value;
+        }
+
+        void copyFrom(Index other) {
+            keys = other.keys.clone();
+            values = other.values.clone();
+            size = other.size;
+        }
+
+        void grow() {
+            String[] oldKeys = keys;
+            int[] oldValues = values;
+
+            keys = new String[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Values of an attribute, indexed by element.
+     */
+    protected static class Column {
+        final String attribute;
+        byte[] types = new byte[0];
+        double[] numbers = new double[0];
+        Object[] objects;
+        int count;
+
+        Column(String attribute) {
+            this.attribute = attribute;
+        }
+
+        Column copy() {
+            Column column = new Column(attribute);
+
+            column.types = types.clone();
+            column.numbers = numbers.clone();
+            column.objects = objects == null ? null : objects.clone();
+            column.count = count;
+
+            return column;
+        }
+
+        void set(int index, Object value) {
+            if (index >= types.length) {
+                int capacity = Math.max(index + 1, 2 * types.length);
+
+                types = Arrays.copyOf(types, capacity);
+                numbers = Arrays.copyOf(numbers, capacity);
+
+                if (objects != null) {
+                    objects = Arrays.copyOf(objects, capacity);
+                }
+            }
+
+            if (types[index] == ABSENT) {
+                count++;
+            } else if (types[index] == OBJECT) {
+                objects[index] = null;
+            }
+
+            if (value instanceof Double) {
+                types[index] = DOUBLE;
+                numbers[index] = (Double) value;
+            } else if (value instanceof Float) {
+                types[index] = FLOAT;
+                numbers[index] = (Float) value;
+            } else if (value instanceof Integer) {
+                types[index] = INTEGER;
+                numbers[index] = (Integer) value;
+            } else {
+                if (objects == null) {
+                    objects = new Object[types.length];
+                }
+
+                types[index] = OBJECT;
+                objects[index] = value;
+            }
+        }
+
+        boolean has(int index) {
+            return index < types.length && types[index] != ABSENT;
+        }
+
+        Object get(int index) {
+            switch (types[index]) {
+                case DOUBLE:
+                    return numbers[index];
+                case FLOAT:
+                    return (float) numbers[index];
+                case INTEGER:
+                    return (int) numbers[index];
+                case OBJECT:
+                    return objects[index];
+                default:
+                    return null;
+            }
+        }
+
+        void remove(int index) {
+            if (has(index)) {
+                if (types[index] == OBJECT) {
+                    objects[index] = null;
+                }
+
+                types[index] = ABSENT;
+                count--;
+            }
+        }
+    }
+
+    /**
+     * Nodes or edges, and their attributes.
+     */
+    protected static class Elements {
+        final Index index = new Index();
+        String[] ids = new String[16];
+        int end;
+        int count;
+        int[] free = new int[16];
+        int freeCount;
+
+        final ArrayList<Column> columns = new ArrayList<Column>();
+        final HashMap<String, Column> columnsByName = new HashMap<String, Column>();
+
+        /**
+         * @return the index of the new element
+         */
+        int add(String id) {
+            int i;
+
+            if (freeCount > 0) {
+                i = free[--freeCount];
+            } else {
+                if (end == ids.length) {
+                    ids = Arrays.copyOf(ids, 2 * end);
+                }
+
+                i = end++;
+            }
+
+            ids[i] = id;
+            index.put(id, i);
+            count++;
+
+            return i;
+        }
+
+        void remove(int i) {
+            index.remove(ids[i]);
+            ids[i] = null;
+            count--;
+
+            for (int c = 0; c < columns.size(); c++) {
+                columns.get(c).remove(i);
+            }
+
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, 2 * freeCount);
+            }
+
+            free[freeCount++] = i;
+        }
+
+        void setAttribute(int i, String attribute, Object value) {
+            Column column = columnsByName.get(attribute);
+
+            if (column == null) {
+                column = new Column(attribute);
+                columns.add(column);
+                columnsByName.put(attribute, column);
+            }
+
+            column.set(i, value);
+        }
+
+        void removeAttribute(int i, String attribute) {
+            Column column = columnsByName.get(attribute);
+
+            if (column != null) {
+                column.remove(i);
+
+                if (column.count == 0) {
+                    columns.remove(column);
+                    columnsByName.remove(attribute);
+                }
+            }
+        }
+
+        void copyFrom(Elements other) {
+            index.copyFrom(other.index);
+            ids = other.ids.clone();
+            end = other.end;
+            count = other.count;
+            free = other.free.clone();
+            freeCount = other.freeCount;
+            columns.clear();
+            columnsByName.clear();
+
+            for (int c = 0; c < other.columns.size(); c++) {
+                Column column = other.columns.get(c).copy();
+                columns.add(column);
+                columnsByName.put(column.attribute, column);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(ids, null);
+            index.keys = new String[16];
+            index.values = new int[16];
+            index.size = 0;
+            end = 0;
+            count = 0;
+            freeCount = 0;
+            columns.clear();
+            columnsByName.clear();
+        }
+    }
+
+    protected final Elements nodes = new Elements();
+    protected final Elements edges = new Elements();
+
+    /**
+     * Nodes of each edge, and whether it is directed.
+     */
+    protected int[] edgeSources = new int[16];
+    protected int[] edgeTargets = new int[16];
+    protected boolean[] edgeDirected = new boolean[16];
+
+    /**
+     * Edges of each node.
+     */
+    protected int[][] adjacency = new int[16][];
+    protected int[] degrees = new int[16];
+
+    protected final LinkedHashMap<String, Object> graphAttributes = new LinkedHashMap<String, Object>();
+    protected double step;
+    protected boolean stepped;
+
+    public synchronized int getNodeCount() {
+        return nodes.count;
+    }
+
+    public synchronized int getEdgeCount() {
+        return edges.count;
+    }
+
+    /**
+     * @return the value of an attribute of a node, or null if it has none
+     */
+    public synchronized Object getNodeAttribute(String nodeId, String attribute) {
+        return getAttribute(nodes, nodeId, attribute);
+    }
+
+    /**
+     * @return the value of an attribute of an edge, or null if it has none
+     */
+    public synchronized Object getEdgeAttribute(String edgeId, String attribute) {
+        return getAttribute(edges, edgeId, attribute);
+    }
+
+    public synchronized Object getGraphAttribute(String attribute) {
+        return graphAttributes.get(attribute);
+    }
+
+    /**
+     * @return the number of edges of a node, or -1 if it is unknown
+     */
+    public synchronized int getDegree(String nodeId) {
+        int i = nodes.index.get(nodeId);
+        return i < 0 ? -1 : degrees[i];
+    }
+
+    protected static Object getAttribute(Elements elements, String id, String attribute) {
+        int i = elements.index.get(id);
+        Column column = elements.columnsByName.get(attribute);
+
+        return i < 0 || column == null || !column.has(i) ? null : column.get(i);
+    }
+
+    /**
+     * Send the current state to a sink: the graph attributes, the nodes and
+     * their attributes, the edges and their attributes, then the last step.
+     * Each event gets the next time id.
+     *
+     * @param sink     the sink
+     * @param sourceId source id of the events
+     * @param timeId   time id of the first event
+     * @return the time id following the last event
+     */
+    public synchronized long replay(Sink sink, String sourceId, long timeId) {
+        for (Map.Entry<String, Object> e : graphAttributes.entrySet()) {
+            sink.graphAttributeAdded(sourceId, timeId++, e.getKey(), e.getValue());
+        }
+
+        for (int i = 0; i < nodes.end; i++) {
+            String id = nodes.ids[i];
+
+            if (id != null) {
+                sink.nodeAdded(sourceId, timeId++, id);
+                timeId = replayAttributes(sink, sourceId, timeId, nodes, i, true);
+            }
+        }
+
+        for (int i = 0; i < edges.end; i++) {
+            String id = edges.ids[i];
+
+            if (id != null) {
+                sink.edgeAdded(sourceId, timeId++, id, nodes.ids[edgeSources[i]], nodes.ids[edgeTargets[i]],
+                        edgeDirected[i]);
+                timeId = replayAttributes(sink, sourceId, timeId, edges, i, false);
+            }
+        }
+
+        if (stepped) {
+            sink.stepBegins(sourceId, timeId++, step);
+        }
+
+        return timeId;
+    }
+
+    /**
+     * Copy the current state of the graph, which can then be replayed while
+     * this mirror keeps receiving events. The arrays are copied; the values
+     * which are not numbers are shared.
+     *
+     * @return the copy
+     */
+    public synchronized NetStreamGraphMirror copy() {
+        NetStreamGraphMirror copy = new NetStreamGraphMirror();
+
+        copy.nodes.copyFrom(nodes);
+        copy.edges.copyFrom(edges);
+        copy.edgeSources = edgeSources.clone();
+        copy.edgeTargets = edgeTargets.clone();
+        copy.edgeDirected = edgeDirected.clone();
+        copy.adjacency = new int[adjacency.length][];
+        copy.degrees = degrees.clone();
+
+        for (int i = 0; i < adjacency.length; i++) {
+            if (adjacency[i] != null) {
+                copy.adjacency[i] = adjacency[i].clone();
+            }
+        }
+
+        copy.graphAttributes.putAll(graphAttributes);
+        copy.step = step;
+        copy.stepped = stepped;
+
+        return copy;
+    }
+
+    protected long replayAttributes(Sink sink, String sourceId, long timeId, Elements elements, int i, boolean node) {
+        String id = elements.ids[i];
+
+        for (int c = 0; c < elements.columns.size(); c++) {
+            Column column = elements.columns.get(c);
+
+            if (column.has(i)) {
+                if (node) {
+                    sink.nodeAttributeAdded(sourceId, timeId++, id, column.attribute, column.get(i));
+                } else {
+                    sink.edgeAttributeAdded(sourceId, timeId++, id, column.attribute, column.get(i));
+                }
+            }
+        }
+
+        return timeId;
+    }
+
+    protected int addNode(String nodeId) {
+        int i = nodes.index.get(nodeId);
+
+        if (i >= 0) {
+            return i;
+        }
+
+        i = nodes.add(nodeId);
+
+        if (i >= degrees.length) {
+            adjacency = Arrays.copyOf(adjacency, nodes.ids.length);
+            degrees = Arrays.copyOf(degrees, nodes.ids.length);
+        }
+
+        degrees[i] = 0;
+
+        return i;
+    }
+
+    protected void link(int node, int edge) {
+        int[] edgesOf = adjacency[node];
+
+        if (edgesOf == null) {
+            edgesOf = adjacency[node] = new int[4];
+        } else if (degrees[node] == edgesOf.length) {
+            edgesOf = adjacency[node] = Arrays.copyOf(edgesOf, 2 * edgesOf.length);
+        }
+
+        edgesOf[degrees[node]++] = edge;
+    }
+
+    protected void unlink(int node, int edge) {
+        int[] edgesOf = adjacency[node];
+        int degree = degrees[node];
+
+        for (int k = 0; k < degree; k++) {
+            if (edgesOf[k] == edge) {
+                edgesOf[k] = edgesOf[degree - 1];
+                degrees[node] = degree - 1;
+                return;
+            }
+        }
+    }
+
+    protected void removeEdge(int e) {
+        unlink(edgeSources[e], e);
+
+        if (edgeTargets[e] != edgeSources[e]) {
+            unlink(edgeTargets[e], e);
+        }
+
+        edges.remove(e);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeAdded(java.lang.String, long,
+     * java.lang.String)
+     */
+    @Override
+    public synchronized void nodeAdded(String sourceId, long timeId, String nodeId) {
+        addNode(nodeId);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#nodeRemoved(java.lang.String,
+     * long, java.lang.String)
+     */
+    @Override
+    public synchronized void nodeRemoved(String sourceId, long timeId, String nodeId) {
+        int i = nodes.index.get(nodeId);
+
+        if (i < 0) {
+            return;
+        }
+
+        while (degrees[i] > 0) {
+            removeEdge(adjacency[i][degrees[i] - 1]);
+        }
+
+        adjacency[i] = null;
+        nodes.remove(i);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeAdded(java.lang.String, long,
+     * java.lang.String, java.lang.String, java.lang.String, boolean)
+     */
+    @Override
+    public synchronized void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId, String toNodeId,
+                                       boolean directed) {
+        if (edges.index.get(edgeId) >= 0) {
+            return;
+        }
+
+        int from = addNode(fromNodeId);
+        int to = addNode(toNodeId);
+        int e = edges.add(edgeId);
+
+        if (e >= edgeSources.length) {
+            edgeSources = Arrays.copyOf(edgeSources, edges.ids.length);
+            edgeTargets = Arrays.copyOf(edgeTargets, edges.ids.length);
+            edgeDirected = Arrays.copyOf(edgeDirected, edges.ids.length);
+        }
+
+        edgeSources[e] = from;
+        edgeTargets[e] = to;
+        edgeDirected[e] = directed;
+
+        link(from, e);
+
+        if (to != from) {
+            link(to, e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#edgeRemoved(java.lang.String,
+     * long, java.lang.String)
+     */
+    @Override
+    public synchronized void edgeRemoved(String sourceId, long timeId, String edgeId) {
+        int e = edges.index.get(edgeId);
+
+        if (e >= 0) {
+            removeEdge(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#graphCleared(java.lang.String,
+     * long)
+     */
+    @Override
+    public synchronized void graphCleared(String sourceId, long timeId) {
+        nodes.clear();
+        edges.clear();
+        graphAttributes.clear();
+
+        Arrays.fill(adjacency, null);
+        stepped = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.ElementSink#stepBegins(java.lang.String, long,
+     * double)
+     */
+    @Override
+    public synchronized void stepBegins(String sourceId, long timeId, double step) {
+        this.step = step;
+        this.stepped = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeAdded(java.lang.String,
+     * long, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public synchronized void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
+        graphAttributes.put(attribute, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeChanged(java.lang.String,
+     * long, java.lang.String, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public synchronized void graphAttributeChanged(String sourceId, long timeId, String attribute, Object oldValue,
+                                                   Object newValue) {
+        graphAttributes.put(attribute, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#graphAttributeRemoved(java.lang.String,
+     * long, java.lang.String)
+     */
+    @Override
+    public synchronized void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
+        graphAttributes.remove(attribute);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeAdded(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public synchronized void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute,
+                                                Object value) {
+        int i = nodes.index.get(nodeId);
+
+        if (i >= 0) {
+            nodes.setAttribute(i, attribute, value);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeChanged(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object,
+     * java.lang.Object)
+     */
+    @Override
+    public synchronized void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute,
+                                                  Object oldValue, Object newValue) {
+        nodeAttributeAdded(sourceId, timeId, nodeId, attribute, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#nodeAttributeRemoved(java.lang.String,
+     * long, java.lang.String, java.lang.String)
+     */
+    @Override
+    public synchronized void nodeAttributeRemoved(String sourceId, long timeId, String nodeId, String attribute) {
+        int i = nodes.index.get(nodeId);
+
+        if (i >= 0) {
+            nodes.removeAttribute(i, attribute);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeAdded(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public synchronized void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute,
+                                                Object value) {
+        int i = edges.index.get(edgeId);
+
+        if (i >= 0) {
+            edges.setAttribute(i, attribute, value);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeChanged(java.lang.String,
+     * long, java.lang.String, java.lang.String, java.lang.Object,
+     * java.lang.Object)
+     */
+    @Override
+    public synchronized void edgeAttributeChanged(String sourceId, long timeId, String edgeId, String attribute,
+                                                  Object oldValue, Object newValue) {
+        edgeAttributeAdded(sourceId, timeId, edgeId, attribute, newValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.AttributeSink#edgeAttributeRemoved(java.lang.String,
+     * long, java.lang.String, java.lang.String)
+     */
+    @Override
+    public synchronized void edgeAttributeRemoved(String sourceId, long timeId, String edgeId, String attribute) {
+        int i = edges.index.get(edgeId);
+
+        if (i >= 0) {
+            edges.removeAttribute(i, attribute);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, double[], int)
+     */
+    @Override
+    public synchronized void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds,
+                                                   int count, double[] values, int width) {
+        setBulk(nodes, attribute, nodeIds, count, values, null, width);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#nodeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, float[], int)
+     */
+    @Override
+    public synchronized void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds,
+                                                   int count, float[] values, int width) {
+        setBulk(nodes, attribute, nodeIds, count, null, values, width);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, double[], int)
+     */
+    @Override
+    public synchronized void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds,
+                                                   int count, double[] values, int width) {
+        setBulk(edges, attribute, edgeIds, count, values, null, width);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.netstream.NetStreamBulkSink#edgeAttributesChanged(java.lang.String, long,
+     * java.lang.String, java.lang.String[], int, float[], int)
+     */
+    @Override
+    public synchronized void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds,
+                                                   int count, float[] values, int width) {
+        setBulk(edges, attribute, edgeIds, count, null, values, width);
+    }
+
+    /**
+     * Store the values of a bulk change as the decoder gives them to regular
+     * sinks: numbers if the width is 1, primitive arrays otherwise.
+     */
+    protected void setBulk(Elements elements, String attribute, String[] ids, int count, double[] doubles,
+                           float[] floats, int width) {
+        for (int k = 0; k < count; k++) {
+            int i = elements.index.get(ids[k]);
+
+            if (i < 0) {
+                continue;
+            }
+
+            Object value;
+
+            if (width == 1) {
+                value = doubles != null ? (Object) doubles[k] : (Object) floats[k];
+            } else if (doubles != null) {
+                value = Arrays.copyOfRange(doubles, k * width, (k + 1) * width);
+            } else {
+                value = Arrays.copyOfRange(floats, k * width, (k + 1) * width);
+            }
+
+            elements.setAttribute(i, attribute, value);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import static org.graphstream.stream.netstream.NetStreamUtils.*;
+
+/**
+ * Bounded cache of identifiers already encoded as length-prefixed UTF-8
+ * strings, so that the identifiers seen on every event (attribute names, hot
+ * nodes and edges) are copied instead of being encoded again.
+ * <p>
+ * Entries are evicted with the CLOCK policy: a hit only sets the reference bit
+ * of the entry, and the hand clears bits until it finds an entry that has not
+ * been used since its last pass. The cache belongs to the thread feeding the
+ * encoder; the counters may be read from any thread.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamIdentifierCache {
+    /**
+     * Default maximum number of entries.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 12;
+
+    protected final int capacity;
+    protected final HashMap<String, Entry> entries;
+    protected final Entry[] clock;
+    protected int hand;
+    protected int size;
+
+    protected volatile long hits;
+    protected volatile long misses;
+    protected volatile long evictions;
+
+    public NetStreamIdentifierCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public NetStreamIdentifierCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+
+        this.capacity = capacity;
+        this.entries = new HashMap<String, Entry>(Math.min(capacity, 1 << 16) * 4 / 3 + 1);
+        this.clock = new Entry[capacity];
+        this.hand = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Get the encoded form of an identifier, encoding it and making room for it
+     * if it is not in the cache.
+     *
+     * @param identifier the identifier
+     * @return the length-prefixed UTF-8 bytes of the identifier, which must not
+     * be modified
+     */
+    public byte[] get(String identifier) {
+        Entry e = entries.get(identifier);
+
+        if (e != null) {
+            e.referenced = true;
+            hits++;
+            return e.encoded;
+        }
+
+        misses++;
+
+        if (size < capacity) {
+            e = new Entry();
+            clock[size++] = e;
+        } else {
+            e = evict();
+            entries.remove(e.identifier);
+            evictions++;
+        }
+
+        e.identifier = identifier;
+        e.encoded = encode(identifier);
+        e.referenced = false;
+        entries.put(identifier, e);
+
+        return e.encoded;
+    }
+
+    /**
+     * Move the hand to the next entry that has not been referenced since the
+     * last pass.
+     */
+    protected Entry evict() {
+        while (true) {
+            Entry e = clock[hand];
+
+            if (++hand == capacity) {
+                hand = 0;
+            }
+
+            if (!e.referenced) {
+                return e;
+            }
+
+            e.referenced = false;
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            clock[i] = null;
+        }
+
+        entries.clear();
+        hand = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return misses;
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the fraction of lookups served from the cache
+     */
+    public double getHitRatio() {
+        long h = hits, m = misses;
+        return h + m == 0 ? 0 : (double) h / (h + m);
+    }
+
+    /**
+     * Encode an identifier as done by {@link NetStreamUtils#putString(ByteBuffer, String)}.
+     *
+     * @param identifier the identifier
+     * @return the length-prefixed UTF-8 bytes
+     */
+    public static byte[] encode(String identifier) {
+        int len = getUTF8Length(identifier);
+        ByteBuffer bb = ByteBuffer.allocate(getVarintSize(len) + len);
+
+        putString(bb, identifier, len);
+
+        return bb.array();
+    }
+
+    protected static class Entry {
+        String identifier;
+        byte[] encoded;
+        boolean referenced;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Attribute value given by {@link NetStreamDecoder2} in its encoded form, and
+ * decoded the first time it is read.
+ * <p>
+ * Only the encoded bytes are kept until then, so a sink which does not read
+ * the value never pays for its objects: boxed arrays, strings...
+ *
+ * @see NetStreamDecoder2#setLazyValues(boolean)
+ * @since 17/10/26.
+ */
+public class NetStreamLazyValue {
+    protected final int valueType;
+    protected final boolean primitiveArrays;
+    protected byte[] data;
+    protected Object value;
+
+    /**
+     * @param valueType       the type of the value
+     * @param data            the encoded value, which must be complete
+     * @param primitiveArrays true to decode arrays as arrays of primitive values
+     */
+    public NetStreamLazyValue(int valueType, byte[] data, boolean primitiveArrays) {
+        this.valueType = valueType;
+        this.data = data;
+        this.primitiveArrays = primitiveArrays;
+    }
+
+    public int getValueType() {
+        return valueType;
+    }
+
+    /**
+     * @return the size of the encoded value, 0 once decoded
+     */
+    public synchronized int getEncodedSize() {
+        return data == null ? 0 : data.length;
+    }
+
+    public synchronized boolean isDecoded() {
+        return data == null;
+    }
+
+    /**
+     * @return the value, decoded on the first call
+     */
+    public synchronized Object get() {
+        if (data != null) {
+            value = NetStreamUtils.decodeValue(ByteBuffer.wrap(data), valueType, primitiveArrays);
+            data = null;
+        }
+
+        return value;
+    }
+
+    /**
+     * Decode the value if it is a lazy value.
+     *
+     * @param value a value given by the decoder
+     * @return the decoded value
+     */
+    public static Object get(Object value) {
+        return value instanceof NetStreamLazyValue ? ((NetStreamLazyValue) value).get() : value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import org.graphstream.stream.SourceBase;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decode the frames of many producers in parallel, and send their events from
+ * a single source, in the order the frames were received.
+ * <p>
+ * Each producer has its own {@link NetStreamDecoder2}, since dictionaries and
+ * stream headers are defined per producer, and its frames are decoded by one
+ * thread of the pool at a time. Frames of different producers are decoded at
+ * the same time. Each frame gets a sequence number when it is received, and
+ * the decoded events are released in this order: events touching a node or an
+ * edge are given to the sinks in the order they were received, whatever the
+ * producer.
+ * <p>
+ * Released events are sent by the delivery executor, one task at a time, or by
+ * {@link #pump()} if there is no executor, from the target source.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamParallelDecoder {
+    private static final Logger LOGGER = Logger.getLogger(NetStreamParallelDecoder.class.getName());
+
+    /**
+     * Number of frames a producer decodes before giving the thread to the
+     * others.
+     */
+    public static final int MAX_FRAMES_PER_RUN = 64;
+
+    /**
+     * Default maximum number of frames waiting to be decoded for a producer.
+     */
+    public static final int DEFAULT_MAX_PENDING_FRAMES = 1 << 14;
+
+    /**
+     * Result of a frame without event.
+     */
+    private static final NetStreamEventBuffer NO_EVENT = new NetStreamEventBuffer();
+
+    protected final SourceBase target;
+    protected final Executor delivery;
+    protected final ForkJoinPool pool;
+
+    protected final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * Decoded frames waiting for the previous ones, by sequence number, and
+     * sequence number of the next frame to release. Guarded by the map.
+     */
+    protected final HashMap<Long, NetStreamEventBuffer> decoded = new HashMap<Long, NetStreamEventBuffer>();
+    protected long nextRelease;
+
+    /**
+     * Released events, waiting to be sent.
+     */
+    protected final ConcurrentLinkedQueue<NetStreamEventBuffer> released = new ConcurrentLinkedQueue<NetStreamEventBuffer>();
+    protected final AtomicBoolean delivering = new AtomicBoolean();
+
+    protected final Runnable deliverTask = new Runnable() {
+        @Override
+        public void run() {
+            pump();
+        }
+    };
+
+    protected final AtomicLong frameCount = new AtomicLong();
+    protected final AtomicLong errorCount = new AtomicLong();
+
+    protected volatile int maxPendingFrames = DEFAULT_MAX_PENDING_FRAMES;
+
+    /**
+     * @param target      source sending the events
+     * @param delivery    executor sending the events, or null to send them when
+     *                    {@link #pump()} is called
+     * @param parallelism number of decoding threads
+     */
+    public NetStreamParallelDecoder(SourceBase target, Executor delivery, int parallelism) {
+        this.target = target;
+        this.delivery = delivery;
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * @param sourceId source id of the events of the producer, or null to keep
+     *                 the ones sent by the producer
+     * @return a new producer
+     */
+    public Producer createProducer(String sourceId) {
+        return new Producer(sourceId);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return the number of frames received
+     */
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    /**
+     * Set the maximum number of frames waiting to be decoded for a producer.
+     * Frames received above this count are dropped, so that a producer sending
+     * faster than it is decoded does not make the decoder hold an unbounded
+     * backlog.
+     *
+     * @param frames the maximum number of frames per producer
+     */
+    public void setMaxPendingFrames(int frames) {
+        if (frames < 1) {
+            throw new IllegalArgumentException("at least one frame must be allowed");
+        }
+
+        maxPendingFrames = frames;
+    }
+
+    public int getMaxPendingFrames() {
+        return maxPendingFrames;
+    }
+
+    /**
+     * @return the number of frames and messages dropped because they could not
+     * be decoded, or because their producer had too many frames waiting
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return the number of frames received and not yet released
+     */
+    public long getPendingFrameCount() {
+        synchronized (decoded) {
+            return nextSequence.get() - nextRelease;
+        }
+    }
+
+    /**
+     * Stop decoding. Frames not decoded yet are dropped, events already
+     * released can still be sent.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    /**
+     * Send the released events from the target source. Without delivery
+     * executor, this has to be called regularly by the thread owning the sinks
+     * of the target. Does nothing if another thread is sending events.
+     */
+    public void pump() {
+        while (delivering.compareAndSet(false, true)) {
+            try {
+                NetStreamEventBuffer events;
+
+                while ((events = released.poll()) != null) {
+                    try {
+                        events.replay(target);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "sink failed on decoded events", e);
+                    }
+                }
+            } finally {
+                delivering.set(false);
+            }
+
+            // events released while the flag was still set
+            if (released.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Record the events of a frame, and release it with the decoded frames
+     * following it if it is the next one.
+     */
+    protected void complete(long sequence, NetStreamEventBuffer events) {
+        boolean release = false;
+
+        synchronized (decoded) {
+            if (sequence != nextRelease) {
+                decoded.put(sequence, events);
+                return;
+            }
+
+            do {
+                if (events != NO_EVENT) {
+                    released.add(events);
+                    release = true;
+                }
+
+                events = decoded.remove(++nextRelease);
+            } while (events != null);
+        }
+
+        if (release && delivery != null && !delivering.get()) {
+            delivery.execute(deliverTask);
+        }
+    }
+
+    /**
+     * A received frame.
+     */
+    protected static class Frame {
+        final long sequence;
+        final ByteBuffer buffer;
+
+        Frame(long sequence, ByteBuffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Frames of a producer, decoded in order by one thread of the pool at a
+     * time.
+     */
+    public class Producer implements Runnable {
+        protected final String sourceId;
+        protected final NetStreamDecoder2 decoder;
+        protected final NetStreamEventBuffer events;
+        protected final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<Frame>();
+        protected final AtomicBoolean scheduled = new AtomicBoolean();
+        protected final AtomicInteger pending = new AtomicInteger();
+
+        protected Producer(String sourceId) {
+            this.sourceId = sourceId;
+            this.events = new NetStreamEventBuffer(sourceId);
+            this.decoder = new NetStreamDecoder2();
+
+            decoder.addSink(events);
+            decoder.setDecodeErrorListener(new NetStreamDecoder2.DecodeErrorListener() {
+                @Override
+                public void decodeError(NetStreamDecoder2.DecodeError error, int eventType) {
+                    errorCount.incrementAndGet();
+                }
+            });
+        }
+
+        public String getSourceId() {
+            return sourceId;
+        }
+
+        /**
+         * Queue a frame to decode. The frame is kept until it is decoded, so it
+         * must not be modified after the call. Frames of a producer must be
+         * given by one thread at a time.
+         *
+         * @param frame the frame, as for {@link NetStreamDecoder2#decodeFrame(ByteBuffer)}
+         * @return false if the frame has been dropped, the producer having too
+         * many frames waiting
+         * @see #setMaxPendingFrames(int)
+         */
+        public boolean receive(ByteBuffer frame) {
+            frameCount.incrementAndGet();
+
+            if (pending.incrementAndGet() > maxPendingFrames) {
+                pending.decrementAndGet();
+                errorCount.incrementAndGet();
+                return false;
+            }
+
+            frames.add(new Frame(nextSequence.getAndIncrement(), frame));
+
+            if (scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+
+            return true;
+        }
+
+        /**
+         * @return the number of frames waiting to be decoded
+         */
+        public int getPendingFrameCount() {
+            return pending.get();
+        }
+
+        protected void schedule() {
+            try {
+                pool.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the decoder has been shut down, release the waiting frames
+                Frame frame;
+
+                while ((frame = frames.poll()) != null) {
+                    pending.decrementAndGet();
+                    complete(frame.sequence, NO_EVENT);
+                }
+
+                scheduled.set(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Frame frame;
+                int n = 0;
+
+                while (n++ < MAX_FRAMES_PER_RUN && (frame = frames.poll()) != null) {
+                    pending.decrementAndGet();
+                    decode(frame);
+                }
+            } finally {
+                scheduled.set(false);
+            }
+
+            if (!frames.isEmpty() && scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        /**
+         * Decode a frame, and release its events. A frame which makes the
+         * decoder fail is released without event, so that the frames following
+         * it are not held forever.
+         */
+        protected void decode(Frame frame) {
+            NetStreamEventBuffer result = NO_EVENT;
+
+            try {
+                decoder.decodeFrame(frame.buffer);
+
+                if (!events.isEmpty()) {
+                    result = events.take();
+                }
+            } catch (RuntimeException | Error e) {
+                LOGGER.log(Level.WARNING, "failed to decode a frame of " + sourceId, e);
+                errorCount.incrementAndGet();
+                events.clear();
+            } finally {
+                complete(frame.sequence, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.util.HashMap;
+
+/**
+ * Last quantized values of one attribute for each element, kept on both ends
+ * of a stream to code numbers as differences.
+ *
+ * @see NetStreamExtendedConstants#TYPE_QUANTIZED_DELTA
+ * @since 17/10/26.
+ */
+public class NetStreamQuantizedState {
+    public static final int GRAPH = 0;
+    public static final int NODE = 1;
+    public static final int EDGE = 2;
+
+    /**
+     * Highest number of decimals a value can be quantized to.
+     */
+    public static final int MAX_DECIMALS = 15;
+
+    /**
+     * Quantized values must stay below this bound so that their differences
+     * fit in a long.
+     */
+    public static final double MAX_QUANTIZED = (double) (1L << 62);
+
+    private static final double[] SCALES = new double[MAX_DECIMALS + 1];
+
+    static {
+        SCALES[0] = 1;
+
+        for (int i = 1; i <= MAX_DECIMALS; i++) {
+            SCALES[i] = SCALES[i - 1] * 10;
+        }
+    }
+
+    protected final HashMap<String, long[]> nodeValues = new HashMap<String, long[]>();
+    protected final HashMap<String, long[]> edgeValues = new HashMap<String, long[]>();
+    protected long[] graphValue;
+
+    /**
+     * @param decimals the number of decimals
+     * @return 10^decimals
+     */
+    public static double getScale(int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("bad number of decimals " + decimals);
+        }
+
+        return SCALES[decimals];
+    }
+
+    /**
+     * @param kind    {@link #GRAPH}, {@link #NODE} or {@link #EDGE}
+     * @param element the element id, ignored for the graph
+     * @return the last values, or null if there are none
+     */
+    public long[] get(int kind, String element) {
+        switch (kind) {
+            case NODE:
+                return nodeValues.get(element);
+            case EDGE:
+                return edgeValues.get(element);
+            default:
+                return graphValue;
+        }
+    }
+
+    public void put(int kind, String element, long[] values) {
+        switch (kind) {
+            case NODE:
+                nodeValues.put(element, values);
+                break;
+            case EDGE:
+                edgeValues.put(element, values);
+                break;
+            default:
+                graphValue = values;
+        }
+    }
+
+    public void remove(int kind, String element) {
+        switch (kind) {
+            case NODE:
+                nodeValues.remove(element);
+                break;
+            case EDGE:
+                edgeValues.remove(element);
+                break;
+            default:
+                graphValue = null;
+        }
+    }
+
+    public void clear() {
+        nodeValues.clear();
+        edgeValues.clear();
+        graphValue = null;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Split a byte stream back into NetStream messages.
+ * <p>
+ * Each message starts with its size, as written by {@link NetStreamEncoder}, so
+ * the stream can be received in chunks of any length: partial reads of a
+ * socket, or frames holding several messages as sent by
+ * {@link NetStreamBatchTransport}. Messages lying entirely in a chunk are given
+ * to the decoder in place; only the messages straddling two chunks are copied,
+ * in a carry-over buffer growing with the largest of them.
+ * <p>
+ * A wrong size cannot be recovered from, since the start of the next message is
+ * lost. It is reported to the decoder as {@link NetStreamDecoder2.DecodeError#BAD_SIZE}
+ * and the rest of the stream is dropped until {@link #reset()}. Compressed frames
+ * do not carry their compressed size and must be given to
+ * {@link NetStreamDecoder2#decodeFrame(ByteBuffer)} instead.
+ * <p>
+ * Like the decoder, this class is not thread-safe.
+ *
+ * @since 17/10/26.
+ */
+public class NetStreamReassembler {
+    /**
+     * Default maximum size of a message, in bytes.
+     */
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Default size of the buffer used to read channels.
+     */
+    public static final int DEFAULT_READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final int INITIAL_CARRY_SIZE = 256;
+
+    protected final NetStreamDecoder2 decoder;
+    protected final int maxMessageSize;
+
+    /**
+     * Start of a message received in an earlier chunk, in write mode.
+     */
+    protected ByteBuffer carry;
+
+    /**
+     * Size of the message in the carry-over buffer, or -1 while its size is
+     * incomplete.
+     */
+    protected int carrySize;
+
+    /**
+     * True after a wrong size, the stream being lost.
+     */
+    protected boolean broken;
+
+    protected ByteBuffer readBuffer;
+
+    protected long messageCount;
+    protected long copiedBytes;
+
+    public NetStreamReassembler(NetStreamDecoder2 decoder) {
+        this(decoder, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * @param decoder        the decoder receiving the messages
+     * @param maxMessageSize larger messages are considered as a corrupted stream
+     */
+    public NetStreamReassembler(NetStreamDecoder2 decoder, int maxMessageSize) {
+        this.decoder = decoder;
+        this.maxMessageSize = maxMessageSize;
+        this.carry = ByteBuffer.allocate(INITIAL_CARRY_SIZE);
+        this.carrySize = -1;
+        this.broken = false;
+    }
+
+    public NetStreamDecoder2 getDecoder() {
+        return decoder;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * @return the number of messages given to the decoder
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return the number of bytes copied in the carry-over buffer
+     */
+    public long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    /**
+     * @return the number of bytes of an incomplete message kept for the next
+     * chunk
+     */
+    public int getPendingBytes() {
+        return carry.position();
+    }
+
+    /**
+     * @return true if a wrong size was received since the last reset
+     */
+    public boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * Drop the incomplete message, if any, and start again on a new stream.
+     */
+    public void reset() {
+        if (carry.capacity() > INITIAL_CARRY_SIZE) {
+            carry = ByteBuffer.allocate(INITIAL_CARRY_SIZE);
+        } else {
+            carry.clear();
+        }
+
+        carrySize = -1;
+        broken = false;
+    }
+
+    /**
+     * Decode the complete messages of a chunk and keep the rest for the next
+     * one. The chunk is consumed entirely and is not referenced after the call,
+     * so it can be reused at once.
+     *
+     * @param chunk the next bytes of the stream
+     */
+    public void feed(ByteBuffer chunk) {
+        if (broken) {
+            chunk.position(chunk.limit());
+            return;
+        }
+
+        if (carry.position() > 0 && !fillCarry(chunk)) {
+            return;
+        }
+
+        int limit = chunk.limit();
+
+        while (chunk.remaining() >= 4) {
+            int start = chunk.position();
+            int size = getSize(chunk, chunk.getInt(start));
+
+            if (size < 0 || size > chunk.remaining()) {
+                break;
+            }
+
+            chunk.limit(start + size);
+            decoder.decodeMessage(chunk);
+            messageCount++;
+
+            chunk.limit(limit);
+            chunk.position(start + size);
+        }
+
+        if (!broken && chunk.hasRemaining()) {
+            carrySize = -1;
+            fillCarry(chunk);
+        }
+
+        chunk.position(limit);
+    }
+
+    /**
+     * Read a channel once and decode the complete messages received.
+     *
+     * @param channel a channel, blocking or not
+     * @return the number of bytes read, possibly 0, or -1 at the end of the
+     * stream
+     * @throws IOException if the channel cannot be read
+     */
+    public int read(ReadableByteChannel channel) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(DEFAULT_READ_BUFFER_SIZE);
+        }
+
+        readBuffer.clear();
+        int n = channel.read(readBuffer);
+
+        if (n > 0) {
+            readBuffer.flip();
+            feed(readBuffer);
+        }
+
+        return n;
+    }
+
+    /**
+     * Size of the message starting with the given prefix, or -1 if it is not a
+     * valid size, the stream being then marked as broken.
+     */
+    protected int getSize(ByteBuffer chunk, int prefix) {
+        int size = prefix & ~NetStreamExtendedConstants.MESSAGE_FLAG_COMPACT;
+
+        if (size < 4 || size > maxMessageSize) {
+            broken = true;
+            carry.clear();
+            decoder.frameError(chunk, NetStreamDecoder2.DecodeError.BAD_SIZE);
+            return -1;
+        }
+
+        return size;
+    }
+
+    /**
+     * Move bytes of the chunk to the carry-over buffer, until the message it
+     * holds is complete or the chunk is empty, and decode the message once
+     * complete.
+     *
+     * @return true if the carry-over buffer is empty after the call
+     */
+    protected boolean fillCarry(ByteBuffer chunk) {
+        if (carrySize < 0) {
+            copy(chunk, 4 - carry.position());
+
+            if (carry.position() < 4) {
+                return false;
+            }
+
+            carrySize = getSize(chunk, carry.getInt(0));
+
+            if (carrySize < 0) {
+                return false;
+            }
+
+            if (carrySize > carry.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(carrySize, Math.min(2 * carry.capacity(), maxMessageSize)));
+                carry.flip();
+                larger.put(carry);
+                carry = larger;
+            }
+        }
+
+        copy(chunk, carrySize - carry.position());
+
+        if (carry.position() < carrySize) {
+            return false;
+        }
+
+        carry.flip();
+        decoder.decodeMessage(carry);
+        messageCount++;
+
+        carry.clear();
+        carrySize = -1;
+
+        return true;
+    }
+
+    private void copy(ByteBuffer chunk, int length) {
+        length = Math.min(length, chunk.remaining());
+
+        if (length <= 0) {
+            return;
+        }
+
+        int limit = chunk.limit();
+
+        chunk.limit(chunk.position() + length);
+        carry.put(chunk);
+        chunk.limit(limit);
+
+        copiedBytes += length;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pool of the strings read by a decoder, giving the same String instance each
+ * time the same identifier is read, so that the identifiers repeated on every
+ * event are not created again for each one.
+ * <p>
+ * The bytes of the string are compared in place with the pooled ones, so a hit
+ * creates no object. The pool is an open addressing table probing a few slots:
+ * when they are all taken by other strings, one of them is replaced. Strings
+ * longer than the maximum length are not pooled. The pool belongs to the
+ * thread feeding the decoder; the counters may be read from any thread.
+ *
+ * @see NetStreamDecoder2#setStringPool(NetStreamStringPool)
+ * @since 17/10/26.
+ */
+public class NetStreamStringPool {
+    /**
+     * Default number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 12;
+
+    /**
+     * Default maximum length, in bytes, of the pooled strings.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 128;
+
+    /**
+     * Number of slots looked at for a string.
+     */
+    protected static final int PROBES = 4;
+
+    protected final int mask;
+    protected final int maxLength;
+    protected final byte[][] keys;
+    protected final String[] values;
+    protected final int[] hashes;
+
+    protected volatile long hits;
+    protected volatile long misses;
+    protected volatile long evictions;
+
+    public NetStreamStringPool() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param capacity  number of slots, rounded up to a power of two
+     * @param maxLength maximum length, in bytes, of the pooled strings
+     */
+    public NetStreamStringPool(int capacity, int maxLength) {
+        if (capacity <= 0 || capacity > 1 << 24) {
+            throw new IllegalArgumentException("capacity must be in [1, 2^24]");
+        }
+
+        int slots = Math.max(Integer.highestOneBit(capacity - 1) << 1, PROBES);
+
+        this.mask = slots - 1;
+        this.maxLength = maxLength;
+        this.keys = new byte[slots][];
+        this.values = new String[slots];
+        this.hashes = new int[slots];
+    }
+
+    /**
+     * Get the string encoded in UTF-8 in a part of a buffer. The position of
+     * the buffer is not changed.
+     *
+     * @param bb     the buffer
+     * @param offset index of the first byte of the string
+     * @param length number of bytes of the string
+     * @return the pooled string
+     */
+    public String get(ByteBuffer bb, int offset, int length) {
+        if (length > maxLength) {
+            misses++;
+            return new String(copy(bb, offset, length), NetStreamUtils.UTF_8);
+        }
+
+        int hash = hash(bb, offset, length);
+        int index = hash & mask;
+        int slot = -1;
+
+        for (int i = 0; i < PROBES; i++) {
+            int s = (index + i) & mask;
+            byte[] key = keys[s];
+
+            if (key == null) {
+                slot = s;
+                break;
+            }
+
+            if (hashes[s] == hash && matches(key, bb, offset, length)) {
+                hits++;
+                return values[s];
+            }
+        }
+
+        if (slot < 0) {
+            // all the slots are taken, replace one chosen by the upper bits
+            slot = (index + ((hash >>> 24) % PROBES)) & mask;
+            evictions++;
+        }
+
+        byte[] key = copy(bb, offset, length);
+        String value = new String(key, NetStreamUtils.UTF_8);
+
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+        misses++;
+
+        return value;
+    }
+
+    /**
+     * Get the string a view looks at.
+     *
+     * @param view the view
+     * @return the pooled string
+     */
+    public String get(NetStreamStringView view) {
+        return get(view.getBuffer(), view.getOffset(), view.getByteLength());
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    protected static int hash(ByteBuffer bb, int offset, int length) {
+        int h = 0x811c9dc5;
+
+        if (bb.hasArray()) {
+            byte[] array = bb.array();
+            int start = bb.arrayOffset() + offset;
+
+            for (int i = 0; i < length; i++) {
+                h = (h ^ array[start + i]) * 0x01000193;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                h = (h ^ bb.get(offset + i)) * 0x01000193;
+            }
+        }
+
+        return h ^ (h >>> 16);
+    }
+
+    protected static boolean matches(byte[] key, ByteBuffer bb, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+
+        if (bb.hasArray()) {
+            byte[] array = bb.array();
+            int start = bb.arrayOffset() + offset;
+
+            for (int i = 0; i < length; i++) {
+                if (key[i] != array[start + i]) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                if (key[i] != bb.get(offset + i)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    protected static byte[] copy(ByteBuffer bb, int offset, int length) {
+        byte[] data = new byte[length];
+
+        if (bb.hasArray()) {
+            System.arraycopy(bb.array(), bb.arrayOffset() + offset, data, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                data[i] = bb.get(offset + i);
+            }
+        }
+
+        return data;
+    }
+}
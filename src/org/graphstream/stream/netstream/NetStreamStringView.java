@@ -0,0 +1,221 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.netstream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reusable view of an UTF-8 string lying in a buffer, read without creating a
+ * String, for code which only inspects identifiers, such as a relay.
+ * <p>
+ * The view reads the bytes of the buffer in place: it is valid until the
+ * buffer is modified, and is set again for each string. ASCII strings, which
+ * most identifiers are, are read directly; other strings are decoded in a
+ * buffer of the view, reused from one string to the next.
+ *
+ * @see NetStreamUtils#decodeStringView(ByteBuffer, NetStreamStringView)
+ * @since 17/10/26.
+ */
+public class NetStreamStringView implements CharSequence {
+    protected ByteBuffer buffer;
+    protected int offset;
+    protected int size;
+    protected boolean ascii;
+
+    /**
+     * Characters of a non-ASCII string.
+     */
+    protected CharBuffer chars;
+    protected CharsetDecoder decoder;
+    protected ByteBuffer input;
+
+    public NetStreamStringView() {
+        this.buffer = ByteBuffer.allocate(0);
+        this.ascii = true;
+    }
+
+    /**
+     * Look at a string in a buffer.
+     *
+     * @param bb     the buffer
+     * @param offset index of the first byte of the string in the buffer
+     * @param size   number of bytes of the string
+     * @return this view
+     */
+    public NetStreamStringView set(ByteBuffer bb, int offset, int size) {
+        this.buffer = bb;
+        this.offset = offset;
+        this.size = size;
+        this.ascii = true;
+
+        for (int i = 0; i < size; i++) {
+            if (bb.get(offset + i) < 0) {
+                ascii = false;
+                decode();
+                break;
+            }
+        }
+
+        return this;
+    }
+
+    protected void decode() {
+        if (decoder == null) {
+            decoder = NetStreamUtils.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        if (input == null || !isSameBuffer(input, buffer)) {
+            input = buffer.duplicate();
+        }
+
+        if (chars == null || chars.capacity() < size) {
+            // an UTF-8 byte never gives more than one char
+            chars = CharBuffer.allocate(Math.max(size, 32));
+        }
+
+        input.limit(offset + size).position(offset);
+        chars.clear();
+
+        decoder.reset();
+        decoder.decode(input, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+    }
+
+    private static boolean isSameBuffer(ByteBuffer view, ByteBuffer buffer) {
+        return view.capacity() == buffer.capacity() && (buffer.hasArray()
+                ? view.hasArray() && view.array() == buffer.array() && view.arrayOffset() == buffer.arrayOffset()
+                : false);
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of bytes of the string
+     */
+    public int getByteLength() {
+        return size;
+    }
+
+    public boolean isAscii() {
+        return ascii;
+    }
+
+    @Override
+    public int length() {
+        return ascii ? size : chars.remaining();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+
+        return ascii ? (char) buffer.get(offset + index) : chars.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * @param s a sequence of characters
+     * @return true if the view holds the same characters
+     */
+    public boolean contentEquals(CharSequence s) {
+        int length = length();
+
+        if (s.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != s.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the same hash code as a String holding the same characters
+     */
+    @Override
+    public int hashCode() {
+        int h = 0;
+        int length = length();
+
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + charAt(i);
+        }
+
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof NetStreamStringView && contentEquals((NetStreamStringView) o);
+    }
+
+    @Override
+    public String toString() {
+        if (!ascii) {
+            return chars.toString();
+        }
+
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, size, NetStreamUtils.UTF_8);
+        }
+
+        byte[] data = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            data[i] = buffer.get(offset + i);
+        }
+
+        return new String(data, NetStreamUtils.UTF_8);
+    }
+}
@@ -33,6 +33,7 @@ package org.graphstream.stream.netstream;
 
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.logging.Logger;
 
@@ -42,123 +43,39 @@ import java.util.logging.Logger;
 public class NetStreamUtils {
     private static ByteBuffer NULL_BUFFER = ByteBuffer.allocate(0);
     private static final Logger LOGGER = Logger.getLogger(NetStreamUtils.class.getName());
+    static final Charset UTF_8 = Charset.forName("UTF-8");
 
+    /**
+     * @param value the value
+     * @return the type of the value, {@link NetStreamConstants#TYPE_UNKNOWN} if
+     * it can not be encoded
+     * @see NetStreamCodecRegistry#getType(Object)
+     */
     public static int getType(Object value) {
-        int valueType = NetStreamConstants.TYPE_UNKNOWN;
-
-        if (value == null)
-            return NetStreamConstants.TYPE_NULL;
-
-        Class<?> valueClass = value.getClass();
-        boolean isArray = valueClass.isArray();
-        if (isArray) {
-            valueClass = ((Object[]) value)[0].getClass();
-        }
-        if (valueClass.equals(Boolean.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_BOOLEAN_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_BOOLEAN;
-            }
-        } else if (valueClass.equals(Byte.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_BYTE_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_BYTE;
-            }
-        } else if (valueClass.equals(Short.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_SHORT_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_SHORT;
-            }
-        } else if (valueClass.equals(Integer.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_INT_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_INT;
-            }
-        } else if (valueClass.equals(Long.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_LONG_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_LONG;
-            }
-        } else if (valueClass.equals(Float.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_FLOAT_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_FLOAT;
-            }
-        } else if (valueClass.equals(Double.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_DOUBLE_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_DOUBLE;
-            }
-        } else if (valueClass.equals(String.class)) {
-            if (isArray) {
-                valueType = NetStreamConstants.TYPE_ARRAY;
-            } else {
-                valueType = NetStreamConstants.TYPE_STRING;
-            }
-        } else
-            System.err.printf("[warning] can not find type of %s\n", valueClass);
-
-        return valueType;
+        return NetStreamCodecRegistry.getType(value);
     }
 
+    /**
+     * @param data the value, which must not be negative
+     * @return the number of bytes of the value once encoded as a varint
+     */
     public static int getVarintSize(long data) {
-        // 7 bits -> 127
-        if (data < (1L << 7)) {
+        if (data < 0) {
+            // negative values are not supported and have always been cut to one byte
             return 1;
         }
 
-        // 14 bits -> 16383
-        if (data < (1L << 14)) {
-            return 2;
-        }
-
-        // 21 bits -> 2097151
-        if (data < (1L << 21)) {
-            return 3;
-        }
-
-        // 28 bits -> 268435455
-        if (data < (1L << 28)) {
-            return 4;
-        }
-
-        // 35 bits -> 34359738367
-        if (data < (1L << 35)) {
-            return 5;
-        }
-
-        // 42 bits -> 4398046511103
-        if (data < (1L << 42)) {
-            return 6;
-        }
-
-        // 49 bits -> 562949953421311
-        if (data < (1L << 49)) {
-            return 7;
-        }
-
-        // 56 bits -> 72057594037927935
-        if (data < (1L << 56)) {
-            return 8;
-        }
-
-        return 9;
+        // one byte for each started group of 7 significant bits
+        return (70 - Long.numberOfLeadingZeros(data | 1)) / 7;
     }
 
     public static void putVarint(ByteBuffer buffer, long number, int byteSize) {
-        for (int i = 0; i < byteSize; i++) {
-            int head = 128;
-            if (i == byteSize - 1) head = 0;
-            long b = ((number >> (7 * i)) & 127) ^ head;
-            buffer.put((byte) (b & 255));
+        for (int i = 1; i < byteSize; i++) {
+            buffer.put((byte) (number | 0x80));
+            number >>>= 7;
         }
+
+        buffer.put((byte) (number & 0x7F));
     }
 
     //
@@ -166,43 +83,21 @@ public class NetStreamUtils {
     //
 
     public static ByteBuffer encodeValue(Object in, int valueType) {
-        if (NetStreamConstants.TYPE_BOOLEAN == valueType) {
-            return encodeBoolean(in);
-        } else if (NetStreamConstants.TYPE_BOOLEAN_ARRAY == valueType) {
-            return encodeBooleanArray(in);
-        } else if (NetStreamConstants.TYPE_BYTE == valueType) {
-            return encodeByte(in);
-        } else if (NetStreamConstants.TYPE_BYTE_ARRAY == valueType) {
-            return encodeByteArray(in);
-        } else if (NetStreamConstants.TYPE_SHORT == valueType) {
-            return encodeShort(in);
-        } else if (NetStreamConstants.TYPE_SHORT_ARRAY == valueType) {
-            return encodeShortArray(in);
-        } else if (NetStreamConstants.TYPE_INT == valueType) {
-            return encodeInt(in);
-        } else if (NetStreamConstants.TYPE_INT_ARRAY == valueType) {
-            return encodeIntArray(in);
-        } else if (NetStreamConstants.TYPE_LONG == valueType) {
-            return encodeLong(in);
-        } else if (NetStreamConstants.TYPE_LONG_ARRAY == valueType) {
-            return encodeLongArray(in);
-        } else if (NetStreamConstants.TYPE_FLOAT == valueType) {
-            return encodeFloat(in);
-        } else if (NetStreamConstants.TYPE_FLOAT_ARRAY == valueType) {
-            return encodeFloatArray(in);
-        } else if (NetStreamConstants.TYPE_DOUBLE == valueType) {
-            return encodeDouble(in);
-        } else if (NetStreamConstants.TYPE_DOUBLE_ARRAY == valueType) {
-            return encodeDoubleArray(in);
-        } else if (NetStreamConstants.TYPE_STRING == valueType) {
-            return encodeString(in);
-        } else if (NetStreamConstants.TYPE_ARRAY == valueType) {
-            return encodeArray(in);
-        } else if (NetStreamConstants.TYPE_NULL == valueType) {
+        if (NetStreamConstants.TYPE_NULL == valueType) {
             return NULL_BUFFER;
         }
 
-        return null;
+        int size = getValueSize(in, valueType);
+
+        if (size < 0) {
+            return null;
+        }
+
+        ByteBuffer b = ByteBuffer.allocate(size);
+        putValue(b, in, valueType);
+        b.rewind();
+
+        return b;
     }
 
     public static ByteBuffer encodeUnsignedVarint(Object in) {
@@ -233,39 +128,32 @@ public class NetStreamUtils {
 
     public static ByteBuffer encodeString(Object in) {
         String s = (String) in;
-        byte[] data = s.getBytes(Charset.forName("UTF-8"));
+        int len = getUTF8Length(s);
 
-        ByteBuffer lenBuff = encodeUnsignedVarint(data.length);
-        //outBuffer(lenBuff);
-        ByteBuffer bb = ByteBuffer.allocate(lenBuff.capacity() + data.length);
-        bb.put(lenBuff).put(data);
+        ByteBuffer bb = ByteBuffer.allocate(getVarintSize(len) + len);
+        putString(bb, s, len);
         bb.rewind();
-        //outBuffer(bb);
 
         return bb;
     }
 
     public static ByteBuffer encodeArray(Object in) {
-        // TODO...
-        return null;
-    }
-
-    public static ByteBuffer encodeDoubleArray(Object in) {
-        Object[] data = (Object[]) in;
+        int size = getValueSize(in, NetStreamConstants.TYPE_ARRAY);
 
-        int ssize = getVarintSize(data.length);
-
-        ByteBuffer b = ByteBuffer.allocate(ssize + data.length * 8);
-
-        putVarint(b, data.length, ssize);
-
-        for (int i = 0; i < data.length; i++) {
-            b.putDouble((Double) data[i]);
+        if (size < 0) {
+            return null;
         }
+
+        ByteBuffer b = ByteBuffer.allocate(size);
+        putValue(b, in, NetStreamConstants.TYPE_ARRAY);
         b.rewind();
         return b;
     }
 
+    public static ByteBuffer encodeDoubleArray(Object in) {
+        return encodeValue(in, NetStreamConstants.TYPE_DOUBLE_ARRAY);
+    }
+
     /**
      * @param in The double to encode
      * @return ByteBuffer with encoded double in it
@@ -281,19 +169,7 @@ public class NetStreamUtils {
      * @return ByteBuffer with encoded float array in it
      */
     public static ByteBuffer encodeFloatArray(Object in) {
-        Object[] data = (Object[]) in;
-
-        int ssize = getVarintSize(data.length);
-
-        ByteBuffer b = ByteBuffer.allocate(ssize + data.length * 4);
-
-        putVarint(b, data.length, ssize);
-
-        for (int i = 0; i < data.length; i++) {
-            b.putFloat((Float) data[i]);
-        }
-        b.rewind();
-        return b;
+        return encodeValue(in, NetStreamConstants.TYPE_FLOAT_ARRAY);
     }
 
     /**
@@ -360,19 +236,7 @@ public class NetStreamUtils {
      * @return
      */
     public static ByteBuffer encodeByteArray(Object in) {
-        Object[] data = (Object[]) in;
-
-        int ssize = getVarintSize(data.length);
-
-        ByteBuffer b = ByteBuffer.allocate(ssize + data.length);
-
-        putVarint(b, data.length, ssize);
-
-        for (int i = 0; i < data.length; i++) {
-            b.put((Byte) data[i]);
-        }
-        b.rewind();
-        return b;
+        return encodeValue(in, NetStreamConstants.TYPE_BYTE_ARRAY);
     }
 
     /**
@@ -391,19 +255,7 @@ public class NetStreamUtils {
      * @return
      */
     public static ByteBuffer encodeBooleanArray(Object in) {
-        Object[] data = (Object[]) in;
-
-        int ssize = getVarintSize(data.length);
-
-        ByteBuffer b = ByteBuffer.allocate(ssize + data.length);
-
-        putVarint(b, data.length, ssize);
-
-        for (int i = 0; i < data.length; i++) {
-            b.put((byte) ((Boolean) data[i] == false ? 0 : 1));
-        }
-        b.rewind();
-        return b;
+        return encodeValue(in, NetStreamConstants.TYPE_BOOLEAN_ARRAY);
     }
 
     /**
@@ -418,35 +270,267 @@ public class NetStreamUtils {
     }
 
     public static ByteBuffer encodeVarintArray(Object in) {
-        Object[] data = (Object[]) in;
-        int[] sizes = new int[data.length];
-        long[] zigzags = new long[data.length];
-        int sumsizes = 0;
-        for (int i = 0; i < data.length; i++) {
-            long datum = ((Number) data[i]).longValue();
-            // signed integers encoding
-            // (n << 1) ^ (n >> 31)
-            // OK but java's negative values are two's complements...
-            zigzags[i] = datum > 0 ? (datum << 1) : ((Math.abs(datum) << 1) ^ 1);
+        return encodeValue(in, NetStreamConstants.TYPE_LONG_ARRAY);
+    }
+
+    //
+    // SINGLE-PASS ENCODING METHODS
+    //
+    // These methods write directly into a caller-provided buffer which must
+    // have enough room left (see the matching get*Size methods). They produce
+    // exactly the same bytes as the encode* methods without allocating.
+    //
+
+    public static void putUnsignedVarint(ByteBuffer buffer, long number) {
+        putVarint(buffer, number, getVarintSize(number));
+    }
+
+    public static void putSignedVarint(ByteBuffer buffer, long number) {
+        putUnsignedVarint(buffer, zigzag(number));
+    }
+
+    /**
+     * Signed to unsigned mapping used by {@link #encodeVarint(Object)}.
+     *
+     * @param data the signed value
+     * @return the unsigned value written on the wire
+     */
+    public static long zigzag(long data) {
+        return data >= 0 ? (data << 1) : ((Math.abs(data) << 1) ^ 1);
+    }
 
-            sizes[i] = getVarintSize(zigzags[i]);
-            sumsizes += sizes[i];
-            //System.out.printf("i=%d, zigzag=%d, size=%d\n",i, zigzags[i], sizes[i]);
+    /**
+     * Same as {@link #zigzag(long)} but with the behavior of
+     * {@link #encodeVarintArray(Object)} where zero is encoded as "minus zero".
+     */
+    static long zigzagArrayItem(long data) {
+        return data > 0 ? (data << 1) : ((Math.abs(data) << 1) ^ 1);
+    }
+
+    /**
+     * @param s the string
+     * @return the number of bytes needed to encode the string in UTF-8
+     */
+    public static int getUTF8Length(String s) {
+        int len = s.length();
+        int bytes = len;
+
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                continue;
+            } else if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // 4 bytes for 2 chars
+                bytes += 2;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced by '?'
+            } else {
+                bytes += 2;
+            }
         }
 
-        // the size of the size!
-        int ssize = getVarintSize(data.length);
+        return bytes;
+    }
 
-        ByteBuffer b = ByteBuffer.allocate(ssize + sumsizes);
+    /**
+     * @param s the string
+     * @return the size of the string, once encoded with its length
+     */
+    public static int getStringSize(String s) {
+        int len = getUTF8Length(s);
+        return getVarintSize(len) + len;
+    }
 
-        putVarint(b, data.length, ssize);
+    public static void putString(ByteBuffer buffer, String s) {
+        putString(buffer, s, getUTF8Length(s));
+    }
+
+    /**
+     * @param buffer     the destination buffer
+     * @param s          the string to encode
+     * @param utf8Length the UTF-8 length of s, as returned by {@link #getUTF8Length(String)}
+     */
+    public static void putString(ByteBuffer buffer, String s, int utf8Length) {
+        putUnsignedVarint(buffer, utf8Length);
 
-        for (int i = 0; i < data.length; i++) {
-            putVarint(b, zigzags[i], sizes[i]);
+        int len = s.length();
+
+        if (utf8Length == len) {
+            for (int i = 0; i < len; i++) {
+                buffer.put((byte) s.charAt(i));
+            }
+
+            return;
+        }
+
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Size of a value once encoded, without its type byte.
+     *
+     * @param in        the value
+     * @param valueType the type of the value, as returned by {@link #getType(Object)}
+     * @return the size in bytes, or -1 if the type can not be encoded
+     */
+    public static int getValueSize(Object in, int valueType) {
+        NetStreamCodec codec = NetStreamCodecRegistry.getCodec(valueType);
+        return codec == null ? -1 : codec.getSize(in);
+    }
+
+    /**
+     * Write a value, without its type byte. The buffer must have at least
+     * {@link #getValueSize(Object, int)} bytes remaining.
+     *
+     * @param buffer    the destination buffer
+     * @param in        the value
+     * @param valueType the type of the value, as returned by {@link #getType(Object)}
+     */
+    public static void putValue(ByteBuffer buffer, Object in, int valueType) {
+        NetStreamCodec codec = NetStreamCodecRegistry.getCodec(valueType);
+
+        if (codec != null) {
+            codec.put(buffer, in);
+        }
+    }
+
+    /**
+     * Size of an array of primitive values, encoded as the array of the
+     * matching boxed values.
+     *
+     * @param in        the array
+     * @param valueType the array type
+     * @return the size in bytes, or -1 if the array can not be encoded
+     */
+    public static int getPrimitiveArraySize(Object in, int valueType) {
+        if (in instanceof double[] && NetStreamConstants.TYPE_DOUBLE_ARRAY == valueType) {
+            int len = ((double[]) in).length;
+            return getVarintSize(len) + 8 * len;
+        } else if (in instanceof float[] && NetStreamConstants.TYPE_FLOAT_ARRAY == valueType) {
+            int len = ((float[]) in).length;
+            return getVarintSize(len) + 4 * len;
+        } else if (in instanceof byte[] && NetStreamConstants.TYPE_BYTE_ARRAY == valueType) {
+            int len = ((byte[]) in).length;
+            return getVarintSize(len) + len;
+        } else if (in instanceof boolean[] && NetStreamConstants.TYPE_BOOLEAN_ARRAY == valueType) {
+            int len = ((boolean[]) in).length;
+            return getVarintSize(len) + len;
+        } else if (in instanceof int[] && NetStreamConstants.TYPE_INT_ARRAY == valueType) {
+            int[] data = (int[]) in;
+            int size = getVarintSize(data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                size += getVarintSize(zigzagArrayItem(data[i]));
+            }
+
+            return size;
+        } else if (in instanceof long[] && NetStreamConstants.TYPE_LONG_ARRAY == valueType) {
+            long[] data = (long[]) in;
+            int size = getVarintSize(data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                size += getVarintSize(zigzagArrayItem(data[i]));
+            }
+
+            return size;
+        } else if (in instanceof short[] && NetStreamConstants.TYPE_SHORT_ARRAY == valueType) {
+            short[] data = (short[]) in;
+            int size = getVarintSize(data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                size += getVarintSize(zigzagArrayItem(data[i]));
+            }
+
+            return size;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Write an array of primitive values. Arrays of doubles and floats are
+     * copied in bulk.
+     *
+     * @param buffer    the destination buffer
+     * @param in        the array
+     * @param valueType the array type
+     */
+    public static void putPrimitiveArray(ByteBuffer buffer, Object in, int valueType) {
+        if (in instanceof double[]) {
+            double[] data = (double[]) in;
+
+            putUnsignedVarint(buffer, data.length);
+            buffer.asDoubleBuffer().put(data);
+            buffer.position(buffer.position() + 8 * data.length);
+        } else if (in instanceof float[]) {
+            float[] data = (float[]) in;
+
+            putUnsignedVarint(buffer, data.length);
+            buffer.asFloatBuffer().put(data);
+            buffer.position(buffer.position() + 4 * data.length);
+        } else if (in instanceof byte[]) {
+            byte[] data = (byte[]) in;
+
+            putUnsignedVarint(buffer, data.length);
+            buffer.put(data);
+        } else if (in instanceof boolean[]) {
+            boolean[] data = (boolean[]) in;
+
+            putUnsignedVarint(buffer, data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                buffer.put((byte) (data[i] ? 1 : 0));
+            }
+        } else if (in instanceof int[]) {
+            int[] data = (int[]) in;
+
+            putUnsignedVarint(buffer, data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                putUnsignedVarint(buffer, zigzagArrayItem(data[i]));
+            }
+        } else if (in instanceof long[]) {
+            long[] data = (long[]) in;
+
+            putUnsignedVarint(buffer, data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                putUnsignedVarint(buffer, zigzagArrayItem(data[i]));
+            }
+        } else if (in instanceof short[]) {
+            short[] data = (short[]) in;
+
+            putUnsignedVarint(buffer, data.length);
+
+            for (int i = 0; i < data.length; i++) {
+                putUnsignedVarint(buffer, zigzagArrayItem(data[i]));
+            }
         }
-        b.rewind();
-        //outBuffer(b);
-        return b;
     }
 
     //
@@ -462,47 +546,26 @@ public class NetStreamUtils {
             return bb.get();
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeType: could not decode type");
-            e.printStackTrace();
         }
 
         return 0;
     }
 
     public static Object decodeValue(ByteBuffer bb, int valueType) {
-        if (NetStreamConstants.TYPE_BOOLEAN == valueType) {
-            return decodeBoolean(bb);
-        } else if (NetStreamConstants.TYPE_BOOLEAN_ARRAY == valueType) {
-            return decodeBooleanArray(bb);
-        } else if (NetStreamConstants.TYPE_BYTE == valueType) {
-            return decodeByte(bb);
-        } else if (NetStreamConstants.TYPE_BYTE_ARRAY == valueType) {
-            return decodeByteArray(bb);
-        } else if (NetStreamConstants.TYPE_SHORT == valueType) {
-            return decodeShort(bb);
-        } else if (NetStreamConstants.TYPE_SHORT_ARRAY == valueType) {
-            return decodeShortArray(bb);
-        } else if (NetStreamConstants.TYPE_INT == valueType) {
-            return decodeInt(bb);
-        } else if (NetStreamConstants.TYPE_INT_ARRAY == valueType) {
-            return decodeIntArray(bb);
-        } else if (NetStreamConstants.TYPE_LONG == valueType) {
-            return decodeLong(bb);
-        } else if (NetStreamConstants.TYPE_LONG_ARRAY == valueType) {
-            return decodeLongArray(bb);
-        } else if (NetStreamConstants.TYPE_FLOAT == valueType) {
-            return decodeFloat(bb);
-        } else if (NetStreamConstants.TYPE_FLOAT_ARRAY == valueType) {
-            return decodeFloatArray(bb);
-        } else if (NetStreamConstants.TYPE_DOUBLE == valueType) {
-            return decodeDouble(bb);
-        } else if (NetStreamConstants.TYPE_DOUBLE_ARRAY == valueType) {
-            return decodeDoubleArray(bb);
-        } else if (NetStreamConstants.TYPE_STRING == valueType) {
-            return decodeString(bb);
-        } else if (NetStreamConstants.TYPE_ARRAY == valueType) {
-            return decodeArray(bb);
-        }
-        return null;
+        return NetStreamCodecRegistry.decode(bb, valueType, false);
+    }
+
+    /**
+     * Same as {@link #decodeValue(ByteBuffer, int)}, but arrays of numbers and
+     * booleans can be decoded as arrays of primitive values.
+     *
+     * @param bb              the buffer
+     * @param valueType       the type of the value
+     * @param primitiveArrays true to decode arrays as arrays of primitive values
+     * @return the value
+     */
+    public static Object decodeValue(ByteBuffer bb, int valueType, boolean primitiveArrays) {
+        return NetStreamCodecRegistry.decode(bb, valueType, primitiveArrays);
     }
 
     /**
@@ -523,20 +586,71 @@ public class NetStreamUtils {
 
     public static String decodeString(ByteBuffer bb) {
         try {
-            int len = (int) decodeUnsignedVarint(bb);
-            byte[] data = new byte[len];
+            long len = decodeUnsignedVarint(bb);
+
+            if (len > bb.remaining()) {
+                throw new BufferUnderflowException();
+            }
+
+            byte[] data = new byte[(int) len];
 
             bb.get(data);
 
-            return new String(data, Charset.forName("UTF-8"));
+            return new String(data, UTF_8);
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeString: could not decode string");
-            e.printStackTrace();
         }
 
         return null;
     }
 
+    /**
+     * Read a string as a view of the buffer, without creating a String. The
+     * position of the buffer is moved after the string.
+     *
+     * @param bb   the buffer
+     * @param view the view set on the string
+     * @return the view, or null if the buffer does not hold the whole string
+     */
+    public static NetStreamStringView decodeStringView(ByteBuffer bb, NetStreamStringView view) {
+        long len = decodeLength(bb);
+
+        if (len < 0 || len > bb.remaining()) {
+            return null;
+        }
+
+        int offset = bb.position();
+        bb.position(offset + (int) len);
+
+        return view.set(bb, offset, (int) len);
+    }
+
+    /**
+     * Read an unsigned varint, without logging if it is malformed. The position
+     * of the buffer is moved after the varint only if it is valid.
+     *
+     * @param bb the buffer
+     * @return the value, which is negative if the varint is too long or is not
+     * complete
+     */
+    private static long decodeLength(ByteBuffer bb) {
+        int pos = bb.position();
+        int limit = bb.limit();
+        long number = 0;
+
+        for (int shift = 0; shift < 64 && pos < limit; shift += 7) {
+            byte b = bb.get(pos++);
+            number |= (b & 0x7FL) << shift;
+
+            if (b >= 0) {
+                bb.position(pos);
+                return number;
+            }
+        }
+
+        return -1;
+    }
+
     public static Boolean decodeBoolean(ByteBuffer bb) {
         int data = 0;
 
@@ -544,7 +658,6 @@ public class NetStreamUtils {
             data = bb.get();
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeByte: could not decode");
-            e.printStackTrace();
         }
 
         return data != 0;
@@ -557,7 +670,6 @@ public class NetStreamUtils {
             data = bb.get();
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeByte: could not decode");
-            e.printStackTrace();
         }
 
         return data;
@@ -565,40 +677,162 @@ public class NetStreamUtils {
 
     public static long decodeUnsignedVarint(ByteBuffer bb) {
         try {
-            int size = 0;
-            long[] data = new long[9];
+            long b = bb.get();
 
-            do {
-                data[size] = bb.get();
-
-                size++;
+            if (b >= 0) {
+                return b;
+            }
 
-                //int bt =data[size-1]; 
-                //if (bt < 0) bt = (bt & 127) + (bt & 128);
-                //System.out.println("test "+bt+"  -> "+(data[size - 1]& 128) );
-            } while ((data[size - 1] & 128) == 128);
-            long number = 0;
+            long number = b & 0x7F;
+            int shift = 7;
 
-            for (int i = 0; i < size; i++) {
-                number ^= (data[i] & 127L) << (i * 7L);
-            }
+            do {
+                b = bb.get();
+                number |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0 && shift < 64);
 
             return number;
-
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeUnsignedVarintFromInteger: could not decode");
-            e.printStackTrace();
         }
 
         return 0L;
     }
 
-
     public static long decodeVarint(ByteBuffer bb) {
-        long number = decodeUnsignedVarint(bb);
+        return unzigzag(decodeUnsignedVarint(bb));
+    }
+
+    /**
+     * Inverse of {@link #zigzag(long)}.
+     */
+    public static long unzigzag(long number) {
         return ((number & 1) == 0) ? number >> 1 : -(number >> 1);
     }
 
+    //
+    // BULK VARINT METHODS
+    //
+    // These methods encode or decode a run of varints without any length
+    // prefix. Decoding reads eight bytes at once when it can, so that runs of
+    // one-byte values and two-byte values are decoded without looping on each
+    // byte.
+    //
+
+    private static final long CONTINUATION_BITS = 0x8080808080808080L;
+
+    /**
+     * @return the number of bytes needed by {@link #putUnsignedVarints(ByteBuffer, long[], int, int)}
+     */
+    public static int getUnsignedVarintsSize(long[] values, int offset, int length) {
+        int size = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            size += getVarintSize(values[i]);
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the number of bytes needed by {@link #putSignedVarints(ByteBuffer, long[], int, int)}
+     */
+    public static int getSignedVarintsSize(long[] values, int offset, int length) {
+        int size = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            size += getVarintSize(zigzag(values[i]));
+        }
+
+        return size;
+    }
+
+    public static void putUnsignedVarints(ByteBuffer buffer, long[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            long v = values[i];
+
+            if (v >= 0 && v < 0x80) {
+                buffer.put((byte) v);
+            } else {
+                putVarint(buffer, v, getVarintSize(v));
+            }
+        }
+    }
+
+    public static void putSignedVarints(ByteBuffer buffer, long[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            long v = zigzag(values[i]);
+
+            if (v < 0x80) {
+                buffer.put((byte) v);
+            } else {
+                putVarint(buffer, v, getVarintSize(v));
+            }
+        }
+    }
+
+    /**
+     * Decode a run of unsigned varints.
+     *
+     * @param bb     the buffer
+     * @param values where to store the values
+     * @param offset index of the first value in the array
+     * @param length number of values to decode
+     */
+    public static void decodeUnsignedVarints(ByteBuffer bb, long[] values, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        int pos = bb.position();
+        int limit = bb.limit();
+        boolean words = bb.order() == ByteOrder.BIG_ENDIAN;
+
+        while (i < end) {
+            if (words && limit - pos >= 8) {
+                long word = bb.getLong(pos);
+                long continued = word & CONTINUATION_BITS;
+
+                // bytes before the first one with a continuation bit are whole values
+                int singles = continued == 0 ? 8 : Long.numberOfLeadingZeros(continued) >>> 3;
+
+                if (singles > 0) {
+                    int n = Math.min(singles, end - i);
+
+                    for (int k = 0, shift = 56; k < n; k++, shift -= 8) {
+                        values[i++] = (word >>> shift) & 0x7F;
+                    }
+
+                    pos += n;
+                    continue;
+                }
+
+                if ((word & 0x0080000000000000L) == 0) {
+                    values[i++] = ((word >>> 56) & 0x7F) | ((word >>> 41) & 0x3F80);
+                    pos += 2;
+                    continue;
+                }
+            }
+
+            bb.position(pos);
+            values[i++] = decodeUnsignedVarint(bb);
+            pos = bb.position();
+        }
+
+        bb.position(pos);
+    }
+
+    /**
+     * Same as {@link #decodeUnsignedVarints(ByteBuffer, long[], int, int)} for
+     * values written by {@link #putSignedVarints(ByteBuffer, long[], int, int)}.
+     */
+    public static void decodeSignedVarints(ByteBuffer bb, long[] values, int offset, int length) {
+        decodeUnsignedVarints(bb, values, offset, length);
+
+        for (int i = offset; i < offset + length; i++) {
+            values[i] = unzigzag(values[i]);
+        }
+    }
+
     public static Short decodeShort(ByteBuffer bb) {
         return (short) decodeVarint(bb);
     }
@@ -644,7 +878,6 @@ public class NetStreamUtils {
             return res;
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeBooleanArray: could not decode array");
-            e.printStackTrace();
         }
 
         return null;
@@ -662,7 +895,6 @@ public class NetStreamUtils {
             return res;
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeBooleanArray: could not decode array");
-            e.printStackTrace();
         }
 
         return null;
@@ -680,7 +912,6 @@ public class NetStreamUtils {
             return res;
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeDoubleArray: could not decode array");
-            e.printStackTrace();
         }
 
         return null;
@@ -698,7 +929,6 @@ public class NetStreamUtils {
             return res;
         } catch (BufferUnderflowException e) {
             LOGGER.info("decodeFloatArray: could not decode array");
-            e.printStackTrace();
         }
 
         return null;
@@ -725,4 +955,75 @@ public class NetStreamUtils {
 
         return res;
     }
+
+    public static double[] decodePrimitiveDoubleArray(ByteBuffer bb) {
+        int len = (int) decodeUnsignedVarint(bb);
+        double[] res = new double[len];
+
+        bb.asDoubleBuffer().get(res);
+        bb.position(bb.position() + 8 * len);
+
+        return res;
+    }
+
+    public static float[] decodePrimitiveFloatArray(ByteBuffer bb) {
+        int len = (int) decodeUnsignedVarint(bb);
+        float[] res = new float[len];
+
+        bb.asFloatBuffer().get(res);
+        bb.position(bb.position() + 4 * len);
+
+        return res;
+    }
+
+    public static int[] decodePrimitiveIntArray(ByteBuffer bb) {
+        int len = (int) decodeUnsignedVarint(bb);
+        int[] res = new int[len];
+
+        for (int i = 0; i < len; i++) {
+            res[i] = (int) decodeVarint(bb);
+        }
+
+        return res;
+    }
+
+    public static long[] decodePrimitiveLongArray(ByteBuffer bb) {
+        int len = (int) decodeUnsignedVarint(bb);
+        long[] res = new long[len];
+
+        decodeSignedVarints(bb, res, 0, len);
+
+        return res;
+    }
+
+    public static short[] decodePrimitiveShortArray(ByteBuffer bb) {
+        int len = (int) decodeUnsignedVarint(bb);
+        short[] res = new short[len];
+
+        for (int i = 0; i < len; i++) {
+            res[i] = (short) decodeVarint(bb);
+        }
+
+        return res;
+    }
+
+    public static byte[] decodePrimitiveByteArray(ByteBuffer bb) {
+        int len = (int) decodeUnsignedVarint(bb);
+        byte[] res = new byte[len];
+
+        bb.get(res);
+
+        return res;
+    }
+
+    public static boolean[] decodePrimitiveBooleanArray(ByteBuffer bb) {
+        int len = (int) decodeUnsignedVarint(bb);
+        boolean[] res = new boolean[len];
+
+        for (int i = 0; i < len; i++) {
+            res[i] = bb.get() != 0;
+        }
+
+        return res;
+    }
 }
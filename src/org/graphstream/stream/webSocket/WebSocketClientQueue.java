@@ -0,0 +1,776 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket;
+
+import org.graphstream.stream.netstream.NetStreamCodecRegistry;
+import org.graphstream.stream.netstream.NetStreamConstants;
+import org.graphstream.stream.netstream.NetStreamExtendedConstants;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketListener;
+import org.java_websocket.framing.CloseFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue of the frames sent to one connection, measured in bytes.
+ * <p>
+ * Frames are given to the WebSocket as long as the data it has not written
+ * yet to the socket stays under the socket budget; they are kept in the queue
+ * otherwise, and given later by {@link #drain()}. Queued frames are
+ * {@link WebSocketSharedFrame}s shared with the other connections, so
+ * queueing a frame does not copy it. When the queue can not hold
+ * a new frame, the queue follows its {@link OverflowPolicy}. The queue goes
+ * over the high-water mark when a client does not read fast enough, and under
+ * the low-water mark when it has caught up; the {@link Listener} is told of
+ * both.
+ * <p>
+ * Methods are synchronized: frames are queued by the thread sending the
+ * events, and drained by the proxy.
+ *
+ * @since 17/10/26.
+ */
+public class WebSocketClientQueue {
+    private static final Logger LOGGER = Logger.getLogger(WebSocketClientQueue.class.getName());
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * Default maximum number of queued bytes.
+     */
+    public static final long DEFAULT_CAPACITY = 4 << 20;
+
+    /**
+     * Default maximum number of bytes the WebSocket may hold before frames are
+     * kept in the queue.
+     */
+    public static final long DEFAULT_SOCKET_BUDGET = 64 << 10;
+
+    /**
+     * What the queue does when it can not hold a new frame.
+     */
+    public static enum OverflowPolicy {
+        /**
+         * Drop the oldest frames until the new one fits. The client misses
+         * events, so this is meant for streams where newer events make older
+         * ones useless, and not for dictionary-coded, compact or delta-encoded
+         * streams.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the queued attribute changes replaced by a newer change of the
+         * same attribute, then behave as {@link #RESYNC} if there is still no
+         * room. Only uncompressed NetStream frames can be conflated.
+         */
+        CONFLATE,
+        /**
+         * Drop the queued frames and send the whole graph again, see
+         * {@link #resync()}. The frames of the replay do not count in the
+         * capacity.
+         */
+        RESYNC,
+        /**
+         * Drop the queued frames and close the connection.
+         */
+        DISCONNECT
+    }
+
+    /**
+     * Told when queues cross their watermarks. Called with the lock of the
+     * queue held, so it must not block.
+     */
+    public static interface Listener {
+        void queueHigh(WebSocketClientQueue queue);
+
+        void queueLow(WebSocketClientQueue queue);
+    }
+
+    /**
+     * A queued frame, holding a reference of the shared frame.
+     */
+    protected static class Frame {
+        WebSocketSharedFrame shared;
+        ByteBuffer data;
+        boolean bounded;
+        boolean conflatable;
+
+        Frame(WebSocketSharedFrame shared, boolean bounded, boolean conflatable) {
+            this.shared = shared;
+            this.data = shared.getPayload();
+            this.bounded = bounded;
+            this.conflatable = conflatable;
+        }
+    }
+
+    protected final WebSocket webSocket;
+    protected final WebSocketListener listener;
+    protected final ArrayDeque<Frame> frames = new ArrayDeque<Frame>();
+    protected long bytes;
+
+    /**
+     * Bytes of the frames queued with a bound, which must not exceed the
+     * capacity. The frames of a replay are not counted, so that the events
+     * following a replay have the whole capacity.
+     */
+    protected long boundedBytes;
+    protected boolean high;
+    protected boolean closed;
+
+    protected OverflowPolicy policy = OverflowPolicy.DISCONNECT;
+    protected long capacity = DEFAULT_CAPACITY;
+    protected long highWater = DEFAULT_CAPACITY * 3 / 4;
+    protected long lowWater = DEFAULT_CAPACITY / 4;
+    protected long socketBudget = DEFAULT_SOCKET_BUDGET;
+    protected Listener watermarkListener;
+
+    protected volatile long queuedBytes;
+    protected volatile long peakBytes;
+    protected volatile long sentFrames;
+    protected volatile long droppedFrames;
+    protected volatile long droppedBytes;
+    protected volatile long conflatedMessages;
+    protected volatile long overflowCount;
+    protected volatile long highWaterCount;
+    protected volatile long resyncCount;
+
+    public WebSocketClientQueue(WebSocket webSocket) {
+        this(webSocket, null);
+    }
+
+    /**
+     * @param webSocket the connection
+     * @param listener  the server of the connection, or null to let the
+     *                  library frame each payload, see
+     *                  {@link WebSocketSharedFrame#writeTo(WebSocket, WebSocketListener)}
+     */
+    public WebSocketClientQueue(WebSocket webSocket, WebSocketListener listener) {
+        this.webSocket = webSocket;
+        this.listener = listener;
+    }
+
+    public WebSocket getWebSocket() {
+        return webSocket;
+    }
+
+    public synchronized void setOverflowPolicy(OverflowPolicy policy) {
+        this.policy = policy;
+    }
+
+    public synchronized OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param capacity     maximum number of queued bytes, frames queued
+     *                     without bound excepted
+     * @param socketBudget maximum number of bytes the WebSocket may hold
+     *                     before frames are queued
+     */
+    public synchronized void setCapacity(long capacity, long socketBudget) {
+        if (capacity <= 0 || socketBudget <= 0) {
+            throw new IllegalArgumentException("capacity and budget must be positive");
+        }
+
+        this.capacity = capacity;
+        this.socketBudget = socketBudget;
+    }
+
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getSocketBudget() {
+        return socketBudget;
+    }
+
+    /**
+     * @param low  number of queued bytes under which the client has caught up
+     * @param high number of queued bytes over which the client is slow
+     */
+    public synchronized void setWatermarks(long low, long high) {
+        if (low < 0 || low > high) {
+            throw new IllegalArgumentException("watermarks must verify 0 <= low <= high");
+        }
+
+        this.lowWater = low;
+        this.highWater = high;
+    }
+
+    public synchronized long getLowWater() {
+        return lowWater;
+    }
+
+    public synchronized long getHighWater() {
+        return highWater;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.watermarkListener = listener;
+    }
+
+    /**
+     * Same as {@link #send(WebSocketSharedFrame, boolean, boolean)}, with a
+     * payload which is framed for this connection only. The position of the
+     * payload is not changed.
+     *
+     * @param buffer the payload
+     * @param text   true for a text frame, the payload being UTF-8
+     */
+    public void send(ByteBuffer buffer, boolean text, boolean bounded, boolean conflatable) {
+        WebSocketSharedFrame frame = new WebSocketSharedFrame(buffer, text);
+
+        try {
+            send(frame, bounded, conflatable);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Send a frame, or queue it if the WebSocket already holds too much data.
+     * A queued frame is retained until it is sent or dropped.
+     *
+     * @param frame       the frame
+     * @param bounded     false for frames which must be sent whatever the
+     *                    size of the queue, such as the frames of a replay
+     * @param conflatable true if the payload holds NetStream messages which
+     *                    may be conflated
+     */
+    public synchronized void send(WebSocketSharedFrame frame, boolean bounded, boolean conflatable) {
+        if (closed) {
+            return;
+        }
+
+        drain();
+
+        if (frames.isEmpty() && getSocketBytes() < socketBudget) {
+            write(frame);
+            return;
+        }
+
+        int size = frame.getPayloadSize();
+
+        if (bounded && boundedBytes + size > capacity && !makeRoom(size)) {
+            return;
+        }
+
+        frame.retain();
+        frames.add(new Frame(frame, bounded, conflatable));
+        bytes += size;
+
+        if (bounded) {
+            boundedBytes += size;
+        }
+
+        if (bytes > peakBytes) {
+            peakBytes = bytes;
+        }
+
+        update();
+    }
+
+    /**
+     * Give the queued frames to the WebSocket, as long as it does not hold
+     * more than the socket budget.
+     */
+    public synchronized void drain() {
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        while (!frames.isEmpty() && getSocketBytes() < socketBudget) {
+            Frame frame = frames.poll();
+            remove(frame);
+            write(frame.shared);
+            frame.shared.release();
+        }
+
+        update();
+    }
+
+    /**
+     * Drop the queued frames and stop sending, when the connection closes.
+     */
+    public synchronized void close() {
+        closed = true;
+        clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    /**
+     * @return true if the queue has gone over the high-water mark and not yet
+     * under the low-water mark
+     */
+    public synchronized boolean isAboveHighWater() {
+        return high;
+    }
+
+    /**
+     * @return the number of queued bytes
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return the number of frames in the queue
+     */
+    public synchronized int getQueuedFrames() {
+        return frames.size();
+    }
+
+    /**
+     * @return the largest number of bytes the queue has held
+     */
+    public long getPeakBytes() {
+        return peakBytes;
+    }
+
+    public long getSentFrames() {
+        return sentFrames;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getConflatedMessages() {
+        return conflatedMessages;
+    }
+
+    /**
+     * @return the number of times a frame did not fit in the queue
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * @return the number of times the queue has gone over the high-water mark
+     */
+    public long getHighWaterCount() {
+        return highWaterCount;
+    }
+
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    /**
+     * Send the whole graph again to the client, after the queued frames have
+     * been dropped. The frames of the replay have to be given with `bounded`
+     * set to false. This implementation closes the connection, since the queue
+     * does not know the graph.
+     *
+     * @return false if the client could not be resynchronized
+     */
+    protected boolean resync() {
+        return false;
+    }
+
+    /**
+     * @return the number of bytes held by the WebSocket and not yet written to
+     * the socket
+     */
+    protected long getSocketBytes() {
+        return getSocketBytes(webSocket, socketBudget);
+    }
+
+    /**
+     * @param webSocket the connection
+     * @param unknown   number of bytes returned when the connection holds
+     *                  data whose size is unknown
+     * @return the number of bytes held by a WebSocket and not yet written to
+     * the socket
+     */
+    public static long getSocketBytes(WebSocket webSocket, long unknown) {
+        return WebSocketOutQueue.getBufferedBytes(webSocket, unknown);
+    }
+
+    protected void write(WebSocketSharedFrame frame) {
+        if (webSocket.isOpen()) {
+            frame.writeTo(webSocket, listener);
+            sentFrames++;
+        }
+    }
+
+    /**
+     * Follow the overflow policy.
+     *
+     * @return true if the new frame can be queued
+     */
+    protected boolean makeRoom(int size) {
+        overflowCount++;
+
+        switch (policy) {
+            case DROP_OLDEST:
+                if (size > capacity) {
+                    droppedFrames++;
+                    droppedBytes += size;
+                    return false;
+                }
+
+                Iterator<Frame> it = frames.iterator();
+
+                while (boundedBytes + size > capacity) {
+                    Frame frame = it.next();
+
+                    if (frame.bounded) {
+                        it.remove();
+                        drop(frame);
+                    }
+                }
+
+                return true;
+            case CONFLATE:
+                conflate();
+
+                if (boundedBytes + size <= capacity) {
+                    return true;
+                }
+
+                // no room left
+                return resyncOrDisconnect();
+            case RESYNC:
+                return resyncOrDisconnect();
+            case DISCONNECT:
+            default:
+                return disconnect();
+        }
+    }
+
+    /**
+     * Drop the queued frames and send the whole graph again, or close the
+     * connection if the client can not be resynchronized.
+     *
+     * @return false, the new frame is not queued
+     */
+    protected boolean resyncOrDisconnect() {
+        clear();
+
+        if (resync()) {
+            resyncCount++;
+            return false;
+        }
+
+        return disconnect();
+    }
+
+    /**
+     * Drop the queued frames and close the connection.
+     *
+     * @return false, the new frame is not queued
+     */
+    protected boolean disconnect() {
+        LOGGER.info("closing slow connection: " + webSocket.getRemoteSocketAddress());
+
+        clear();
+        closed = true;
+        webSocket.close(CloseFrame.POLICY_VALIDATION, "slow consumer");
+
+        return false;
+    }
+
+    protected void remove(Frame frame) {
+        int size = frame.data.remaining();
+
+        bytes -= size;
+
+        if (frame.bounded) {
+            boundedBytes -= size;
+        }
+    }
+
+    protected void drop(Frame frame) {
+        remove(frame);
+        droppedFrames++;
+        droppedBytes += frame.data.remaining();
+        frame.shared.release();
+    }
+
+    protected void clear() {
+        while (!frames.isEmpty()) {
+            drop(frames.poll());
+        }
+
+        update();
+    }
+
+    /**
+     * Update the counters and check the watermarks.
+     */
+    protected void update() {
+        queuedBytes = bytes;
+
+        if (!high && bytes >= highWater && bytes > 0) {
+            high = true;
+            highWaterCount++;
+
+            if (watermarkListener != null) {
+                watermarkListener.queueHigh(this);
+            }
+        } else if (high && bytes <= lowWater) {
+            high = false;
+
+            if (watermarkListener != null) {
+                watermarkListener.queueLow(this);
+            }
+        }
+    }
+
+    /**
+     * Drop the attribute changes of the conflatable frames which are followed
+     * by a newer change of the same attribute of the same element. Changes
+     * followed by a delta-encoded change are kept, since the delta depends on
+     * them.
+     */
+    protected void conflate() {
+        HashSet<String> replaced = new HashSet<String>();
+        HashSet<String> pinned = new HashSet<String>();
+        Iterator<Frame> it = frames.descendingIterator();
+
+        while (it.hasNext()) {
+            Frame frame = it.next();
+
+            if (!frame.conflatable) {
+                continue;
+            }
+
+            ByteBuffer data = frame.data;
+            ByteBuffer kept = null;
+            int pos = data.position();
+            int limit = data.limit();
+
+            // messages are read from the newest one, so their bounds are found first
+            int count = 0;
+            int[] starts = new int[8];
+
+            while (pos + 4 <= limit) {
+                int size = data.getInt(pos) & ~NetStreamExtendedConstants.MESSAGE_FLAG_COMPACT;
+
+                // the size of a message counts its own 4 bytes
+                if (size < 4 || pos + size > limit) {
+                    break;
+                }
+
+                if (count == starts.length) {
+                    int[] larger = new int[count * 2];
+                    System.arraycopy(starts, 0, larger, 0, count);
+                    starts = larger;
+                }
+
+                starts[count++] = pos;
+                pos += size;
+            }
+
+            if (pos != limit) {
+                // not a sequence of NetStream messages
+                continue;
+            }
+
+            boolean[] dropped = new boolean[count];
+            int droppedSize = 0;
+
+            for (int i = count - 1; i >= 0; i--) {
+                String key = getConflationKey(data, starts[i]);
+
+                if (key == null) {
+                    continue;
+                }
+
+                boolean delta = key.charAt(0) == 'd';
+                key = key.substring(1);
+
+                if (pinned.contains(key)) {
+                    continue;
+                }
+
+                if (replaced.contains(key)) {
+                    dropped[i] = true;
+                    droppedSize += data.getInt(starts[i]);
+                    conflatedMessages++;
+                } else if (delta) {
+                    pinned.add(key);
+                } else {
+                    replaced.add(key);
+                }
+            }
+
+            if (droppedSize > 0) {
+                kept = ByteBuffer.allocate(data.remaining() - droppedSize);
+
+                for (int i = 0; i < count; i++) {
+                    if (!dropped[i]) {
+                        int end = i + 1 < count ? starts[i + 1] : limit;
+                        ByteBuffer message = data.duplicate();
+                        message.limit(end).position(starts[i]);
+                        kept.put(message);
+                    }
+                }
+
+                kept.flip();
+                remove(frame);
+
+                frame.shared.release();
+                frame.shared = new WebSocketSharedFrame(kept, false);
+                frame.data = frame.shared.getPayload();
+                bytes += kept.remaining();
+
+                if (frame.bounded) {
+                    boundedBytes += kept.remaining();
+                }
+            }
+        }
+
+        // frames left empty are removed
+        it = frames.iterator();
+
+        while (it.hasNext()) {
+            Frame frame = it.next();
+
+            if (!frame.data.hasRemaining()) {
+                it.remove();
+                frame.shared.release();
+            }
+        }
+
+        update();
+    }
+
+    /**
+     * @return the key of an attribute change, prefixed by 'd' if the new value
+     * is delta-encoded and by 'a' otherwise, or null if the message is not a
+     * plain attribute change
+     */
+    protected static String getConflationKey(ByteBuffer data, int start) {
+        int size = data.getInt(start);
+
+        if ((size & NetStreamExtendedConstants.MESSAGE_FLAG_COMPACT) != 0) {
+            return null;
+        }
+
+        ByteBuffer bb = data.duplicate();
+        bb.limit(start + size).position(start + 4);
+
+        int streamStart = bb.position();
+
+        if (!skipString(bb) || !bb.hasRemaining()) {
+            return null;
+        }
+
+        int streamEnd = bb.position();
+        int event = bb.get() & 0xFF;
+        boolean element;
+
+        if (event == NetStreamConstants.EVENT_CHG_NODE_ATTR || event == NetStreamConstants.EVENT_CHG_EDGE_ATTR) {
+            element = true;
+        } else if (event == NetStreamConstants.EVENT_CHG_GRAPH_ATTR) {
+            element = false;
+        } else {
+            return null;
+        }
+
+        // source id and time id
+        if (!skipString(bb) || readVarint(bb) < 0) {
+            return null;
+        }
+
+        int keyStart = bb.position();
+
+        if ((element && !skipString(bb)) || !skipString(bb)) {
+            return null;
+        }
+
+        int keyEnd = bb.position();
+
+        if (!bb.hasRemaining()
+                || NetStreamCodecRegistry.skipValue(bb, bb.get()) != NetStreamCodecRegistry.VALUE_COMPLETE
+                || !bb.hasRemaining()) {
+            return null;
+        }
+
+        int type = bb.get() & 0xFF;
+        boolean delta = type == NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA
+                || type == NetStreamExtendedConstants.TYPE_QUANTIZED_DELTA_ARRAY;
+
+        byte[] key = new byte[2 + streamEnd - streamStart + keyEnd - keyStart];
+        key[0] = (byte) (delta ? 'd' : 'a');
+        key[1] = (byte) event;
+
+        ByteBuffer k = ByteBuffer.wrap(key, 2, key.length - 2);
+        bb.limit(streamEnd).position(streamStart);
+        k.put(bb);
+        bb.limit(keyEnd).position(keyStart);
+        k.put(bb);
+
+        return new String(key, ISO_8859_1);
+    }
+
+    private static boolean skipString(ByteBuffer bb) {
+        long len = readVarint(bb);
+
+        if (len < 0 || len > bb.remaining()) {
+            return false;
+        }
+
+        bb.position(bb.position() + (int) len);
+        return true;
+    }
+
+    /**
+     * @return the varint, or -1 if it is truncated
+     */
+    private static long readVarint(ByteBuffer bb) {
+        long number = 0;
+
+        for (int shift = 0; shift < 64 && bb.hasRemaining(); shift += 7) {
+            byte b = bb.get();
+            number |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return number;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket;
+
+import org.graphstream.stream.Sink;
+import org.graphstream.stream.netstream.NetStreamBulkSink;
+import org.graphstream.stream.netstream.NetStreamTransport;
+
+/**
+ * Encoding of the events sent to the clients which select it with the
+ * WebSocket subprotocol of the codec, instead of the binary NetStream format.
+ * <p>
+ * The proxy creates one encoder per codec, so each event is encoded once for
+ * all the connections using the codec, and one more for each new connection
+ * to replay the graph.
+ *
+ * @see WebSocketProxy#addCodec(WebSocketCodec)
+ * @since 17/10/26.
+ */
+public interface WebSocketCodec {
+    /**
+     * @return the WebSocket subprotocol by which clients select the codec
+     */
+    String getSubprotocol();
+
+    /**
+     * @return true if messages are sent as text frames, false for binary frames
+     */
+    boolean isText();
+
+    /**
+     * Create an encoder of events.
+     *
+     * @param transport the transport receiving the messages, UTF-8 encoded for
+     *                  text codecs, which consumes them before returning
+     * @param maxBytes  size from which a batch of events is sent, 0 to send
+     *                  each event alone
+     * @param maxDelay  maximum time in milliseconds an event waits in a batch,
+     *                  or 0 to send batches only when full or flushed
+     * @return the encoder
+     */
+    Encoder createEncoder(NetStreamTransport transport, int maxBytes, long maxDelay);
+
+    interface Encoder extends Sink, NetStreamBulkSink {
+        /**
+         * Send the pending events, if any.
+         */
+        void flush();
+    }
+}
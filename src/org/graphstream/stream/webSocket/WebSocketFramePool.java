@@ -0,0 +1,275 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of the direct buffers of the {@link WebSocketSharedFrame}s.
+ * <p>
+ * Buffers are sorted in classes of power-of-two sizes. A frame larger than the
+ * largest class gets a heap buffer which is not pooled. The pool keeps at most
+ * a given number of bytes; buffers released beyond are left to the garbage
+ * collector. The pool also keeps the frames given to connections which have
+ * not written them yet, see {@link #reclaim()}.
+ *
+ * @since 17/10/26.
+ */
+public class WebSocketFramePool {
+    /**
+     * Size of the smallest buffers.
+     */
+    public static final int MIN_BUFFER_SIZE = 1 << 8;
+
+    /**
+     * Default size of the largest pooled buffers.
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Default maximum number of bytes kept by the pool.
+     */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 16 << 20;
+
+    /**
+     * Default minimum delay between two reclaims done while framing, in
+     * milliseconds.
+     */
+    public static final long DEFAULT_RECLAIM_INTERVAL = 10;
+
+    protected final int maxBufferSize;
+    protected final long maxPooledBytes;
+    protected final ConcurrentLinkedQueue<ByteBuffer>[] free;
+    protected final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * Frames held by connections.
+     */
+    protected final ConcurrentLinkedQueue<WebSocketSharedFrame> inFlight = new ConcurrentLinkedQueue<WebSocketSharedFrame>();
+    protected final ReentrantLock reclaimLock = new ReentrantLock();
+    protected final AtomicLong nextReclaim = new AtomicLong(System.nanoTime());
+    protected volatile long reclaimInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_RECLAIM_INTERVAL);
+
+    protected final AtomicLong allocatedBuffers = new AtomicLong();
+    protected final AtomicLong reusedBuffers = new AtomicLong();
+    protected final AtomicLong framedBytes = new AtomicLong();
+
+    public WebSocketFramePool() {
+        this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * @param maxBufferSize  size of the largest pooled buffers, rounded up to
+     *                       a power of two
+     * @param maxPooledBytes maximum number of bytes kept by the pool
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WebSocketFramePool(int maxBufferSize, long maxPooledBytes) {
+        int classes = 1;
+
+        while ((MIN_BUFFER_SIZE << (classes - 1)) < maxBufferSize && classes < 24) {
+            classes++;
+        }
+
+        this.maxBufferSize = MIN_BUFFER_SIZE << (classes - 1);
+        this.maxPooledBytes = maxPooledBytes;
+        this.free = new ConcurrentLinkedQueue[classes];
+
+        for (int i = 0; i < classes; i++) {
+            free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    /**
+     * Frame a payload once, in a buffer of the pool. The caller holds the
+     * first reference of the frame.
+     *
+     * @param payload the payload, from its position to its limit, which is not
+     *                changed
+     * @param text    true for a text frame, the payload being UTF-8
+     * @return the frame
+     */
+    public WebSocketSharedFrame frame(ByteBuffer payload, boolean text) {
+        long now = System.nanoTime();
+        long next = nextReclaim.get();
+
+        // one of the framing threads reclaims, unless a reclaim is running
+        if (now - next >= 0 && nextReclaim.compareAndSet(next, now + reclaimInterval) && reclaimLock.tryLock()) {
+            try {
+                reclaimFrames();
+            } finally {
+                reclaimLock.unlock();
+            }
+        }
+
+        int size = WebSocketSharedFrame.getFrameSize(payload.remaining());
+
+        framedBytes.addAndGet(size);
+
+        return new WebSocketSharedFrame(this, acquire(size), payload, text);
+    }
+
+    protected ByteBuffer acquire(int size) {
+        if (size > maxBufferSize) {
+            allocatedBuffers.incrementAndGet();
+            return ByteBuffer.allocate(size);
+        }
+
+        int c = getSizeClass(size);
+        ByteBuffer buffer = free[c].poll();
+
+        if (buffer != null) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            reusedBuffers.incrementAndGet();
+            return buffer;
+        }
+
+        allocatedBuffers.incrementAndGet();
+        return ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << c);
+    }
+
+    /**
+     * Put back a buffer whose frame has been released.
+     */
+    protected void recycle(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+
+        if (!buffer.isDirect() || capacity > maxBufferSize || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+
+        if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+            pooledBytes.addAndGet(-capacity);
+            return;
+        }
+
+        buffer.clear();
+        free[getSizeClass(capacity)].offer(buffer);
+    }
+
+    protected int getSizeClass(int size) {
+        int c = 0;
+
+        while ((MIN_BUFFER_SIZE << c) < size) {
+            c++;
+        }
+
+        return c;
+    }
+
+    protected void track(WebSocketSharedFrame frame) {
+        inFlight.add(frame);
+    }
+
+    /**
+     * Set the minimum delay between two reclaims done while framing. Each
+     * reclaim goes through all the frames held by connections, so framing
+     * does not reclaim each time.
+     *
+     * @param interval the delay, 0 to reclaim each time a frame is created
+     * @param unit     unit of the delay
+     */
+    public void setReclaimInterval(long interval, TimeUnit unit) {
+        reclaimInterval = unit.toNanos(interval);
+        nextReclaim.set(System.nanoTime());
+    }
+
+    public long getReclaimInterval(TimeUnit unit) {
+        return unit.convert(reclaimInterval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Release the references of the connections which have written their
+     * frames, or which have been closed. This is done while framing, at most
+     * once per reclaim interval, and should be done regularly when no frame is
+     * sent.
+     *
+     * @return the number of frames still held by connections
+     * @see #setReclaimInterval(long, TimeUnit)
+     */
+    public int reclaim() {
+        reclaimLock.lock();
+
+        try {
+            return reclaimFrames();
+        } finally {
+            reclaimLock.unlock();
+        }
+    }
+
+    protected int reclaimFrames() {
+        int held = 0;
+        Iterator<WebSocketSharedFrame> it = inFlight.iterator();
+
+        while (it.hasNext()) {
+            if (it.next().releaseWritten()) {
+                it.remove();
+            } else {
+                held++;
+            }
+        }
+
+        return held;
+    }
+
+    /**
+     * @return the number of frames held by connections, as of the last
+     * {@link #reclaim()}
+     */
+    public int getInFlightFrames() {
+        return inFlight.size();
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getAllocatedBuffers() {
+        return allocatedBuffers.get();
+    }
+
+    public long getReusedBuffers() {
+        return reusedBuffers.get();
+    }
+
+    /**
+     * @return the number of bytes framed, once for all the connections
+     */
+    public long getFramedBytes() {
+        return framedBytes.get();
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket;
+
+import org.graphstream.stream.netstream.NetStreamTransport;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codec sending the events as JSON text, for clients which can not easily
+ * decode the binary NetStream format, such as browsers.
+ * <p>
+ * Each message is an array of events, and each event is an object with its
+ * type "e", its source "s" and its time id "t". Types are those of DGS:
+ * <pre>
+ * {"e":"an","s":"src","t":1,"id":"A"}
+ * {"e":"dn","s":"src","t":2,"id":"A"}
+ * {"e":"ae","s":"src","t":3,"id":"AB","from":"A","to":"B","directed":false}
+ * {"e":"de","s":"src","t":4,"id":"AB"}
+ * {"e":"cn","s":"src","t":5,"id":"A","attr":"xyz","op":"add","value":[1.0,2.0,0.0]}
+ * {"e":"ce","s":"src","t":6,"id":"AB","attr":"weight","op":"change","value":3}
+ * {"e":"cg","s":"src","t":7,"attr":"title","op":"remove"}
+ * {"e":"cl","s":"src","t":8}
+ * {"e":"st","s":"src","t":9,"step":1.0}
+ * </pre>
+ * Old values of changed attributes are not sent. Bulk changes are sent as one
+ * "change" event per element. Arrays and collections become JSON arrays, maps
+ * become objects, non-finite numbers become null and any other value is sent
+ * as its string form.
+ *
+ * @since 17/10/26.
+ */
+public class WebSocketJSONCodec implements WebSocketCodec {
+    public static final String SUBPROTOCOL = "netstream.json";
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "netstream-json-flusher");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.webSocket.WebSocketCodec#getSubprotocol()
+     */
+    @Override
+    public String getSubprotocol() {
+        return SUBPROTOCOL;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.webSocket.WebSocketCodec#isText()
+     */
+    @Override
+    public boolean isText() {
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.graphstream.stream.webSocket.WebSocketCodec#createEncoder(org.graphstream.stream.netstream.NetStreamTransport, int, long)
+     */
+    @Override
+    public Encoder createEncoder(NetStreamTransport transport, int maxBytes, long maxDelay) {
+        return new JSONEncoder(transport, maxBytes, maxDelay);
+    }
+
+    /**
+     * Encoder writing the events as UTF-8 JSON directly in a reused buffer.
+     * Events may be sent by one thread while batches are sent by the flushing
+     * thread, so access is synchronized.
+     */
+    public static class JSONEncoder implements Encoder {
+        protected final NetStreamTransport transport;
+        protected final int maxBytes;
+        protected final long maxDelay;
+
+        protected ByteBuffer out;
+        protected int eventCount;
+        protected ScheduledFuture<?> pendingFlush;
+
+        /**
+         * Digits of the number being written, in reverse order.
+         */
+        protected final byte[] digits = new byte[20];
+
+        protected final Runnable flushTask = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+
+        public JSONEncoder(NetStreamTransport transport, int maxBytes, long maxDelay) {
+            this.transport = transport;
+            this.maxBytes = maxBytes;
+            this.maxDelay = maxDelay;
+            this.out = ByteBuffer.allocate(Math.max(256, maxBytes + 256));
+            this.eventCount = 0;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.graphstream.stream.webSocket.WebSocketCodec.Encoder#flush()
+         */
+        @Override
+        public synchronized void flush() {
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+
+            if (eventCount == 0) {
+                return;
+            }
+
+            ensureCapacity(1);
+            out.put((byte) ']');
+            out.flip();
+
+            transport.send(out);
+
+            out.clear();
+            eventCount = 0;
+        }
+
+        protected void ensureCapacity(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+
+        protected void beginEvent(String type, String sourceId, long timeId) {
+            putAscii(eventCount == 0 ? "[{\"e\":\"" : ",{\"e\":\"");
+            putAscii(type);
+            putAscii("\",\"s\":");
+            putString(sourceId);
+            putAscii(",\"t\":");
+            putLong(timeId);
+        }
+
+        protected void endEvent() {
+            ensureCapacity(1);
+            out.put((byte) '}');
+            eventCount++;
+
+            if (out.position() >= maxBytes) {
+                flush();
+            } else if (eventCount == 1 && maxDelay > 0) {
+                pendingFlush = SCHEDULER.schedule(flushTask, maxDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        protected void putElement(String type, String sourceId, long timeId, String elementId) {
+            beginEvent(type, sourceId, timeId);
+
+            if (elementId != null) {
+                putAscii(",\"id\":");
+                putString(elementId);
+            }
+        }
+
+        protected void putAttribute(String type, String sourceId, long timeId, String elementId, String attribute,
+                                    String op) {
+            putElement(type, sourceId, timeId, elementId);
+            putAscii(",\"attr\":");
+            putString(attribute);
+            putAscii(",\"op\":\"");
+            putAscii(op);
+            putAscii("\"");
+        }
+
+        protected void attributeAdded(String type, String sourceId, long timeId, String elementId, String attribute,
+                                      Object value) {
+            putAttribute(type, sourceId, timeId, elementId, attribute, "add");
+            putAscii(",\"value\":");
+            putValue(value);
+            endEvent();
+        }
+
+        protected void attributeChanged(String type, String sourceId, long timeId, String elementId,
+                                        String attribute, Object value) {
+            putAttribute(type, sourceId, timeId, elementId, attribute, "change");
+            putAscii(",\"value\":");
+            putValue(value);
+            endEvent();
+        }
+
+        protected void attributeRemoved(String type, String sourceId, long timeId, String elementId,
+                                        String attribute) {
+            putAttribute(type, sourceId, timeId, elementId, attribute, "remove");
+            endEvent();
+        }
+
+        protected void attributesChanged(String type, String sourceId, long timeId, String attribute, String[] ids,
+                                         int count, Object values, int width) {
+            for (int i = 0; i < count; i++) {
+                putAttribute(type, sourceId, timeId + i, ids[i], attribute, "change");
+                putAscii(",\"value\":");
+
+                if (width > 1) {
+                    putAscii("[");
+                }
+
+                for (int j = 0; j < width; j++) {
+                    if (j > 0) {
+                        putAscii(",");
+                    }
+
+                    if (values instanceof double[]) {
+                        putDouble(((double[]) values)[i * width + j]);
+                    } else {
+                        putFloat(((float[]) values)[i * width + j]);
+                    }
+                }
+
+                if (width > 1) {
+                    putAscii("]");
+                }
+
+                endEvent();
+            }
+        }
+
+        //
+        // JSON WRITING METHODS
+        //
+
+        protected void putAscii(String s) {
+            int len = s.length();
+
+            ensureCapacity(len);
+
+            for (int i = 0; i < len; i++) {
+                out.put((byte) s.charAt(i));
+            }
+        }
+
+        protected void putLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                putAscii(Long.toString(value));
+                return;
+            }
+
+            ensureCapacity(20);
+
+            if (value < 0) {
+                out.put((byte) '-');
+                value = -value;
+            }
+
+            int n = 0;
+
+            do {
+                digits[n++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+
+            while (n > 0) {
+                out.put(digits[--n]);
+            }
+        }
+
+        protected void putDouble(double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                putAscii("null");
+            } else if (value == (long) value && Math.abs(value) < 1e15 && !(value == 0 && 1 / value < 0)) {
+                // integral values are common and need no formatting
+                putLong((long) value);
+                putAscii(".0");
+            } else {
+                putAscii(Double.toString(value));
+            }
+        }
+
+        protected void putFloat(float value) {
+            if (Float.isNaN(value) || Float.isInfinite(value)) {
+                putAscii("null");
+            } else if (value == (long) value && Math.abs(value) < 1e7) {
+                putDouble(value);
+            } else {
+                putAscii(Float.toString(value));
+            }
+        }
+
+        protected void putString(CharSequence s) {
+            int len = s.length();
+
+            // escapes take at most 6 bytes for a char, and UTF-8 at most 3
+            ensureCapacity(2 + 6 * len);
+            out.put((byte) '"');
+
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+
+                if (c >= 0x20 && c < 0x80) {
+                    if (c == '"' || c == '\\') {
+                        out.put((byte) '\\');
+                    }
+
+                    out.put((byte) c);
+                } else if (c < 0x20) {
+                    out.put((byte) '\\');
+
+                    switch (c) {
+                        case '\n':
+                            out.put((byte) 'n');
+                            break;
+                        case '\r':
+                            out.put((byte) 'r');
+                            break;
+                        case '\t':
+                            out.put((byte) 't');
+                            break;
+                        case '\b':
+                            out.put((byte) 'b');
+                            break;
+                        case '\f':
+                            out.put((byte) 'f');
+                            break;
+                        default:
+                            out.put((byte) 'u').put((byte) '0').put((byte) '0')
+                                    .put((byte) (c < 0x10 ? '0' : '1'))
+                                    .put((byte) Character.forDigit(c & 0xF, 16));
+                    }
+                } else if (c < 0x800) {
+                    out.put((byte) (0xC0 | (c >> 6)));
+                    out.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+
+                    out.put((byte) (0xF0 | (cp >> 18)));
+                    out.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    out.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    out.put((byte) (0x80 | (cp & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired surrogate, replaced as String#getBytes does
+                    out.put((byte) '?');
+                } else {
+                    out.put((byte) (0xE0 | (c >> 12)));
+                    out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    out.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+
+            out.put((byte) '"');
+        }
+
+        protected void putValue(Object value) {
+            if (value == null) {
+                putAscii("null");
+            } else if (value instanceof Boolean) {
+                putAscii((Boolean) value ? "true" : "false");
+            } else if (value instanceof Double) {
+                putDouble((Double) value);
+            } else if (value instanceof Float) {
+                putFloat((Float) value);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                    || value instanceof Byte) {
+                putLong(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                double d = ((Number) value).doubleValue();
+
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    putAscii("null");
+                } else {
+                    putAscii(value.toString());
+                }
+            } else if (value instanceof CharSequence) {
+                putString((CharSequence) value);
+            } else if (value instanceof double[]) {
+                double[] data = (double[]) value;
+                putAscii("[");
+
+                for (int i = 0; i < data.length; i++) {
+                    if (i > 0) {
+                        putAscii(",");
+                    }
+
+                    putDouble(data[i]);
+                }
+
+                putAscii("]");
+            } else if (value instanceof float[]) {
+                float[] data = (float[]) value;
+                putAscii("[");
+
+                for (int i = 0; i < data.length; i++) {
+                    if (i > 0) {
+                        putAscii(",");
+                    }
+
+                    putFloat(data[i]);
+                }
+
+                putAscii("]");
+            } else if (value instanceof Object[] || value.getClass().isArray()) {
+                int length = Array.getLength(value);
+                putAscii("[");
+
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        putAscii(",");
+                    }
+
+                    putValue(Array.get(value, i));
+                }
+
+                putAscii("]");
+            } else if (value instanceof Collection) {
+                boolean first = true;
+                putAscii("[");
+
+                for (Object item : (Collection<?>) value) {
+                    if (!first) {
+                        putAscii(",");
+                    }
+
+                    putValue(item);
+                    first = false;
+                }
+
+                putAscii("]");
+            } else if (value instanceof Map) {
+                boolean first = true;
+                putAscii("{");
+
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    if (!first) {
+                        putAscii(",");
+                    }
+
+                    putString(String.valueOf(entry.getKey()));
+                    putAscii(":");
+                    putValue(entry.getValue());
+                    first = false;
+                }
+
+                putAscii("}");
+            } else {
+                putString(value.toString());
+            }
+        }
+
+        //
+        // SINK METHODS
+        //
+
+        @Override
+        public synchronized void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
+            attributeAdded("cg", sourceId, timeId, null, attribute, value);
+        }
+
+        @Override
+        public synchronized void graphAttributeChanged(String sourceId, long timeId, String attribute,
+                                                       Object oldValue, Object newValue) {
+            attributeChanged("cg", sourceId, timeId, null, attribute, newValue);
+        }
+
+        @Override
+        public synchronized void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
+            attributeRemoved("cg", sourceId, timeId, null, attribute);
+        }
+
+        @Override
+        public synchronized void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute,
+                                                    Object value) {
+            attributeAdded("cn", sourceId, timeId, nodeId, attribute, value);
+        }
+
+        @Override
+        public synchronized void nodeAttributeChanged(String sourceId, long timeId, String nodeId,
+                                                      String attribute, Object oldValue, Object newValue) {
+            attributeChanged("cn", sourceId, timeId, nodeId, attribute, newValue);
+        }
+
+        @Override
+        public synchronized void nodeAttributeRemoved(String sourceId, long timeId, String nodeId,
+                                                      String attribute) {
+            attributeRemoved("cn", sourceId, timeId, nodeId, attribute);
+        }
+
+        @Override
+        public synchronized void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute,
+                                                    Object value) {
+            attributeAdded("ce", sourceId, timeId, edgeId, attribute, value);
+        }
+
+        @Override
+        public synchronized void edgeAttributeChanged(String sourceId, long timeId, String edgeId,
+                                                      String attribute, Object oldValue, Object newValue) {
+            attributeChanged("ce", sourceId, timeId, edgeId, attribute, newValue);
+        }
+
+        @Override
+        public synchronized void edgeAttributeRemoved(String sourceId, long timeId, String edgeId,
+                                                      String attribute) {
+            attributeRemoved("ce", sourceId, timeId, edgeId, attribute);
+        }
+
+        @Override
+        public synchronized void nodeAdded(String sourceId, long timeId, String nodeId) {
+            putElement("an", sourceId, timeId, nodeId);
+            endEvent();
+        }
+
+        @Override
+        public synchronized void nodeRemoved(String sourceId, long timeId, String nodeId) {
+            putElement("dn", sourceId, timeId, nodeId);
+            endEvent();
+        }
+
+        @Override
+        public synchronized void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId,
+                                           String toNodeId, boolean directed) {
+            putElement("ae", sourceId, timeId, edgeId);
+            putAscii(",\"from\":");
+            putString(fromNodeId);
+            putAscii(",\"to\":");
+            putString(toNodeId);
+            putAscii(directed ? ",\"directed\":true" : ",\"directed\":false");
+            endEvent();
+        }
+
+        @Override
+        public synchronized void edgeRemoved(String sourceId, long timeId, String edgeId) {
+            putElement("de", sourceId, timeId, edgeId);
+            endEvent();
+        }
+
+        @Override
+        public synchronized void graphCleared(String sourceId, long timeId) {
+            beginEvent("cl", sourceId, timeId);
+            endEvent();
+        }
+
+        @Override
+        public synchronized void stepBegins(String sourceId, long timeId, double step) {
+            beginEvent("st", sourceId, timeId);
+            putAscii(",\"step\":");
+            putDouble(step);
+            endEvent();
+        }
+
+        @Override
+        public synchronized void nodeAttributesChanged(String sourceId, long timeId, String attribute,
+                                                       String[] nodeIds, int count, double[] values, int width) {
+            attributesChanged("cn", sourceId, timeId, attribute, nodeIds, count, values, width);
+        }
+
+        @Override
+        public synchronized void nodeAttributesChanged(String sourceId, long timeId, String attribute,
+                                                       String[] nodeIds, int count, float[] values, int width) {
+            attributesChanged("cn", sourceId, timeId, attribute, nodeIds, count, values, width);
+        }
+
+        @Override
+        public synchronized void edgeAttributesChanged(String sourceId, long timeId, String attribute,
+                                                       String[] edgeIds, int count, double[] values, int width) {
+            attributesChanged("ce", sourceId, timeId, attribute, edgeIds, count, values, width);
+        }
+
+        @Override
+        public synchronized void edgeAttributesChanged(String sourceId, long timeId, String attribute,
+                                                       String[] edgeIds, int count, float[] values, int width) {
+            attributesChanged("ce", sourceId, timeId, attribute, edgeIds, count, values, width);
+        }
+    }
+}
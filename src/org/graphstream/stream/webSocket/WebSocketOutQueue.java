@@ -0,0 +1,153 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.WebSocketListener;
+import org.java_websocket.drafts.Draft_10;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.logging.Logger;
+
+/**
+ * Access to the output queue of the connections of Java-WebSocket.
+ * <p>
+ * The library has no API to give an already framed message to a connection,
+ * nor to know how many bytes a connection has not written yet. Both are done
+ * here through the public `outQueue` field of {@link WebSocketImpl}, and only
+ * here. The field is looked up once; with a version of the library which does
+ * not have it, frames are sent through {@link WebSocket#send(ByteBuffer)} and
+ * the size of the output queue is unknown.
+ * <p>
+ * A frame is enqueued only while the connection is open and not closing: the
+ * library puts the close frame in the same queue, and nothing may follow it.
+ * As with the methods of the library, a close started by another thread right
+ * after the check is not seen.
+ *
+ * @since 17/10/26.
+ */
+final class WebSocketOutQueue {
+    private static final Logger LOGGER = Logger.getLogger(WebSocketOutQueue.class.getName());
+
+    /**
+     * True if the output queue of the connections can be used.
+     */
+    static final boolean SUPPORTED = lookup();
+
+    private WebSocketOutQueue() {
+    }
+
+    private static boolean lookup() {
+        try {
+            Field field = WebSocketImpl.class.getField("outQueue");
+
+            if (Queue.class.isAssignableFrom(field.getType()) && !Modifier.isStatic(field.getModifiers())) {
+                return true;
+            }
+        } catch (NoSuchFieldException e) {
+            // checked below
+        } catch (SecurityException e) {
+            // checked below
+        }
+
+        LOGGER.warning("no output queue in the WebSocket connections, frames are framed by the library");
+        return false;
+    }
+
+    /**
+     * @param webSocket the connection
+     * @return true if frames can still be given to the connection
+     */
+    static boolean isWritable(WebSocket webSocket) {
+        return webSocket.isOpen() && !webSocket.isClosing() && !webSocket.isFlushAndClose();
+    }
+
+    /**
+     * @param webSocket the connection
+     * @param listener  the server of the connection, or null
+     * @return true if frames framed as RFC 6455 can be given to the connection
+     * with {@link #enqueue(WebSocket, WebSocketListener, ByteBuffer)}
+     */
+    static boolean canEnqueue(WebSocket webSocket, WebSocketListener listener) {
+        return SUPPORTED && listener != null && webSocket instanceof WebSocketImpl
+                && webSocket.getDraft() instanceof Draft_10;
+    }
+
+    /**
+     * Put a frame in the output queue of a connection and wake up the server
+     * to write it. The connection has to be accepted by
+     * {@link #canEnqueue(WebSocket, WebSocketListener)}.
+     *
+     * @param webSocket the connection
+     * @param listener  the server of the connection
+     * @param frame     the frame, header included
+     * @return false if the connection is not writable, the frame is then not
+     * enqueued
+     */
+    static boolean enqueue(WebSocket webSocket, WebSocketListener listener, ByteBuffer frame) {
+        if (!isWritable(webSocket)) {
+            return false;
+        }
+
+        WebSocketImpl impl = (WebSocketImpl) webSocket;
+
+        impl.outQueue.add(frame);
+        listener.onWriteDemand(impl);
+
+        return true;
+    }
+
+    /**
+     * @param webSocket the connection
+     * @param unknown   number of bytes returned when the connection holds
+     *                  data whose size is unknown
+     * @return the number of bytes held by a connection and not yet written to
+     * the socket
+     */
+    static long getBufferedBytes(WebSocket webSocket, long unknown) {
+        if (SUPPORTED && webSocket instanceof WebSocketImpl) {
+            long size = 0;
+
+            for (ByteBuffer b : ((WebSocketImpl) webSocket).outQueue) {
+                size += b.remaining();
+            }
+
+            return size;
+        }
+
+        return webSocket.hasBufferedData() ? unknown : 0;
+    }
+}
@@ -33,30 +33,94 @@ package org.graphstream.stream.webSocket;
 
 import org.graphstream.stream.Pipe;
 import org.graphstream.stream.Replayable;
+import org.graphstream.stream.Sink;
 import org.graphstream.stream.SourceBase;
+import org.graphstream.stream.netstream.NetStreamAsyncPipe;
+import org.graphstream.stream.netstream.NetStreamBatchTransport;
+import org.graphstream.stream.netstream.NetStreamBulkSink;
+import org.graphstream.stream.netstream.NetStreamCompressor;
+import org.graphstream.stream.netstream.NetStreamConflator;
 import org.graphstream.stream.netstream.NetStreamEncoder;
+import org.graphstream.stream.netstream.NetStreamFilterSink;
+import org.graphstream.stream.netstream.NetStreamGraphMirror;
+import org.graphstream.stream.netstream.NetStreamIdentifierCache;
+import org.graphstream.stream.netstream.NetStreamParallelDecoder;
 import org.graphstream.stream.netstream.NetStreamTransport;
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketListener;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.exceptions.InvalidDataException;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 /**
  * @since 22/01/16.
  */
-public class WebSocketProxy extends SourceBase implements Pipe {
+public class WebSocketProxy extends SourceBase implements Pipe, NetStreamBulkSink {
     private static final Logger LOGGER = Logger.getLogger(WebSocketProxy.class.getName());
 
     public static final int DEFAULT_PORT = 10042;
 
+    /**
+     * Header, or query parameter of the resource, by which a client asks for
+     * compressed frames. The server answers with the same header.
+     */
+    public static final String COMPRESSION_HEADER = "X-NetStream-Compression";
+    public static final String COMPRESSION_PARAMETER = "compression";
+    public static final String COMPRESSION_DEFLATE = "deflate";
+
+    /**
+     * Header by which clients select a codec, see {@link #addCodec(WebSocketCodec)}.
+     * Clients asking for {@link #SUBPROTOCOL}, or for no subprotocol, get the
+     * binary NetStream format.
+     */
+    public static final String SUBPROTOCOL_HEADER = "Sec-WebSocket-Protocol";
+    public static final String SUBPROTOCOL = "netstream";
+
+    /**
+     * Default number of bytes a new connection may hold while it gets the
+     * state of the graph.
+     */
+    public static final long DEFAULT_JOIN_SOCKET_BUDGET = 256 << 10;
+
+    /**
+     * Default number of bytes of frames kept for a new connection while it
+     * gets the state of the graph.
+     */
+    public static final long DEFAULT_JOIN_BUFFER_CAPACITY = 16 << 20;
+
+    /**
+     * Delays, in microseconds, between two attempts to give the state of the
+     * graph to a new connection which is not ready.
+     */
+    public static final long JOIN_MIN_DELAY = 1000;
+    public static final long JOIN_MAX_DELAY = 64000;
+
     protected WSServer server;
     protected NetStreamEncoder encoder;
 
@@ -64,6 +128,135 @@ public class WebSocketProxy extends SourceBase implements Pipe {
 
     protected Replayable replayable;
 
+    /**
+     * Batches of events sent to the clients, null if batching is disabled.
+     */
+    protected NetStreamBatchTransport batch;
+
+    /**
+     * Conflation of attribute changes, null if conflation is disabled.
+     */
+    protected NetStreamConflator conflator;
+
+    /**
+     * Thread encoding and sending the events, null if events are encoded and
+     * sent by the thread feeding the proxy.
+     */
+    protected NetStreamAsyncPipe async;
+
+    /**
+     * First stage of the outgoing events: the conflator, the asynchronous pipe
+     * or the encoder.
+     */
+    protected Sink output;
+
+    /**
+     * First stage of the outgoing bulk attribute changes: the asynchronous pipe
+     * or the encoder.
+     */
+    protected NetStreamBulkSink bulkOutput;
+
+    /**
+     * Compressor of the frames sent to the clients asking for it, null if
+     * compression is disabled.
+     */
+    protected volatile NetStreamCompressor compressor;
+
+    /**
+     * Codecs other than the binary NetStream format, which clients can select.
+     */
+    protected volatile CodecOutput[] codecs = new CodecOutput[0];
+
+    /**
+     * Decoding of the events sent by the clients, null if these events are
+     * ignored.
+     */
+    protected volatile NetStreamParallelDecoder inbound;
+
+    /**
+     * Connection which has sent the events of each source id, so that these
+     * events are not sent back to it.
+     */
+    protected final ConcurrentHashMap<String, WebSocket> inboundOrigins = new ConcurrentHashMap<String, WebSocket>();
+    protected boolean echoSuppression = true;
+
+    protected final AtomicLong inboundConnectionCount = new AtomicLong();
+
+    /**
+     * Settings of the queues of the connections, which are used only if
+     * {@link #outboundQueues} is true.
+     */
+    protected volatile boolean outboundQueues;
+    protected WebSocketClientQueue.OverflowPolicy outboundPolicy = WebSocketClientQueue.OverflowPolicy.DISCONNECT;
+    protected long outboundCapacity = WebSocketClientQueue.DEFAULT_CAPACITY;
+    protected long outboundSocketBudget = WebSocketClientQueue.DEFAULT_SOCKET_BUDGET;
+    protected long outboundLowWater = WebSocketClientQueue.DEFAULT_CAPACITY / 4;
+    protected long outboundHighWater = WebSocketClientQueue.DEFAULT_CAPACITY * 3 / 4;
+    protected boolean outboundWatermarksSet;
+    protected WebSocketClientQueue.Listener outboundListener;
+
+    /**
+     * Thread giving the queued frames to the connections.
+     */
+    protected ScheduledExecutorService drainer;
+
+    /**
+     * Buffers of the frames sent to the connections.
+     */
+    protected final WebSocketFramePool framePool = new WebSocketFramePool();
+
+    /**
+     * Time id of the graph clears sent to resynchronized connections.
+     */
+    protected final AtomicLong resyncTimeId = new AtomicLong();
+
+    /**
+     * Copy of the graph kept from the events, from which new connections get
+     * the graph; null if disabled.
+     */
+    protected volatile NetStreamGraphMirror mirror;
+
+    /**
+     * Held while the mirror and the encoders are given an event, so that a
+     * snapshot of the mirror matches the frames sent so far.
+     */
+    protected final ReentrantLock outputLock = new ReentrantLock();
+
+    /**
+     * Snapshot shared by the new connections, null if disabled.
+     */
+    protected volatile WebSocketSnapshotCache snapshotCache;
+
+    /**
+     * Thread giving the state of the graph to the new connections, created
+     * with the first one.
+     */
+    protected ScheduledExecutorService joiner;
+
+    /**
+     * Lock of {@link #joiner}, which connections overflowing their queue get
+     * while the output lock is held.
+     */
+    protected final Object joinerLock = new Object();
+
+    /**
+     * Number of bytes a new connection may hold and not have written yet,
+     * beyond which the state of the graph waits.
+     */
+    protected long joinSocketBudget = DEFAULT_JOIN_SOCKET_BUDGET;
+
+    /**
+     * Number of bytes of frames kept for a new connection while it gets the
+     * state of the graph, beyond which it is closed.
+     */
+    protected long joinBufferCapacity = DEFAULT_JOIN_BUFFER_CAPACITY;
+
+    /**
+     * Time id following the last event of the snapshots, also used as their
+     * lock.
+     */
+    protected final AtomicLong snapshotTimeId = new AtomicLong();
+
     public WebSocketProxy() throws UnknownHostException {
         this(DEFAULT_PORT);
     }
@@ -78,7 +271,9 @@ public class WebSocketProxy extends SourceBase implements Pipe {
 
     public WebSocketProxy(Replayable replayable, int port) throws UnknownHostException {
         server = new WSServer(port);
-        encoder = new NetStreamEncoder("wss", server);
+        encoder = createEncoder(server);
+        output = encoder;
+        bulkOutput = encoder;
         filters = new LinkedList<WebSocketFilter>();
 
         this.replayable = replayable;
@@ -96,198 +291,2084 @@ public class WebSocketProxy extends SourceBase implements Pipe {
         }
     }
 
-    public void startServer() {
-        server.start();
-        SERVERS.offer(server);
-        LOGGER.info(String.format("WebSocket Server is listenning on %d", server.getPort()));
+    /**
+     * Enable or disable dictionary-coding of identifiers in the events sent to
+     * the clients. This has to be done before the server is started.
+     *
+     * @param on true to use dictionary-coding
+     */
+    public void setDictionaryEnabled(boolean on) {
+        encoder.setDictionaryEnabled(on);
     }
 
-    public void stopServer() throws InterruptedException {
-        try {
-            server.stop();
-            SERVERS.remove(server);
-        } catch (IOException e) {
-            LOGGER.warning("exception while stopping ws server: " + e.getMessage());
-        }
+    public boolean isDictionaryEnabled() {
+        return encoder.isDictionaryEnabled();
     }
 
-    @Override
-    public void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
-        encoder.graphAttributeAdded(sourceId, timeId, attribute, value);
+    /**
+     * Send compact messages, where the stream and the source id are declared
+     * once and time ids are relative to the previous event. This has to be
+     * done before the server is started.
+     *
+     * @param on true to send compact messages
+     * @see NetStreamEncoder#setCompactHeader(boolean)
+     */
+    public void setCompactHeader(boolean on) {
+        encoder.setCompactHeader(on);
     }
 
-    @Override
-    public void graphAttributeChanged(String sourceId, long timeId, String attribute, Object oldValue, Object newValue) {
-        encoder.graphAttributeChanged(sourceId, timeId, attribute, oldValue, newValue);
+    public boolean isCompactHeader() {
+        return encoder.isCompactHeader();
     }
 
-    @Override
-    public void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
-        encoder.graphAttributeRemoved(sourceId, timeId, attribute);
+    /**
+     * Set the number of encoded identifiers kept by the encoder, 0 to disable
+     * the cache, which is disabled by default. This has to be done before the
+     * server is started.
+     *
+     * @param capacity the maximum number of cached identifiers
+     * @see NetStreamEncoder#setIdentifierCacheSize(int)
+     */
+    public void setIdentifierCacheSize(int capacity) {
+        encoder.setIdentifierCacheSize(capacity);
     }
 
-    @Override
-    public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
-        encoder.nodeAttributeAdded(sourceId, timeId, nodeId, attribute, value);
+    /**
+     * @return the cache of encoded identifiers, to read its counters, or null
+     * if it is disabled
+     */
+    public NetStreamIdentifierCache getIdentifierCache() {
+        return encoder.getIdentifierCache();
     }
 
-    @Override
-    public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute, Object oldValue, Object newValue) {
-        encoder.nodeAttributeChanged(sourceId, timeId, nodeId, attribute, oldValue, newValue);
+    /**
+     * Quantize the numeric values of an attribute sent to the clients and
+     * optionally send them as differences with the last value of each element.
+     * New clients get full values.
+     *
+     * @see NetStreamEncoder#setNumericEncoding(String, int, boolean)
+     */
+    public void setNumericEncoding(String attribute, int decimals, boolean delta) {
+        encoder.setNumericEncoding(attribute, decimals, delta);
     }
 
-    @Override
-    public void nodeAttributeRemoved(String sourceId, long timeId, String nodeId, String attribute) {
-        encoder.nodeAttributeRemoved(sourceId, timeId, nodeId, attribute);
+    public void removeNumericEncoding(String attribute) {
+        encoder.removeNumericEncoding(attribute);
     }
 
-    @Override
-    public void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute, Object value) {
-        encoder.edgeAttributeAdded(sourceId, timeId, edgeId, attribute, value);
+    /**
+     * Pack many events in each WebSocket message. A message is sent when it
+     * reaches `maxBytes`, when its first event has waited for `maxDelay`
+     * milliseconds, or at each step. Clients have to read every NetStream
+     * message of a WebSocket message, using its size.
+     * This has to be done before the server is started.
+     *
+     * @param maxBytes maximum size of a WebSocket message
+     * @param maxDelay maximum delay of an event, in milliseconds
+     */
+    public void enableBatching(int maxBytes, long maxDelay) {
+        batch = new NetStreamBatchTransport(server, maxBytes, maxDelay);
+        encoder = createEncoder(batch);
+        resetCodecEncoders();
+        connectOutput();
     }
 
-    @Override
-    public void edgeAttributeChanged(String sourceId, long timeId, String edgeId, String attribute, Object oldValue, Object newValue) {
-        encoder.edgeAttributeChanged(sourceId, timeId, edgeId, attribute, oldValue, newValue);
+    public void disableBatching() {
+        flush();
+
+        if (async != null) {
+            async.drain();
+        }
+
+        batch = null;
+        encoder = createEncoder(server);
+        resetCodecEncoders();
+        connectOutput();
     }
 
-    @Override
-    public void edgeAttributeRemoved(String sourceId, long timeId, String edgeId, String attribute) {
-        encoder.edgeAttributeRemoved(sourceId, timeId, edgeId, attribute);
+    public boolean isBatchingEnabled() {
+        return batch != null;
     }
 
-    @Override
-    public void nodeAdded(String sourceId, long timeId, String nodeId) {
-        encoder.nodeAdded(sourceId, timeId, nodeId);
+    /**
+     * Keep only the newest change of each attribute between two steps. Pending
+     * events are sent at each step and by {@link #flush()}, which then has to
+     * be called from the thread feeding the proxy.
+     */
+    public void enableConflation() {
+        conflator = new NetStreamConflator();
+        connectOutput();
     }
 
-    @Override
-    public void nodeRemoved(String sourceId, long timeId, String nodeId) {
-        encoder.nodeRemoved(sourceId, timeId, nodeId);
+    public void disableConflation() {
+        flush();
+
+        conflator = null;
+        connectOutput();
     }
 
-    @Override
-    public void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId, String toNodeId, boolean directed) {
-        encoder.edgeAdded(sourceId, timeId, edgeId, fromNodeId, toNodeId, directed);
+    public boolean isConflationEnabled() {
+        return conflator != null;
     }
 
-    @Override
-    public void edgeRemoved(String sourceId, long timeId, String edgeId) {
-        encoder.edgeRemoved(sourceId, timeId, edgeId);
+    /**
+     * @return the number of attribute changes which have been dropped because
+     * a newer value was sent instead
+     */
+    public long getConflatedEventCount() {
+        return conflator == null ? 0 : conflator.getDroppedEventCount();
     }
 
-    @Override
-    public void graphCleared(String sourceId, long timeId) {
-        encoder.graphCleared(sourceId, timeId);
+    /**
+     * Encode and send the events in a dedicated thread, so that a slow client
+     * does not slow down the thread feeding the proxy. The events go through a
+     * bounded ring buffer, see {@link NetStreamAsyncPipe}.
+     *
+     * @param capacity number of events the ring can hold
+     * @param policy   what to do when the ring is full
+     * @param maxWait  for {@link NetStreamAsyncPipe.OverflowPolicy#WAIT}, the
+     *                 maximum time to wait for room
+     * @param unit     unit of `maxWait`
+     */
+    public void enableAsync(int capacity, NetStreamAsyncPipe.OverflowPolicy policy, long maxWait, TimeUnit unit) {
+        if (async != null) {
+            disableAsync();
+        }
+
+        async = new NetStreamAsyncPipe(capacity);
+        async.setOverflowPolicy(policy, maxWait, unit);
+        connectOutput();
     }
 
-    @Override
-    public void stepBegins(String sourceId, long timeId, double step) {
-        encoder.stepBegins(sourceId, timeId, step);
+    /**
+     * Send the pending events and stop the thread sending them.
+     */
+    public void disableAsync() {
+        if (async == null) {
+            return;
+        }
+
+        flush();
+        async.close();
+
+        async = null;
+        connectOutput();
     }
 
-    private static final ConcurrentLinkedQueue<WSServer> SERVERS = new ConcurrentLinkedQueue<>();
+    public boolean isAsyncEnabled() {
+        return async != null;
+    }
 
-    static {
-        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
-            @Override
-            public void run() {
-                if (SERVERS.size() > 0) {
-                    System.out.print("Stopping remaining WebSocket servers...");
+    /**
+     * @return the asynchronous pipe, which gives the number of dropped events
+     * and the time spent waiting for room, or null if disabled
+     */
+    public NetStreamAsyncPipe getAsyncPipe() {
+        return async;
+    }
 
-                    while (SERVERS.size() > 0) {
-                        try {
-                            SERVERS.poll().stop();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
+    /**
+     * Compress the frames sent to the clients asking for it during the
+     * handshake, with the {@link #COMPRESSION_HEADER} header or the
+     * {@link #COMPRESSION_PARAMETER} query parameter set to
+     * {@link #COMPRESSION_DEFLATE}. Each frame is compressed once for all these
+     * clients; with batching, whole batches are compressed. Clients decode the
+     * frames with {@link org.graphstream.stream.netstream.NetStreamDecoder2#decodeFrame(ByteBuffer)}.
+     *
+     * @param threshold size under which frames are sent uncompressed
+     * @param level     deflate level
+     */
+    public void enableCompression(int threshold, int level) {
+        compressor = new NetStreamCompressor(threshold, level);
+    }
 
-                    System.out.println("  done");
-                }
+    public void disableCompression() {
+        compressor = null;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressor != null;
+    }
+
+    /**
+     * @return the compressor, which gives the compression ratio and the time
+     * spent compressing, or null if compression is disabled
+     */
+    public NetStreamCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Add a codec which clients can select with its WebSocket subprotocol,
+     * instead of the binary NetStream format. Events are encoded once per
+     * codec, and only while some client uses it. This has to be done before
+     * the server is started.
+     *
+     * @param codec the codec
+     * @throws IllegalArgumentException if a codec already has the subprotocol
+     */
+    public void addCodec(WebSocketCodec codec) {
+        CodecOutput[] current = codecs;
+
+        if (codec.getSubprotocol().equals(SUBPROTOCOL) || getCodecOutput(codec.getSubprotocol()) != null) {
+            throw new IllegalArgumentException("subprotocol already used: " + codec.getSubprotocol());
+        }
+
+        CodecOutput output = new CodecOutput(codec);
+        output.encoder = createCodecEncoder(codec, output);
+
+        CodecOutput[] added = new CodecOutput[current.length + 1];
+        System.arraycopy(current, 0, added, 0, current.length);
+        added[current.length] = output;
+
+        codecs = added;
+        connectOutput();
+    }
+
+    /**
+     * @param subprotocol the subprotocol
+     * @return the codec selected by the subprotocol, or null if there is none
+     */
+    public WebSocketCodec getCodec(String subprotocol) {
+        CodecOutput output = getCodecOutput(subprotocol);
+        return output == null ? null : output.codec;
+    }
+
+    protected CodecOutput getCodecOutput(String subprotocol) {
+        for (CodecOutput output : codecs) {
+            if (output.codec.getSubprotocol().equals(subprotocol)) {
+                return output;
             }
-        }));
+        }
+
+        return null;
     }
 
-    class WSServer extends WebSocketServer implements NetStreamTransport {
-        public WSServer(int port) throws UnknownHostException {
-            this(new InetSocketAddress(port));
+    protected WebSocketCodec.Encoder createCodecEncoder(WebSocketCodec codec, NetStreamTransport transport) {
+        return batch == null ? codec.createEncoder(transport, 0, 0)
+                : codec.createEncoder(transport, batch.getMaxBytes(), batch.getMaxDelay());
+    }
+
+    /**
+     * Create the encoders of the codecs again, after batching has been
+     * changed.
+     */
+    protected void resetCodecEncoders() {
+        if (async != null) {
+            async.drain();
         }
 
-        public WSServer(InetSocketAddress address) {
-            super(address);
+        for (CodecOutput output : codecs) {
+            output.encoder.flush();
+            output.encoder = createCodecEncoder(output.codec, output);
         }
+    }
 
-        @Override
-        public void onOpen(WebSocket webSocket, ClientHandshake clientHandshake) {
-            LOGGER.info("websocket opened: " + webSocket.getRemoteSocketAddress());
+    /**
+     * Decode the binary frames sent by the clients and give their events to the
+     * sinks of the proxy, using a decoding thread for each processor.
+     *
+     * @param graphExecutor executor giving the events to the sinks, or null
+     *                      to give them when {@link #pump()} is called
+     * @see #enableInbound(Executor, int)
+     */
+    public void enableInbound(Executor graphExecutor) {
+        enableInbound(graphExecutor, Runtime.getRuntime().availableProcessors());
+    }
 
-            synchronized (filters) {
-                for (WebSocketFilter filter : filters) {
-                    if (!filter.authorizeWebSocketConnection(webSocket)) {
-                        webSocket.close();
-                        return;
-                    }
-                }
-            }
+    /**
+     * Decode the binary frames sent by the clients and give their events to the
+     * sinks of the proxy.
+     * <p>
+     * Frames are decoded by a pool of threads, so the WebSocket thread is not
+     * slowed down, and frames of different connections are decoded at the same
+     * time. Events are then given to the sinks by the graph executor, or by
+     * {@link #pump()} if there is none, one task at a time and in the order the
+     * frames were received, see {@link NetStreamParallelDecoder}. Events of a
+     * connection get a source id of
+     * their own, see {@link #createInboundSourceId(WebSocket)}; with echo
+     * suppression, these events are not sent back to the connection when the
+     * graph gives them back to the proxy.
+     *
+     * @param graphExecutor  executor giving the events to the sinks, or null
+     *                       to give them when {@link #pump()} is called
+     * @param decoderThreads number of decoding threads
+     */
+    public void enableInbound(Executor graphExecutor, int decoderThreads) {
+        disableInbound();
+
+        inbound = new NetStreamParallelDecoder(this, graphExecutor, decoderThreads);
+        connectOutput();
+    }
 
-            replay(webSocket);
+    /**
+     * Ignore the frames sent by the clients again. Events already decoded are
+     * still given to the sinks.
+     */
+    public void disableInbound() {
+        NetStreamParallelDecoder decoder = inbound;
+
+        if (decoder == null) {
+            return;
         }
 
-        @Override
-        public void onClose(WebSocket webSocket, int i, String s, boolean b) {
-            LOGGER.info("webSocket closed: " + webSocket.getRemoteSocketAddress());
+        inbound = null;
+        decoder.shutdown();
+
+        server.inboundConnections.clear();
+        inboundOrigins.clear();
+        connectOutput();
+        clearExcluded();
+    }
+
+    public boolean isInboundEnabled() {
+        return inbound != null;
+    }
+
+    /**
+     * @return the decoder of the events sent by the clients, which gives the
+     * number of frames received and dropped, or null if disabled
+     */
+    public NetStreamParallelDecoder getInboundDecoder() {
+        return inbound;
+    }
+
+    /**
+     * Do not send the events of a client back to it, when the graph receiving
+     * them from the proxy gives them back to the proxy. With batching, a batch
+     * is sent each time the origin of the events changes. Enabled by default.
+     *
+     * @param on true to suppress echoes
+     */
+    public void setEchoSuppression(boolean on) {
+        echoSuppression = on;
+        connectOutput();
+        clearExcluded();
+    }
+
+    public boolean isEchoSuppression() {
+        return echoSuppression;
+    }
+
+    /**
+     * Send the last events of a client, then stop skipping it.
+     */
+    protected void clearExcluded() {
+        if (batch != null) {
+            batch.flush();
         }
 
-        @Override
-        public void onMessage(WebSocket webSocket, String s) {
-            LOGGER.info("receive message: " + s);
+        for (CodecOutput c : codecs) {
+            c.encoder.flush();
         }
 
-        @Override
-        public void onMessage(WebSocket webSocket, ByteBuffer buffer) {
-            LOGGER.info("receive binary data");
+        server.excluded = null;
+    }
+
+    /**
+     * Give the decoded events sent by the clients to the sinks of the proxy.
+     * Without graph executor, this has to be called regularly by the thread
+     * owning the sinks.
+     */
+    public void pump() {
+        NetStreamParallelDecoder decoder = inbound;
+
+        if (decoder != null) {
+            decoder.pump();
+        }
+    }
+
+    /**
+     * @return the source id of the events sent by a connection
+     */
+    protected String createInboundSourceId(WebSocket webSocket) {
+        return "wss-client-" + inboundConnectionCount.incrementAndGet();
+    }
+
+    /**
+     * Give the frames to each connection through a bounded queue, so that a
+     * client which does not read fast enough does not make the proxy hold an
+     * unbounded amount of data. Frames are kept in the queue of a connection
+     * while its WebSocket holds more than the socket budget, and are given by
+     * a dedicated thread once the client has read the previous ones. When the
+     * queue is full, the overflow policy is followed; with
+     * {@link WebSocketClientQueue.OverflowPolicy#RESYNC}, the client gets a
+     * graph clear followed by a replay of the graph, which requires the
+     * mirror. Unless they have been set with
+     * {@link #setOutboundWatermarks(long, long)}, the watermarks are a quarter
+     * and three quarters of the capacity.
+     *
+     * @param capacity      maximum number of bytes queued for a connection
+     * @param policy        what to do when a queue is full
+     * @param drainInterval period of the thread draining the queues
+     * @param unit          unit of `drainInterval`
+     * @see WebSocketClientQueue
+     */
+    public synchronized void enableOutboundQueues(long capacity, WebSocketClientQueue.OverflowPolicy policy,
+                                                  long drainInterval, TimeUnit unit) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
         }
 
-        @Override
-        public void onError(WebSocket webSocket, Exception e) {
-            LOGGER.warning("webSocket error : " + (webSocket == null ? "" : webSocket.getRemoteSocketAddress()) + ", " + e.getClass().getName() + " : " + e.getMessage());
+        outboundCapacity = capacity;
+        outboundPolicy = policy;
+
+        if (outboundWatermarksSet) {
+            outboundHighWater = Math.min(outboundHighWater, capacity);
+            outboundLowWater = Math.min(outboundLowWater, outboundHighWater);
+        } else {
+            outboundLowWater = capacity / 4;
+            outboundHighWater = capacity * 3 / 4;
         }
 
-        void sendToAll(String text) {
-            Collection<WebSocket> con = connections();
+        for (WebSocketClientQueue queue : server.queues.values()) {
+            configureQueue(queue);
+        }
 
-            synchronized (con) {
-                for (WebSocket c : con) {
-                    c.send(text);
-                }
-            }
+        if (drainer != null) {
+            drainer.shutdown();
         }
 
-        @Override
-        public void send(ByteBuffer buffer) {
-            Collection<WebSocket> con = connections();
+        drainer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "wss-drain");
+                t.setDaemon(true);
+                return t;
+            }
+        });
 
-            synchronized (con) {
-                for (WebSocket ws : con) {
-                    buffer.rewind();
-                    ws.send(buffer);
+        drainer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (WebSocketClientQueue queue : server.queues.values()) {
+                    try {
+                        queue.drain();
+                    } catch (RuntimeException e) {
+                        LOGGER.warning("can not drain queue of " + queue.getWebSocket().getRemoteSocketAddress()
+                                + ": " + e.getMessage());
+                    }
                 }
+
+                framePool.reclaim();
             }
+        }, drainInterval, drainInterval, unit);
+
+        outboundQueues = true;
+    }
+
+    /**
+     * Give the frames to the connections at once again. Queued frames are
+     * given to their connection first.
+     */
+    public synchronized void disableOutboundQueues() {
+        if (!outboundQueues) {
+            return;
+        }
+
+        outboundQueues = false;
+        drainer.shutdown();
+        drainer = null;
+
+        for (WebSocketClientQueue queue : server.queues.values()) {
+            queue.setCapacity(queue.getCapacity(), Long.MAX_VALUE);
+            queue.drain();
         }
 
-        public void replay(final WebSocket webSocket) {
+        server.queues.clear();
+    }
+
+    public boolean isOutboundQueuesEnabled() {
+        return outboundQueues;
+    }
+
+    /**
+     * Keep a compact copy of the graph from the events given to the proxy,
+     * which new connections get. The mirror starts from a replay of the
+     * replayable source, if any; otherwise it only knows the events received
+     * once it is enabled, so this has to be done before the first event.
+     * <p>
+     * New connections get the graph from another thread, which can not read
+     * the replayable source while it changes: the mirror is enabled when the
+     * server is started if there is a replayable source. Since the replayable
+     * source is read here, this has to be done by the thread modifying it.
+     *
+     * @see NetStreamGraphMirror
+     */
+    public synchronized void enableMirror() {
+        if (mirror == null) {
+            NetStreamGraphMirror m = new NetStreamGraphMirror();
+
             if (replayable != null) {
+                // the pending events are already in the replayable source
+                if (async != null) {
+                    async.drain();
+                }
+
                 Replayable.Controller c = replayable.getReplayController();
-                NetStreamEncoder netStreamEncoder = new NetStreamEncoder("wss-replay", new NetStreamTransport() {
+                c.addSink(m);
+                c.replay();
+            }
+
+            mirror = m;
+            connectOutput();
+        }
+    }
+
+    /**
+     * Drop the copy of the graph, and the snapshot cache; new connections then
+     * only get the next events.
+     */
+    public synchronized void disableMirror() {
+        if (mirror != null) {
+            disableSnapshotCache();
+
+            mirror = null;
+            connectOutput();
+        }
+    }
+
+    public boolean isMirrorEnabled() {
+        return mirror != null;
+    }
+
+    /**
+     * @return the copy of the graph, or null if it is disabled
+     */
+    public NetStreamGraphMirror getMirror() {
+        return mirror;
+    }
+
+    /**
+     * Encode the snapshot of the graph once for all the connections opened
+     * while it changes little: they get the same frames, followed by the
+     * frames sent since the snapshot, then the next frames. Snapshots are
+     * made from the mirror, which is enabled if needed, by the thread giving
+     * the state of the graph to new connections; the events only wait while
+     * the mirror is copied. Connections using a codec still get their own
+     * replay.
+     *
+     * @param maxDeltaBytes maximum number of bytes of the frames sent since
+     *                      the snapshot, beyond which a new snapshot is made
+     * @see WebSocketSnapshotCache
+     */
+    public synchronized void enableSnapshotCache(long maxDeltaBytes) {
+        enableMirror();
+
+        if (snapshotCache != null) {
+            snapshotCache.setMaxDeltaBytes(maxDeltaBytes);
+        } else {
+            snapshotCache = new WebSocketSnapshotCache(maxDeltaBytes);
+        }
+    }
+
+    public void enableSnapshotCache() {
+        enableSnapshotCache(WebSocketSnapshotCache.DEFAULT_MAX_DELTA_BYTES);
+    }
+
+    /**
+     * Replay the graph for each new connection again.
+     */
+    public synchronized void disableSnapshotCache() {
+        WebSocketSnapshotCache cache = snapshotCache;
+
+        if (cache == null) {
+            return;
+        }
+
+        snapshotCache = null;
+
+        outputLock.lock();
+
+        try {
+            cache.invalidate();
+        } finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * New connections get the state of the graph from a dedicated thread,
+     * without more than `socketBudget` bytes waiting to be written to their
+     * socket; the frames sent to the other connections meanwhile are kept,
+     * and given to them next. A connection whose kept frames exceed
+     * `bufferCapacity` bytes is closed.
+     *
+     * @param socketBudget   number of bytes a new connection may hold
+     * @param bufferCapacity number of bytes of frames kept for a new
+     *                       connection
+     */
+    public synchronized void setJoinFlowControl(long socketBudget, long bufferCapacity) {
+        if (socketBudget <= 0 || bufferCapacity <= 0) {
+            throw new IllegalArgumentException("budget and capacity must be positive");
+        }
+
+        joinSocketBudget = socketBudget;
+        joinBufferCapacity = bufferCapacity;
+    }
+
+    public long getJoinSocketBudget() {
+        return joinSocketBudget;
+    }
+
+    public long getJoinBufferCapacity() {
+        return joinBufferCapacity;
+    }
+
+    /**
+     * @return the number of connections getting the state of the graph
+     */
+    public int getJoiningConnectionCount() {
+        return server.joining.size();
+    }
+
+    /**
+     * @return the thread giving the state of the graph to new connections
+     */
+    protected ScheduledExecutorService getJoiner() {
+        synchronized (joinerLock) {
+            if (joiner == null) {
+                joiner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
                     @Override
-                    public void send(ByteBuffer buffer) {
-                        webSocket.send(buffer);
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "wss-join");
+                        t.setDaemon(true);
+                        return t;
                     }
                 });
+            }
 
-                c.addSink(netStreamEncoder);
-                c.replay();
+            return joiner;
+        }
+    }
+
+    public boolean isSnapshotCacheEnabled() {
+        return snapshotCache != null;
+    }
+
+    /**
+     * @return the snapshot cache, which gives its statistics, or null if it
+     * is disabled
+     */
+    public WebSocketSnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    /**
+     * Send a copy of the graph to a sink, as events of the source
+     * "wss-snapshot" with increasing time ids.
+     *
+     * @param state the mirror or a copy of it
+     * @param sink  the sink
+     */
+    protected void sendSnapshot(NetStreamGraphMirror state, Sink sink) {
+        synchronized (snapshotTimeId) {
+            snapshotTimeId.set(state.replay(sink, "wss-snapshot", snapshotTimeId.get() + 1));
+        }
+    }
+
+    /**
+     * @param low  number of queued bytes under which a client has caught up
+     * @param high number of queued bytes over which a client is slow
+     * @see WebSocketClientQueue#setWatermarks(long, long)
+     */
+    public synchronized void setOutboundWatermarks(long low, long high) {
+        if (low < 0 || low > high) {
+            throw new IllegalArgumentException("watermarks must verify 0 <= low <= high");
+        }
+
+        outboundLowWater = low;
+        outboundHighWater = high;
+        outboundWatermarksSet = true;
+
+        for (WebSocketClientQueue queue : server.queues.values()) {
+            configureQueue(queue);
+        }
+    }
+
+    /**
+     * @param budget maximum number of bytes a WebSocket may hold before frames
+     *               are kept in its queue
+     */
+    public synchronized void setOutboundSocketBudget(long budget) {
+        outboundSocketBudget = budget;
+
+        for (WebSocketClientQueue queue : server.queues.values()) {
+            configureQueue(queue);
+        }
+    }
+
+    /**
+     * @param listener listener told when the queues cross their watermarks
+     */
+    public synchronized void setOutboundQueueListener(WebSocketClientQueue.Listener listener) {
+        outboundListener = listener;
+
+        for (WebSocketClientQueue queue : server.queues.values()) {
+            configureQueue(queue);
+        }
+    }
+
+    /**
+     * @return the queue of a connection, which gives its depth and the number
+     * of dropped frames, or null if it has none
+     */
+    public WebSocketClientQueue getOutboundQueue(WebSocket webSocket) {
+        return server.queues.get(webSocket);
+    }
+
+    public Collection<WebSocketClientQueue> getOutboundQueues() {
+        return Collections.unmodifiableCollection(server.queues.values());
+    }
+
+    /**
+     * @return the number of bytes queued for all the connections
+     */
+    public long getOutboundQueuedBytes() {
+        long bytes = 0;
+
+        for (WebSocketClientQueue queue : server.queues.values()) {
+            bytes += queue.getQueuedBytes();
+        }
+
+        return bytes;
+    }
+
+    protected synchronized void configureQueue(WebSocketClientQueue queue) {
+        queue.setOverflowPolicy(outboundPolicy);
+        queue.setCapacity(outboundCapacity, outboundSocketBudget);
+        queue.setWatermarks(outboundLowWater, outboundHighWater);
+        queue.setListener(outboundListener);
+    }
+
+    /**
+     * @return the pool of the buffers of the frames sent to the connections,
+     * which gives the number of buffers allocated and reused
+     */
+    public WebSocketFramePool getFramePool() {
+        return framePool;
+    }
+
+    /**
+     * Send the pending events, if any.
+     */
+    public void flush() {
+        if (conflator != null) {
+            conflator.flush();
+        }
+
+        if (batch != null || codecs.length > 0) {
+            final NetStreamBatchTransport b = batch;
+            final CodecOutput[] c = codecs;
+
+            if (async != null) {
+                async.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushEncoders(b, c);
+                    }
+                });
+            } else {
+                flushEncoders(b, c);
+            }
+        }
+    }
+
+    protected void flushEncoders(NetStreamBatchTransport b, CodecOutput[] c) {
+        if (b != null) {
+            b.flush();
+        }
+
+        for (int i = 0; i < c.length; i++) {
+            c[i].encoder.flush();
+        }
+    }
+
+    protected void connectOutput() {
+        Sink last = encoder;
+        NetStreamBulkSink lastBulk = encoder;
+
+        if (codecs.length > 0) {
+            CodecFanout fanout = new CodecFanout(encoder, codecs);
+            last = fanout;
+            lastBulk = fanout;
+        }
+
+        if (inbound != null && echoSuppression) {
+            EchoFilter filter = new EchoFilter(last, lastBulk, batch, codecs);
+            last = filter;
+            lastBulk = filter;
+        }
+
+        LockedOutput locked = new LockedOutput(mirror, last, lastBulk);
+        last = locked;
+        lastBulk = locked;
+
+        Sink first = last;
+        bulkOutput = lastBulk;
+
+        if (async != null) {
+            // the thread of the pipe must not be using its sinks
+            async.drain();
+
+            async.clearSinks();
+            async.clearBulkSinks();
+            async.addSink(last);
+            async.addBulkSink(lastBulk);
+
+            first = async;
+            bulkOutput = async;
+        }
+
+        if (conflator != null) {
+            conflator.clearSinks();
+            conflator.addSink(first);
+            first = conflator;
+        }
+
+        output = first;
+    }
+
+    protected NetStreamEncoder createEncoder(NetStreamTransport transport) {
+        NetStreamEncoder enc = new NetStreamEncoder("wss", transport);
+        // WebSocket#send(ByteBuffer) frames the buffer before returning
+        enc.setBufferReuse(true);
+        enc.setDictionaryEnabled(encoder != null && encoder.isDictionaryEnabled());
+        enc.setCompactHeader(encoder != null && encoder.isCompactHeader());
+
+        if (encoder != null) {
+            enc.setIdentifierCacheSize(encoder.getIdentifierCacheSize());
+            enc.copyNumericEncodings(encoder);
+        }
+
+        return enc;
+    }
+
+    /**
+     * Start the server. With a replayable source, this enables the mirror, so
+     * it has to be called by the thread modifying the source.
+     *
+     * @see #enableMirror()
+     */
+    public void startServer() {
+        if (replayable != null) {
+            enableMirror();
+        }
+
+        server.start();
+        SERVERS.offer(server);
+        LOGGER.info(String.format("WebSocket Server is listenning on %d", server.getPort()));
+    }
+
+    public void stopServer() throws InterruptedException {
+        try {
+            server.stop();
+            SERVERS.remove(server);
+        } catch (IOException e) {
+            LOGGER.warning("exception while stopping ws server: " + e.getMessage());
+        }
+
+        synchronized (joinerLock) {
+            if (joiner != null) {
+                joiner.shutdownNow();
+                joiner = null;
+            }
+        }
+    }
+
+    @Override
+    public void graphAttributeAdded(String sourceId, long timeId, String attribute, Object value) {
+        output.graphAttributeAdded(sourceId, timeId, attribute, value);
+    }
+
+    @Override
+    public void graphAttributeChanged(String sourceId, long timeId, String attribute, Object oldValue, Object newValue) {
+        output.graphAttributeChanged(sourceId, timeId, attribute, oldValue, newValue);
+    }
+
+    @Override
+    public void graphAttributeRemoved(String sourceId, long timeId, String attribute) {
+        output.graphAttributeRemoved(sourceId, timeId, attribute);
+    }
+
+    @Override
+    public void nodeAttributeAdded(String sourceId, long timeId, String nodeId, String attribute, Object value) {
+        output.nodeAttributeAdded(sourceId, timeId, nodeId, attribute, value);
+    }
+
+    @Override
+    public void nodeAttributeChanged(String sourceId, long timeId, String nodeId, String attribute, Object oldValue, Object newValue) {
+        output.nodeAttributeChanged(sourceId, timeId, nodeId, attribute, oldValue, newValue);
+    }
+
+    @Override
+    public void nodeAttributeRemoved(String sourceId, long timeId, String nodeId, String attribute) {
+        output.nodeAttributeRemoved(sourceId, timeId, nodeId, attribute);
+    }
+
+    @Override
+    public void edgeAttributeAdded(String sourceId, long timeId, String edgeId, String attribute, Object value) {
+        output.edgeAttributeAdded(sourceId, timeId, edgeId, attribute, value);
+    }
+
+    @Override
+    public void edgeAttributeChanged(String sourceId, long timeId, String edgeId, String attribute, Object oldValue, Object newValue) {
+        output.edgeAttributeChanged(sourceId, timeId, edgeId, attribute, oldValue, newValue);
+    }
+
+    @Override
+    public void edgeAttributeRemoved(String sourceId, long timeId, String edgeId, String attribute) {
+        output.edgeAttributeRemoved(sourceId, timeId, edgeId, attribute);
+    }
+
+    @Override
+    public void nodeAdded(String sourceId, long timeId, String nodeId) {
+        output.nodeAdded(sourceId, timeId, nodeId);
+    }
+
+    @Override
+    public void nodeRemoved(String sourceId, long timeId, String nodeId) {
+        output.nodeRemoved(sourceId, timeId, nodeId);
+    }
+
+    @Override
+    public void edgeAdded(String sourceId, long timeId, String edgeId, String fromNodeId, String toNodeId, boolean directed) {
+        output.edgeAdded(sourceId, timeId, edgeId, fromNodeId, toNodeId, directed);
+    }
+
+    @Override
+    public void edgeRemoved(String sourceId, long timeId, String edgeId) {
+        output.edgeRemoved(sourceId, timeId, edgeId);
+    }
+
+    @Override
+    public void graphCleared(String sourceId, long timeId) {
+        output.graphCleared(sourceId, timeId);
+    }
+
+    @Override
+    public void stepBegins(String sourceId, long timeId, double step) {
+        output.stepBegins(sourceId, timeId, step);
+        flush();
+    }
+
+    @Override
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count, double[] values, int width) {
+        if (conflator != null) {
+            conflator.flush();
+        }
+
+        bulkOutput.nodeAttributesChanged(sourceId, timeId, attribute, nodeIds, count, values, width);
+    }
+
+    @Override
+    public void nodeAttributesChanged(String sourceId, long timeId, String attribute, String[] nodeIds, int count, float[] values, int width) {
+        if (conflator != null) {
+            conflator.flush();
+        }
+
+        bulkOutput.nodeAttributesChanged(sourceId, timeId, attribute, nodeIds, count, values, width);
+    }
+
+    @Override
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count, double[] values, int width) {
+        if (conflator != null) {
+            conflator.flush();
+        }
+
+        bulkOutput.edgeAttributesChanged(sourceId, timeId, attribute, edgeIds, count, values, width);
+    }
+
+    @Override
+    public void edgeAttributesChanged(String sourceId, long timeId, String attribute, String[] edgeIds, int count, float[] values, int width) {
+        if (conflator != null) {
+            conflator.flush();
+        }
+
+        bulkOutput.edgeAttributesChanged(sourceId, timeId, attribute, edgeIds, count, values, width);
+    }
+
+    /**
+     * Connections using a codec, and the encoder of the events sent to them.
+     */
+    protected class CodecOutput implements NetStreamTransport {
+        protected final WebSocketCodec codec;
+        protected final Set<WebSocket> connections = Collections.newSetFromMap(new ConcurrentHashMap<WebSocket, Boolean>());
+        protected volatile WebSocketCodec.Encoder encoder;
+
+        protected CodecOutput(WebSocketCodec codec) {
+            this.codec = codec;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.graphstream.stream.netstream.NetStreamTransport#send(java.nio.ByteBuffer)
+         */
+        @Override
+        public void send(ByteBuffer buffer) {
+            server.send(connections, buffer, codec.isText());
+        }
+    }
+
+    /**
+     * Last stage of the outgoing events when there are codecs: events go to the
+     * NetStream encoder and to the encoders of the codecs which have clients.
+     */
+    protected static class CodecFanout extends NetStreamFilterSink {
+        protected final CodecOutput[] codecs;
+
+        protected CodecFanout(NetStreamEncoder encoder, CodecOutput[] codecs) {
+            super(new Sink[codecs.length + 1], new NetStreamBulkSink[codecs.length + 1]);
+            this.codecs = codecs;
+
+            sinks[0] = encoder;
+            bulkSinks[0] = encoder;
+
+            for (int i = 0; i < codecs.length; i++) {
+                sinks[i + 1] = codecs[i].encoder;
+                bulkSinks[i + 1] = codecs[i].encoder;
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.graphstream.stream.netstream.NetStreamFilterSink#accept(int)
+         */
+        @Override
+        protected boolean accept(int index) {
+            return index == 0 || !codecs[index - 1].connections.isEmpty();
+        }
+    }
+
+    /**
+     * Stage before the encoders which sends the events of a client to all the
+     * other connections only. The server skips the connection which has sent
+     * the last event, whatever its codec; with batching, the batches of all
+     * the codecs are sent each time the origin of the events changes, so that
+     * a batch holds events of a single origin.
+     */
+    protected class EchoFilter extends NetStreamFilterSink {
+        protected final NetStreamBatchTransport batch;
+        protected final CodecOutput[] codecs;
+
+        protected EchoFilter(Sink sink, NetStreamBulkSink bulkSink, NetStreamBatchTransport batch,
+                             CodecOutput[] codecs) {
+            super(sink, bulkSink);
+            this.batch = batch;
+            this.codecs = codecs;
+        }
+
+        /**
+         * Skip the connection which has sent the events of a source, if any,
+         * in the next frames.
+         */
+        protected void exclude(String sourceId) {
+            WebSocket origin = inboundOrigins.isEmpty() ? null : inboundOrigins.get(sourceId);
+
+            if (origin != server.excluded) {
+                if (batch != null) {
+                    batch.flush();
+                }
+
+                for (CodecOutput c : codecs) {
+                    c.encoder.flush();
+                }
+
+                server.excluded = origin;
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.graphstream.stream.netstream.NetStreamFilterSink#begin(java.lang.String)
+         */
+        @Override
+        protected boolean begin(String sourceId) {
+            exclude(sourceId);
+            return true;
+        }
+    }
+
+    /**
+     * Stage before the encoders which keeps the mirror of the graph, if any.
+     * The lock of the output is held while an event goes to the mirror and to
+     * the encoders, so that the mirror holds the events of the frames sent so
+     * far, and the state of the graph given to a new connection matches the
+     * frames sent before it starts to record the next ones.
+     */
+    protected class LockedOutput extends NetStreamFilterSink {
+        protected LockedOutput(NetStreamGraphMirror mirror, Sink sink, NetStreamBulkSink bulkSink) {
+            super(mirror == null ? new Sink[]{sink} : new Sink[]{mirror, sink},
+                    mirror == null ? new NetStreamBulkSink[]{bulkSink} : new NetStreamBulkSink[]{mirror, bulkSink});
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.graphstream.stream.netstream.NetStreamFilterSink#begin(java.lang.String)
+         */
+        @Override
+        protected boolean begin(String sourceId) {
+            outputLock.lock();
+            return true;
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.graphstream.stream.netstream.NetStreamFilterSink#end(java.lang.String)
+         */
+        @Override
+        protected void end(String sourceId) {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * Frames sent while a new connection gets the state of the graph. Until
+     * the state is taken, frames are skipped since they are part of it; then
+     * they are kept, until the connection gets the frames as the others.
+     */
+    protected static class JoinBuffer {
+        protected final ArrayDeque<WebSocketSharedFrame> frames = new ArrayDeque<WebSocketSharedFrame>();
+        protected long bytes;
+        protected boolean recording;
+        protected boolean live;
+        protected boolean overflowed;
+        protected boolean cancelled;
+
+        /**
+         * Keep a frame, or skip it if the state has not been taken yet.
+         *
+         * @param capacity maximum number of bytes kept
+         * @return false if the connection gets the frames as the others
+         */
+        protected synchronized boolean offer(WebSocketSharedFrame frame, long capacity) {
+            if (live) {
+                return false;
+            }
+
+            if (!recording || overflowed || cancelled) {
+                return true;
+            }
+
+            if (bytes + frame.getPayloadSize() > capacity) {
+                overflowed = true;
+                clear();
+                return true;
+            }
+
+            frame.retain();
+            frames.add(frame);
+            bytes += frame.getPayloadSize();
+
+            return true;
+        }
+
+        protected synchronized void record() {
+            recording = true;
+        }
+
+        protected synchronized WebSocketSharedFrame poll() {
+            WebSocketSharedFrame frame = frames.poll();
+
+            if (frame != null) {
+                bytes -= frame.getPayloadSize();
+            }
+
+            return frame;
+        }
+
+        protected synchronized boolean isEmpty() {
+            return frames.isEmpty();
+        }
+
+        protected synchronized boolean isOverflowed() {
+            return overflowed;
+        }
+
+        protected synchronized void setLive() {
+            live = true;
+        }
+
+        /**
+         * Drop the kept frames, the connection getting the state of the graph
+         * again with another buffer.
+         */
+        protected synchronized void cancel() {
+            cancelled = true;
+            clear();
+        }
+
+        protected synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        protected synchronized void clear() {
+            WebSocketSharedFrame frame;
+
+            while ((frame = frames.poll()) != null) {
+                frame.release();
+            }
+
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Queue of a connection, resynchronized by a replay of the graph.
+     */
+    protected class ClientQueue extends WebSocketClientQueue {
+        protected ClientQueue(WebSocket webSocket, WebSocketListener listener) {
+            super(webSocket, listener);
+        }
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see org.graphstream.stream.webSocket.WebSocketClientQueue#resync()
+         */
+        @Override
+        protected boolean resync() {
+            return server.resync(webSocket);
+        }
+    }
+
+    private static final ConcurrentLinkedQueue<WSServer> SERVERS = new ConcurrentLinkedQueue<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (SERVERS.size() > 0) {
+                    System.out.print("Stopping remaining WebSocket servers...");
+
+                    while (SERVERS.size() > 0) {
+                        try {
+                            SERVERS.poll().stop();
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+
+                    System.out.println("  done");
+                }
+            }
+        }));
+    }
+
+    class WSServer extends WebSocketServer implements NetStreamTransport {
+        /**
+         * Connections which have asked for compressed frames.
+         */
+        protected final Set<WebSocket> compressed = Collections.newSetFromMap(new ConcurrentHashMap<WebSocket, Boolean>());
+
+        /**
+         * Codec selected by each connection not using the NetStream format.
+         * Connections are put here during the handshake, so they never get a
+         * NetStream frame.
+         */
+        protected final ConcurrentHashMap<WebSocket, CodecOutput> codecConnections = new ConcurrentHashMap<WebSocket, CodecOutput>();
+
+        /**
+         * Connections which have sent events, created by the WebSocket thread.
+         */
+        protected final ConcurrentHashMap<WebSocket, NetStreamParallelDecoder.Producer> inboundConnections = new ConcurrentHashMap<WebSocket, NetStreamParallelDecoder.Producer>();
+
+        /**
+         * Connection skipped by {@link #send(ByteBuffer)} and by the codec
+         * sends, while events of this connection are sent back to the others.
+         */
+        protected volatile WebSocket excluded;
+
+        /**
+         * Connections getting the state of the graph, and the frames kept for
+         * them meanwhile. Connections are put here during the handshake, so
+         * they get no frame before the state of the graph.
+         */
+        protected final ConcurrentHashMap<WebSocket, JoinBuffer> joining = new ConcurrentHashMap<WebSocket, JoinBuffer>();
+
+        /**
+         * Queue of each connection, when outbound queues are enabled.
+         */
+        protected final ConcurrentHashMap<WebSocket, WebSocketClientQueue> queues = new ConcurrentHashMap<WebSocket, WebSocketClientQueue>();
+
+        public WSServer(int port) throws UnknownHostException {
+            this(new InetSocketAddress(port));
+        }
+
+        public WSServer(InetSocketAddress address) {
+            super(address);
+        }
+
+        @Override
+        public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+                                                                           ClientHandshake request) throws InvalidDataException {
+            ServerHandshakeBuilder builder = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+            String subprotocol = selectSubprotocol(request);
+            CodecOutput codec = subprotocol == null ? null : getCodecOutput(subprotocol);
+
+            if (subprotocol != null) {
+                builder.put(SUBPROTOCOL_HEADER, subprotocol);
+            }
+
+            if (codec != null) {
+                codecConnections.put(conn, codec);
+            } else if (compressor != null && isCompressionRequested(request)) {
+                builder.put(COMPRESSION_HEADER, COMPRESSION_DEFLATE);
+            }
+
+            joining.put(conn, new JoinBuffer());
+
+            return builder;
+        }
+
+        /**
+         * @return the first subprotocol offered by the client which the server
+         * knows, or null if there is none
+         */
+        protected String selectSubprotocol(ClientHandshake handshake) {
+            if (!handshake.hasFieldValue(SUBPROTOCOL_HEADER)) {
+                return null;
+            }
+
+            for (String offered : handshake.getFieldValue(SUBPROTOCOL_HEADER).split(",")) {
+                offered = offered.trim();
+
+                if (offered.equals(SUBPROTOCOL) || getCodecOutput(offered) != null) {
+                    return offered;
+                }
+            }
+
+            return null;
+        }
+
+        protected boolean isCompressionRequested(ClientHandshake handshake) {
+            if (handshake.hasFieldValue(COMPRESSION_HEADER)
+                    && handshake.getFieldValue(COMPRESSION_HEADER).trim().equalsIgnoreCase(COMPRESSION_DEFLATE)) {
+                return true;
+            }
+
+            String resource = handshake.getResourceDescriptor();
+            int query = resource == null ? -1 : resource.indexOf('?');
+
+            if (query >= 0) {
+                for (String parameter : resource.substring(query + 1).split("&")) {
+                    if (parameter.equalsIgnoreCase(COMPRESSION_PARAMETER + "=" + COMPRESSION_DEFLATE)) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, ClientHandshake clientHandshake) {
+            LOGGER.info("websocket opened: " + webSocket.getRemoteSocketAddress());
+
+            synchronized (filters) {
+                for (WebSocketFilter filter : filters) {
+                    if (!filter.authorizeWebSocketConnection(webSocket)) {
+                        webSocket.close();
+                        return;
+                    }
+                }
+            }
+
+            CodecOutput codec = codecConnections.get(webSocket);
+
+            if (codec == null && compressor != null && isCompressionRequested(clientHandshake)) {
+                compressed.add(webSocket);
+            }
+
+            JoinBuffer buffer = joining.get(webSocket);
+
+            if (buffer == null) {
+                buffer = new JoinBuffer();
+                JoinBuffer previous = joining.putIfAbsent(webSocket, buffer);
+
+                if (previous != null) {
+                    buffer = previous;
+                }
+            }
+
+            // the state of the graph may be long to encode and to send
+            getJoiner().execute(new Join(webSocket, buffer, codec, false));
+        }
+
+        @Override
+        public void onClose(WebSocket webSocket, int i, String s, boolean b) {
+            LOGGER.info("webSocket closed: " + webSocket.getRemoteSocketAddress());
+            compressed.remove(webSocket);
+
+            JoinBuffer buffer = joining.remove(webSocket);
+
+            if (buffer != null) {
+                buffer.clear();
+            }
+
+            CodecOutput codec = codecConnections.remove(webSocket);
+
+            if (codec != null) {
+                codec.connections.remove(webSocket);
+            }
+
+            NetStreamParallelDecoder.Producer producer = inboundConnections.remove(webSocket);
+
+            if (producer != null) {
+                inboundOrigins.remove(producer.getSourceId());
+            }
+
+            WebSocketClientQueue queue = queues.remove(webSocket);
+
+            if (queue != null) {
+                queue.close();
+            }
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String s) {
+            LOGGER.info("receive message: " + s);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, ByteBuffer buffer) {
+            NetStreamParallelDecoder decoder = inbound;
+
+            // clients send NetStream frames, whatever the codec of the frames they get
+            if (decoder == null) {
+                LOGGER.info("receive binary data");
+                return;
+            }
+
+            NetStreamParallelDecoder.Producer producer = inboundConnections.get(webSocket);
+
+            if (producer == null) {
+                producer = decoder.createProducer(createInboundSourceId(webSocket));
+                inboundConnections.put(webSocket, producer);
+                inboundOrigins.put(producer.getSourceId(), webSocket);
+            }
+
+            // the payload is a new buffer for each message, it can be kept
+            if (!producer.receive(buffer)) {
+                // the stream of the client is broken, its next events can not be trusted
+                LOGGER.warning("too many frames waiting from " + webSocket.getRemoteSocketAddress());
+                webSocket.close(CloseFrame.POLICY_VALIDATION, "slow producer");
+            }
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Exception e) {
+            LOGGER.warning("webSocket error : " + (webSocket == null ? "" : webSocket.getRemoteSocketAddress()) + ", " + e.getClass().getName() + " : " + e.getMessage());
+        }
+
+        /**
+         * Send a frame to the connections of a codec.
+         *
+         * @param connections the connections
+         * @param buffer      the payload of the frame
+         * @param text        true to send a text frame, the payload being UTF-8
+         */
+        public void send(Collection<WebSocket> connections, ByteBuffer buffer, boolean text) {
+            buffer.rewind();
+
+            WebSocketSharedFrame frame = framePool.frame(buffer, text);
+            boolean skipJoining = !joining.isEmpty();
+            WebSocket skip = excluded;
+
+            try {
+                for (WebSocket ws : connections) {
+                    if (ws != skip && ws.isOpen() && !(skipJoining && keep(ws, frame))) {
+                        write(ws, frame, true, false);
+                    }
+                }
+            } finally {
+                frame.release();
+            }
+        }
+
+        /**
+         * Send a frame to all the connections using the NetStream format. The
+         * frame is framed once, and once more compressed for the connections
+         * which have asked for it; the connections get read-only duplicates of
+         * these frames.
+         */
+        @Override
+        public void send(ByteBuffer buffer) {
+            Collection<WebSocket> con = connections();
+            NetStreamCompressor comp = compressor;
+            WebSocketSnapshotCache cache = snapshotCache;
+            boolean skipCodecs = !codecConnections.isEmpty();
+            boolean skipJoining = !joining.isEmpty();
+            WebSocket skip = excluded;
+            WebSocket[] targets;
+
+            // a queue may close its connection, which must not change the collection being read
+            synchronized (con) {
+                targets = con.toArray(new WebSocket[con.size()]);
+            }
+
+            WebSocketSharedFrame frame = null;
+            WebSocketSharedFrame deflated = null;
+
+            try {
+                for (WebSocket ws : targets) {
+                    if (ws == skip || skipCodecs && codecConnections.containsKey(ws)) {
+                        continue;
+                    }
+
+                    boolean deflate = comp != null && compressed.contains(ws);
+
+                    if (deflate && deflated == null) {
+                        buffer.rewind();
+                        deflated = framePool.frame(comp.compress(buffer), false);
+                    } else if (!deflate && frame == null) {
+                        buffer.rewind();
+                        frame = framePool.frame(buffer, false);
+                    }
+
+                    WebSocketSharedFrame f = deflate ? deflated : frame;
+
+                    if (!(skipJoining && keep(ws, f))) {
+                        write(ws, f, true, !deflate);
+                    }
+                }
+
+                if (cache != null) {
+                    if (frame == null) {
+                        buffer.rewind();
+                        frame = framePool.frame(buffer, false);
+                    }
+
+                    cache.record(frame, deflated);
+                }
+            } finally {
+                if (frame != null) {
+                    frame.release();
+                }
+
+                if (deflated != null) {
+                    deflated.release();
+                }
+            }
+        }
+
+        /**
+         * Give a frame to a connection, through its queue if outbound queues
+         * are enabled.
+         *
+         * @param bounded     false if the frame must be queued whatever the size
+         *                    of the queue
+         * @param conflatable true if the frame holds uncompressed NetStream
+         *                    messages
+         */
+        protected void write(WebSocket webSocket, WebSocketSharedFrame frame, boolean bounded, boolean conflatable) {
+            if (outboundQueues) {
+                getQueue(webSocket).send(frame, bounded, conflatable);
+            } else {
+                frame.writeTo(webSocket, this);
+            }
+        }
+
+        /**
+         * Frame a payload and give it to one connection.
+         */
+        protected void send(WebSocket webSocket, ByteBuffer buffer, boolean text, boolean bounded, boolean conflatable) {
+            WebSocketSharedFrame frame = framePool.frame(buffer, text);
+
+            try {
+                write(webSocket, frame, bounded, conflatable);
+            } finally {
+                frame.release();
+            }
+        }
+
+        /**
+         * @return the queue of a connection, created if needed
+         */
+        protected WebSocketClientQueue getQueue(WebSocket webSocket) {
+            WebSocketClientQueue queue = queues.get(webSocket);
+
+            if (queue == null) {
+                queue = new ClientQueue(webSocket, this);
+                configureQueue(queue);
+
+                WebSocketClientQueue previous = queues.putIfAbsent(webSocket, queue);
+
+                if (previous != null) {
+                    queue = previous;
+                }
+            }
+
+            return queue;
+        }
+
+        /**
+         * Send a frame to one connection, compressed if the connection has
+         * asked for it. With outbound queues, the frame is queued whatever the
+         * size of the queue.
+         */
+        public void send(WebSocket webSocket, ByteBuffer buffer) {
+            NetStreamCompressor comp = compressor;
+            boolean deflate = comp != null && compressed.contains(webSocket);
+
+            if (deflate) {
+                buffer = comp.compress(buffer);
+            }
+
+            send(webSocket, buffer, false, false, !deflate);
+        }
+
+        /**
+         * Send the whole graph again to a connection whose queue has overflowed:
+         * the connection is told to clear its graph, then gets the state of the
+         * graph and the next frames as a new connection does. This is called
+         * while the frames wait, so the next frames are part of the state
+         * until it is taken.
+         *
+         * @return false if the mirror is disabled or the connection closed
+         */
+        protected boolean resync(WebSocket webSocket) {
+            if (mirror == null || !webSocket.isOpen()) {
+                return false;
+            }
+
+            LOGGER.info("resynchronizing slow connection: " + webSocket.getRemoteSocketAddress());
+
+            return join(webSocket, true);
+        }
+
+        /**
+         * Give the state of the graph to a connection again, from the join
+         * thread, the next frames being kept for it meanwhile.
+         *
+         * @param clear true to tell the connection to clear its graph first
+         * @return false if the server is stopped
+         */
+        protected boolean join(WebSocket webSocket, boolean clear) {
+            JoinBuffer buffer = new JoinBuffer();
+            JoinBuffer previous = joining.put(webSocket, buffer);
+
+            if (previous != null) {
+                previous.cancel();
+            }
+
+            try {
+                getJoiner().execute(new Join(webSocket, buffer, codecConnections.get(webSocket), clear));
+            } catch (RejectedExecutionException e) {
+                joining.remove(webSocket, buffer);
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Keep a frame for a connection which is getting the state of the
+         * graph, or skip it if the frame is part of that state.
+         *
+         * @return false if the frame has to be given to the connection
+         */
+        protected boolean keep(WebSocket webSocket, WebSocketSharedFrame frame) {
+            JoinBuffer buffer = joining.get(webSocket);
+
+            if (buffer == null || !buffer.offer(frame, joinBufferCapacity)) {
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * @return the number of bytes given to a connection and not written
+         * to its socket yet
+         */
+        protected long getPendingBytes(WebSocket webSocket) {
+            long bytes = WebSocketClientQueue.getSocketBytes(webSocket, joinSocketBudget);
+
+            if (outboundQueues) {
+                WebSocketClientQueue queue = queues.get(webSocket);
+
+                if (queue != null) {
+                    bytes += queue.getQueuedBytes();
+                }
+            }
+
+            return bytes;
+        }
+
+        /**
+         * Send the state of the graph to a connection again.
+         */
+        public void replay(WebSocket webSocket) {
+            join(webSocket, false);
+        }
+
+        /**
+         * Give the state of the graph to a new connection, then the frames
+         * kept for it meanwhile. A copy of the mirror is taken while the
+         * events wait, so that it matches the frames sent before the
+         * connection starts to keep the next ones: no frame is missed or
+         * given twice. The copy is then encoded and sent a frame at a time,
+         * without the connection holding more than the budget, while the
+         * events go on.
+         * <p>
+         * The library does not tell when a connection has written its data, so
+         * the task is run again later while the connection is not ready, with
+         * a delay doubled each time the connection has not written anything,
+         * from {@link #JOIN_MIN_DELAY} to {@link #JOIN_MAX_DELAY} microseconds.
+         */
+        protected class Join implements Runnable {
+            protected final WebSocket webSocket;
+            protected final JoinBuffer buffer;
+            protected final CodecOutput codec;
+
+            /**
+             * True if the connection has to clear its graph first.
+             */
+            protected final boolean clear;
+
+            /**
+             * State taken while the events wait: the copy of the mirror, the
+             * dictionary and the stream header of the encoder, or the frames
+             * of the snapshot cache.
+             */
+            protected NetStreamGraphMirror state;
+            protected ByteBuffer dictionary;
+            protected ByteBuffer header;
+
+            /**
+             * Version of the snapshot made for the cache by this connection,
+             * or -1.
+             */
+            protected long snapshotVersion = -1;
+
+            /**
+             * Encoded state of the graph.
+             */
+            protected WebSocketSharedFrame[] frames;
+            protected int next;
+            protected boolean captured;
+
+            protected long delay = JOIN_MIN_DELAY;
+            protected boolean progress;
+
+            protected Join(WebSocket webSocket, JoinBuffer buffer, CodecOutput codec, boolean clear) {
+                this.webSocket = webSocket;
+                this.buffer = buffer;
+                this.codec = codec;
+                this.clear = clear;
+            }
+
+            /*
+             * (non-Javadoc)
+             *
+             * @see java.lang.Runnable#run()
+             */
+            @Override
+            public void run() {
+                try {
+                    if (!webSocket.isOpen() || buffer.isCancelled()) {
+                        abort();
+                        return;
+                    }
+
+                    if (!captured) {
+                        capture();
+                        captured = true;
+                    }
+
+                    if (frames == null) {
+                        frames = encode();
+
+                        if (clear) {
+                            frames = prependClear(frames);
+                        }
+                    }
+
+                    if (buffer.isOverflowed()) {
+                        LOGGER.warning("closing connection which can not get the graph fast enough: "
+                                + webSocket.getRemoteSocketAddress());
+                        abort();
+                        webSocket.close(CloseFrame.POLICY_VALIDATION, "slow consumer");
+                        return;
+                    }
+
+                    progress = false;
+
+                    if (sendState() && splice()) {
+                        return;
+                    }
+
+                    delay = progress ? JOIN_MIN_DELAY : Math.min(2 * delay, JOIN_MAX_DELAY);
+                    getJoiner().schedule(this, delay, TimeUnit.MICROSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // the server is stopped
+                    abort();
+                } catch (RuntimeException e) {
+                    LOGGER.warning("can not send the graph to " + webSocket.getRemoteSocketAddress() + ": "
+                            + e.getMessage());
+                    abort();
+                    webSocket.close();
+                }
+            }
+
+            /**
+             * Take the state of the graph and start to keep the next frames.
+             * Nothing is encoded here but the dictionary and the stream header.
+             */
+            protected void capture() {
+                outputLock.lock();
+
+                try {
+                    NetStreamBatchTransport b = batch;
+                    NetStreamGraphMirror m = mirror;
+
+                    // the pending events are either in the state or in the next frames
+                    if (b != null) {
+                        b.flush();
+                    }
+
+                    if (codec != null) {
+                        if (codec.encoder != null) {
+                            codec.encoder.flush();
+                        }
+
+                        state = m == null ? null : m.copy();
+                        codec.connections.add(webSocket);
+                    } else {
+                        WebSocketSnapshotCache cache = snapshotCache;
+
+                        if (cache != null) {
+                            frames = cache.getFrames(compressed.contains(webSocket) ? compressor : null, framePool);
+                        }
+
+                        if (frames == null) {
+                            dictionary = encoder.encodeDictionary();
+                            header = encoder.encodeStreamHeader();
+                            state = m == null ? null : m.copy();
+
+                            // the other connections will get the same state
+                            if (cache != null && state != null && !clear) {
+                                snapshotVersion = cache.startSnapshot();
+                            }
+                        }
+
+                        // the new connection knows no previous value
+                        encoder.resetNumericEncoding();
+                    }
+
+                    buffer.record();
+                } finally {
+                    outputLock.unlock();
+                }
+            }
+
+            /**
+             * Encode the state taken by {@link #capture()}, batched if the
+             * events are, and compressed if the connection has asked for it.
+             * A snapshot for the cache is always batched, and is given to the
+             * cache before being compressed.
+             *
+             * @return the frames of the state
+             */
+            protected WebSocketSharedFrame[] encode() {
+                final ArrayList<WebSocketSharedFrame> encoded = new ArrayList<WebSocketSharedFrame>();
+                final boolean text = codec != null && codec.codec.isText();
+                final boolean snapshot = snapshotVersion >= 0;
+                final NetStreamCompressor comp = codec == null && compressed.contains(webSocket) ? compressor : null;
+                NetStreamBatchTransport b = batch;
+
+                NetStreamTransport transport = new NetStreamTransport() {
+                    @Override
+                    public void send(ByteBuffer buffer) {
+                        encoded.add(framePool.frame(comp == null || snapshot ? buffer : comp.compress(buffer), text));
+                    }
+                };
+
+                try {
+                    if (codec != null) {
+                        WebSocketCodec.Encoder replayEncoder = codec.codec.createEncoder(transport,
+                                b == null ? 0 : b.getMaxBytes(), 0);
+
+                        if (state != null) {
+                            sendSnapshot(state, replayEncoder);
+                        }
+
+                        replayEncoder.flush();
+                    } else {
+                        if (dictionary != null) {
+                            transport.send(dictionary);
+                        }
+
+                        if (header != null) {
+                            transport.send(header);
+                        }
+
+                        if (state != null) {
+                            NetStreamBatchTransport replayBatch = null;
+
+                            if (b != null || snapshot) {
+                                replayBatch = new NetStreamBatchTransport(transport,
+                                        b == null ? NetStreamBatchTransport.DEFAULT_MAX_BYTES : b.getMaxBytes(), 0);
+                                transport = replayBatch;
+                            }
+
+                            NetStreamEncoder netStreamEncoder = new NetStreamEncoder("wss-replay", transport);
+                            netStreamEncoder.setBufferReuse(true);
+
+                            sendSnapshot(state, netStreamEncoder);
+
+                            if (replayBatch != null) {
+                                replayBatch.flush();
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    for (WebSocketSharedFrame frame : encoded) {
+                        frame.release();
+                    }
+
+                    throw e;
+                } finally {
+                    state = null;
+                    dictionary = null;
+                    header = null;
+                }
+
+                if (snapshot) {
+                    completeSnapshot(encoded, comp);
+                }
+
+                return encoded.toArray(new WebSocketSharedFrame[encoded.size()]);
+            }
+
+            /**
+             * Give the snapshot to the cache, and keep it for this connection,
+             * which gets the frames sent since from its join buffer.
+             *
+             * @param encoded the frames of the snapshot, replaced by the
+             *                frames of this connection
+             * @param comp    compressor of this connection, or null
+             */
+            protected void completeSnapshot(ArrayList<WebSocketSharedFrame> encoded, NetStreamCompressor comp) {
+                WebSocketSnapshotCache cache = snapshotCache;
+
+                for (WebSocketSharedFrame frame : encoded) {
+                    frame.retain();
+                }
+
+                if (cache != null) {
+                    cache.completeSnapshot(snapshotVersion, new ArrayList<WebSocketSharedFrame>(encoded));
+                } else {
+                    for (WebSocketSharedFrame frame : encoded) {
+                        frame.release();
+                    }
+                }
+
+                snapshotVersion = -1;
+
+                if (comp != null) {
+                    for (int i = 0; i < encoded.size(); i++) {
+                        WebSocketSharedFrame frame = encoded.get(i);
+                        encoded.set(i, framePool.frame(comp.compress(frame.getPayload()), false));
+                        frame.release();
+                    }
+                }
+            }
+
+            /**
+             * @return the frames of the state, after a frame telling the
+             * connection to clear its graph
+             */
+            protected WebSocketSharedFrame[] prependClear(WebSocketSharedFrame[] state) {
+                final ArrayList<WebSocketSharedFrame> encoded = new ArrayList<WebSocketSharedFrame>();
+                final boolean text = codec != null && codec.codec.isText();
+                final NetStreamCompressor comp = codec == null && compressed.contains(webSocket) ? compressor : null;
+
+                NetStreamTransport transport = new NetStreamTransport() {
+                    @Override
+                    public void send(ByteBuffer buffer) {
+                        encoded.add(framePool.frame(comp == null ? buffer : comp.compress(buffer), text));
+                    }
+                };
+
+                if (codec != null) {
+                    WebSocketCodec.Encoder clearEncoder = codec.codec.createEncoder(transport, 0, 0);
+                    clearEncoder.graphCleared("wss-resync", resyncTimeId.incrementAndGet());
+                    clearEncoder.flush();
+                } else {
+                    new NetStreamEncoder("wss-resync", transport).graphCleared("wss-resync",
+                            resyncTimeId.incrementAndGet());
+                }
+
+                encoded.addAll(Arrays.asList(state));
+
+                return encoded.toArray(new WebSocketSharedFrame[encoded.size()]);
+            }
+
+            /**
+             * @return true once the whole state has been given
+             */
+            protected boolean sendState() {
+                while (next < frames.length) {
+                    if (getPendingBytes(webSocket) >= joinSocketBudget) {
+                        return false;
+                    }
+
+                    write(webSocket, frames[next], false, false);
+                    frames[next].release();
+                    frames[next++] = null;
+                    progress = true;
+                }
+
+                return true;
+            }
+
+            /**
+             * Give the kept frames, then let the connection get the next ones.
+             *
+             * @return true once the connection gets the frames as the others
+             */
+            protected boolean splice() {
+                synchronized (buffer) {
+                    WebSocketSharedFrame frame;
+
+                    while (getPendingBytes(webSocket) < joinSocketBudget && (frame = buffer.poll()) != null) {
+                        write(webSocket, frame, false, false);
+                        frame.release();
+                        progress = true;
+                    }
+
+                    if (!buffer.isEmpty()) {
+                        return false;
+                    }
+
+                    buffer.setLive();
+                }
+
+                joining.remove(webSocket, buffer);
+
+                return true;
+            }
+
+            protected void abort() {
+                joining.remove(webSocket, buffer);
+                buffer.clear();
+
+                if (frames != null) {
+                    for (int i = next; i < frames.length; i++) {
+                        frames[i].release();
+                    }
+
+                    frames = null;
+                }
+
+                state = null;
             }
         }
     }
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketListener;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.FramedataImpl1;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * WebSocket frame framed once and written to any number of connections.
+ * <p>
+ * The frame holds the header and the payload of a server frame as defined by
+ * RFC 6455. Each connection gets a read-only duplicate of it, put as is in the
+ * output queue of the WebSocket, so that the payload is neither copied nor
+ * framed again for each connection. Connections using another draft get the
+ * payload, framed by the library.
+ * <p>
+ * The frame is reference-counted: the creator holds the first reference, and
+ * each queue and each connection which has not written the frame yet hold one.
+ * The buffer goes back to its pool when the last reference is released. Since
+ * the library does not tell when a frame has been written, the references of
+ * the connections are released by {@link WebSocketFramePool#reclaim()}.
+ *
+ * @since 17/10/26.
+ */
+public class WebSocketSharedFrame {
+    private static final Logger LOGGER = Logger.getLogger(WebSocketSharedFrame.class.getName());
+
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int FLAG_FIN = 0x80;
+
+    protected final WebSocketFramePool pool;
+    protected final ByteBuffer buffer;
+    protected final int headerSize;
+    protected final boolean text;
+    protected final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Connections which have been given the frame, and their duplicates not
+     * yet completely written.
+     */
+    protected WebSocket[] holders = new WebSocket[4];
+    protected ByteBuffer[] written = new ByteBuffer[4];
+    protected int holderCount;
+    protected boolean tracked;
+
+    /**
+     * Frame a payload in a new buffer, which does not belong to a pool.
+     *
+     * @param payload the payload, from its position to its limit, which is not
+     *                changed
+     * @param text    true for a text frame, the payload being UTF-8
+     */
+    public WebSocketSharedFrame(ByteBuffer payload, boolean text) {
+        this(null, ByteBuffer.allocate(getFrameSize(payload.remaining())), payload, text);
+    }
+
+    protected WebSocketSharedFrame(WebSocketFramePool pool, ByteBuffer buffer, ByteBuffer payload, boolean text) {
+        int size = payload.remaining();
+
+        this.pool = pool;
+        this.buffer = buffer;
+        this.text = text;
+
+        buffer.clear();
+        buffer.put((byte) (FLAG_FIN | (text ? OPCODE_TEXT : OPCODE_BINARY)));
+
+        if (size < 126) {
+            buffer.put((byte) size);
+        } else if (size <= 0xFFFF) {
+            buffer.put((byte) 126);
+            buffer.putShort((short) size);
+        } else {
+            buffer.put((byte) 127);
+            buffer.putLong(size);
+        }
+
+        this.headerSize = buffer.position();
+
+        buffer.put(payload.duplicate());
+        buffer.flip();
+    }
+
+    /**
+     * @param payloadSize size of a payload
+     * @return the size of the frame holding the payload
+     */
+    public static int getFrameSize(int payloadSize) {
+        return payloadSize + (payloadSize < 126 ? 2 : payloadSize <= 0xFFFF ? 4 : 10);
+    }
+
+    public boolean isText() {
+        return text;
+    }
+
+    /**
+     * @return a read-only view of the payload
+     */
+    public ByteBuffer getPayload() {
+        ByteBuffer payload = buffer.asReadOnlyBuffer();
+        payload.position(headerSize);
+
+        return payload;
+    }
+
+    public int getPayloadSize() {
+        return buffer.limit() - headerSize;
+    }
+
+    /**
+     * @return a read-only view of the header and the payload
+     */
+    public ByteBuffer getFrame() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    public int getReferenceCount() {
+        return references.get();
+    }
+
+    public void retain() {
+        if (references.getAndIncrement() <= 0) {
+            throw new IllegalStateException("frame already released");
+        }
+    }
+
+    public void release() {
+        int left = references.decrementAndGet();
+
+        if (left == 0) {
+            if (pool != null) {
+                pool.recycle(buffer);
+            }
+        } else if (left < 0) {
+            throw new IllegalStateException("frame released too many times");
+        }
+    }
+
+    /**
+     * Give the frame to a connection.
+     *
+     * @param webSocket the connection
+     * @param listener  the server of the connection, woken up to write the
+     *                  frame, or null to let the library frame the payload
+     */
+    public void writeTo(WebSocket webSocket, WebSocketListener listener) {
+        if (!WebSocketOutQueue.isWritable(webSocket)) {
+            return;
+        }
+
+        if (WebSocketOutQueue.canEnqueue(webSocket, listener)) {
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+
+            // the reference of the caller keeps the buffer until it is held
+            if (WebSocketOutQueue.enqueue(webSocket, listener, view)) {
+                hold(webSocket, view);
+            }
+
+            return;
+        }
+
+        if (text) {
+            FramedataImpl1 frame = new FramedataImpl1(Framedata.Opcode.TEXT);
+            frame.setFin(true);
+
+            try {
+                frame.setPayload(getPayload());
+            } catch (InvalidDataException e) {
+                LOGGER.warning("can not create text frame: " + e.getMessage());
+                return;
+            }
+
+            webSocket.sendFrame(frame);
+        } else {
+            webSocket.send(getPayload());
+        }
+    }
+
+    protected synchronized void hold(WebSocket webSocket, ByteBuffer view) {
+        retain();
+
+        if (holderCount == holders.length) {
+            WebSocket[] h = new WebSocket[2 * holderCount];
+            ByteBuffer[] w = new ByteBuffer[2 * holderCount];
+
+            System.arraycopy(holders, 0, h, 0, holderCount);
+            System.arraycopy(written, 0, w, 0, holderCount);
+
+            holders = h;
+            written = w;
+        }
+
+        holders[holderCount] = webSocket;
+        written[holderCount] = view;
+        holderCount++;
+
+        if (!tracked && pool != null) {
+            tracked = true;
+            pool.track(this);
+        }
+    }
+
+    /**
+     * Release the references of the connections which have written the frame,
+     * or which are closed.
+     *
+     * @return true if no connection holds the frame anymore
+     */
+    protected synchronized boolean releaseWritten() {
+        int kept = 0;
+
+        for (int i = 0; i < holderCount; i++) {
+            // the position of the duplicate only grows as the frame is written
+            if (written[i].hasRemaining() && !holders[i].isClosed()) {
+                holders[kept] = holders[i];
+                written[kept] = written[i];
+                kept++;
+            } else {
+                release();
+            }
+        }
+
+        for (int i = kept; i < holderCount; i++) {
+            holders[i] = null;
+            written[i] = null;
+        }
+
+        holderCount = kept;
+
+        if (kept == 0) {
+            tracked = false;
+            return true;
+        }
+
+        return false;
+    }
+}
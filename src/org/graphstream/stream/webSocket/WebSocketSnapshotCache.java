@@ -0,0 +1,344 @@
+/*
+ * Copyright 2006 - 2016
+ *     Stefan Balev     <stefan.balev@graphstream-project.org>
+ *     Julien Baudry    <julien.baudry@graphstream-project.org>
+ *     Antoine Dutot    <antoine.dutot@graphstream-project.org>
+ *     Yoann Pigné      <yoann.pigne@graphstream-project.org>
+ *     Guilhelm Savin   <guilhelm.savin@graphstream-project.org>
+ *
+ * This file is part of GraphStream <http://graphstream-project.org>.
+ *
+ * GraphStream is a library whose purpose is to handle static or dynamic
+ * graph, create them from scratch, file or any source and display them.
+ *
+ * This program is free software distributed under the terms of two licenses, the
+ * CeCILL-C license that fits European law, and the GNU Lesser General Public
+ * License. You can  use, modify and/ or redistribute the software under the terms
+ * of the CeCILL-C license as circulated by CEA, CNRS and INRIA at the following
+ * URL <http://www.cecill.info> or under the terms of the GNU LGPL as published by
+ * the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL-C and LGPL licenses and that you accept their terms.
+ */
+package org.graphstream.stream.webSocket;
+
+import org.graphstream.stream.netstream.NetStreamCompressor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoded snapshot of the graph, shared by the connections opened while the
+ * graph does not change much.
+ * <p>
+ * The version of the graph is the number of frames sent to all the
+ * connections. The snapshot is made of the frames giving the graph at a
+ * version, and is followed by the delta: the frames sent to the connections
+ * since that version. A new connection gets the snapshot and the delta, then
+ * the next frames. Once the delta is larger than the given maximum, or than
+ * the snapshot itself, the cache is dropped, and the next connection makes a
+ * new snapshot.
+ * <p>
+ * A snapshot is made in two steps, so that the graph is encoded without
+ * holding the events: {@link #startSnapshot()} is called while the events
+ * wait, with the state of the graph taken at the same time, then
+ * {@link #completeSnapshot(long, List)} gives the encoded state. The frames
+ * sent meanwhile are kept as the delta.
+ * <p>
+ * Frames are kept by reference; compressed frames are made once, when a
+ * connection asks for them.
+ *
+ * @since 17/10/26.
+ */
+public class WebSocketSnapshotCache {
+    /**
+     * Default maximum number of bytes of the delta.
+     */
+    public static final long DEFAULT_MAX_DELTA_BYTES = 4 << 20;
+
+    protected final ArrayList<WebSocketSharedFrame> frames = new ArrayList<WebSocketSharedFrame>();
+
+    /**
+     * Compressed frames, made on demand; same indices as the frames.
+     */
+    protected final ArrayList<WebSocketSharedFrame> deflatedFrames = new ArrayList<WebSocketSharedFrame>();
+
+    protected long maxDeltaBytes;
+    protected boolean valid;
+    protected boolean pending;
+    protected int snapshotFrames;
+    protected long snapshotBytes;
+    protected long deltaBytes;
+
+    protected long version;
+    protected long snapshotVersion = -1;
+    protected long pendingVersion = -1;
+
+    protected long snapshotCount;
+    protected long hitCount;
+    protected long droppedCount;
+
+    public WebSocketSnapshotCache() {
+        this(DEFAULT_MAX_DELTA_BYTES);
+    }
+
+    /**
+     * @param maxDeltaBytes maximum number of bytes of the delta
+     */
+    public WebSocketSnapshotCache(long maxDeltaBytes) {
+        this.maxDeltaBytes = maxDeltaBytes;
+    }
+
+    public synchronized void setMaxDeltaBytes(long maxDeltaBytes) {
+        this.maxDeltaBytes = maxDeltaBytes;
+    }
+
+    public synchronized long getMaxDeltaBytes() {
+        return maxDeltaBytes;
+    }
+
+    /**
+     * @return true if a snapshot has been started and not completed
+     */
+    public synchronized boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * @return true if there is a snapshot which can be given to a connection
+     */
+    public synchronized boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Replace the snapshot. The cache takes the references of the frames.
+     *
+     * @param snapshot the frames giving the graph at the current version
+     */
+    public synchronized void setSnapshot(List<WebSocketSharedFrame> snapshot) {
+        invalidate();
+
+        frames.addAll(snapshot);
+
+        for (WebSocketSharedFrame frame : snapshot) {
+            snapshotBytes += frame.getPayloadSize();
+            deflatedFrames.add(null);
+        }
+
+        snapshotFrames = snapshot.size();
+        snapshotVersion = version;
+        snapshotCount++;
+        valid = true;
+    }
+
+    /**
+     * Drop the cache and start to keep the delta of a new snapshot, whose
+     * frames are given later to {@link #completeSnapshot(long, List)}. This
+     * has to be done while the frames wait, when the state of the graph is
+     * taken.
+     *
+     * @return the version of the new snapshot
+     */
+    public synchronized long startSnapshot() {
+        invalidate();
+        pending = true;
+        pendingVersion = version;
+
+        return version;
+    }
+
+    /**
+     * Give the frames of a snapshot started by {@link #startSnapshot()}. The
+     * cache takes the references of the frames.
+     *
+     * @param snapshotVersion the version returned by {@link #startSnapshot()}
+     * @param snapshot        the frames giving the graph at that version
+     * @return false if the snapshot has been dropped meanwhile, its frames
+     * are then released
+     */
+    public synchronized boolean completeSnapshot(long snapshotVersion, List<WebSocketSharedFrame> snapshot) {
+        if (!pending || snapshotVersion != pendingVersion) {
+            for (WebSocketSharedFrame frame : snapshot) {
+                frame.release();
+            }
+
+            return false;
+        }
+
+        pending = false;
+        frames.addAll(0, snapshot);
+
+        for (WebSocketSharedFrame frame : snapshot) {
+            snapshotBytes += frame.getPayloadSize();
+            deflatedFrames.add(0, null);
+        }
+
+        snapshotFrames = snapshot.size();
+        this.snapshotVersion = snapshotVersion;
+        snapshotCount++;
+        valid = true;
+
+        if (deltaBytes > Math.min(maxDeltaBytes, snapshotBytes)) {
+            droppedCount++;
+            invalidate();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Count a frame sent to all the connections, and add it to the delta if
+     * there is a snapshot. The cache takes a reference of the frames.
+     *
+     * @param frame    the frame
+     * @param deflated the same frame compressed, or null
+     */
+    public synchronized void record(WebSocketSharedFrame frame, WebSocketSharedFrame deflated) {
+        version++;
+
+        if (!valid && !pending) {
+            return;
+        }
+
+        // the size of a pending snapshot is not known yet
+        long max = pending ? maxDeltaBytes : Math.min(maxDeltaBytes, snapshotBytes);
+
+        if (deltaBytes + frame.getPayloadSize() > max) {
+            droppedCount++;
+            invalidate();
+            return;
+        }
+
+        frame.retain();
+        frames.add(frame);
+        deltaBytes += frame.getPayloadSize();
+
+        if (deflated != null) {
+            deflated.retain();
+        }
+
+        deflatedFrames.add(deflated);
+    }
+
+    /**
+     * Get the snapshot and the delta. The caller holds a reference of each
+     * frame, and has to release it.
+     *
+     * @param compressor compressor of the connection, or null to get the
+     *                   frames not compressed
+     * @param pool       pool framing the compressed frames
+     * @return the frames, or null if there is no snapshot
+     */
+    public synchronized WebSocketSharedFrame[] getFrames(NetStreamCompressor compressor, WebSocketFramePool pool) {
+        if (!valid) {
+            return null;
+        }
+
+        WebSocketSharedFrame[] result = new WebSocketSharedFrame[frames.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            WebSocketSharedFrame frame = frames.get(i);
+
+            if (compressor != null) {
+                if (deflatedFrames.get(i) == null) {
+                    deflatedFrames.set(i, pool.frame(compressor.compress(frame.getPayload()), false));
+                }
+
+                frame = deflatedFrames.get(i);
+            }
+
+            frame.retain();
+            result[i] = frame;
+        }
+
+        hitCount++;
+
+        return result;
+    }
+
+    /**
+     * Drop the snapshot and the delta.
+     */
+    public synchronized void invalidate() {
+        for (WebSocketSharedFrame frame : frames) {
+            frame.release();
+        }
+
+        for (WebSocketSharedFrame frame : deflatedFrames) {
+            if (frame != null) {
+                frame.release();
+            }
+        }
+
+        frames.clear();
+        deflatedFrames.clear();
+        snapshotFrames = 0;
+        snapshotBytes = 0;
+        deltaBytes = 0;
+        valid = false;
+        pending = false;
+    }
+
+    /**
+     * @return the number of frames sent to all the connections so far
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the version of the snapshot, or -1 if there has never been one
+     */
+    public synchronized long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public synchronized int getSnapshotFrameCount() {
+        return snapshotFrames;
+    }
+
+    public synchronized long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    public synchronized int getDeltaFrameCount() {
+        return frames.size() - snapshotFrames;
+    }
+
+    public synchronized long getDeltaBytes() {
+        return deltaBytes;
+    }
+
+    /**
+     * @return the number of snapshots made
+     */
+    public synchronized long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /**
+     * @return the number of times the snapshot has been given to a connection
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of snapshots dropped because of the size of their
+     * delta
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}